@@ -1,22 +1,13 @@
 package com.mediscreen.patient;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class PatientApplication implements CommandLineRunner {
 
 
-	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
-	}
-
-	
-
 	public static void main(String[] args) {
 		SpringApplication.run(PatientApplication.class, args);
 	}
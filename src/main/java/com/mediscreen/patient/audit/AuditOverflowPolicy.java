@@ -0,0 +1,16 @@
+package com.mediscreen.patient.audit;
+
+/**
+ * What to do with an audit event when the queue is full, set with {@code patient.audit.overflow-policy}.
+ */
+public enum AuditOverflowPolicy {
+
+    /** Drop the event being added, keeping the queued ones. */
+    DROP_NEWEST,
+
+    /** Drop the oldest queued event to make room for the new one. */
+    DROP_OLDEST,
+
+    /** Wait up to {@code patient.audit.offer-timeout} for the writer to make room, then drop the new event. */
+    BLOCK
+}
@@ -0,0 +1,19 @@
+package com.mediscreen.patient.audit;
+
+import com.mediscreen.patient.model.PatientChangeType;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A committed change of a patient, waiting to be diffed against the last audited state of the patient.
+ *
+ * @param patientId the id of the patient
+ * @param action    created, updated or deleted
+ * @param after     the audited fields after the change, by name, empty for a deletion
+ * @param actor     who made the change
+ * @param changedAt when the change was committed
+ */
+public record PatientAuditChange(int patientId, PatientChangeType action, Map<String, String> after, String actor,
+                                 Instant changedAt) {
+}
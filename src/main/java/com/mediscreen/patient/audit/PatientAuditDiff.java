@@ -0,0 +1,80 @@
+package com.mediscreen.patient.audit;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.model.PatientChangeType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Field-level differences between two states of a patient.
+ */
+public final class PatientAuditDiff {
+
+    /** The audited fields, in the order of {@code PatientDto}. */
+    private static final Map<String, Function<PatientDto, Object>> FIELDS = fields();
+
+    private PatientAuditDiff() {
+    }
+
+
+    private static Map<String, Function<PatientDto, Object>> fields() {
+        // insertion order is kept so that the events of a change come out in a stable order
+        Map<String, Function<PatientDto, Object>> fields = new LinkedHashMap<>();
+        fields.put("lastName", PatientDto::getLastName);
+        fields.put("firstName", PatientDto::getFirstName);
+        fields.put("birthdate", PatientDto::getBirthdate);
+        fields.put("sex", PatientDto::getSex);
+        fields.put("address", PatientDto::getAddress);
+        fields.put("phone", PatientDto::getPhone);
+        return fields;
+    }
+
+
+    /**
+     The audited fields of a patient, as written to the audit log.
+     @param patient the patient, null for a deleted one.
+     @return the non-null values by field name, empty for a null patient.
+     */
+    public static Map<String, String> values(PatientDto patient) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (patient != null) {
+            FIELDS.forEach((field, getter) -> {
+                Object value = getter.apply(patient);
+                if (value != null) {
+                    values.put(field, value.toString());
+                }
+            });
+        }
+        return values;
+    }
+
+
+    /**
+     List the fields that differ between two states of a patient.
+     @param patientId the id of the patient.
+     @param action the kind of change.
+     @param before the values before the change, empty for a creation.
+     @param after the values after the change, empty for a deletion.
+     @param actor who made the change.
+     @param changedAt when the change was made.
+     @return one event per changed field, empty if nothing changed.
+     */
+    public static List<PatientAuditEvent> diff(int patientId, PatientChangeType action, Map<String, String> before,
+                                               Map<String, String> after, String actor, Instant changedAt) {
+        List<PatientAuditEvent> events = new ArrayList<>(FIELDS.size());
+        for (String field : FIELDS.keySet()) {
+            String oldValue = before.get(field);
+            String newValue = after.get(field);
+            if (!Objects.equals(oldValue, newValue)) {
+                events.add(new PatientAuditEvent(patientId, action, field, oldValue, newValue, actor, changedAt));
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,20 @@
+package com.mediscreen.patient.audit;
+
+import com.mediscreen.patient.model.PatientChangeType;
+
+import java.time.Instant;
+
+/**
+ * One changed field of a patient, as written to the audit log.
+ *
+ * @param patientId the id of the patient
+ * @param action    created, updated or deleted
+ * @param field     the name of the field, as in {@code PatientDto}
+ * @param oldValue  the value before the change, null for a creation
+ * @param newValue  the value after the change, null for a deletion
+ * @param actor     who made the change
+ * @param changedAt when the change was committed
+ */
+public record PatientAuditEvent(int patientId, PatientChangeType action, String field, String oldValue,
+                                String newValue, String actor, Instant changedAt) {
+}
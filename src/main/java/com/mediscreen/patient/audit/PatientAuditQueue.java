@@ -0,0 +1,86 @@
+package com.mediscreen.patient.audit;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded multi-producer queue of audit entries, without locks: producers reserve a slot with a CAS on the size
+ * before adding to a {@link ConcurrentLinkedQueue}, so a write never waits on another one to enqueue.
+ *
+ * @param <E> the type of the queued entries
+ */
+public class PatientAuditQueue<E> {
+
+    private final ConcurrentLinkedQueue<E> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    public PatientAuditQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+
+    /**
+     Add an event if the queue is not full.
+     @param event the event to add.
+     @return false if the queue was full and the event was not added.
+     */
+    public boolean offer(E event) {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        events.offer(event);
+        return true;
+    }
+
+
+    /**
+     Remove the oldest event.
+     @return the oldest event, or null if the queue is empty.
+     */
+    public E poll() {
+        E event = events.poll();
+        if (event != null) {
+            size.decrementAndGet();
+        }
+        return event;
+    }
+
+
+    /**
+     Move the oldest events to a list.
+     @param batch the list to add the events to.
+     @param maxEvents the maximum number of events to move.
+     @return the number of events moved.
+     */
+    public int drainTo(List<E> batch, int maxEvents) {
+        int drained = 0;
+        E event;
+        while (drained < maxEvents && (event = poll()) != null) {
+            batch.add(event);
+            drained++;
+        }
+        return drained;
+    }
+
+
+    /**
+     @return the number of queued events, counting those being added.
+     */
+    public int size() {
+        return size.get();
+    }
+
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,274 @@
+package com.mediscreen.patient.audit;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.model.PatientChangeType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind audit log of the fields changed on patients.
+ * <p>
+ * Writes only enqueue the state they committed, after their commit, and never read the previous one. A single
+ * background thread drains the queue, diffs each change against the last audited state of its patient, and writes
+ * the changed fields to {@code patient_audit} with batched inserts, every {@code patient.audit.flush-interval} or as
+ * soon as a batch is full. The last audited states of up to {@code patient.audit.capacity} patients are kept in
+ * memory; the others are rebuilt from their audit rows, one query per batch.
+ * <p>
+ * When the queue is full, {@code patient.audit.overflow-policy} decides which change is lost, and the loss is
+ * counted; the next change of that patient is then diffed against the state before the lost one, so that its
+ * fields are still audited, merged into the next event. Queued changes are flushed on shutdown, but lost if the
+ * process dies. Changes of a patient made before the audit log existed have no old values.
+ */
+@Service
+public class PatientAuditService {
+
+    private static final Logger log = LogManager.getLogger(PatientAuditService.class);
+
+    /** Request header naming the user on whose behalf a client calls the API, when it is not authenticated. */
+    public static final String ACTOR_HEADER = "X-User";
+    static final String SYSTEM_ACTOR = "system";
+
+    private static final String INSERT_AUDIT = "INSERT INTO patient_audit "
+            + "(patient_id, action, field, old_value, new_value, actor, changed_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_AUDITED = "SELECT patient_id, field, new_value FROM patient_audit "
+            + "WHERE patient_id IN (%s) ORDER BY patient_id, changed_at, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PatientAuditQueue<PatientAuditChange> queue;
+    /** Last audited state of the recently changed patients, least recently used first; only used by flushes. */
+    private final Map<Integer, Map<String, String>> audited;
+    private final int batchSize;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final Duration offerTimeout;
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Timer flushTimer;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+
+    public PatientAuditService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                               @Value("${patient.audit.capacity:10000}") int capacity,
+                               @Value("${patient.audit.batch-size:500}") int batchSize,
+                               @Value("${patient.audit.flush-interval:1s}") Duration flushInterval,
+                               @Value("${patient.audit.overflow-policy:DROP_OLDEST}") AuditOverflowPolicy overflowPolicy,
+                               @Value("${patient.audit.offer-timeout:100ms}") Duration offerTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new PatientAuditQueue<>(capacity);
+        this.audited = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, String>> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeout = offerTimeout;
+
+        Gauge.builder("patient.audit.queue.depth", queue, PatientAuditQueue::size)
+                .description("Patient changes waiting to be audited")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("patient.audit.flush")
+                .description("Batched writes of audit events")
+                .register(meterRegistry);
+        this.written = Counter.builder("patient.audit.events").tag("outcome", "written").register(meterRegistry);
+        this.dropped = Counter.builder("patient.audit.events").tag("outcome", "dropped").register(meterRegistry);
+        this.failed = Counter.builder("patient.audit.events").tag("outcome", "failed").register(meterRegistry);
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "patient-audit-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        writer.scheduleWithFixedDelay(this::flushQueued, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     Enqueue the state of a changed patient, on behalf of the user of the current request, to be diffed by the writer.
+     Called after the change committed; never blocks the caller unless the policy is {@link AuditOverflowPolicy#BLOCK}.
+     @param patientId the id of the patient.
+     @param action the kind of change.
+     @param after the patient after the change, null for a deletion.
+     */
+    public void record(int patientId, PatientChangeType action, PatientDto after) {
+        enqueue(new PatientAuditChange(patientId, action, PatientAuditDiff.values(after), currentActor(), Instant.now()));
+        if (queue.size() >= batchSize && !writer.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            writer.execute(this::flushQueued);
+        }
+    }
+
+
+    private void enqueue(PatientAuditChange change) {
+        if (queue.offer(change)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_NEWEST -> dropped.increment();
+            case DROP_OLDEST -> {
+                while (!queue.offer(change)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+            }
+            case BLOCK -> {
+                long deadline = System.nanoTime() + offerTimeout.toNanos();
+                while (!queue.offer(change)) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        dropped.increment();
+                        return;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        }
+    }
+
+
+    static String currentActor() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletRequest request = servletAttributes.getRequest();
+            if (request.getRemoteUser() != null) {
+                return request.getRemoteUser();
+            }
+            String header = request.getHeader(ACTOR_HEADER);
+            if (header != null && !header.isBlank()) {
+                return header.trim();
+            }
+        }
+        return SYSTEM_ACTOR;
+    }
+
+
+    /**
+     Diff and write every queued change, batch by batch. Runs on the writer thread; callable directly to flush
+     synchronously. Changes are diffed in queue order, so flushes never run concurrently.
+     */
+    public synchronized void flushQueued() {
+        flushRequested.set(false);
+        List<PatientAuditChange> changes = new ArrayList<>(batchSize);
+        while (queue.drainTo(changes, batchSize) > 0) {
+            // states reached by this batch, only kept once it is written
+            Map<Integer, Map<String, String>> states = new HashMap<>();
+            List<PatientAuditEvent> batch = new ArrayList<>();
+            try {
+                loadAudited(changes, states);
+                for (PatientAuditChange change : changes) {
+                    Map<String, String> before = change.action() == PatientChangeType.CREATED
+                            ? Map.of() : states.getOrDefault(change.patientId(), Map.of());
+                    batch.addAll(PatientAuditDiff.diff(change.patientId(), change.action(), before, change.after(),
+                            change.actor(), change.changedAt()));
+                    states.put(change.patientId(), change.after());
+                }
+                if (!batch.isEmpty()) {
+                    flushTimer.record(() -> write(batch));
+                }
+                written.increment(batch.size());
+                audited.putAll(states);
+            } catch (RuntimeException ex) {
+                log.error("Could not audit {} patient changes", changes.size(), ex);
+                // the events of the batch when it was diffed, else one per change
+                failed.increment(batch.isEmpty() ? changes.size() : batch.size());
+            }
+            changes.clear();
+        }
+    }
+
+
+    /**
+     Put the last audited state of the updated or deleted patients of a batch in {@code states}: from memory, else
+     folded from their audit rows, every row setting the new value of its field.
+     */
+    private void loadAudited(List<PatientAuditChange> changes, Map<Integer, Map<String, String>> states) {
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (PatientAuditChange change : changes) {
+            if (change.action() == PatientChangeType.CREATED) {
+                continue;
+            }
+            Map<String, String> state = audited.get(change.patientId());
+            if (state != null) {
+                states.putIfAbsent(change.patientId(), state);
+            } else if (!states.containsKey(change.patientId())) {
+                missing.add(change.patientId());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        String sql = String.format(SELECT_AUDITED, String.join(", ", Collections.nCopies(missing.size(), "?")));
+        jdbcTemplate.query(sql, rs -> {
+            Map<String, String> state = states.computeIfAbsent(rs.getInt(1), id -> new HashMap<>());
+            String value = rs.getString(3);
+            if (value == null) {
+                state.remove(rs.getString(2));
+            } else {
+                state.put(rs.getString(2), value);
+            }
+        }, missing.toArray());
+    }
+
+
+    private void write(List<PatientAuditEvent> batch) {
+        jdbcTemplate.batchUpdate(INSERT_AUDIT, batch, batch.size(), (ps, event) -> {
+            ps.setInt(1, event.patientId());
+            ps.setString(2, event.action().name());
+            ps.setString(3, event.field());
+            ps.setString(4, event.oldValue());
+            ps.setString(5, event.newValue());
+            ps.setString(6, event.actor());
+            ps.setTimestamp(7, Timestamp.from(event.changedAt()));
+        });
+    }
+
+
+    /**
+     @return the number of changes waiting to be audited.
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Audit writer did not stop within 10s, {} changes left", queue.size());
+            return;
+        }
+        flushQueued();
+    }
+}
@@ -0,0 +1,194 @@
+package com.mediscreen.patient.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.util.PatientNames;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of patients, keyed by id and by normalized family name. Patients cached by id are
+ * kept with their version, read by the same query, so that the entity tag served with a patient is always its own.
+ * <p>
+ * Entries are loaded atomically per key: an invalidation issued while a load is in flight waits for the load
+ * and then removes its result, so a write that invalidates after its commit can never be overwritten by a
+ * concurrent read of the previous row.
+ * <p>
+ * The family names each patient is cached under are tracked by id, so that evicting a patient removes its family
+ * name entries without scanning them.
+ */
+@Component
+public class PatientCache {
+
+    private final Cache<Integer, VersionedPatient> byId;
+    private final Cache<String, PatientDto> byFamilyName;
+    /** The normalized family names each patient of {@link #byFamilyName} is cached under. */
+    private final ConcurrentMap<Integer, Set<String>> familyNamesById = new ConcurrentHashMap<>();
+
+    public PatientCache(@Value("${patient.cache.maximum-size:10000}") long maximumSize,
+                        @Value("${patient.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                        MeterRegistry meterRegistry) {
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.byFamilyName = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .evictionListener((String familyName, PatientDto patient, RemovalCause cause) ->
+                        unlink(familyName, patient))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "patient.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, byFamilyName, "patient.by-family-name");
+    }
+
+
+    /**
+     Normalize a family name into a cache key, the same way as the stored {@code lastNameKey} the loaders must
+     query, so that every spelling sharing a key gets the patient the database returns for it.
+     @param familyName the family name as received.
+     @return the family name normalized by {@link PatientNames#normalize(String)}.
+     */
+    public static String normalize(String familyName) {
+        return PatientNames.normalize(familyName);
+    }
+
+
+    /**
+     Get a patient and its version by id, loading and caching them on a miss.
+     @param id the patient id.
+     @param loader loads the patient and its version with one read, returns null when it does not exist; misses
+     are not cached.
+     @return the patient and its version, or null if it does not exist.
+     */
+    public VersionedPatient getById(int id, Function<Integer, VersionedPatient> loader) {
+        return byId.get(id, loader);
+    }
+
+
+    /**
+     Get a patient and its version by id if they are cached, without loading them.
+     @param id the patient id.
+     @return the cached patient and its version, or null.
+     */
+    public VersionedPatient getIfPresentById(int id) {
+        return byId.getIfPresent(id);
+    }
+
+
+    /**
+     Get the patients already cached by id, without loading the others.
+     @param ids the patient ids.
+     @return the cached patients by id.
+     */
+    public Map<Integer, PatientDto> getAllPresentById(Iterable<Integer> ids) {
+        Map<Integer, VersionedPatient> cached = byId.getAllPresent(ids);
+        Map<Integer, PatientDto> patients = new HashMap<>(cached.size() * 2);
+        cached.forEach((id, versioned) -> patients.put(id, versioned.patient()));
+        return patients;
+    }
+
+
+    /**
+     Get a patient by family name, loading and caching it on a miss.
+     @param familyName the family name, normalized with {@link #normalize(String)}.
+     @param loader loads the patient by the normalized family name it receives, matched against the stored
+     {@code lastNameKey}; returns null when it does not exist, misses are not cached.
+     @return the patient, or null if it does not exist.
+     */
+    public PatientDto getByFamilyName(String familyName, Function<String, PatientDto> loader) {
+        return byFamilyName.get(normalize(familyName), key -> {
+            PatientDto patient = loader.apply(key);
+            if (patient != null) {
+                link(key, patient);
+            }
+            return patient;
+        });
+    }
+
+
+    /**
+     Remove a patient from every cache.
+     @param id the id of the patient that was updated or deleted.
+     */
+    public void evict(int id) {
+        byId.invalidate(id);
+        Set<String> familyNames = familyNamesById.remove(id);
+        if (familyNames != null) {
+            byFamilyName.invalidateAll(familyNames);
+        }
+    }
+
+
+    /**
+     Remove the entry cached for a family name, which may now resolve to another patient.
+     @param familyName the family name that was written.
+     */
+    public void evictFamilyName(String familyName) {
+        if (familyName != null) {
+            String key = normalize(familyName);
+            PatientDto removed = byFamilyName.asMap().remove(key);
+            if (removed != null) {
+                unlink(key, removed);
+            }
+        }
+    }
+
+
+    /**
+     Remove every entry.
+     */
+    public void clear() {
+        byId.invalidateAll();
+        byFamilyName.invalidateAll();
+        familyNamesById.clear();
+    }
+
+
+    private void link(String familyName, PatientDto patient) {
+        if (patient.getId() != null) {
+            familyNamesById.compute(patient.getId(), (id, familyNames) -> {
+                Set<String> linked = familyNames == null ? new HashSet<>(2) : familyNames;
+                linked.add(familyName);
+                return linked;
+            });
+        }
+    }
+
+
+    private void unlink(String familyName, PatientDto patient) {
+        if (patient != null && patient.getId() != null) {
+            familyNamesById.computeIfPresent(patient.getId(), (id, familyNames) -> {
+                familyNames.remove(familyName);
+                return familyNames.isEmpty() ? null : familyNames;
+            });
+        }
+    }
+
+
+    public CacheStats byIdStats() {
+        return byId.stats();
+    }
+
+
+    public CacheStats byFamilyNameStats() {
+        return byFamilyName.stats();
+    }
+}
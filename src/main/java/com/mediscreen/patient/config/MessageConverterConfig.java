@@ -0,0 +1,32 @@
+package com.mediscreen.patient.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Binary representations of the API, negotiated with the Accept and Content-Type headers:
+ * {@code application/cbor} and {@code application/x-jackson-smile}. JSON stays the default.
+ * <p>
+ * Spring MVC registers both formats on its own once they are on the classpath, but with a bare mapper; these
+ * beans replace them with mappers built like the JSON one, so that the spring.jackson.* settings apply to all.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MessageConverterConfig {
+
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,45 @@
+package com.mediscreen.patient.config;
+
+import com.mediscreen.patient.limit.RateLimitInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Rate limiting of the patient endpoints, see {@link RateLimitInterceptor} and the {@code patient.rate-limit.*}
+ * properties. Actuator endpoints are not limited.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("!reactive")
+@ConditionalOnProperty(name = "patient.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfig implements WebMvcConfigurer {
+
+    private final RateLimitInterceptor rateLimitInterceptor;
+
+    public RateLimitConfig(@Value("${patient.rate-limit.capacity:100}") int capacity,
+                           @Value("${patient.rate-limit.refill-per-second:50}") double refillPerSecond,
+                           @Value("${patient.rate-limit.expensive-capacity:10}") int expensiveCapacity,
+                           @Value("${patient.rate-limit.expensive-refill-per-second:2}") double expensiveRefillPerSecond,
+                           @Value("${patient.rate-limit.expensive-endpoints:}") Set<String> expensiveEndpoints,
+                           @Value("${patient.rate-limit.max-clients:100000}") long maxClients,
+                           @Value("${patient.rate-limit.idle-expiry:10m}") Duration idleExpiry,
+                           MeterRegistry meterRegistry) {
+        this.rateLimitInterceptor = new RateLimitInterceptor(
+                new RateLimitInterceptor.Limit(capacity, refillPerSecond),
+                new RateLimitInterceptor.Limit(expensiveCapacity, expensiveRefillPerSecond),
+                expensiveEndpoints, maxClients, idleExpiry, System::nanoTime, meterRegistry);
+    }
+
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/api/patient/**", "/patient/**");
+    }
+}
@@ -0,0 +1,25 @@
+package com.mediscreen.patient.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/**
+ * R2DBC access for the {@code reactive} profile. Only the connection factory is auto-configured, see
+ * application-reactive.properties: Spring Data R2DBC repositories and the reactive transaction manager are left
+ * out so that {@code @Transactional} keeps resolving to the JPA transaction manager.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+public class ReactiveConfig {
+
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+}
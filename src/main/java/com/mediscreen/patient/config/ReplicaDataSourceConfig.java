@@ -0,0 +1,92 @@
+package com.mediscreen.patient.config;
+
+import com.mediscreen.patient.datasource.ReadYourWritesFilter;
+import com.mediscreen.patient.datasource.ReplicaRoutingDataSource;
+import com.mediscreen.patient.datasource.ReplicaSelection;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas, enabled by listing their JDBC urls in {@code patient.datasource.replicas}: read-only
+ * transactions go to a replica, everything else to the {@code spring.datasource} primary.
+ * See {@link ReplicaRoutingDataSource}.
+ * <p>
+ * Replicas share the credentials and the {@code spring.datasource.hikari.*} settings of the primary, and have
+ * their own pool each. The {@code dataSource} used by JPA and JDBC is the routing data source behind a
+ * {@link LazyConnectionDataSourceProxy}, so that the transaction is known when a connection is taken.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "patient.datasource.replicas")
+public class ReplicaDataSourceConfig {
+
+
+    private static final Logger log = LogManager.getLogger(ReplicaDataSourceConfig.class);
+
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource, DataSourceProperties properties, Environment environment,
+            @Value("${patient.datasource.replicas}") List<String> replicaUrls,
+            @Value("${patient.datasource.replica-selection:ROUND_ROBIN}") ReplicaSelection selection,
+            @Value("${patient.datasource.read-your-writes-window:5s}") Duration readYourWritesWindow,
+            @Value("${patient.datasource.replica-retry-after:30s}") Duration retryAfter,
+            MeterRegistry meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            HikariDataSource replica = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(url.trim())
+                    .build();
+            Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+            replica.setPoolName("patient-replica-" + replicas.size());
+            replica.setReadOnly(true);
+            replica.setMetricRegistry(meterRegistry);
+            replicas.add(replica);
+        }
+        log.info("Read-only transactions routed to {} replicas, {}", replicas.size(), selection);
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, selection, readYourWritesWindow, retryAfter,
+                System::nanoTime, meterRegistry);
+    }
+
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter() {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mediscreen.patient.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup runs that stop as soon as the application is ready, enabled with
+ * {@code patient.startup.exit-on-ready=true}: the training run that records the class-data-sharing archive of
+ * the {@code aot} image, and the startup time measurement of {@code StartupTimeIT}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "patient.startup.exit-on-ready", havingValue = "true")
+public class StartupConfig {
+
+
+    private static final Logger log = LogManager.getLogger(StartupConfig.class);
+
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> exitOnReady() {
+        return event -> {
+            log.info("Patient service ready in {} ms, exiting", event.getTimeTaken().toMillis());
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        };
+    }
+}
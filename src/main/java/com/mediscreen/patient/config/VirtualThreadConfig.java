@@ -0,0 +1,88 @@
+package com.mediscreen.patient.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in virtual-thread execution, enabled with {@code patient.virtual-threads.enabled=true}.
+ * <p>
+ * Tomcat hands every request, and therefore every {@code PatientService} call, to a new virtual thread instead of
+ * its platform thread pool; async MVC work (streamed responses) runs on virtual threads too. A request blocked on
+ * MySQL then no longer holds a platform thread, so concurrency is bounded by the HikariCP pool, which is resized to
+ * {@code patient.virtual-threads.pool-size}.
+ * <p>
+ * Virtual threads are a preview feature of Java 19 and 20: the JVM must be started with {@code --enable-preview}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "patient.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+
+    private static final Logger log = LogManager.getLogger(VirtualThreadConfig.class);
+
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        log.info("Patient requests run on virtual threads");
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+
+
+    @Bean
+    public static BeanPostProcessor virtualThreadPoolSizer(@Value("${patient.virtual-threads.pool-size:50}") int poolSize) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    log.info("HikariCP pool {} sized to {} connections for virtual threads", beanName, poolSize);
+                    dataSource.setMaximumPoolSize(poolSize);
+                }
+                return bean;
+            }
+        };
+    }
+
+
+    /**
+     * Looked up reflectively so that the application still compiles and runs without preview features
+     * when this mode is off.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException(
+                    "Virtual threads are not enabled, start the JVM with --enable-preview on Java 19 and 20", ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual threads need Java 19 or later", ex);
+        }
+    }
+}
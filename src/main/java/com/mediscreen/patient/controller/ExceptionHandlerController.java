@@ -1,8 +1,22 @@
 package com.mediscreen.patient.controller;
 
+import com.mediscreen.patient.exception.DuplicatePatientException;
+import com.mediscreen.patient.exception.ExportJobNotFoundException;
+import com.mediscreen.patient.exception.IdempotencyKeyInProgressException;
+import com.mediscreen.patient.exception.IdempotencyKeyReusedException;
+import com.mediscreen.patient.exception.InvalidBatchException;
+import com.mediscreen.patient.exception.InvalidCursorException;
+import com.mediscreen.patient.exception.InvalidExportException;
+import com.mediscreen.patient.exception.InvalidIdempotencyKeyException;
+import com.mediscreen.patient.exception.InvalidStatsException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import com.mediscreen.patient.exception.RateLimitExceededException;
+import com.mediscreen.patient.exception.ServiceOverloadedException;
+import jakarta.validation.ConstraintViolationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -24,4 +38,164 @@ public class ExceptionHandlerController {
         log.error("PatientNotFoundException", ex);
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
+
+
+    /**
+     * Handle InvalidCursorException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursorException(InvalidCursorException ex) {
+        log.error("InvalidCursorException", ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle InvalidBatchException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(InvalidBatchException.class)
+    public ResponseEntity<String> handleInvalidBatchException(InvalidBatchException ex) {
+        log.error("InvalidBatchException", ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle InvalidStatsException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(InvalidStatsException.class)
+    public ResponseEntity<String> handleInvalidStatsException(InvalidStatsException ex) {
+        log.error("InvalidStatsException", ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle InvalidExportException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(InvalidExportException.class)
+    public ResponseEntity<String> handleInvalidExportException(InvalidExportException ex) {
+        log.error("InvalidExportException", ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle ExportJobNotFoundException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(ExportJobNotFoundException.class)
+    public ResponseEntity<String> handleExportJobNotFoundException(ExportJobNotFoundException ex) {
+        log.error("ExportJobNotFoundException", ex);
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle InvalidIdempotencyKeyException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<String> handleInvalidIdempotencyKeyException(InvalidIdempotencyKeyException ex) {
+        log.error("InvalidIdempotencyKeyException", ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle IdempotencyKeyReusedException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReusedException(IdempotencyKeyReusedException ex) {
+        log.error("IdempotencyKeyReusedException", ex);
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle IdempotencyKeyInProgressException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(IdempotencyKeyInProgressException.class)
+    public ResponseEntity<String> handleIdempotencyKeyInProgressException(IdempotencyKeyInProgressException ex) {
+        log.warn("IdempotencyKeyInProgressException: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle PatientVersionConflictException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(PatientVersionConflictException.class)
+    public ResponseEntity<String> handlePatientVersionConflictException(PatientVersionConflictException ex) {
+        log.error("PatientVersionConflictException", ex);
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle DuplicatePatientException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(DuplicatePatientException.class)
+    public ResponseEntity<String> handleDuplicatePatientException(DuplicatePatientException ex) {
+        log.warn("DuplicatePatientException: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle ConstraintViolationException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<String> handleConstraintViolationException(ConstraintViolationException ex) {
+        log.error("ConstraintViolationException", ex);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle RateLimitExceededException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<String> handleRateLimitExceededException(RateLimitExceededException ex) {
+        log.warn("RateLimitExceededException: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
+
+    /**
+     * Handle ServiceOverloadedException response entity.
+     * @param ex the ex
+     * @return the response entity
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<String> handleServiceOverloadedException(ServiceOverloadedException ex) {
+        log.warn("ServiceOverloadedException: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
 }
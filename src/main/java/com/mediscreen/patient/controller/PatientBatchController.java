@@ -0,0 +1,71 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientLookup;
+import com.mediscreen.patient.service.PatientBatchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/patient")
+public class PatientBatchController {
+
+
+    private final PatientBatchService patientBatchService;
+
+
+    public PatientBatchController(PatientBatchService patientBatchService) {
+        this.patientBatchService = patientBatchService;
+    }
+
+
+
+    private static final Logger log = LogManager.getLogger(PatientBatchController.class);
+
+
+
+    /**
+     * Find patients by ids posted as a JSON array response entity.
+     *
+     * @param ids the ids
+     * @return the response entity, one lookup per id in the order of the request
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Find patients by IDs", description = "Returns one entry per requested ID, in order, telling whether the patient was found")
+    @ApiResponse(responseCode = "200", description = "Lookups, missing patients included")
+    @ApiResponse(responseCode = "400", description = "Null ID or too many IDs")
+    public ResponseEntity<List<PatientLookup>> findPatientsByIds(@RequestBody List<Integer> ids) {
+
+        log.debug("Find patients by ids request received, ids count: {}", ids.size());
+        List<PatientLookup> lookups = patientBatchService.findPatientsByIds(ids);
+        log.debug("Find patients by ids request processed, lookups count: {}", lookups.size());
+        return ResponseEntity.ok(lookups);
+    }
+
+
+    /**
+     * Find patients by ids given as a query parameter response entity.
+     *
+     * @param ids the ids, comma separated or repeated
+     * @return the response entity, one lookup per id in the order of the request
+     */
+    @GetMapping("/batch")
+    @Operation(summary = "Find patients by IDs", description = "Returns one entry per requested ID, in order, telling whether the patient was found")
+    @ApiResponse(responseCode = "200", description = "Lookups, missing patients included")
+    @ApiResponse(responseCode = "400", description = "Too many IDs")
+    public ResponseEntity<List<PatientLookup>> getPatientsByIds(@RequestParam List<Integer> ids) {
+        return findPatientsByIds(ids);
+    }
+}
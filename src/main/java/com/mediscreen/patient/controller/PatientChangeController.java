@@ -0,0 +1,80 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.service.PatientChangeService;
+import com.mediscreen.patient.service.PatientService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/patient")
+public class PatientChangeController {
+
+
+    private final PatientChangeService patientChangeService;
+    private final Duration maxWait;
+
+
+    public PatientChangeController(PatientChangeService patientChangeService,
+                                   @Value("${patient.changes.max-wait:60s}") Duration maxWait) {
+        this.patientChangeService = patientChangeService;
+        this.maxWait = maxWait;
+    }
+
+
+
+    private static final Logger log = LogManager.getLogger(PatientChangeController.class);
+
+
+
+    /**
+     * Get the patient changes recorded after a sequence, waiting for one when asked to (long polling).
+     *
+     * @param since the lastSequence of the previous response, 0 to read from the start
+     * @param limit the maximum number of changes, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @param wait the number of seconds to wait for a change when there is none yet, at most patient.changes.max-wait
+     * @return the deferred feed, with no change if none was recorded while waiting
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Get patient changes", description = "Returns the patients created, updated or deleted after a sequence, optionally waiting for the next change")
+    @ApiResponse(responseCode = "200", description = "Changes, possibly none, with the sequence to read from next")
+    public DeferredResult<PatientChangeFeed> getChanges(@RequestParam(defaultValue = "0") long since,
+                                                        @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int limit,
+                                                        @RequestParam(defaultValue = "0") long wait) {
+
+        log.debug("Get patient changes request received, since: {}, wait: {}s", since, wait);
+        long timeout = Math.min(Math.max(wait, 0), maxWait.toSeconds()) * 1000;
+        if (timeout == 0) {
+            DeferredResult<PatientChangeFeed> result = new DeferredResult<>();
+            result.setResult(patientChangeService.getChangesSince(since, limit));
+            return result;
+        }
+
+        DeferredResult<PatientChangeFeed> result = new DeferredResult<>(timeout);
+        CompletableFuture<PatientChangeFeed> changes = patientChangeService.awaitChangesSince(since, limit);
+        changes.whenComplete((feed, ex) -> {
+            if (ex == null) {
+                result.setResult(feed);
+            } else {
+                result.setErrorResult(ex);
+            }
+        });
+        // another instance may have recorded changes meanwhile, they are not signaled here
+        result.onTimeout(() -> result.setResult(patientChangeService.getChangesSince(since, limit)));
+        result.onCompletion(() -> changes.cancel(false));
+        return result;
+    }
+}
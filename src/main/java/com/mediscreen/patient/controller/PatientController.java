@@ -1,30 +1,55 @@
 package com.mediscreen.patient.controller;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.datasource.ReadYourWritesFilter;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientPage;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.dto.VersionedPatientList;
 import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
+import com.mediscreen.patient.service.PatientSearchMode;
 import com.mediscreen.patient.service.PatientService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/patient")
 public class PatientController {
 
 
     private final PatientService patientService;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyStore idempotencyStore;
 
 
-    public PatientController(PatientService patientService) {
+    public PatientController(PatientService patientService, ObjectMapper objectMapper,
+                             IdempotencyStore idempotencyStore) {
         this.patientService = patientService;
+        this.objectMapper = objectMapper;
+        this.idempotencyStore = idempotencyStore;
     }
 
 
@@ -35,21 +60,31 @@ public class PatientController {
 
     /**
      * Find patient by id response entity.
+     * <p>
+     * The patient and its version come from the same read, so the entity tag always matches the body; a conditional
+     * request answered with 304 (Not Modified) does not serialize the patient.
      *
      * @param id the id
+     * @param webRequest the request, holding the If-None-Match and If-Modified-Since headers
      * @return the response entity
      * @throws PatientNotFoundException the patient not found exception
      */
     @GetMapping("/find/{id}")
     @Operation(summary = "Find a patient by ID", description = "Returns the patient with the given ID")
     @ApiResponse(responseCode = "200", description = "Patient found")
+    @ApiResponse(responseCode = "304", description = "Patient not modified")
     @ApiResponse(responseCode = "404", description = "Patient not found")
-    public ResponseEntity<PatientDto> findPatientById(@PathVariable int id) {
+    public ResponseEntity<PatientDto> findPatientById(@PathVariable int id, WebRequest webRequest) {
         try {
             log.debug("Find patient by id request received, id: {}", id);
-            PatientDto patient = patientService.findPatientById(id);
-            log.debug("Find patient by id request processed, patient: {}", patient);
-            return ResponseEntity.ok(patient);
+            VersionedPatient patient = patientService.findVersionedPatient(id);
+            PatientVersion version = patient.version();
+            if (webRequest.checkNotModified(version.eTag(), version.lastModifiedMillis())) {
+                log.debug("Find patient by id request processed, patient not modified: {}", version);
+                return notModified(version.eTag(), version.lastModifiedMillis());
+            }
+            log.debug("Find patient by id request processed, patient: {}", patient.patient());
+            return withValidators(ResponseEntity.ok(), version.eTag(), version.lastModifiedMillis()).body(patient.patient());
         } catch (PatientNotFoundException ex) {
             log.error("PatientNotFoundException: {}", ex.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -65,7 +100,7 @@ public class PatientController {
      * @throws PatientNotFoundException the patient not found exception
      */
     @GetMapping("/finder/{familyName}")
-    @Operation(summary = "Find a patient by family name", description = "Returns the patient with the given family name")
+    @Operation(summary = "Find a patient by family name", description = "Returns the patient with the lowest id among those with the given family name, matched case and accent insensitively")
     @ApiResponse(responseCode = "200", description = "Patient found")
     @ApiResponse(responseCode = "404", description = "Patient not found")
     public ResponseEntity<PatientDto> findPatientByFamilyName(@PathVariable String familyName) throws PatientNotFoundException {
@@ -77,25 +112,131 @@ public class PatientController {
     }
 
 
+    /**
+     * Search patients by family name response entity.
+     *
+     * @param name the family name, or its beginning in prefix mode
+     * @param mode EXACT, PREFIX or INSENSITIVE (case and accents ignored)
+     * @param page the zero-based page number
+     * @param size the page size, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @return the response entity
+     */
+    @GetMapping("/search")
+    @Operation(summary = "Search patients by family name", description = "Returns every patient matching the family name, exactly, by prefix or ignoring case and accents")
+    @ApiResponse(responseCode = "200", description = "Matching patients, possibly none")
+    public ResponseEntity<List<PatientDto>> searchPatients(@RequestParam String name,
+                                                           @RequestParam(defaultValue = "EXACT") PatientSearchMode mode,
+                                                           @RequestParam(defaultValue = "0") int page,
+                                                           @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int size) {
+
+        log.debug("Search patients request received, name: {}, mode: {}", name, mode);
+        List<PatientDto> patients = patientService.searchPatients(name, mode, page, size);
+        log.debug("Search patients request processed, patients count: {}", patients.size());
+        return ResponseEntity.ok(patients);
+    }
+
+
+    /**
+     * Fuzzy search patients response entity.
+     *
+     * @param q     the words to look for in the names, address and phone number, possibly misspelled or partial
+     * @param limit the maximum number of results, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @return the response entity
+     */
+    @GetMapping("/search/fuzzy")
+    @Operation(summary = "Fuzzy search patients", description = "Returns the patients best matching free text over their names, address and phone number, best first")
+    @ApiResponse(responseCode = "200", description = "Ranked matching patients, possibly none")
+    public ResponseEntity<List<PatientSearchHit>> fuzzySearchPatients(@RequestParam String q,
+                                                                      @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int limit) {
+
+        log.debug("Fuzzy search patients request received, query: {}, limit: {}", q, limit);
+        List<PatientSearchHit> hits = patientService.fuzzySearchPatients(q, limit);
+        log.debug("Fuzzy search patients request processed, patients count: {}", hits.size());
+        return ResponseEntity.ok(hits);
+    }
+
+
     /**
      * Get all patients response entity.
+     * <p>
+     * The entity tag of the list is first computed by an aggregate query, so that a conditional request answered
+     * with 304 (Not Modified) does not read the patients. The entity tag served with the patients is computed from
+     * the rows read, so that it always matches the body.
      *
+     * @param webRequest the request, holding the If-None-Match and If-Modified-Since headers
      * @return the response entity
      */
     @GetMapping("/list")
     @Operation(summary = "Get all patients", description = "Returns a list of all patients")
     @ApiResponse(responseCode = "200", description = "List of patients")
     @ApiResponse(responseCode = "204", description = "No patients found")
-    public ResponseEntity<List<PatientDto>> getAllPatients() {
-        List<PatientDto> patientList = patientService.getAllPatients();
+    @ApiResponse(responseCode = "304", description = "List not modified")
+    public ResponseEntity<List<PatientDto>> getAllPatients(WebRequest webRequest) {
+        PatientListVersion version = patientService.getPatientListVersion();
 
-        if (patientList.isEmpty()) {
+        if (version.isEmpty()) {
             log.debug("Get all patients request processed, no patients found");
             return ResponseEntity.noContent().build();
-        } else {
-            log.debug("Get all patients request processed, patients count: {}", patientList.size());
-            return ResponseEntity.ok(patientList);
         }
+        if (webRequest.checkNotModified(version.eTag(), version.lastModifiedMillis())) {
+            log.debug("Get all patients request processed, list not modified: {}", version);
+            return notModified(version.eTag(), version.lastModifiedMillis());
+        }
+
+        VersionedPatientList patientList = patientService.getVersionedPatientList();
+        PatientListVersion listVersion = patientList.version();
+        if (listVersion.isEmpty()) {
+            log.debug("Get all patients request processed, no patients found");
+            return ResponseEntity.noContent().build();
+        }
+        log.debug("Get all patients request processed, patients count: {}", patientList.patients().size());
+        return withValidators(ResponseEntity.ok(), listVersion.eTag(), listVersion.lastModifiedMillis())
+                .body(patientList.patients());
+    }
+
+
+    /**
+     * Get a page of patients response entity.
+     *
+     * @param cursor the cursor returned with the previous page, absent for the first page
+     * @param size the page size, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @return the response entity
+     */
+    @GetMapping("/page")
+    @Operation(summary = "Get a page of patients", description = "Returns patients ordered by id, with the cursor of the next page")
+    @ApiResponse(responseCode = "200", description = "Page of patients")
+    @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    public ResponseEntity<PatientPage> getPatientPage(@RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int size) {
+
+        log.debug("Get patients page request received, cursor: {}, size: {}", cursor, size);
+        PatientPage page = patientService.getPatientPage(cursor, size);
+        log.debug("Get patients page request processed, patients count: {}", page.patients().size());
+        return ResponseEntity.ok(page);
+    }
+
+
+    /**
+     * Stream all patients as newline-delimited JSON.
+     *
+     * @return the response entity
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream all patients", description = "Streams every patient as one JSON document per line")
+    @ApiResponse(responseCode = "200", description = "Stream of patients")
+    public ResponseEntity<StreamingResponseBody> streamAllPatients() {
+
+        log.debug("Stream all patients request received");
+        ObjectWriter writer = objectMapper.writerFor(PatientDto.class);
+        StreamingResponseBody body = out -> patientService.streamAllPatients(patient -> {
+            try {
+                out.write(writer.writeValueAsBytes(patient));
+                out.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
 
@@ -103,16 +244,31 @@ public class PatientController {
      * Validate patient response entity.
      *
      * @param patientDto the patient dto
+     * @param allowDuplicate true to create the patient even if a similar one exists
+     * @param idempotencyKey optional key of the request: a retry with the same key gets the patient created by the
+     *                       first request instead of creating another
+     * @param request the request, whose client scopes the idempotency key
      * @return the response entity
      */
     @PostMapping("/validate")
-    @Operation(summary = "Validate a patient", description = "Validates and creates a new patient")
+    @Operation(summary = "Validate a patient", description = "Validates and creates a new patient, unless it may be the duplicate of an existing one")
     @ApiResponse(responseCode = "200", description = "Patient created")
-    @ApiResponse(responseCode = "400", description = "Invalid patient details")
-    public ResponseEntity<PatientDto> validatePatient(@Valid @RequestBody PatientDto patientDto) {
+    @ApiResponse(responseCode = "400", description = "Invalid patient details or idempotency key")
+    @ApiResponse(responseCode = "409", description = "Possible duplicate of an existing patient, or idempotency key still in use")
+    @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different patient")
+    public ResponseEntity<PatientDto> validatePatient(@Valid @RequestBody PatientDto patientDto,
+                                                      @RequestParam(defaultValue = "false") boolean allowDuplicate,
+                                                      @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                                      HttpServletRequest request) {
 
         log.debug("Validate patient request received, patient: {}", patientDto);
-        PatientDto patient = patientService.createPatient(patientDto);
+        PatientDto patient = idempotencyKey == null
+                ? patientService.createPatient(patientDto, allowDuplicate)
+                : idempotencyStore.execute("POST /api/patient/validate", ReadYourWritesFilter.client(request), idempotencyKey,
+                        IdempotencyStore.fingerprint(patientDto.getLastName(), patientDto.getFirstName(),
+                                patientDto.getBirthdate(), patientDto.getSex(), patientDto.getAddress(),
+                                patientDto.getPhone(), allowDuplicate),
+                        () -> patientService.createPatient(patientDto, allowDuplicate));
         log.debug("Validate patient request processed, patient: {}", patient);
         return ResponseEntity.ok(patient);
     }
@@ -123,17 +279,20 @@ public class PatientController {
      *
      * @param id the id
      * @param patientDto the patient dto
+     * @param ifMatch the ETag the patient must still have, absent to update it whatever its version
      * @return the response entity
      * @throws PatientNotFoundException the patient not found exception
      */
     @PostMapping("/update/{id}")
-    @Operation(summary = "Update a patient", description = "Updates an existing patient")
+    @Operation(summary = "Update a patient", description = "Updates an existing patient, if it still matches the If-Match ETag when given")
     @ApiResponse(responseCode = "200", description = "Patient updated")
     @ApiResponse(responseCode = "404", description = "Patient not found")
-    public ResponseEntity<PatientDto> updatePatient(@PathVariable int id, @RequestBody PatientDto patientDto) throws PatientNotFoundException {
+    @ApiResponse(responseCode = "412", description = "Patient modified since the If-Match ETag")
+    public ResponseEntity<PatientDto> updatePatient(@PathVariable int id, @RequestBody PatientDto patientDto,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws PatientNotFoundException {
 
         log.debug("Update patient request received, id: {}, patient: {}", id, patientDto);
-        PatientDto patient = patientService.updatePatient(id, patientDto);
+        PatientDto patient = patientService.updatePatient(id, patientDto, PatientVersion.parseIfMatch(id, ifMatch));
         log.debug("Update patient request processed, patient: {}", patient);
         return ResponseEntity.ok(patient);
     }
@@ -156,5 +315,18 @@ public class PatientController {
         log.debug("Deleted patient with id: {}", id);
         return ResponseEntity.noContent().build();
     }
-}
 
+
+    private static <T> ResponseEntity<T> notModified(String eTag, long lastModified) {
+        return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag, lastModified).build();
+    }
+
+
+    private static ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder builder, String eTag, long lastModified) {
+        builder.eTag(eTag);
+        if (lastModified >= 0) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
+}
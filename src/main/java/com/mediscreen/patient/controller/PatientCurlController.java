@@ -1,29 +1,37 @@
 package com.mediscreen.patient.controller;
 
 import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.datasource.ReadYourWritesFilter;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
 import com.mediscreen.patient.service.PatientService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.Parameters;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDate;
 
 @RestController
+@Profile("!reactive")
 public class PatientCurlController {
 
 
     private final PatientService patientService;
+    private final IdempotencyStore idempotencyStore;
 
-    public PatientCurlController(PatientService patientService) {
+    public PatientCurlController(PatientService patientService, IdempotencyStore idempotencyStore) {
         this.patientService = patientService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     private static final Logger log = LogManager.getLogger(PatientController.class);
@@ -37,12 +45,16 @@ public class PatientCurlController {
      * @param sex patient's sex
      * @param address patient's address
      * @param phone patient's phone number
+     * @param idempotencyKey optional key of the request: a retry with the same key does not add the patient again
+     * @param request the request, whose client scopes the idempotency key
      * @return HTTP response with status OK and message "Patient added"
      */
     @PostMapping("/patient/add")
     @Operation(summary = "Add a new patient", description = "Endpoint for adding a new patient")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "409", description = "Possible duplicate of an existing patient, or idempotency key still in use"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different patient"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @Parameters({
@@ -58,13 +70,21 @@ public class PatientCurlController {
                                              @RequestParam("dob") LocalDate dob,
                                              @RequestParam("sex") String sex,
                                              @RequestParam("address") String address,
-                                             @RequestParam("phone") String phone) {
+                                             @RequestParam("phone") String phone,
+                                             @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                             HttpServletRequest request) {
 
         log.debug("Received request to add a patient: family: {}, given: {}, dob: {}, sex: {}, address: {}, phone: {}",
                 family, given, dob, sex, address, phone);
 
         PatientDto patient = new PatientDto(family, given, dob, sex, address, phone);
-        patientService.createPatient(patient);
+        if (idempotencyKey == null) {
+            patientService.createPatient(patient);
+        } else {
+            idempotencyStore.execute("POST /patient/add", ReadYourWritesFilter.client(request), idempotencyKey,
+                    IdempotencyStore.fingerprint(family, given, dob, sex, address, phone),
+                    () -> patientService.createPatient(patient));
+        }
 
         log.debug("Successfully added patient: {}", patient);
         return ResponseEntity.ok("Patient added");
@@ -0,0 +1,147 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientExportJob;
+import com.mediscreen.patient.export.PatientExportFormat;
+import com.mediscreen.patient.export.PatientExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/patient/export")
+public class PatientExportController {
+
+
+    public static final String APPLICATION_GZIP_VALUE = "application/gzip";
+
+    private final PatientExportService patientExportService;
+
+
+    public PatientExportController(PatientExportService patientExportService) {
+        this.patientExportService = patientExportService;
+    }
+
+
+
+    private static final Logger log = LogManager.getLogger(PatientExportController.class);
+
+
+
+    /**
+     * Export all patients response entity, streamed.
+     *
+     * @param format csv or ndjson
+     * @param gzip   true to gzip the body, served as a .gz file
+     * @return the response entity
+     */
+    @GetMapping
+    @Operation(summary = "Export all patients", description = "Streams every patient as CSV or NDJSON, optionally gzipped")
+    @ApiResponse(responseCode = "200", description = "Stream of patients")
+    @ApiResponse(responseCode = "400", description = "Unknown format")
+    public ResponseEntity<StreamingResponseBody> exportPatients(@RequestParam(defaultValue = "csv") String format,
+                                                                @RequestParam(defaultValue = "false") boolean gzip) {
+
+        log.debug("Export patients request received, format: {}, gzip: {}", format, gzip);
+        PatientExportFormat exportFormat = PatientExportFormat.of(format);
+        StreamingResponseBody body = out -> patientExportService.export(exportFormat, gzip, out);
+        return ResponseEntity.ok()
+                .contentType(contentType(exportFormat, gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION, attachment("patients." + exportFormat.getExtension(gzip)))
+                .body(body);
+    }
+
+
+    /**
+     * Submit export job response entity.
+     *
+     * @param format csv or ndjson
+     * @param gzip   true to gzip the file
+     * @return the response entity, the queued job with its status URL as location
+     */
+    @PostMapping("/jobs")
+    @Operation(summary = "Submit an export job", description = "Queues an export of every patient to a file, to poll then download")
+    @ApiResponse(responseCode = "202", description = "Job queued")
+    @ApiResponse(responseCode = "400", description = "Unknown format")
+    @ApiResponse(responseCode = "503", description = "Too many jobs queued")
+    public ResponseEntity<PatientExportJob> submitExportJob(@RequestParam(defaultValue = "csv") String format,
+                                                            @RequestParam(defaultValue = "false") boolean gzip) {
+
+        log.debug("Submit export job request received, format: {}, gzip: {}", format, gzip);
+        PatientExportJob job = patientExportService.submit(PatientExportFormat.of(format), gzip);
+        log.debug("Submit export job request processed, job: {}", job.id());
+        return ResponseEntity.accepted().location(URI.create("/api/patient/export/jobs/" + job.id())).body(job);
+    }
+
+
+    /**
+     * Get export job response entity.
+     *
+     * @param id the job id
+     * @return the response entity
+     */
+    @GetMapping("/jobs/{id}")
+    @Operation(summary = "Get an export job", description = "Returns the state of an export job and the patients written so far")
+    @ApiResponse(responseCode = "200", description = "Job status")
+    @ApiResponse(responseCode = "404", description = "Job not found or expired")
+    public ResponseEntity<PatientExportJob> getExportJob(@PathVariable String id) {
+
+        log.debug("Get export job request received, job: {}", id);
+        return ResponseEntity.ok(patientExportService.getJob(id));
+    }
+
+
+    /**
+     * Download export job file response entity.
+     *
+     * @param id the job id
+     * @return the response entity, the file once the job is done, otherwise 409
+     */
+    @GetMapping("/jobs/{id}/file")
+    @Operation(summary = "Download the file of an export job", description = "Returns the file written by a finished export job")
+    @ApiResponse(responseCode = "200", description = "Export file")
+    @ApiResponse(responseCode = "404", description = "Job not found or expired")
+    @ApiResponse(responseCode = "409", description = "Job not done yet, or failed")
+    public ResponseEntity<Resource> getExportJobFile(@PathVariable String id) {
+
+        log.debug("Get export job file request received, job: {}", id);
+        PatientExportJob job = patientExportService.getJob(id);
+        Path file = patientExportService.getJobFile(id);
+        if (file == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(contentType(job.format(), job.gzip()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, attachment(file.getFileName().toString()))
+                .body(new FileSystemResource(file));
+    }
+
+
+    private static MediaType contentType(PatientExportFormat format, boolean gzip) {
+        return MediaType.parseMediaType(gzip ? APPLICATION_GZIP_VALUE : format.getContentType());
+    }
+
+
+    private static String attachment(String filename) {
+        return ContentDisposition.attachment().filename(filename).build().toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientImportReport;
+import com.mediscreen.patient.service.PatientImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/patient")
+public class PatientImportController {
+
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final PatientImportService patientImportService;
+
+
+    public PatientImportController(PatientImportService patientImportService) {
+        this.patientImportService = patientImportService;
+    }
+
+
+
+    private static final Logger log = LogManager.getLogger(PatientImportController.class);
+
+
+
+    /**
+     * Import patients from a JSON array response entity.
+     *
+     * @param body the streamed JSON array of patients
+     * @return the response entity
+     * @throws IOException if the body cannot be read
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Import patients from JSON", description = "Validates and creates every patient of a JSON array, in batches, and reports the rejected rows")
+    @ApiResponse(responseCode = "200", description = "Import report")
+    public ResponseEntity<PatientImportReport> importJson(InputStream body) throws IOException {
+
+        log.debug("Import patients from JSON request received");
+        PatientImportReport report = patientImportService.importJson(body);
+        log.debug("Import patients from JSON request processed, imported: {}, rejected: {}", report.imported(), report.rejected());
+        return ResponseEntity.ok(report);
+    }
+
+
+    /**
+     * Import patients from CSV response entity.
+     *
+     * @param body the streamed CSV, with a header line
+     * @return the response entity
+     * @throws IOException if the body cannot be read
+     */
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    @Operation(summary = "Import patients from CSV", description = "Validates and creates every patient of a CSV file with a header line, in batches, and reports the rejected rows")
+    @ApiResponse(responseCode = "200", description = "Import report")
+    public ResponseEntity<PatientImportReport> importCsv(InputStream body) throws IOException {
+
+        log.debug("Import patients from CSV request received");
+        PatientImportReport report = patientImportService.importCsv(body);
+        log.debug("Import patients from CSV request processed, imported: {}, rejected: {}", report.imported(), report.rejected());
+        return ResponseEntity.ok(report);
+    }
+}
@@ -0,0 +1,93 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientAge;
+import com.mediscreen.patient.dto.PatientDemographics;
+import com.mediscreen.patient.service.PatientStatsService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/patient/stats")
+public class PatientStatsController {
+
+
+    private final PatientStatsService patientStatsService;
+
+
+    public PatientStatsController(PatientStatsService patientStatsService) {
+        this.patientStatsService = patientStatsService;
+    }
+
+
+
+    private static final Logger log = LogManager.getLogger(PatientStatsController.class);
+
+
+
+    /**
+     * Get demographics response entity.
+     *
+     * @param ageBucket  the width of the age buckets, in years
+     * @param yearBucket the width of the birth year ranges, in years
+     * @return the response entity, counts by sex, age bucket and birth year range
+     */
+    @GetMapping
+    @Operation(summary = "Get patient demographics", description = "Returns the number of patients by sex, by age bucket and by birth year range")
+    @ApiResponse(responseCode = "200", description = "Demographics")
+    @ApiResponse(responseCode = "400", description = "Bucket width out of range")
+    public ResponseEntity<PatientDemographics> getDemographics(@RequestParam(defaultValue = "10") int ageBucket,
+                                                               @RequestParam(defaultValue = "10") int yearBucket) {
+
+        log.debug("Get demographics request received, age bucket: {}, year bucket: {}", ageBucket, yearBucket);
+        PatientDemographics demographics = patientStatsService.getDemographics(ageBucket, yearBucket);
+        log.debug("Get demographics request processed, patients count: {}", demographics.total());
+        return ResponseEntity.ok(demographics);
+    }
+
+
+    /**
+     * Find ages by ids posted as a JSON array response entity.
+     *
+     * @param ids the ids
+     * @return the response entity, one age per id in the order of the request
+     */
+    @PostMapping("/ages")
+    @Operation(summary = "Find patient ages by IDs", description = "Returns one entry per requested ID, in order, with the age of the patient if found")
+    @ApiResponse(responseCode = "200", description = "Ages, missing patients included")
+    @ApiResponse(responseCode = "400", description = "Null ID or too many IDs")
+    public ResponseEntity<List<PatientAge>> findAgesByIds(@RequestBody List<Integer> ids) {
+
+        log.debug("Find ages by ids request received, ids count: {}", ids.size());
+        List<PatientAge> ages = patientStatsService.findAgesByIds(ids);
+        log.debug("Find ages by ids request processed, ages count: {}", ages.size());
+        return ResponseEntity.ok(ages);
+    }
+
+
+    /**
+     * Find ages by ids given as a query parameter response entity.
+     *
+     * @param ids the ids, comma separated or repeated
+     * @return the response entity, one age per id in the order of the request
+     */
+    @GetMapping("/ages")
+    @Operation(summary = "Find patient ages by IDs", description = "Returns one entry per requested ID, in order, with the age of the patient if found")
+    @ApiResponse(responseCode = "200", description = "Ages, missing patients included")
+    @ApiResponse(responseCode = "400", description = "Too many IDs")
+    public ResponseEntity<List<PatientAge>> getAgesByIds(@RequestParam List<Integer> ids) {
+        return findAgesByIds(ids);
+    }
+}
@@ -0,0 +1,46 @@
+package com.mediscreen.patient.datasource;
+
+import com.mediscreen.patient.audit.PatientAuditService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Tells {@link ReplicaRoutingDataSource} which client the request comes from: the authenticated user, otherwise
+ * the {@code X-User} header, otherwise the remote address.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ReplicaRoutingDataSource.setClient(client(request));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.clearClient();
+        }
+    }
+
+
+    /**
+     @param request the request.
+     @return the client the request comes from: the authenticated user, otherwise the {@code X-User} header,
+     otherwise the remote address.
+     */
+    public static String client(HttpServletRequest request) {
+        if (request.getRemoteUser() != null) {
+            return request.getRemoteUser();
+        }
+        String header = request.getHeader(PatientAuditService.ACTOR_HEADER);
+        if (header != null && !header.isBlank()) {
+            return header.trim();
+        }
+        return request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,267 @@
+package com.mediscreen.patient.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mediscreen.patient.util.AfterCommit;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends the connections of read-only transactions to a replica, and all the others to the primary.
+ * <p>
+ * The transaction must be known when the connection is taken: wrap this data source in a
+ * {@code LazyConnectionDataSourceProxy}, which only takes it at the first statement, after the transaction has
+ * begun. Work outside a transaction goes to the primary.
+ * <p>
+ * A client that has just written, as set by {@link #setClient(String)}, reads from the primary for
+ * {@code readYourWritesWindow}, so that it sees its own writes whatever the replication lag. Reads whose result
+ * outlives the request, like cache loads, run in {@link #readFromPrimary(Supplier)}: a lagging replica would
+ * otherwise have its state served to every client until the entry expires. A replica that fails to hand out a
+ * connection is skipped for {@code retryAfter}, the primary serving its reads meanwhile.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public static final String METRIC_NAME = "patient.datasource";
+
+    static final String PRIMARY = "primary";
+
+    private static final Logger log = LogManager.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final ThreadLocal<String> CLIENT = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final ReplicaSelection selection;
+    private final long retryAfterNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    /** Per replica, the time until which it is skipped. */
+    private final AtomicLongArray downUntil;
+    private final Cache<String, Boolean> recentWriters;
+    private final Map<String, Counter> connections = new HashMap<>();
+    private final Counter fallbacks;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, ReplicaSelection selection,
+                                    Duration readYourWritesWindow, Duration retryAfter, LongSupplier nanoClock,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.selection = selection;
+        this.retryAfterNanos = retryAfter.toNanos();
+        this.nanoClock = nanoClock;
+        this.downUntil = new AtomicLongArray(replicas.size());
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(readYourWritesWindow)
+                .ticker(nanoClock::getAsLong)
+                .build();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = "replica-" + i;
+            replicaKeys.add(key);
+            targets.put(key, replicas.get(i));
+        }
+        for (Object key : targets.keySet()) {
+            connections.put((String) key, Counter.builder(METRIC_NAME + ".connections")
+                    .description("Connections taken, per target data source")
+                    .tag("target", (String) key)
+                    .register(meterRegistry));
+        }
+        this.fallbacks = Counter.builder(METRIC_NAME + ".fallbacks")
+                .description("Reads sent to the primary because a replica failed")
+                .register(meterRegistry);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+
+    /**
+     Set the client of the current thread, whose writes pin its reads to the primary.
+     @param client the client, null for none.
+     */
+    public static void setClient(String client) {
+        if (client == null) {
+            CLIENT.remove();
+        } else {
+            CLIENT.set(client);
+        }
+    }
+
+
+    public static void clearClient() {
+        CLIENT.remove();
+    }
+
+
+    /**
+     Run reads on the primary, whatever the client: for reads kept beyond the request, like cache loads.
+     @param reads the reads, in read-only transactions that begin within the call.
+     @return the result of the reads.
+     */
+    public static <T> T readFromPrimary(Supplier<T> reads) {
+        if (PRIMARY_READS.get() != null) {
+            return reads.get();
+        }
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            PRIMARY_READS.remove();
+        }
+    }
+
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                markWrite();
+            }
+            return PRIMARY;
+        }
+        if (PRIMARY_READS.get() != null) {
+            return PRIMARY;
+        }
+        String client = CLIENT.get();
+        if (client != null && recentWriters.getIfPresent(client) != null) {
+            return PRIMARY;
+        }
+        int replica = selectReplica();
+        return replica < 0 ? PRIMARY : replicaKeys.get(replica);
+    }
+
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+        String key = (String) determineCurrentLookupKey();
+        int replica = replicaKeys.indexOf(key);
+        if (replica >= 0) {
+            try {
+                Connection connection = source.connect(replicas.get(replica));
+                connections.get(key).increment();
+                return connection;
+            } catch (SQLException ex) {
+                downUntil.set(replica, nanoClock.getAsLong() + retryAfterNanos);
+                fallbacks.increment();
+                log.warn("Replica {} unavailable, reading from the primary for the next {} s",
+                        key, retryAfterNanos / 1_000_000_000, ex);
+            }
+        }
+        connections.get(PRIMARY).increment();
+        return source.connect(primary);
+    }
+
+
+    /**
+     @return the index of the replica to read from, -1 when none is available.
+     */
+    int selectReplica() {
+        int count = replicas.size();
+        long now = nanoClock.getAsLong();
+        int start = selection == ReplicaSelection.ROUND_ROBIN ? Math.floorMod(nextReplica.getAndIncrement(), count) : 0;
+        int selected = -1;
+        int selectedLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int replica = (start + i) % count;
+            if (downUntil.get(replica) - now > 0) {
+                continue;
+            }
+            if (selection == ReplicaSelection.ROUND_ROBIN) {
+                return replica;
+            }
+            int load = activeConnections(replicas.get(replica));
+            if (load < selectedLoad) {
+                selected = replica;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+
+    private static int activeConnections(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource hikari) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            // null until the pool is started by its first connection
+            return pool == null ? 0 : pool.getActiveConnections();
+        }
+        return 0;
+    }
+
+
+    /**
+     Pin the client to the primary from now, and again from the commit, so that a long transaction does not
+     shorten the window.
+     */
+    private void markWrite() {
+        String client = CLIENT.get();
+        if (client != null) {
+            recentWriters.put(client, Boolean.TRUE);
+            AfterCommit.run(() -> recentWriters.put(client, Boolean.TRUE));
+        }
+    }
+
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+
+    /**
+     Close the replica pools; the primary belongs to its own bean.
+     */
+    @Override
+    public void close() {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception ex) {
+                    log.warn("Failed to close replica data source", ex);
+                }
+            }
+        }
+    }
+
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+}
@@ -0,0 +1,11 @@
+package com.mediscreen.patient.datasource;
+
+/**
+ * How {@link ReplicaRoutingDataSource} picks the replica of a read-only transaction.
+ */
+public enum ReplicaSelection {
+    /** Each replica in turn. */
+    ROUND_ROBIN,
+    /** The replica with the fewest connections in use, as reported by its HikariCP pool. */
+    LEAST_LOADED
+}
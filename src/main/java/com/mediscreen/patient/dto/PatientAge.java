@@ -0,0 +1,11 @@
+package com.mediscreen.patient.dto;
+
+/**
+ * Age of one patient of a batch.
+ *
+ * @param id    the requested id
+ * @param found whether a patient has this id
+ * @param age   the age in whole years, or {@code null} when not found
+ */
+public record PatientAge(int id, boolean found, Integer age) {
+}
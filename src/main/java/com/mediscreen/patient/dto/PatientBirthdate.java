@@ -0,0 +1,12 @@
+package com.mediscreen.patient.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Birthdate of a patient, the only column read to compute ages.
+ *
+ * @param id        the patient id
+ * @param birthdate the birthdate
+ */
+public record PatientBirthdate(Integer id, LocalDate birthdate) {
+}
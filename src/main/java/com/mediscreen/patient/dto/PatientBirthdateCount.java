@@ -0,0 +1,14 @@
+package com.mediscreen.patient.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Number of patients born on a day, per sex: one row of the grouped query the demographic statistics are folded
+ * from, a few tens of thousands of rows at most whatever the number of patients.
+ *
+ * @param birthdate the birthdate
+ * @param sex       the sex
+ * @param count     the number of patients of this sex born that day
+ */
+public record PatientBirthdateCount(LocalDate birthdate, String sex, Long count) {
+}
@@ -0,0 +1,19 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.model.PatientChangeType;
+
+import java.time.Instant;
+
+/**
+ * One change of the patient change feed.
+ *
+ * @param sequence  the position of the change in the log
+ * @param patientId the id of the patient that changed
+ * @param type      whether the patient was created, updated or deleted
+ * @param changedAt the time of the change
+ * @param patient   the current state of the patient, or {@code null} when it has been deleted since
+ */
+public record PatientChangeEntry(long sequence, int patientId, PatientChangeType type, Instant changedAt,
+                                 PatientDto patient) {
+}
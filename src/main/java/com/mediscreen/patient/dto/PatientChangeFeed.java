@@ -0,0 +1,12 @@
+package com.mediscreen.patient.dto;
+
+import java.util.List;
+
+/**
+ * A slice of the patient change feed.
+ *
+ * @param changes      the changes, ordered by sequence, possibly none
+ * @param lastSequence the sequence to pass as {@code since} to get the following changes
+ */
+public record PatientChangeFeed(List<PatientChangeEntry> changes, long lastSequence) {
+}
@@ -0,0 +1,11 @@
+package com.mediscreen.patient.dto;
+
+/**
+ * Number of patients whose age, or birth year, is within a range.
+ *
+ * @param from  the lower bound, inclusive
+ * @param to    the upper bound, inclusive
+ * @param count the number of patients in the range
+ */
+public record PatientCountRange(int from, int to, long count) {
+}
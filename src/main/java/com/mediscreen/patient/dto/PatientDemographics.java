@@ -0,0 +1,20 @@
+package com.mediscreen.patient.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Demographic statistics of the patients. Its size depends on the bucket sizes and the spread of the birthdates,
+ * not on the number of patients.
+ *
+ * @param asOf        the day the ages are computed at
+ * @param total       the number of patients
+ * @param bySex       the number of patients per sex, by sex
+ * @param byAge       the number of patients per age bucket, from age 0 to the oldest patient, empty buckets included
+ * @param byBirthYear the number of patients per birth year range, from the earliest to the latest birth year,
+ *                    empty ranges included
+ */
+public record PatientDemographics(LocalDate asOf, long total, Map<String, Long> bySex,
+                                  List<PatientCountRange> byAge, List<PatientCountRange> byBirthYear) {
+}
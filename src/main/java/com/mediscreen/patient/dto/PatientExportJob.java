@@ -0,0 +1,25 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.patient.export.PatientExportFormat;
+
+import java.time.Instant;
+
+/**
+ * Status of an export job.
+ *
+ * @param id         the job id
+ * @param format     the format of the file
+ * @param gzip       whether the file is gzipped
+ * @param state      the progress of the job
+ * @param rows       the number of patients written so far
+ * @param createdAt  the time the job was submitted
+ * @param finishedAt the time the job succeeded or failed, or {@code null} while it is queued or running
+ * @param error      the reason of the failure, or {@code null} unless failed
+ */
+public record PatientExportJob(String id, PatientExportFormat format, boolean gzip, State state, long rows,
+                               Instant createdAt, Instant finishedAt, String error) {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+}
@@ -0,0 +1,11 @@
+package com.mediscreen.patient.dto;
+
+/**
+ * A row rejected by the bulk import.
+ *
+ * @param row     the 1-based position of the row: array element for JSON, data line for CSV
+ * @param field   the offending field, or {@code null} when the whole row is unreadable
+ * @param message why the row was rejected
+ */
+public record PatientImportError(int row, String field, String message) {
+}
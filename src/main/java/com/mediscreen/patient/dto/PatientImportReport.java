@@ -0,0 +1,14 @@
+package com.mediscreen.patient.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import.
+ *
+ * @param received the number of rows read
+ * @param imported the number of patients created
+ * @param rejected the number of rows rejected
+ * @param errors   the reasons of the rejections, possibly truncated, several per row when many fields are invalid
+ */
+public record PatientImportReport(int received, int imported, int rejected, List<PatientImportError> errors) {
+}
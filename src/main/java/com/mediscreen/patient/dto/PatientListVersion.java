@@ -0,0 +1,53 @@
+package com.mediscreen.patient.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Version of the whole patient list, computed from aggregates so that it changes on every create, update and
+ * delete: an update increments the sum of versions, a delete decrements the count and a create increments the
+ * count.
+ *
+ * @param count        the number of patients
+ * @param versionSum   the sum of the patient versions
+ * @param lastModified the time of the most recent write, or {@code null} when there is no patient
+ */
+public record PatientListVersion(Long count, Long versionSum, Instant lastModified) {
+
+    /**
+     * @return the strong entity tag of the list, quoted
+     */
+    public String eTag() {
+        return "\"" + count + "-" + versionSum + "-" + lastModifiedMillis() + "\"";
+    }
+
+    /**
+     * @return the time of the most recent write in milliseconds, or -1 if unknown
+     */
+    public long lastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toEpochMilli();
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+
+    /**
+     * Compute the version of a list from its patients, with the same aggregates as the database.
+     *
+     * @param patients every patient of the list
+     * @return the version of the list
+     */
+    public static PatientListVersion of(List<PatientView> patients) {
+        long versionSum = 0;
+        Instant lastModified = null;
+        for (PatientView patient : patients) {
+            versionSum += patient.version() == null ? 0 : patient.version();
+            if (patient.lastModified() != null && (lastModified == null || patient.lastModified().isAfter(lastModified))) {
+                lastModified = patient.lastModified();
+            }
+        }
+        return new PatientListVersion((long) patients.size(), versionSum, lastModified);
+    }
+}
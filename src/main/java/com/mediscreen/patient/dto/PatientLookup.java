@@ -0,0 +1,13 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.library.dto.PatientDto;
+
+/**
+ * Outcome of the lookup of one id of a batch.
+ *
+ * @param id      the requested id
+ * @param found   whether a patient has this id
+ * @param patient the patient, or {@code null} when not found
+ */
+public record PatientLookup(int id, boolean found, PatientDto patient) {
+}
@@ -0,0 +1,14 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.library.dto.PatientDto;
+
+import java.util.List;
+
+/**
+ * One page of patients read with keyset pagination.
+ *
+ * @param patients   the patients of the page, ordered by id
+ * @param nextCursor the opaque cursor of the next page, or {@code null} when this page is the last one
+ */
+public record PatientPage(List<PatientDto> patients, String nextCursor) {
+}
@@ -0,0 +1,12 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.library.dto.PatientDto;
+
+/**
+ * One result of a fuzzy patient search.
+ *
+ * @param patient the patient
+ * @param score   how well the patient matches the query, higher is better; only comparable within one search
+ */
+public record PatientSearchHit(PatientDto patient, double score) {
+}
@@ -0,0 +1,52 @@
+package com.mediscreen.patient.dto;
+
+import java.time.Instant;
+
+/**
+ * Version of one patient, read without loading the patient itself, to answer conditional requests.
+ *
+ * @param id           the patient id
+ * @param version      the optimistic lock version, incremented on every update
+ * @param lastModified the time of the last write, or {@code null} if unknown
+ */
+public record PatientVersion(Integer id, Long version, Instant lastModified) {
+
+    /**
+     * @return the strong entity tag of the patient, quoted
+     */
+    public String eTag() {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * @return the time of the last write in milliseconds, or -1 if unknown
+     */
+    public long lastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toEpochMilli();
+    }
+
+
+    /**
+     * Read the version out of an If-Match header. If-Match uses the strong comparison, so a weak tag never matches.
+     *
+     * @param id     the id of the patient the header applies to
+     * @param ifMatch the header value, a tag returned by {@link #eTag()}, {@code *} or {@code null}
+     * @return the version, {@code null} when any version matches, or -1 when the tag is weak or not one of this
+     * patient
+     */
+    public static Long parseIfMatch(int id, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        String prefix = "\"" + id + "-";
+        if (!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length() + 1) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+}
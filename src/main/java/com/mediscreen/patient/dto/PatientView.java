@@ -0,0 +1,30 @@
+package com.mediscreen.patient.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Read-only projection of a patient, selected straight from the patient table by a JPQL constructor expression:
+ * no managed entity, no persistence context entry and no dirty-checking snapshot. The version is read with the
+ * fields, so that the entity tag of a response always matches its body.
+ *
+ * @param id           the patient id
+ * @param lastName     the last name
+ * @param firstName    the first name
+ * @param birthdate    the birthdate
+ * @param sex          the sex
+ * @param address      the address
+ * @param phone        the phone number
+ * @param version      the optimistic lock version, incremented on every update
+ * @param lastModified the time of the last write, or {@code null} if unknown
+ */
+public record PatientView(Integer id, String lastName, String firstName, LocalDate birthdate, String sex,
+                          String address, String phone, Long version, Instant lastModified) {
+
+    /**
+     * @return the version of the patient as read with its fields
+     */
+    public PatientVersion toVersion() {
+        return new PatientVersion(id, version, lastModified);
+    }
+}
@@ -0,0 +1,12 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.library.dto.PatientDto;
+
+/**
+ * A patient and its version, read together so that conditional requests are answered for the body served.
+ *
+ * @param patient the patient
+ * @param version the version of this state of the patient
+ */
+public record VersionedPatient(PatientDto patient, PatientVersion version) {
+}
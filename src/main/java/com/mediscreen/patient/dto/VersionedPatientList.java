@@ -0,0 +1,14 @@
+package com.mediscreen.patient.dto;
+
+import com.mediscreen.library.dto.PatientDto;
+
+import java.util.List;
+
+/**
+ * Every patient and the version of the list, computed from the same rows.
+ *
+ * @param patients the patients, ordered by id
+ * @param version  the version of this list
+ */
+public record VersionedPatientList(List<PatientDto> patients, PatientListVersion version) {
+}
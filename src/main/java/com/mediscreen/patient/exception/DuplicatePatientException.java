@@ -0,0 +1,20 @@
+package com.mediscreen.patient.exception;
+
+import java.util.List;
+
+public class DuplicatePatientException extends RuntimeException {
+
+    private final List<Integer> duplicateIds;
+
+
+    public DuplicatePatientException(List<Integer> duplicateIds) {
+
+        super(" Possible duplicate of the patients with ids : " + duplicateIds);
+        this.duplicateIds = List.copyOf(duplicateIds);
+    }
+
+
+    public List<Integer> getDuplicateIds() {
+        return duplicateIds;
+    }
+}
@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class ExportJobNotFoundException extends RuntimeException {
+
+
+    public ExportJobNotFoundException(String id) {
+
+        super(" Export job does not exist with id : " + id);
+    }
+}
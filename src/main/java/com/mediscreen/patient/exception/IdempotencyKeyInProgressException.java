@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class IdempotencyKeyInProgressException extends RuntimeException {
+
+
+    public IdempotencyKeyInProgressException(String key) {
+
+        super("Idempotency key still used by a request in progress : " + key);
+    }
+}
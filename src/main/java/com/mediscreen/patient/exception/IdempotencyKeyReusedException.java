@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+
+    public IdempotencyKeyReusedException(String key) {
+
+        super(" Idempotency key already used for a different request : " + key);
+    }
+}
@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class InvalidBatchException extends RuntimeException {
+
+
+    public InvalidBatchException(String reason) {
+
+        super(" Invalid patient batch : " + reason);
+    }
+}
@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class InvalidCursorException extends RuntimeException {
+
+
+    public InvalidCursorException(String cursor) {
+
+        super(" Invalid page cursor : " + cursor);
+    }
+}
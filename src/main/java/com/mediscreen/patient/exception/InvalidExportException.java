@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class InvalidExportException extends RuntimeException {
+
+
+    public InvalidExportException(String reason) {
+
+        super(" Invalid patient export : " + reason);
+    }
+}
@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class InvalidIdempotencyKeyException extends RuntimeException {
+
+
+    public InvalidIdempotencyKeyException(String reason) {
+
+        super(" Invalid idempotency key : " + reason);
+    }
+}
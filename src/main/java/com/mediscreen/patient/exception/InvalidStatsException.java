@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class InvalidStatsException extends RuntimeException {
+
+
+    public InvalidStatsException(String reason) {
+
+        super(" Invalid patient statistics request : " + reason);
+    }
+}
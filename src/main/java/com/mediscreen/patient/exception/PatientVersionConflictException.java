@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class PatientVersionConflictException extends RuntimeException {
+
+
+    public PatientVersionConflictException(int id, long expectedVersion) {
+
+        super(" Patient with id : " + id + " is no longer at version : " + expectedVersion);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mediscreen.patient.exception;
+
+public class RateLimitExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+
+    public RateLimitExceededException(String endpoint, long retryAfterSeconds) {
+
+        super(" Too many requests to : " + endpoint + ", retry in : " + retryAfterSeconds + " s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,10 @@
+package com.mediscreen.patient.exception;
+
+public class ServiceOverloadedException extends RuntimeException {
+
+
+    public ServiceOverloadedException(int limit) {
+
+        super(" Patient service is overloaded, " + limit + " operations already in progress");
+    }
+}
@@ -0,0 +1,51 @@
+package com.mediscreen.patient.export;
+
+import com.mediscreen.patient.exception.InvalidExportException;
+
+import java.util.Locale;
+
+/**
+ * Formats of a patient export.
+ */
+public enum PatientExportFormat {
+    /** RFC 4180 CSV with a header line, which {@code /api/patient/import} reads back. */
+    CSV("text/csv", "csv"),
+    /** One JSON document per line, as served by {@code /api/patient/stream}. */
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    PatientExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+
+    /**
+     Find a format by name, ignoring case.
+     @param name the name, such as "csv".
+     @return the format.
+     @throws InvalidExportException if no format has this name.
+     */
+    public static PatientExportFormat of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidExportException("unknown format " + name + ", expected csv or ndjson");
+        }
+    }
+
+
+    public String getContentType() {
+        return contentType;
+    }
+
+
+    /**
+     @return the file name extension, with {@code .gz} appended when gzipped.
+     */
+    public String getExtension(boolean gzip) {
+        return gzip ? extension + ".gz" : extension;
+    }
+}
@@ -0,0 +1,252 @@
+package com.mediscreen.patient.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.mediscreen.patient.dto.PatientExportJob;
+import com.mediscreen.patient.dto.PatientExportJob.State;
+import com.mediscreen.patient.exception.ExportJobNotFoundException;
+import com.mediscreen.patient.exception.ServiceOverloadedException;
+import com.mediscreen.patient.repository.PatientJdbcRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of every patient as CSV or NDJSON, optionally gzipped, either streamed to a response or written to a
+ * local file by a background job.
+ * <p>
+ * Patients are read through the forward-only cursor of {@link PatientJdbcRepository#streamAll} and written one at
+ * a time by a {@link PatientExportWriter}, so an export takes the same memory whatever the number of patients.
+ * <p>
+ * Jobs run one at a time, with at most {@code patient.export.max-queued-jobs} waiting. Each writes
+ * {@code patients-<job id>.<extension>} in {@code patient.export.directory}, through a temporary file moved into
+ * place once complete. Jobs and their files are forgotten {@code patient.export.job-retention} after submission.
+ */
+@Service
+public class PatientExportService {
+
+    private static final Logger log = LogManager.getLogger(PatientExportService.class);
+
+    private static final class Job {
+        final String id;
+        final PatientExportFormat format;
+        final boolean gzip;
+        final Instant createdAt = Instant.now();
+        final Path file;
+        volatile long rows;
+        volatile Instant finishedAt;
+        volatile String error;
+        // written last, so that a reader seeing the final state sees the fields above
+        volatile State state = State.QUEUED;
+
+        Job(PatientExportFormat format, boolean gzip, Path directory) {
+            this.id = UUID.randomUUID().toString();
+            this.format = format;
+            this.gzip = gzip;
+            this.file = directory.resolve("patients-" + id + "." + format.getExtension(gzip));
+        }
+
+        void finish(State finalState, String reason) {
+            finishedAt = Instant.now();
+            error = reason;
+            state = finalState;
+        }
+
+        PatientExportJob toJob() {
+            State current = state;
+            return new PatientExportJob(id, format, gzip, current, rows, createdAt, finishedAt, error);
+        }
+    }
+
+    private final PatientJdbcRepository patientJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Path directory;
+    private final int maxQueuedJobs;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, Job> jobs;
+
+    public PatientExportService(PatientJdbcRepository patientJdbcRepository, ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${patient.export.directory:}") String directory,
+                                @Value("${patient.export.max-queued-jobs:4}") int maxQueuedJobs,
+                                @Value("${patient.export.job-retention:1d}") Duration jobRetention) {
+        this.patientJdbcRepository = patientJdbcRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.directory = directory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "patient-export")
+                : Path.of(directory);
+        this.maxQueuedJobs = maxQueuedJobs;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), runnable -> {
+            Thread thread = new Thread(runnable, "patient-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(jobRetention)
+                .removalListener((String id, Job job, RemovalCause cause) -> {
+                    if (job != null) {
+                        deleteQuietly(job.file);
+                    }
+                })
+                .build();
+
+        Gauge.builder("patient.export.jobs.queued", executor, pool -> pool.getQueue().size())
+                .description("Export jobs waiting for the running one")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     Write every patient, ordered by id, to an output stream.
+     @param format the format of the rows.
+     @param gzip true to gzip the output.
+     @param out the output stream, left open.
+     @return the number of patients written.
+     @throws IOException if the output stream cannot be written.
+     */
+    public long export(PatientExportFormat format, boolean gzip, OutputStream out) throws IOException {
+
+        log.debug("Exporting all patients as {}{}", format, gzip ? ", gzipped" : "");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try (PatientExportWriter writer = new PatientExportWriter(out, format, gzip, objectMapper)) {
+            patientJdbcRepository.streamAll(writer::write);
+            sample.stop(timer(format, "stream"));
+            log.debug("Exported {} patients", writer.getRows());
+            return writer.getRows();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+
+    /**
+     Queue an export of every patient to a local file.
+     @param format the format of the rows.
+     @param gzip true to gzip the file.
+     @return the job, queued.
+     @throws ServiceOverloadedException if {@code patient.export.max-queued-jobs} jobs are already waiting.
+     */
+    public PatientExportJob submit(PatientExportFormat format, boolean gzip) {
+
+        jobs.cleanUp();
+        Job job = new Job(format, gzip, directory);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException ex) {
+            jobs.invalidate(job.id);
+            throw new ServiceOverloadedException(maxQueuedJobs + 1);
+        }
+        log.info("Export job {} queued, {}{}", job.id, format, gzip ? " gzipped" : "");
+        return job.toJob();
+    }
+
+
+    private void run(Job job) {
+        job.state = State.RUNNING;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Path temporary = job.file.resolveSibling(job.file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream out = Files.newOutputStream(temporary);
+                 PatientExportWriter writer = new PatientExportWriter(out, job.format, job.gzip, objectMapper)) {
+                patientJdbcRepository.streamAll(patient -> {
+                    writer.write(patient);
+                    job.rows = writer.getRows();
+                });
+            }
+            Files.move(temporary, job.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            sample.stop(timer(job.format, "job"));
+            job.finish(State.DONE, null);
+            log.info("Export job {} wrote {} patients to {}", job.id, job.rows, job.file);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Export job {} failed", job.id, ex);
+            deleteQuietly(temporary);
+            job.finish(State.FAILED, ex.getMessage());
+        }
+    }
+
+
+    private Timer timer(PatientExportFormat format, String mode) {
+        return Timer.builder("patient.export")
+                .tag("format", format.name().toLowerCase(Locale.ROOT))
+                .tag("mode", mode)
+                .description("Exports of every patient")
+                .register(meterRegistry);
+    }
+
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Export file {} not deleted: {}", file, ex.getMessage());
+        }
+    }
+
+
+    /**
+     Get the status of an export job.
+     @param id the job id.
+     @return the job.
+     @throws ExportJobNotFoundException if no job has this id, or it is older than the retention.
+     */
+    public PatientExportJob getJob(String id) {
+        return find(id).toJob();
+    }
+
+
+    /**
+     Get the file written by an export job.
+     @param id the job id.
+     @return the file, or null while the job is queued or running, or if it failed.
+     @throws ExportJobNotFoundException if no job has this id, or it is older than the retention.
+     */
+    public Path getJobFile(String id) {
+        Job job = find(id);
+        return job.state == State.DONE ? job.file : null;
+    }
+
+
+    private Job find(String id) {
+        Job job = jobs.getIfPresent(id);
+        if (job == null) {
+            throw new ExportJobNotFoundException(id);
+        }
+        return job;
+    }
+
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Export jobs did not stop within 10s");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.mediscreen.patient.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mediscreen.library.dto.PatientDto;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes patients one at a time to an output stream, as CSV or NDJSON, optionally gzipped. Nothing is kept but
+ * a fixed-size buffer, so the memory used does not depend on the number of patients written.
+ * <p>
+ * Closing the writer flushes and finishes the gzip stream, but leaves the output stream open for its owner.
+ */
+public final class PatientExportWriter implements Closeable {
+
+    static final String CSV_HEADER = "id,lastName,firstName,birthdate,sex,address,phone";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PatientExportFormat format;
+    private final Writer writer;
+    private final JsonGenerator generator;
+    private final ObjectWriter patientWriter;
+    private long rows;
+
+    /**
+     Start an export, writing the CSV header if any.
+     @param out the output stream, left open on close.
+     @param format the format of the rows.
+     @param gzip true to gzip the output.
+     @param objectMapper the mapper writing NDJSON rows.
+     @throws IOException if the output stream cannot be written.
+     */
+    public PatientExportWriter(OutputStream out, PatientExportFormat format, boolean gzip, ObjectMapper objectMapper)
+            throws IOException {
+        this.format = format;
+        OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        if (gzip) {
+            target = new GZIPOutputStream(target, BUFFER_SIZE);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == PatientExportFormat.NDJSON) {
+            this.generator = objectMapper.getFactory().createGenerator(writer)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .setRootValueSeparator(null);
+            this.patientWriter = objectMapper.writerFor(PatientDto.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        } else {
+            this.generator = null;
+            this.patientWriter = null;
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+    }
+
+
+    /**
+     Append a patient.
+     @param patient the patient.
+     @throws UncheckedIOException if the output stream cannot be written, so that it can be a row callback.
+     */
+    public void write(PatientDto patient) {
+        try {
+            if (format == PatientExportFormat.NDJSON) {
+                patientWriter.writeValue(generator, patient);
+                generator.writeRaw('\n');
+            } else {
+                writeCsv(patient);
+            }
+            rows++;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+
+    private void writeCsv(PatientDto patient) throws IOException {
+        Integer id = patient.getId();
+        LocalDate birthdate = patient.getBirthdate();
+        writer.write(id == null ? "" : id.toString());
+        writeCsvField(patient.getLastName());
+        writeCsvField(patient.getFirstName());
+        writeCsvField(birthdate == null ? null : birthdate.toString());
+        writeCsvField(patient.getSex());
+        writeCsvField(patient.getAddress());
+        writeCsvField(patient.getPhone());
+        writer.write('\n');
+    }
+
+
+    /**
+     Write a comma then the field, quoted when it holds a comma, a quote, a line break or surrounding spaces.
+     */
+    private void writeCsvField(String value) throws IOException {
+        writer.write(',');
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+
+    static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        if (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1))) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     @return the number of patients written.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        if (generator != null) {
+            generator.close();
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,154 @@
+package com.mediscreen.patient.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mediscreen.patient.exception.IdempotencyKeyInProgressException;
+import com.mediscreen.patient.exception.IdempotencyKeyReusedException;
+import com.mediscreen.patient.exception.InvalidIdempotencyKeyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Results of the requests sent with an {@code Idempotency-Key} header, so that a client retrying a create gets
+ * the outcome of its first attempt instead of creating the patient twice.
+ * <p>
+ * The first request with a key runs and its result is kept for {@code patient.idempotency.ttl}, at most
+ * {@code patient.idempotency.max-keys} keys being kept. A retry with the same key gets that result without
+ * running again; a retry arriving while the first request still runs waits for it, up to
+ * {@code patient.idempotency.max-wait}, and gets the same result. A request that fails is forgotten, so a retry
+ * runs again, but the requests waiting for it get the same failure.
+ * <p>
+ * Each key is bound to the fingerprint of its request: the same key sent with a different request is rejected.
+ * Keys are scoped by endpoint and by client, the same client reads are routed for, so that two clients choosing
+ * the same key never get each other's result.
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger log = LogManager.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    static final int MAX_KEY_LENGTH = 255;
+
+    private record ScopedKey(String scope, String client, String key) {
+    }
+
+    private record Entry(String fingerprint, CompletableFuture<Object> result) {
+    }
+
+    private final ConcurrentMap<ScopedKey, Entry> entries;
+    private final Duration maxWait;
+    private final Counter executed;
+    private final Counter replayed;
+
+    public IdempotencyStore(@Value("${patient.idempotency.max-keys:100000}") long maxKeys,
+                            @Value("${patient.idempotency.ttl:24h}") Duration ttl,
+                            @Value("${patient.idempotency.max-wait:10s}") Duration maxWait,
+                            MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        Cache<ScopedKey, Entry> cache = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(ttl)
+                .build();
+        this.entries = cache.asMap();
+        this.executed = Counter.builder("patient.idempotency.requests").tag("outcome", "executed")
+                .description("Requests with an idempotency key").register(meterRegistry);
+        this.replayed = Counter.builder("patient.idempotency.requests").tag("outcome", "replayed")
+                .description("Requests with an idempotency key").register(meterRegistry);
+        Gauge.builder("patient.idempotency.keys", cache, Cache::estimatedSize)
+                .description("Idempotency keys kept")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     Run a request once per idempotency key.
+     @param scope the endpoint, keys of different endpoints never match.
+     @param client the client sending the request, see {@code ReadYourWritesFilter#client}: keys of different
+     clients never match.
+     @param key the idempotency key sent by the client.
+     @param fingerprint identifies the request, see {@link #fingerprint(Object...)}.
+     @param request the request.
+     @return the result of the request, run now or by an earlier request with the same key.
+     @throws InvalidIdempotencyKeyException if the key is blank or longer than {@value #MAX_KEY_LENGTH} characters.
+     @throws IdempotencyKeyReusedException if the key was sent with a different request.
+     @throws IdempotencyKeyInProgressException if the request with the same key still runs after the longest wait.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String scope, String client, String key, String fingerprint, Supplier<T> request) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException("expected 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        ScopedKey scopedKey = new ScopedKey(scope, client, key);
+        Entry entry = new Entry(fingerprint, new CompletableFuture<>());
+        Entry existing = entries.putIfAbsent(scopedKey, entry);
+        if (existing != null) {
+            if (!existing.fingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException(key);
+            }
+            replayed.increment();
+            log.debug("Replaying the result of {}", scopedKey);
+            try {
+                return (T) existing.result().get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                // only runtime exceptions and errors complete a result exceptionally
+                if (ex.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw (RuntimeException) ex.getCause();
+            } catch (TimeoutException ex) {
+                throw new IdempotencyKeyInProgressException(key);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IdempotencyKeyInProgressException(key);
+            }
+        }
+
+        executed.increment();
+        try {
+            T result = request.get();
+            entry.result().complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            entries.remove(scopedKey, entry);
+            entry.result().completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+
+    /**
+     Fingerprint of a request, to tell a retry from a different request sent with the same key.
+     @param parts the parameters of the request, compared by their string value.
+     @return the SHA-256 of the parts, in hexadecimal.
+     */
+    public static String fingerprint(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
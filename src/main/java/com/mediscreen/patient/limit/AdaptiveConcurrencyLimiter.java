@@ -0,0 +1,172 @@
+package com.mediscreen.patient.limit;
+
+import com.mediscreen.patient.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive limit on the {@code PatientService} operations in progress. Calls over the limit are rejected at once
+ * with a {@link ServiceOverloadedException} (503) instead of queueing for a database connection until they time
+ * out.
+ * <p>
+ * The limit follows the latency: the lowest latency of the last {@code window} calls of an operation is its
+ * baseline, a call up to {@code latencyTolerance} times slower than the baseline of its operation leaves room to
+ * grow the limit by its square root, a slower call shrinks it in proportion, by half at most. Each call moves the
+ * limit by {@code smoothing} of that step. Operations are told apart by method name, so that a list read is not
+ * compared with a cache hit by id. A baseline may rise by 10% per window of its operation, so that a lasting
+ * slowdown is not taken for congestion forever.
+ * <p>
+ * Outermost around the service, so that rejected calls never start a transaction. Streams are not limited: their
+ * duration is the client's, not a sign of congestion.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "patient.concurrency.enabled", havingValue = "true", matchIfMissing = true)
+public class AdaptiveConcurrencyLimiter {
+
+    public static final String METRIC_NAME = "patient.concurrency";
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final int window;
+    private final double smoothing;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+
+    /** Latency baseline of one operation, updated without locking: a sample racing a window roll counts in either. */
+    private static final class Baseline {
+        final AtomicLong baselineNanos = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong windowMinNanos = new AtomicLong(Long.MAX_VALUE);
+        final AtomicInteger windowSamples = new AtomicInteger();
+    }
+
+    /** The limit, as the bits of a double, so that concurrent samples move it with compare-and-set. */
+    private final AtomicLong limitBits = new AtomicLong();
+    private final Map<String, Baseline> baselines = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(@Value("${patient.concurrency.initial-limit:20}") int initialLimit,
+                                      @Value("${patient.concurrency.min-limit:4}") int minLimit,
+                                      @Value("${patient.concurrency.max-limit:200}") int maxLimit,
+                                      @Value("${patient.concurrency.latency-tolerance:2.0}") double latencyTolerance,
+                                      @Value("${patient.concurrency.window:500}") int window,
+                                      MeterRegistry meterRegistry) {
+        this(initialLimit, minLimit, maxLimit, latencyTolerance, window, 0.2, System::nanoTime, meterRegistry);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double latencyTolerance, int window,
+                               double smoothing, LongSupplier nanoClock, MeterRegistry meterRegistry) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.window = window;
+        this.smoothing = smoothing;
+        this.nanoClock = nanoClock;
+        this.limitBits.set(Double.doubleToLongBits(Math.min(Math.max(initialLimit, minLimit), maxLimit)));
+        Gauge.builder(METRIC_NAME + ".limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Patient service operations allowed in progress")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_NAME + ".in-flight", inFlight, AtomicInteger::get)
+                .description("Patient service operations in progress")
+                .register(meterRegistry);
+        this.rejected = Counter.builder(METRIC_NAME + ".rejected")
+                .description("Patient service operations rejected by the concurrency limit")
+                .register(meterRegistry);
+    }
+
+
+    @Around("execution(public * com.mediscreen.patient.service.PatientService.*(..))"
+            + " && !execution(* com.mediscreen.patient.service.PatientService.streamAllPatients(..))")
+    public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+        int inFlightAtStart = tryAcquire();
+        if (inFlightAtStart < 0) {
+            rejected.increment();
+            throw new ServiceOverloadedException(getLimit());
+        }
+        long start = nanoClock.getAsLong();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            inFlight.decrementAndGet();
+            onSample(joinPoint.getSignature().getName(), nanoClock.getAsLong() - start, inFlightAtStart);
+        }
+    }
+
+
+    /**
+     @return the operations in progress before this one, or -1 if the limit is reached.
+     */
+    int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+
+    void onSample(String operation, long latencyNanos, int inFlightAtStart) {
+        Baseline baseline = baselines.computeIfAbsent(operation, name -> new Baseline());
+        baseline.windowMinNanos.accumulateAndGet(latencyNanos, Math::min);
+        long baselineNanos = baseline.baselineNanos.accumulateAndGet(latencyNanos, Math::min);
+        int samples = baseline.windowSamples.incrementAndGet();
+        if (samples >= window && baseline.windowSamples.compareAndSet(samples, 0)) {
+            long windowMin = baseline.windowMinNanos.getAndSet(Long.MAX_VALUE);
+            baselineNanos = baseline.baselineNanos.updateAndGet(
+                    current -> Math.min(windowMin, current + current / 10));
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0,
+                latencyTolerance * baselineNanos / Math.max(latencyNanos, 1)));
+        while (true) {
+            long bits = limitBits.get();
+            double current = Double.longBitsToDouble(bits);
+            double target;
+            if (gradient < 1.0) {
+                target = current * gradient;
+            } else if (inFlightAtStart * 2 >= current) {
+                // only grow a limit that is actually used
+                target = current + Math.sqrt(current);
+            } else {
+                return;
+            }
+            double next = Math.min(Math.max(current + (target - current) * smoothing, minLimit), maxLimit);
+            if (limitBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
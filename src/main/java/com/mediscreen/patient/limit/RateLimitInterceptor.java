@@ -0,0 +1,96 @@
+package com.mediscreen.patient.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mediscreen.patient.datasource.ReadYourWritesFilter;
+import com.mediscreen.patient.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiting per client and per endpoint, so that a client looping on one endpoint is answered
+ * 429 before it holds a request thread or a database connection, without slowing down other clients or its own
+ * calls to other endpoints.
+ * <p>
+ * The client is the one reads are routed for, see {@link ReadYourWritesFilter#client(HttpServletRequest)}: the
+ * authenticated user, otherwise the {@code X-User} header, otherwise the remote address, so that users behind one
+ * proxy are limited on their own. The endpoint is the method and the matched path pattern,
+ * e.g. {@code GET /api/patient/find/{id}}. Expensive endpoints (listing, creating, importing) get their own,
+ * smaller, limit. Buckets of clients idle for {@code idleExpiry} are forgotten, at most {@code maxClients}
+ * buckets are kept.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    public static final String METRIC_NAME = "patient.rate-limit";
+
+    private final Limit defaultLimit;
+    private final Limit expensiveLimit;
+    private final Set<String> expensiveEndpoints;
+    private final LongSupplier nanoClock;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, TokenBucket> buckets;
+
+    public RateLimitInterceptor(Limit defaultLimit, Limit expensiveLimit, Set<String> expensiveEndpoints,
+                                long maxClients, Duration idleExpiry, LongSupplier nanoClock,
+                                MeterRegistry meterRegistry) {
+        this.defaultLimit = defaultLimit;
+        this.expensiveLimit = expensiveLimit;
+        this.expensiveEndpoints = Set.copyOf(expensiveEndpoints);
+        this.nanoClock = nanoClock;
+        this.meterRegistry = meterRegistry;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(idleExpiry)
+                .build();
+        Gauge.builder(METRIC_NAME + ".buckets", buckets, Cache::estimatedSize)
+                .description("Client and endpoint pairs currently rate limited")
+                .register(meterRegistry);
+    }
+
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String endpoint = endpoint(request);
+        TokenBucket bucket = buckets.get(ReadYourWritesFilter.client(request) + " " + endpoint, key -> newBucket(endpoint));
+        if (bucket.tryAcquire()) {
+            return true;
+        }
+        Counter.builder(METRIC_NAME + ".rejected")
+                .description("Requests rejected by the rate limit")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry)
+                .increment();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(bucket.nanosUntilAvailable() + 999_999_999));
+        throw new RateLimitExceededException(endpoint, retryAfterSeconds);
+    }
+
+
+    static String endpoint(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+    }
+
+
+    private TokenBucket newBucket(String endpoint) {
+        Limit limit = expensiveEndpoints.contains(endpoint) ? expensiveLimit : defaultLimit;
+        return new TokenBucket(limit.capacity(), limit.refillPerSecond(), nanoClock);
+    }
+
+
+    /**
+     @param capacity the largest burst of requests.
+     @param refillPerSecond the sustained requests per second.
+     */
+    public record Limit(int capacity, double refillPerSecond) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.mediscreen.patient.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket without locks, in its virtual scheduling form: instead of a token count and a refill time, which
+ * would have to change together, it keeps the single time at which the bucket will be full again, moved forward
+ * by one token interval per acquisition with a CAS. A request is allowed while that time is less than a full
+ * bucket ahead of now.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final LongSupplier nanoClock;
+    /** When the bucket is full again; in the past when it is full already. */
+    private final AtomicLong fullAt;
+
+    /**
+     @param capacity the number of tokens of a full bucket, the largest burst allowed.
+     @param refillPerSecond the tokens added per second, the sustained rate allowed.
+     @param nanoClock the time source, {@code System::nanoTime} outside tests.
+     */
+    public TokenBucket(int capacity, double refillPerSecond, LongSupplier nanoClock) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and refill rate must be positive: " + capacity + ", " + refillPerSecond);
+        }
+        this.nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.capacityNanos = nanosPerToken * capacity;
+        this.nanoClock = nanoClock;
+        this.fullAt = new AtomicLong(nanoClock.getAsLong());
+    }
+
+
+    /**
+     Take a token if one is available.
+     @return false if the bucket is empty.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = fullAt.get();
+            long next = Math.max(current - now, 0) + nanosPerToken;
+            if (next > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, now + next)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     @return the nanoseconds until a token is available, 0 if one is available now.
+     */
+    public long nanosUntilAvailable() {
+        long next = Math.max(fullAt.get() - nanoClock.getAsLong(), 0) + nanosPerToken;
+        return Math.max(next - capacityNanos, 0);
+    }
+
+
+    /**
+     @return the number of tokens available now.
+     */
+    public int availableTokens() {
+        long used = Math.max(fullAt.get() - nanoClock.getAsLong(), 0);
+        return (int) ((capacityNanos - used) / nanosPerToken);
+    }
+}
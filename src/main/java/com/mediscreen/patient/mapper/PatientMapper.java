@@ -0,0 +1,136 @@
+package com.mediscreen.patient.mapper;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.model.Patient;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written mapping between {@link Patient}, or its {@link PatientView} projection, and {@link PatientDto}.
+ * Plain field copies, no reflection and no intermediate objects.
+ */
+@Component
+public class PatientMapper {
+
+
+    /**
+     Map a patient entity to its dto.
+     @param patient the patient entity.
+     @return a new {@link PatientDto} carrying every field of the patient, or null if the patient is null.
+     */
+    public PatientDto toDto(Patient patient) {
+        if (patient == null) {
+            return null;
+        }
+        PatientDto patientDto = new PatientDto(
+                patient.getLastName(),
+                patient.getFirstName(),
+                patient.getBirthdate(),
+                patient.getSex(),
+                patient.getAddress(),
+                patient.getPhone());
+        patientDto.setId(patient.getId());
+        return patientDto;
+    }
+
+
+    /**
+     Map a list of patient entities to dtos, keeping the order.
+     @param patients the patient entities.
+     @return a list of {@link PatientDto} sized for the input.
+     */
+    public List<PatientDto> toDtoList(List<Patient> patients) {
+        List<PatientDto> patientDtos = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            patientDtos.add(toDto(patient));
+        }
+        return patientDtos;
+    }
+
+
+    /**
+     Map a patient projection to its dto.
+     @param patientView the patient projection.
+     @return a new {@link PatientDto} carrying every field of the projection, or null if the projection is null.
+     */
+    public PatientDto toDto(PatientView patientView) {
+        if (patientView == null) {
+            return null;
+        }
+        PatientDto patientDto = new PatientDto(
+                patientView.lastName(),
+                patientView.firstName(),
+                patientView.birthdate(),
+                patientView.sex(),
+                patientView.address(),
+                patientView.phone());
+        patientDto.setId(patientView.id());
+        return patientDto;
+    }
+
+
+    /**
+     Map a patient projection to its dto and its version, both read by the same query.
+     @param patientView the patient projection.
+     @return a new {@link VersionedPatient}, or null if the projection is null.
+     */
+    public VersionedPatient toVersioned(PatientView patientView) {
+        if (patientView == null) {
+            return null;
+        }
+        return new VersionedPatient(toDto(patientView), patientView.toVersion());
+    }
+
+
+    /**
+     Map a list of patient projections to dtos, keeping the order.
+     @param patientViews the patient projections.
+     @return a list of {@link PatientDto} sized for the input.
+     */
+    public List<PatientDto> viewsToDtoList(List<PatientView> patientViews) {
+        List<PatientDto> patientDtos = new ArrayList<>(patientViews.size());
+        for (PatientView patientView : patientViews) {
+            patientDtos.add(toDto(patientView));
+        }
+        return patientDtos;
+    }
+
+
+    /**
+     Map a dto to a new, not yet persisted, patient entity.
+     The id of the dto is ignored: ids are always assigned by the database.
+     @param patientDto the patient dto.
+     @return a new {@link Patient}, or null if the dto is null.
+     */
+    public Patient toEntity(PatientDto patientDto) {
+        if (patientDto == null) {
+            return null;
+        }
+        return new Patient(
+                patientDto.getLastName(),
+                patientDto.getFirstName(),
+                patientDto.getBirthdate(),
+                patientDto.getSex(),
+                patientDto.getAddress(),
+                patientDto.getPhone());
+    }
+
+
+    /**
+     Copy the editable fields of a dto onto an existing patient entity.
+     @param patientDto the patient dto holding the new values.
+     @param patient the patient entity to update.
+     */
+    public void updateEntity(PatientDto patientDto, Patient patient) {
+        patient.setLastName(patientDto.getLastName());
+        patient.setFirstName(patientDto.getFirstName());
+        patient.setAddress(patientDto.getAddress());
+        patient.setPhone(patientDto.getPhone());
+        patient.setBirthdate(patientDto.getBirthdate());
+        patient.setSex(patientDto.getSex());
+    }
+}
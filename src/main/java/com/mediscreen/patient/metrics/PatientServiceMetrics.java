@@ -0,0 +1,80 @@
+package com.mediscreen.patient.metrics;
+
+import com.mediscreen.patient.exception.DuplicatePatientException;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.ValidationException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Times every public {@code PatientService} operation into the {@code patient.service} timer,
+ * tagged with the operation and its outcome: success, not_found, conflict, invalid or error.
+ * The timer count gives the number of calls per operation and outcome.
+ */
+@Aspect
+@Component
+public class PatientServiceMetrics {
+
+    public static final String METRIC_NAME = "patient.service";
+
+    private static final Map<String, String> OPERATIONS = Map.of(
+            "findPatientById", "find-by-id",
+            "findVersionedPatient", "find-by-id",
+            "findPatientByFamilyName", "find-by-name",
+            "getAllPatients", "list",
+            "getPatientListVersion", "list",
+            "getVersionedPatientList", "list",
+            "createPatient", "create",
+            "updatePatient", "update",
+            "deletePatient", "delete");
+
+    private final MeterRegistry meterRegistry;
+
+    public PatientServiceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+
+    @Around("execution(public * com.mediscreen.patient.service.PatientService.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        String methodName = joinPoint.getSignature().getName();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable ex) {
+            outcome = outcome(ex);
+            throw ex;
+        } finally {
+            sample.stop(Timer.builder(METRIC_NAME)
+                    .description("Patient service operations")
+                    .tag("operation", OPERATIONS.getOrDefault(methodName, methodName))
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+
+    static String outcome(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PatientNotFoundException) {
+                return "not_found";
+            }
+            if (cause instanceof PatientVersionConflictException || cause instanceof DuplicatePatientException) {
+                return "conflict";
+            }
+            // also raised by Hibernate on flush, possibly wrapped in a transaction exception
+            if (cause instanceof ValidationException) {
+                return "invalid";
+            }
+        }
+        return "error";
+    }
+}
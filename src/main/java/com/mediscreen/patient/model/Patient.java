@@ -1,28 +1,53 @@
 package com.mediscreen.patient.model;
 
+import com.mediscreen.patient.util.PatientNames;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 
 
+import java.time.Instant;
 import java.time.LocalDate;
 
 
 @Entity
+@Table(name = "patient", indexes = {
+        @Index(name = "idx_patient_name_birthdate", columnList = "last_name, first_name, birthdate"),
+        @Index(name = "idx_patient_name_key", columnList = "last_name_key, first_name, birthdate"),
+        @Index(name = "idx_patient_birthdate_sex", columnList = "birthdate, sex")
+})
 public class Patient {
 
+    /**
+     * Allocated by blocks from the patient_seq sequence (a one-row table on MySQL) rather than by the
+     * identity column, so that Hibernate can batch inserts.
+     */
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patient_seq")
+    @SequenceGenerator(name = "patient_seq", sequenceName = "patient_seq", allocationSize = 50)
     private int id;
 
     @NotBlank(message = "Last Name is mandatory")
+    @Column(name = "last_name")
     private String lastName;
 
+    /** Normalized last name, see {@link PatientNames#normalize(String)}, for case and accent insensitive search. */
+    @Column(name = "last_name_key")
+    private String lastNameKey;
+
     @NotBlank(message = "First Name is mandatory")
+    @Column(name = "first_name")
     private String firstName;
 
     @NotNull(message = "Birthday is mandatory")
@@ -35,6 +60,13 @@ public class Patient {
 
     private String phone;
 
+    /** Incremented on every update, used for optimistic locking and as the ETag of the patient. */
+    @Version
+    private long version;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+
 
     public Patient(String lastName, String firstName, LocalDate birthdate, String sex, String address, String phone) {
         this.lastName = lastName;
@@ -53,6 +85,17 @@ public class Patient {
     public Patient() {
     }
 
+    /**
+     * Derives the normalized last name and stamps the modification time. Also called before bulk updates,
+     * which bypass the entity callbacks.
+     */
+    @PrePersist
+    @PreUpdate
+    public void beforeWrite() {
+        this.lastNameKey = PatientNames.normalize(lastName);
+        this.lastModified = Instant.now();
+    }
+
     public int getId() {
         return id;
     }
@@ -69,6 +112,10 @@ public class Patient {
         this.lastName = lastName;
     }
 
+    public String getLastNameKey() {
+        return lastNameKey;
+    }
+
     public String getFirstName() {
         return firstName;
     }
@@ -108,4 +155,12 @@ public class Patient {
     public void setPhone(String phone) {
         this.phone = phone;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
 }
@@ -0,0 +1,84 @@
+package com.mediscreen.patient.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+
+/**
+ * One changed field of a patient in the audit log.
+ * Rows are inserted in batches by {@link com.mediscreen.patient.audit.PatientAuditService} and never updated.
+ */
+@Entity
+@Table(name = "patient_audit")
+public class PatientAudit {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(name = "patient_id", nullable = false)
+    private int patientId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "action", nullable = false, length = 10)
+    private PatientChangeType action;
+
+    @Column(name = "field", nullable = false, length = 20)
+    private String field;
+
+    @Column(name = "old_value", length = 100)
+    private String oldValue;
+
+    @Column(name = "new_value", length = 100)
+    private String newValue;
+
+    @Column(name = "actor", nullable = false, length = 100)
+    private String actor;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+
+
+    public PatientAudit() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public PatientChangeType getAction() {
+        return action;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    public String getNewValue() {
+        return newValue;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,67 @@
+package com.mediscreen.patient.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+
+/**
+ * One entry of the append-only patient change log, written in the transaction of the change.
+ * Rows are inserted by {@link com.mediscreen.patient.service.PatientChangeService} and never updated.
+ */
+@Entity
+@Table(name = "patient_change")
+public class PatientChange {
+
+    /**
+     * Auto-increment column rather than a pooled sequence: consumers read the log in sequence order, which must
+     * follow the insertion order across application instances.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private long sequence;
+
+    @Column(name = "patient_id", nullable = false)
+    private int patientId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 10)
+    private PatientChangeType type;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+
+
+    public PatientChange(int patientId, PatientChangeType type, Instant changedAt) {
+        this.patientId = patientId;
+        this.type = type;
+        this.changedAt = changedAt;
+    }
+
+    public PatientChange() {
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public PatientChangeType getType() {
+        return type;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
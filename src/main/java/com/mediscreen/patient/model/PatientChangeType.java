@@ -0,0 +1,7 @@
+package com.mediscreen.patient.model;
+
+public enum PatientChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
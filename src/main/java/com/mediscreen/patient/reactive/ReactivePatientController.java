@@ -0,0 +1,308 @@
+package com.mediscreen.patient.reactive;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.audit.PatientAuditService;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientPage;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
+import com.mediscreen.patient.service.PatientSearchMode;
+import com.mediscreen.patient.service.PatientService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.validation.Valid;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Instant;
+
+/**
+ * WebFlux counterpart of {@link com.mediscreen.patient.controller.PatientController}, active with the
+ * {@code reactive} profile, exposing the same contract.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/patient")
+public class ReactivePatientController {
+
+
+    private final ReactivePatientService reactivePatientService;
+
+
+    public ReactivePatientController(ReactivePatientService reactivePatientService) {
+        this.reactivePatientService = reactivePatientService;
+    }
+
+
+
+    private static final Logger log = LogManager.getLogger(ReactivePatientController.class);
+
+
+
+    /**
+     * Find patient by id response entity. The patient and its version come from the same read, so the entity tag
+     * always matches the body; a request answered with 304 (Not Modified) does not serialize the patient.
+     *
+     * @param id the id
+     * @param exchange the exchange, holding the If-None-Match and If-Modified-Since headers
+     * @return the response entity
+     */
+    @GetMapping("/find/{id}")
+    @Operation(summary = "Find a patient by ID", description = "Returns the patient with the given ID")
+    @ApiResponse(responseCode = "200", description = "Patient found")
+    @ApiResponse(responseCode = "304", description = "Patient not modified")
+    @ApiResponse(responseCode = "404", description = "Patient not found")
+    public Mono<ResponseEntity<PatientDto>> findPatientById(@PathVariable int id, ServerWebExchange exchange) {
+
+        log.debug("Find patient by id request received, id: {}", id);
+        return reactivePatientService.findVersionedPatient(id)
+                .map(patient -> {
+                    PatientVersion version = patient.version();
+                    if (checkNotModified(exchange, version.eTag(), version.lastModified())) {
+                        return ReactivePatientController.<PatientDto>notModified(version.eTag(), version.lastModified());
+                    }
+                    return withValidators(ResponseEntity.ok(), version.eTag(), version.lastModified()).body(patient.patient());
+                })
+                .onErrorResume(PatientNotFoundException.class, ex -> {
+                    log.error("PatientNotFoundException: {}", ex.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+                });
+    }
+
+
+    /**
+     * Find patient by family name response entity.
+     *
+     * @param familyName of the patient
+     * @return the patient, or an error handled as 404 (Not Found)
+     */
+    @GetMapping("/finder/{familyName}")
+    @Operation(summary = "Find a patient by family name", description = "Returns the patient with the lowest id among those with the given family name, matched case and accent insensitively")
+    @ApiResponse(responseCode = "200", description = "Patient found")
+    @ApiResponse(responseCode = "404", description = "Patient not found")
+    public Mono<PatientDto> findPatientByFamilyName(@PathVariable String familyName) {
+
+        log.debug("Find patient by family name request received, family name: {}", familyName);
+        return reactivePatientService.findPatientByFamilyName(familyName);
+    }
+
+
+    /**
+     * Search patients by family name.
+     *
+     * @param name the family name, or its beginning in prefix mode
+     * @param mode EXACT, PREFIX or INSENSITIVE (case and accents ignored)
+     * @param page the zero-based page number
+     * @param size the page size, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @return the matching patients, as a JSON array
+     */
+    @GetMapping("/search")
+    @Operation(summary = "Search patients by family name", description = "Returns every patient matching the family name, exactly, by prefix or ignoring case and accents")
+    @ApiResponse(responseCode = "200", description = "Matching patients, possibly none")
+    public Flux<PatientDto> searchPatients(@RequestParam String name,
+                                           @RequestParam(defaultValue = "EXACT") PatientSearchMode mode,
+                                           @RequestParam(defaultValue = "0") int page,
+                                           @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int size) {
+
+        log.debug("Search patients request received, name: {}, mode: {}", name, mode);
+        return reactivePatientService.searchPatients(name, mode, page, size);
+    }
+
+
+    /**
+     * Fuzzy search patients response entity.
+     *
+     * @param q     the words to look for in the names, address and phone number, possibly misspelled or partial
+     * @param limit the maximum number of results, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @return the ranked matching patients, as a JSON array
+     */
+    @GetMapping("/search/fuzzy")
+    @Operation(summary = "Fuzzy search patients", description = "Returns the patients best matching free text over their names, address and phone number, best first")
+    @ApiResponse(responseCode = "200", description = "Ranked matching patients, possibly none")
+    public Flux<PatientSearchHit> fuzzySearchPatients(@RequestParam String q,
+                                                      @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int limit) {
+
+        log.debug("Fuzzy search patients request received, query: {}, limit: {}", q, limit);
+        return reactivePatientService.fuzzySearchPatients(q, limit);
+    }
+
+
+    /**
+     * Get all patients response entity. The JSON array is written as rows are read from the database, at the pace
+     * the client reads it.
+     *
+     * @param exchange the exchange, holding the If-None-Match and If-Modified-Since headers
+     * @return the response entity
+     */
+    @GetMapping("/list")
+    @Operation(summary = "Get all patients", description = "Returns a list of all patients")
+    @ApiResponse(responseCode = "200", description = "List of patients")
+    @ApiResponse(responseCode = "204", description = "No patients found")
+    @ApiResponse(responseCode = "304", description = "List not modified")
+    public Mono<ResponseEntity<Flux<PatientDto>>> getAllPatients(ServerWebExchange exchange) {
+        return reactivePatientService.getPatientListVersion()
+                .map(version -> listResponse(version, exchange));
+    }
+
+
+    private ResponseEntity<Flux<PatientDto>> listResponse(PatientListVersion version, ServerWebExchange exchange) {
+        if (version.isEmpty()) {
+            log.debug("Get all patients request processed, no patients found");
+            return ResponseEntity.noContent().build();
+        }
+        if (checkNotModified(exchange, version.eTag(), version.lastModified())) {
+            log.debug("Get all patients request processed, list not modified: {}", version);
+            return notModified(version.eTag(), version.lastModified());
+        }
+        return withValidators(ResponseEntity.ok(), version.eTag(), version.lastModified())
+                .body(reactivePatientService.getAllPatients());
+    }
+
+
+    /**
+     * Get a page of patients.
+     *
+     * @param cursor the cursor returned with the previous page, absent for the first page
+     * @param size the page size, at most {@link PatientService#MAX_PAGE_SIZE}
+     * @return the page, or an error handled as 400 (Bad Request) for an invalid cursor
+     */
+    @GetMapping("/page")
+    @Operation(summary = "Get a page of patients", description = "Returns patients ordered by id, with the cursor of the next page")
+    @ApiResponse(responseCode = "200", description = "Page of patients")
+    @ApiResponse(responseCode = "400", description = "Invalid cursor")
+    public Mono<PatientPage> getPatientPage(@RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "" + PatientService.DEFAULT_PAGE_SIZE) int size) {
+
+        log.debug("Get patients page request received, cursor: {}, size: {}", cursor, size);
+        return reactivePatientService.getPatientPage(cursor, size);
+    }
+
+
+    /**
+     * Stream all patients as newline-delimited JSON, with backpressure from the client down to the database.
+     *
+     * @return the patients
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream all patients", description = "Streams every patient as one JSON document per line")
+    @ApiResponse(responseCode = "200", description = "Stream of patients")
+    public Flux<PatientDto> streamAllPatients() {
+
+        log.debug("Stream all patients request received");
+        return reactivePatientService.getAllPatients();
+    }
+
+
+    /**
+     * Validate patient response entity.
+     *
+     * @param patientDto the patient dto
+     * @param idempotencyKey optional key of the request: a retry with the same key gets the patient created by the
+     *                       first request instead of creating another
+     * @param exchange the exchange, whose client scopes the idempotency key
+     * @return the created patient
+     */
+    @PostMapping("/validate")
+    @Operation(summary = "Validate a patient", description = "Validates and creates a new patient")
+    @ApiResponse(responseCode = "200", description = "Patient created")
+    @ApiResponse(responseCode = "400", description = "Invalid patient details or idempotency key")
+    @ApiResponse(responseCode = "409", description = "Idempotency key still used by a request in progress")
+    @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different patient")
+    public Mono<PatientDto> validatePatient(@Valid @RequestBody PatientDto patientDto,
+                                            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                            ServerWebExchange exchange) {
+
+        log.debug("Validate patient request received, patient: {}", patientDto);
+        return idempotencyKey == null
+                ? reactivePatientService.createPatient(patientDto)
+                : client(exchange).flatMap(client -> reactivePatientService.createPatient(patientDto, client, idempotencyKey));
+    }
+
+
+    /**
+     * Update patient.
+     *
+     * @param id the id
+     * @param patientDto the patient dto
+     * @param ifMatch the ETag the patient must still have, absent to update it whatever its version
+     * @return the updated patient, or an error handled as 404 (Not Found) or 412 (Precondition Failed)
+     */
+    @PostMapping("/update/{id}")
+    @Operation(summary = "Update a patient", description = "Updates an existing patient, if it still matches the If-Match ETag when given")
+    @ApiResponse(responseCode = "200", description = "Patient updated")
+    @ApiResponse(responseCode = "404", description = "Patient not found")
+    @ApiResponse(responseCode = "412", description = "Patient modified since the If-Match ETag")
+    public Mono<PatientDto> updatePatient(@PathVariable int id, @RequestBody PatientDto patientDto,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        log.debug("Update patient request received, id: {}, patient: {}", id, patientDto);
+        return reactivePatientService.updatePatient(id, patientDto, PatientVersion.parseIfMatch(id, ifMatch));
+    }
+
+
+    /**
+     * Delete a patient by id.
+     *
+     * @param id The id of the patient to delete.
+     * @return An HTTP 204 (No Content) response, or an error handled as 404 (Not Found).
+     */
+    @PostMapping("/delete/{id}")
+    @Operation(summary = "Delete a patient", description = "Deletes an existing patient by ID")
+    @ApiResponse(responseCode = "204", description = "Patient deleted")
+    @ApiResponse(responseCode = "404", description = "Patient not found")
+    public Mono<ResponseEntity<Void>> deletePatient(@PathVariable int id) {
+
+        return reactivePatientService.deletePatient(id)
+                .then(Mono.fromSupplier(() -> {
+                    log.debug("Deleted patient with id: {}", id);
+                    return ResponseEntity.noContent().<Void>build();
+                }));
+    }
+
+
+    /**
+     * The client the request comes from, as the servlet stack resolves it for read-your-writes: the authenticated
+     * user, otherwise the {@code X-User} header, otherwise the remote address.
+     */
+    static Mono<String> client(ServerWebExchange exchange) {
+        String header = exchange.getRequest().getHeaders().getFirst(PatientAuditService.ACTOR_HEADER);
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        String fallback = header != null && !header.isBlank() ? header.trim()
+                : remoteAddress == null ? "" : remoteAddress.getHostString();
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .defaultIfEmpty(fallback);
+    }
+
+
+    private static boolean checkNotModified(ServerWebExchange exchange, String eTag, Instant lastModified) {
+        return lastModified == null ? exchange.checkNotModified(eTag) : exchange.checkNotModified(eTag, lastModified);
+    }
+
+
+    private static <T> ResponseEntity<T> notModified(String eTag, Instant lastModified) {
+        return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag, lastModified).build();
+    }
+
+
+    private static ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder builder, String eTag, Instant lastModified) {
+        builder.eTag(eTag);
+        if (lastModified != null) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,165 @@
+package com.mediscreen.patient.reactive;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.util.PatientNames;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Non-blocking reads of patients through R2DBC, mirroring the queries of
+ * {@link com.mediscreen.patient.repository.PatientRepository}. Rows are mapped straight to {@link PatientDto}.
+ */
+@Repository
+@Profile("reactive")
+public class ReactivePatientRepository {
+
+    private static final String SELECT_PATIENT =
+            "SELECT id, last_name, first_name, birthdate, sex, address, phone FROM patient";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactivePatientRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+
+    public Mono<PatientDto> findById(int id) {
+        return databaseClient.sql(SELECT_PATIENT + " WHERE id = :id")
+                .bind("id", id)
+                .map(ReactivePatientRepository::mapRow)
+                .one();
+    }
+
+
+    /**
+     * The patient and its version, read by the same statement.
+     */
+    public Mono<VersionedPatient> findVersionedById(int id) {
+        return databaseClient.sql("SELECT id, last_name, first_name, birthdate, sex, address, phone, version, last_modified "
+                        + "FROM patient WHERE id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> new VersionedPatient(mapRow(row, metadata), new PatientVersion(
+                        row.get("id", Integer.class), row.get("version", Long.class), toInstant(row.get("last_modified")))))
+                .one();
+    }
+
+
+    /**
+     * Matched on the normalized last name, as by the servlet stack. Several patients may share it: the one with
+     * the lowest id is returned.
+     */
+    public Mono<PatientDto> findByFamilyName(String lastName) {
+        return databaseClient.sql(SELECT_PATIENT + " WHERE last_name_key = :lastNameKey ORDER BY id LIMIT 1")
+                .bind("lastNameKey", PatientNames.normalize(lastName))
+                .map(ReactivePatientRepository::mapRow)
+                .one();
+    }
+
+
+    public Flux<PatientDto> findAll() {
+        return databaseClient.sql(SELECT_PATIENT + " ORDER BY id")
+                .map(ReactivePatientRepository::mapRow)
+                .all();
+    }
+
+
+    public Flux<PatientDto> findPageAfter(int afterId, int limit) {
+        return databaseClient.sql(SELECT_PATIENT + " WHERE id > :afterId ORDER BY id LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactivePatientRepository::mapRow)
+                .all();
+    }
+
+
+    public Flux<PatientDto> searchByLastName(String lastName, int offset, int limit) {
+        return search(" WHERE last_name = :value ORDER BY first_name, birthdate, id", lastName, offset, limit);
+    }
+
+
+    public Flux<PatientDto> searchByLastNameKey(String lastNameKey, int offset, int limit) {
+        return search(" WHERE last_name_key = :value ORDER BY first_name, birthdate, id", lastNameKey, offset, limit);
+    }
+
+
+    /**
+     * @param pattern a LIKE pattern on the normalized last name, using '!' as escape character
+     */
+    public Flux<PatientDto> searchByLastNameKeyLike(String pattern, int offset, int limit) {
+        return search(" WHERE last_name_key LIKE :value ESCAPE '!' ORDER BY last_name_key, first_name, birthdate, id",
+                pattern, offset, limit);
+    }
+
+
+    /**
+     * Same aggregates as {@link com.mediscreen.patient.repository.PatientRepository#findListVersion()}.
+     */
+    public Mono<PatientListVersion> findListVersion() {
+        return databaseClient.sql("SELECT COUNT(*) AS patients, COALESCE(SUM(version), 0) AS version_sum, "
+                        + "MAX(last_modified) AS last_modified FROM patient")
+                .map((row, metadata) -> new PatientListVersion(toLong(row.get("patients")), toLong(row.get("version_sum")),
+                        toInstant(row.get("last_modified"))))
+                .one();
+    }
+
+
+    private Flux<PatientDto> search(String where, String value, int offset, int limit) {
+        return databaseClient.sql(SELECT_PATIENT + where + " LIMIT :limit OFFSET :offset")
+                .bind("value", value)
+                .bind("limit", limit)
+                .bind("offset", offset)
+                .map(ReactivePatientRepository::mapRow)
+                .all();
+    }
+
+
+    static PatientDto mapRow(Row row, RowMetadata metadata) {
+        PatientDto patient = new PatientDto(
+                row.get("last_name", String.class),
+                row.get("first_name", String.class),
+                row.get("birthdate", LocalDate.class),
+                row.get("sex", String.class),
+                row.get("address", String.class),
+                row.get("phone", String.class));
+        patient.setId(row.get("id", Integer.class));
+        return patient;
+    }
+
+
+    /** Aggregates come back as BIGINT or DECIMAL depending on the database. */
+    private static Long toLong(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+
+
+    /** Timestamps come back with or without offset depending on the column type; naive ones are UTC. */
+    private static Instant toInstant(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Instant instant) {
+            return instant;
+        } else if (value instanceof OffsetDateTime offsetDateTime) {
+            return offsetDateTime.toInstant();
+        } else if (value instanceof ZonedDateTime zonedDateTime) {
+            return zonedDateTime.toInstant();
+        } else if (value instanceof LocalDateTime localDateTime) {
+            return localDateTime.toInstant(ZoneOffset.UTC);
+        }
+        throw new IllegalStateException("Unexpected timestamp type: " + value.getClass().getName());
+    }
+}
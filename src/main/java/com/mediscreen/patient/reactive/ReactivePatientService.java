@@ -0,0 +1,221 @@
+package com.mediscreen.patient.reactive;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientPage;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
+import com.mediscreen.patient.service.PatientCursor;
+import com.mediscreen.patient.service.PatientSearchMode;
+import com.mediscreen.patient.service.PatientService;
+import com.mediscreen.patient.util.PatientNames;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link PatientService}.
+ * <p>
+ * Reads go through R2DBC. Writes are delegated to {@link PatientService} on the bounded elastic scheduler, so
+ * that validation, the change log and cache invalidation stay in a single JPA transaction as in the servlet stack.
+ */
+@Service
+@Profile("reactive")
+public class ReactivePatientService {
+
+    private static final Logger log = LogManager.getLogger(ReactivePatientService.class);
+
+    private final ReactivePatientRepository reactivePatientRepository;
+    private final PatientService patientService;
+    private final PatientCache patientCache;
+    private final IdempotencyStore idempotencyStore;
+
+    public ReactivePatientService(ReactivePatientRepository reactivePatientRepository, PatientService patientService,
+                                  PatientCache patientCache, IdempotencyStore idempotencyStore) {
+        this.reactivePatientRepository = reactivePatientRepository;
+        this.patientService = patientService;
+        this.patientCache = patientCache;
+        this.idempotencyStore = idempotencyStore;
+    }
+
+
+    /**
+     Find a patient by id, from the cache when it holds it.
+     @param id The id of the patient to retrieve.
+     @return A {@link PatientDto}, or an error with {@link PatientNotFoundException} if the patient could not be found.
+     */
+    public Mono<PatientDto> findPatientById(int id) {
+        return Mono.defer(() -> {
+            VersionedPatient cached = patientCache.getIfPresentById(id);
+            return cached != null ? Mono.just(cached.patient()) : reactivePatientRepository.findById(id);
+        }).switchIfEmpty(Mono.error(() -> new PatientNotFoundException(id)));
+    }
+
+
+    /**
+     Find a patient by id with its version, both from one read, from the cache when it holds them.
+     @param id The id of the patient to retrieve.
+     @return A {@link VersionedPatient}, or an error with {@link PatientNotFoundException} if the patient could not be found.
+     */
+    public Mono<VersionedPatient> findVersionedPatient(int id) {
+        return Mono.defer(() -> {
+            VersionedPatient cached = patientCache.getIfPresentById(id);
+            return cached != null ? Mono.just(cached) : reactivePatientRepository.findVersionedById(id);
+        }).switchIfEmpty(Mono.error(() -> new PatientNotFoundException(id)));
+    }
+
+
+    /**
+     Find a patient by familyName.
+     @param familyName of the patient to retrieve.
+     @return A {@link PatientDto}, or an error with {@link PatientNotFoundException} if the patient could not be found.
+     */
+    public Mono<PatientDto> findPatientByFamilyName(String familyName) {
+        return reactivePatientRepository.findByFamilyName(familyName)
+                .switchIfEmpty(Mono.error(() -> new PatientNotFoundException(familyName)));
+    }
+
+
+    /**
+     Get the version of the patient list, computed by a single aggregate query.
+     @return A {@link PatientListVersion}.
+     */
+    public Mono<PatientListVersion> getPatientListVersion() {
+        return reactivePatientRepository.findListVersion();
+    }
+
+
+    /**
+     Get all patients ordered by id, emitted as they are read and as fast as the subscriber requests them.
+     @return A {@link Flux} of {@link PatientDto}.
+     */
+    public Flux<PatientDto> getAllPatients() {
+        return reactivePatientRepository.findAll();
+    }
+
+
+    /**
+     Get one page of patients ordered by id, see {@link PatientService#getPatientPage(String, int)}.
+     @param cursor the cursor returned with the previous page, or null for the first page.
+     @param size the requested page size, clamped between 1 and {@link PatientService#MAX_PAGE_SIZE}.
+     @return A {@link PatientPage}, or an error with {@link com.mediscreen.patient.exception.InvalidCursorException}.
+     */
+    public Mono<PatientPage> getPatientPage(String cursor, int size) {
+
+        int pageSize = Math.min(Math.max(size, 1), PatientService.MAX_PAGE_SIZE);
+        return Mono.fromCallable(() -> PatientCursor.decode(cursor))
+                .flatMap(afterId -> reactivePatientRepository.findPageAfter(afterId, pageSize + 1).collectList())
+                .map(patients -> {
+                    boolean hasNext = patients.size() > pageSize;
+                    List<PatientDto> page = hasNext ? patients.subList(0, pageSize) : patients;
+                    String nextCursor = hasNext ? PatientCursor.encode(page.get(pageSize - 1).getId()) : null;
+                    return new PatientPage(page, nextCursor);
+                });
+    }
+
+
+    /**
+     Search patients by family name, one page at a time, see
+     {@link PatientService#searchPatients(String, PatientSearchMode, int, int)}.
+     @param familyName the family name, or its beginning for {@link PatientSearchMode#PREFIX}.
+     @param mode how the family name is matched.
+     @param page the zero-based page number.
+     @param size the page size, clamped between 1 and {@link PatientService#MAX_PAGE_SIZE}.
+     @return A {@link Flux} of {@link PatientDto}, empty when nothing matches.
+     */
+    public Flux<PatientDto> searchPatients(String familyName, PatientSearchMode mode, int page, int size) {
+
+        log.debug("Searching patients with family name: {}, mode: {}, page: {}, size: {}", familyName, mode, page, size);
+        int limit = Math.min(Math.max(size, 1), PatientService.MAX_PAGE_SIZE);
+        int offset = Math.max(page, 0) * limit;
+        String key = PatientNames.normalize(familyName);
+        if (key == null || key.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return switch (mode) {
+            case EXACT -> reactivePatientRepository.searchByLastName(familyName, offset, limit);
+            case INSENSITIVE -> reactivePatientRepository.searchByLastNameKey(key, offset, limit);
+            case PREFIX -> reactivePatientRepository.searchByLastNameKeyLike(PatientNames.escapeLike(key) + "%", offset, limit);
+        };
+    }
+
+
+    /**
+     Search patients by free text over their names, address and phone number. The index is in memory, but the
+     patients missing from the cache are read through JPA, hence on the bounded elastic scheduler.
+     @param query the words to look for, in any field.
+     @param limit the maximum number of results.
+     @return the ranked matching patients, best first.
+     */
+    public Flux<PatientSearchHit> fuzzySearchPatients(String query, int limit) {
+        return Mono.fromCallable(() -> patientService.fuzzySearchPatients(query, limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(hits -> hits);
+    }
+
+
+    /**
+     Create a new patient.
+     @param patientDto A {@link PatientDto} representing the patient to create.
+     @return A {@link PatientDto} representing the created patient.
+     */
+    public Mono<PatientDto> createPatient(PatientDto patientDto) {
+        return Mono.fromCallable(() -> patientService.createPatient(patientDto))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+
+    /**
+     Create a new patient once per idempotency key, see {@link IdempotencyStore}. A retry waiting for the first
+     request waits on the bounded elastic scheduler.
+     @param patientDto A {@link PatientDto} representing the patient to create.
+     @param client the client sending the request, keys of different clients never match.
+     @param idempotencyKey the key of the request.
+     @return A {@link PatientDto} representing the patient created by the first request with this key.
+     */
+    public Mono<PatientDto> createPatient(PatientDto patientDto, String client, String idempotencyKey) {
+        String fingerprint = IdempotencyStore.fingerprint(patientDto.getLastName(), patientDto.getFirstName(),
+                patientDto.getBirthdate(), patientDto.getSex(), patientDto.getAddress(), patientDto.getPhone(), false);
+        return Mono.fromCallable(() -> idempotencyStore.execute("POST /api/patient/validate", client, idempotencyKey,
+                        fingerprint, () -> patientService.createPatient(patientDto)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+
+    /**
+     Update an existing patient.
+     @param id The id of the patient to update.
+     @param patientDto A {@link PatientDto} representing the updated patient information.
+     @param expectedVersion the version the patient must still have, or null to update whatever its version.
+     @return A {@link PatientDto}, or an error with {@link PatientNotFoundException} if the patient could not be found.
+     */
+    public Mono<PatientDto> updatePatient(int id, PatientDto patientDto, Long expectedVersion) {
+        return Mono.fromCallable(() -> patientService.updatePatient(id, patientDto, expectedVersion))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+
+    /**
+     Delete a patient by id.
+     @param id the id of the patient to delete
+     @return completion, or an error with {@link PatientNotFoundException} if the patient could not be found.
+     */
+    public Mono<Void> deletePatient(int id) {
+        return Mono.fromCallable(() -> {
+                    patientService.deletePatient(id);
+                    return id;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+}
@@ -0,0 +1,29 @@
+package com.mediscreen.patient.repository;
+
+import com.mediscreen.patient.model.PatientChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PatientChangeRepository extends JpaRepository<PatientChange, Long> {
+
+
+    @Query("SELECT c FROM PatientChange c WHERE c.sequence > :since ORDER BY c.sequence ASC")
+    List<PatientChange> findChangesSince(@Param("since") long since, Pageable pageable);
+
+
+    @Query("SELECT MAX(c.sequence) FROM PatientChange c WHERE c.changedAt <= :settled")
+    Optional<Long> findLastSequenceBefore(@Param("settled") Instant settled);
+
+
+    @Query("SELECT DISTINCT c.patientId FROM PatientChange c WHERE c.changedAt >= :changedAt")
+    List<Integer> findPatientIdsChangedSince(@Param("changedAt") Instant changedAt);
+
+}
@@ -0,0 +1,96 @@
+package com.mediscreen.patient.repository;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC access to the patient table for reads that must not go through the persistence context.
+ */
+@Repository
+public class PatientJdbcRepository {
+
+    private static final String SELECT_ALL =
+            "SELECT id, last_name, first_name, birthdate, sex, address, phone, version, last_modified FROM patient ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public PatientJdbcRepository(JdbcTemplate jdbcTemplate,
+                                 @Value("${patient.stream.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+
+    /**
+     Stream every patient ordered by id through a forward-only cursor.
+     Rows are handed to the consumer one at a time and never collected.
+     @param consumer receives each patient as soon as its row is read.
+     */
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<PatientDto> consumer) {
+        streamRows(rs -> consumer.accept(mapRow(rs)));
+    }
+
+
+    /**
+     Same as {@link #streamAll(Consumer)}, with the version of each patient.
+     @param consumer receives each patient as soon as its row is read.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllViews(Consumer<PatientView> consumer) {
+        streamRows(rs -> consumer.accept(mapView(rs)));
+    }
+
+
+    private void streamRows(RowCallbackHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    SELECT_ALL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, handler);
+    }
+
+
+    static PatientDto mapRow(ResultSet rs) throws SQLException {
+        Date birthdate = rs.getDate("birthdate");
+        PatientDto patient = new PatientDto(
+                rs.getString("last_name"),
+                rs.getString("first_name"),
+                birthdate == null ? null : birthdate.toLocalDate(),
+                rs.getString("sex"),
+                rs.getString("address"),
+                rs.getString("phone"));
+        patient.setId(rs.getInt("id"));
+        return patient;
+    }
+
+
+    static PatientView mapView(ResultSet rs) throws SQLException {
+        Date birthdate = rs.getDate("birthdate");
+        Timestamp lastModified = rs.getTimestamp("last_modified");
+        return new PatientView(
+                rs.getInt("id"),
+                rs.getString("last_name"),
+                rs.getString("first_name"),
+                birthdate == null ? null : birthdate.toLocalDate(),
+                rs.getString("sex"),
+                rs.getString("address"),
+                rs.getString("phone"),
+                rs.getLong("version"),
+                lastModified == null ? null : lastModified.toInstant());
+    }
+}
@@ -1,18 +1,159 @@
 package com.mediscreen.patient.repository;
 
+import com.mediscreen.patient.dto.PatientBirthdate;
+import com.mediscreen.patient.dto.PatientBirthdateCount;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientView;
 import com.mediscreen.patient.model.Patient;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+/**
+ * Queries run in read-only transactions, served by a replica when replicas are configured, unless they join the
+ * transaction of a write. The read endpoints select {@link PatientView} projections; entities are only loaded
+ * to be written.
+ */
 @Repository
+@Transactional(readOnly = true)
 public interface PatientRepository extends JpaRepository<Patient, Integer> {
 
+    /**
+     * Selects {@link PatientView} projections, version included. The queries using it also carry the Hibernate
+     * read-only hint, which keeps anything they load out of dirty checking.
+     */
+    String SELECT_VIEW = "SELECT new com.mediscreen.patient.dto.PatientView("
+            + "p.id, p.lastName, p.firstName, p.birthdate, p.sex, p.address, p.phone, p.version, p.lastModified) FROM Patient p ";
 
-    @Query("SELECT p FROM Patient p WHERE p.lastName = :lastName")
-    Optional<Patient> findByFamilyName(@Param("lastName") String lastName);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT p FROM Patient p WHERE p.birthdate = :birthdate")
+    List<Patient> findByBirthdate(@Param("birthdate") LocalDate birthdate);
+
+
+    @Query("SELECT p FROM Patient p WHERE p.id > :afterId ORDER BY p.id ASC")
+    List<Patient> findPageAfter(@Param("afterId") int afterId, Pageable pageable);
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.id = :id")
+    Optional<PatientView> findViewById(@Param("id") int id);
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.id IN :ids")
+    List<PatientView> findViewsByIds(@Param("ids") Collection<Integer> ids);
+
+
+    /**
+     * Several patients may share a normalized family name: the one with the lowest id is returned.
+     * @param lastNameKey the family name normalized by {@link com.mediscreen.patient.util.PatientNames#normalize(String)}
+     */
+    default Optional<PatientView> findViewByLastNameKey(String lastNameKey) {
+        return findViewsByLastNameKeyOrderById(lastNameKey, PageRequest.of(0, 1)).stream().findFirst();
+    }
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.lastNameKey = :lastNameKey ORDER BY p.id ASC")
+    List<PatientView> findViewsByLastNameKeyOrderById(@Param("lastNameKey") String lastNameKey, Pageable pageable);
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "ORDER BY p.id ASC")
+    List<PatientView> findAllViews();
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.id > :afterId ORDER BY p.id ASC")
+    List<PatientView> findViewPageAfter(@Param("afterId") int afterId, Pageable pageable);
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.lastName = :lastName ORDER BY p.firstName, p.birthdate, p.id")
+    List<PatientView> searchViewsByLastName(@Param("lastName") String lastName, Pageable pageable);
+
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.lastNameKey = :lastNameKey ORDER BY p.firstName, p.birthdate, p.id")
+    List<PatientView> searchViewsByLastNameKey(@Param("lastNameKey") String lastNameKey, Pageable pageable);
+
+
+    /**
+     * @param pattern a LIKE pattern on the normalized last name, using '!' as escape character
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(SELECT_VIEW + "WHERE p.lastNameKey LIKE :pattern ESCAPE '!' ORDER BY p.lastNameKey, p.firstName, p.birthdate, p.id")
+    List<PatientView> searchViewsByLastNameKeyLike(@Param("pattern") String pattern, Pageable pageable);
+
+
+    /**
+     * Single aggregate query: a deleted row lowers the count even when it was not the most recent one.
+     */
+    @Query("SELECT new com.mediscreen.patient.dto.PatientListVersion(COUNT(p), COALESCE(SUM(p.version), 0L), MAX(p.lastModified)) FROM Patient p")
+    PatientListVersion findListVersion();
+
+
+    /**
+     * Grouped on {@code idx_patient_birthdate_sex}, so the count is read from the index alone and one row per
+     * birthdate and sex is returned instead of one per patient.
+     */
+    @Query("SELECT new com.mediscreen.patient.dto.PatientBirthdateCount(p.birthdate, p.sex, COUNT(p)) FROM Patient p GROUP BY p.birthdate, p.sex")
+    List<PatientBirthdateCount> countByBirthdateAndSex();
+
+
+    @Query("SELECT new com.mediscreen.patient.dto.PatientBirthdate(p.id, p.birthdate) FROM Patient p WHERE p.id IN :ids")
+    List<PatientBirthdate> findBirthdatesByIds(@Param("ids") Collection<Integer> ids);
+
+
+    /**
+     * Single statement update, without loading the patient: the version is incremented here since the entity
+     * lifecycle is bypassed, and the caller must call {@link Patient#beforeWrite()} first.
+     * @return the number of updated rows, 0 when no patient has this id
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Patient p SET p.lastName = :#{#patient.lastName}, p.lastNameKey = :#{#patient.lastNameKey}, "
+            + "p.firstName = :#{#patient.firstName}, p.birthdate = :#{#patient.birthdate}, p.sex = :#{#patient.sex}, "
+            + "p.address = :#{#patient.address}, p.phone = :#{#patient.phone}, "
+            + "p.version = p.version + 1, p.lastModified = :#{#patient.lastModified} WHERE p.id = :#{#patient.id}")
+    int updateFields(@Param("patient") Patient patient);
+
+
+    /**
+     * Same as {@link #updateFields(Patient)}, only if the patient still has the expected version.
+     * @return the number of updated rows, 0 when no patient has this id and version
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Patient p SET p.lastName = :#{#patient.lastName}, p.lastNameKey = :#{#patient.lastNameKey}, "
+            + "p.firstName = :#{#patient.firstName}, p.birthdate = :#{#patient.birthdate}, p.sex = :#{#patient.sex}, "
+            + "p.address = :#{#patient.address}, p.phone = :#{#patient.phone}, "
+            + "p.version = p.version + 1, p.lastModified = :#{#patient.lastModified} "
+            + "WHERE p.id = :#{#patient.id} AND p.version = :version")
+    int updateFieldsIfVersion(@Param("patient") Patient patient, @Param("version") long version);
+
+
+    /**
+     * Single statement delete, where {@link #delete(Object)} loads the patient first.
+     * @return the number of deleted rows, 0 when no patient has this id
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Patient p WHERE p.id = :id")
+    int deleteReturningCount(@Param("id") int id);
 
 }
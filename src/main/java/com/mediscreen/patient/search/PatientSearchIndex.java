@@ -0,0 +1,503 @@
+package com.mediscreen.patient.search;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientChangeEntry;
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.service.PatientChangeService;
+import com.mediscreen.patient.service.PatientService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of the patients for fuzzy search over last name, first name, address and phone, see
+ * {@link PatientSearchTokenizer} for the terms.
+ * <p>
+ * Each patient is a document, numbered in the order it was indexed; each term has the sorted array of the
+ * documents holding it. A query adds up, per document, the scores of the query terms it holds, and keeps the
+ * best. Trigrams held by more than half of the documents are skipped when the index is large: they barely tell
+ * patients apart but would be the longest arrays to read.
+ * <p>
+ * An update indexes the patient as a new document and marks the previous one deleted, a delete only marks it.
+ * Deleted documents are purged from the arrays once they are a quarter of the index, whether deleted by updates
+ * or deletes, and the arrays left mostly empty are shrunk, so that the index does not grow with the writes.
+ * <p>
+ * Like {@code PatientDuplicateIndex}, the index is loaded at startup, kept in sync by the writes of this instance,
+ * and every {@code patient.search.sync-interval} by the change log, which also holds the writes of the other
+ * instances. A failed load is tried again every {@code patient.search.load-retry-interval}; a retried load never
+ * replaces a patient written since its page was read, nor adds back one deleted meanwhile. Reads share a lock
+ * that writes take exclusively.
+ */
+@Component
+public class PatientSearchIndex implements SmartInitializingSingleton {
+
+    private static final Logger log = LogManager.getLogger(PatientSearchIndex.class);
+
+    /** Lowest score of a result: half the trigrams of a last name word, or a whole address word. */
+    static final float MIN_SCORE = 3f;
+    private static final int SKIP_COMMON_TRIGRAMS_FROM = 1000;
+    private static final int PURGE_FROM = 1024;
+    /** Rough size of a term entry besides its characters and array: map node, string and postings headers. */
+    private static final int TERM_OVERHEAD_BYTES = 112;
+    /** Rough size of an id to document entry: map node and two boxed integers. */
+    private static final int ID_OVERHEAD_BYTES = 64;
+
+    /**
+     * A search result.
+     *
+     * @param id    the patient id
+     * @param score the sum of the scores of the query terms matched, higher is better
+     */
+    public record Match(int id, float score) {
+    }
+
+    private static final class Postings {
+        int[] documents = new int[2];
+        int size;
+
+        void add(int document) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+    }
+
+    private final PatientRepository patientRepository;
+    private final PatientChangeService patientChangeService;
+    private final int pageSize;
+    private final Duration retryInterval;
+    private final Duration syncInterval;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Integer, Integer> documentOfId = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int[] idOfDocument = new int[1024];
+    private int documentCount;
+    private int deletedCount;
+    private long termCharacters;
+    private long postingSlots;
+    /** Patients deleted while a retried load runs, which must not be added back from the pages it read before. */
+    private final Set<Integer> removedWhileLoading = new HashSet<>();
+
+    private volatile boolean loaded;
+    /** Last change log sequence applied to the index. */
+    private volatile long syncedSequence;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> retry;
+
+    public PatientSearchIndex(PatientRepository patientRepository, PatientChangeService patientChangeService,
+                              MeterRegistry meterRegistry,
+                              @Value("${patient.search.load-page-size:1000}") int pageSize,
+                              @Value("${patient.search.load-retry-interval:30s}") Duration retryInterval,
+                              @Value("${patient.search.sync-interval:5s}") Duration syncInterval) {
+        this.patientRepository = patientRepository;
+        this.patientChangeService = patientChangeService;
+        this.pageSize = pageSize;
+        this.retryInterval = retryInterval;
+        this.syncInterval = syncInterval;
+        Gauge.builder("patient.search.index.size", this, PatientSearchIndex::size)
+                .description("Patients in the search index")
+                .register(meterRegistry);
+        Gauge.builder("patient.search.index.memory", this, PatientSearchIndex::estimatedMemoryBytes)
+                .description("Estimated heap used by the search index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     Index every patient, by pages of {@code patient.search.load-page-size} ordered by id, before requests are served.
+     If the load fails, schedule it again every {@code patient.search.load-retry-interval}. Then apply the change
+     log every {@code patient.search.sync-interval}, unless it is zero.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        boolean loadedNow = load();
+        if (loadedNow && syncInterval.isZero()) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "patient-search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!loadedNow) {
+            long retryMillis = retryInterval.toMillis();
+            retry = executor.scheduleWithFixedDelay(this::retryLoad, retryMillis, retryMillis, TimeUnit.MILLISECONDS);
+        }
+        if (!syncInterval.isZero()) {
+            long syncMillis = syncInterval.toMillis();
+            executor.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     Index every patient. The changes made during the load are applied by the next sync.
+     @return whether the load succeeded.
+     */
+    boolean load() {
+        long start = System.nanoTime();
+        try {
+            long sequence = patientChangeService.getSettledSequence();
+            int afterId = 0;
+            List<PatientView> page;
+            do {
+                page = patientRepository.findViewPageAfter(afterId, PageRequest.of(0, pageSize));
+                for (PatientView patient : page) {
+                    putIfAbsent(patient);
+                    afterId = patient.id();
+                }
+            } while (page.size() == pageSize);
+            syncedSequence = sequence;
+            lock.writeLock().lock();
+            try {
+                loaded = true;
+                removedWhileLoading.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Search index loaded with {} patients, {} terms, about {} MB in {} ms", size(), termCount(),
+                    estimatedMemoryBytes() / (1024 * 1024), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (DataAccessException | TransactionException ex) {
+            log.warn("Search index not loaded, fuzzy search falls back to a family name prefix query until a retry " +
+                    "in {}: {}", retryInterval, ex.getMessage());
+            return false;
+        }
+    }
+
+
+    private void retryLoad() {
+        if (load()) {
+            retry.cancel(false);
+        }
+    }
+
+
+    /**
+     Apply the changes recorded since the last sync, those of the other instances included, with the current state
+     of their patients.
+     @throws DataAccessException if the change log cannot be read.
+     */
+    void sync() {
+        if (!loaded) {
+            return;
+        }
+        PatientChangeFeed feed;
+        do {
+            feed = patientChangeService.getChangesSince(syncedSequence, PatientService.MAX_PAGE_SIZE);
+            for (PatientChangeEntry change : feed.changes()) {
+                if (change.patient() == null) {
+                    remove(change.patientId());
+                } else {
+                    put(change.patientId(), change.patient());
+                }
+            }
+            syncedSequence = feed.lastSequence();
+        } while (feed.changes().size() == PatientService.MAX_PAGE_SIZE);
+    }
+
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (DataAccessException | TransactionException ex) {
+            log.warn("Search index not synced with the change log: {}", ex.getMessage());
+        }
+    }
+
+
+    /**
+     Index a patient, replacing its previous version.
+     */
+    public void put(int id, PatientDto patient) {
+        put(id, patient.getLastName(), patient.getFirstName(), patient.getAddress(), patient.getPhone());
+    }
+
+
+    public void put(Patient patient) {
+        put(patient.getId(), patient.getLastName(), patient.getFirstName(), patient.getAddress(), patient.getPhone());
+    }
+
+
+    void put(int id, String lastName, String firstName, String address, String phone) {
+        // tokenized out of the lock
+        Set<String> terms = PatientSearchTokenizer.indexTerms(lastName, firstName, address, phone);
+        lock.writeLock().lock();
+        try {
+            add(id, terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /** Index a loaded patient, unless it was written or deleted since its page was read. */
+    private void putIfAbsent(PatientView patient) {
+        Set<String> terms = PatientSearchTokenizer.indexTerms(patient.lastName(), patient.firstName(),
+                patient.address(), patient.phone());
+        lock.writeLock().lock();
+        try {
+            if (!documentOfId.containsKey(patient.id()) && !removedWhileLoading.contains(patient.id())) {
+                add(patient.id(), terms);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /** Index a patient as a new document, under the write lock. */
+    private void add(int id, Set<String> terms) {
+        markDeleted(documentOfId.get(id));
+        int document = documentCount++;
+        if (document == idOfDocument.length) {
+            idOfDocument = Arrays.copyOf(idOfDocument, document * 2);
+        }
+        idOfDocument[document] = id;
+        documentOfId.put(id, document);
+        for (String term : terms) {
+            Postings termPostings = postings.get(term);
+            if (termPostings == null) {
+                termPostings = new Postings();
+                postings.put(term, termPostings);
+                termCharacters += term.length();
+                postingSlots += termPostings.documents.length;
+            }
+            int capacity = termPostings.documents.length;
+            termPostings.add(document);
+            postingSlots += termPostings.documents.length - capacity;
+        }
+        purgeIfMostlyDeleted();
+    }
+
+
+    /**
+     Remove a patient, if indexed.
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                removedWhileLoading.add(id);
+            }
+            markDeleted(documentOfId.remove(id));
+            purgeIfMostlyDeleted();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private void markDeleted(Integer document) {
+        if (document != null && !deleted.get(document)) {
+            deleted.set(document);
+            deletedCount++;
+        }
+    }
+
+
+    private void purgeIfMostlyDeleted() {
+        if (deletedCount >= PURGE_FROM && deletedCount * 4 >= documentCount) {
+            purge();
+        }
+    }
+
+
+    /**
+     Renumber the live documents densely, dropping the deleted ones from every array, and shrink the arrays left
+     less than half full.
+     */
+    private void purge() {
+        int[] renumbered = new int[documentCount];
+        int live = 0;
+        for (int document = 0; document < documentCount; document++) {
+            if (deleted.get(document)) {
+                renumbered[document] = -1;
+            } else {
+                renumbered[document] = live;
+                idOfDocument[live] = idOfDocument[document];
+                documentOfId.put(idOfDocument[live], live);
+                live++;
+            }
+        }
+        postingSlots = 0;
+        Iterator<Map.Entry<String, Postings>> entries = postings.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Postings> entry = entries.next();
+            Postings termPostings = entry.getValue();
+            int size = 0;
+            for (int i = 0; i < termPostings.size; i++) {
+                int document = renumbered[termPostings.documents[i]];
+                if (document >= 0) {
+                    termPostings.documents[size++] = document;
+                }
+            }
+            if (size == 0) {
+                termCharacters -= entry.getKey().length();
+                entries.remove();
+            } else {
+                termPostings.size = size;
+                if (termPostings.documents.length > 2 * size) {
+                    termPostings.documents = Arrays.copyOf(termPostings.documents, Math.max(2, size));
+                }
+                postingSlots += termPostings.documents.length;
+            }
+        }
+        log.debug("Search index purged of {} deleted patients", deletedCount);
+        if (idOfDocument.length > 2 * Math.max(live, 512)) {
+            idOfDocument = Arrays.copyOf(idOfDocument, Math.max(live * 2, 1024));
+        }
+        documentCount = live;
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+
+    /**
+     Search patients by a free-text query.
+     @param query words or fragments of names, address or phone number, possibly misspelled.
+     @param limit the maximum number of results.
+     @return the best matches, best first, ties by id; empty for a blank query.
+     */
+    public List<Match> search(String query, int limit) {
+        Map<String, Float> terms = PatientSearchTokenizer.queryTerms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            float[] scores = new float[documentCount];
+            int[] touched = new int[64];
+            int touchedCount = 0;
+            for (Map.Entry<String, Float> term : terms.entrySet()) {
+                Postings termPostings = postings.get(term.getKey());
+                if (termPostings == null || isTooCommon(term.getKey(), termPostings)) {
+                    continue;
+                }
+                float score = term.getValue();
+                for (int i = 0; i < termPostings.size; i++) {
+                    int document = termPostings.documents[i];
+                    if (scores[document] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = document;
+                    }
+                    scores[document] += score;
+                }
+            }
+
+            Comparator<Match> worstFirst = Comparator.comparingDouble(Match::score)
+                    .thenComparing(Comparator.comparingInt(Match::id).reversed());
+            PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, worstFirst);
+            for (int i = 0; i < touchedCount; i++) {
+                int document = touched[i];
+                if (scores[document] < MIN_SCORE || deleted.get(document)) {
+                    continue;
+                }
+                best.add(new Match(idOfDocument[document], scores[document]));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            List<Match> matches = new ArrayList<>(best);
+            matches.sort(worstFirst.reversed());
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    private boolean isTooCommon(String term, Postings termPostings) {
+        return documentCount >= SKIP_COMMON_TRIGRAMS_FROM && termPostings.size * 2 > documentCount
+                && PatientSearchTokenizer.isTrigram(term);
+    }
+
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+
+    /**
+     @return the number of patients indexed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentOfId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     @return an estimate of the heap used by the index, in bytes, from the sizes of its arrays and maps.
+     */
+    public long estimatedMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return postingSlots * Integer.BYTES
+                    + termCharacters + (long) postings.size() * TERM_OVERHEAD_BYTES
+                    + (long) idOfDocument.length * Integer.BYTES
+                    + (long) documentOfId.size() * ID_OVERHEAD_BYTES
+                    + deleted.size() / 8;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
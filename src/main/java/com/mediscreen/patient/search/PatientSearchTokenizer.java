@@ -0,0 +1,208 @@
+package com.mediscreen.patient.search;
+
+import com.mediscreen.patient.util.PatientNames;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Terms of the patient search index. A term is the one-letter code of its field, a kind mark and a value:
+ * <ul>
+ *     <li>{@code =} a whole word, normalized as by {@link PatientNames#normalize(String)}, or all the digits of a
+ *     phone number;</li>
+ *     <li>{@code #} the Soundex key of a name word, to match misspellings that sound alike;</li>
+ *     <li>{@code ~} a trigram of a word, padded with {@code $} at both ends, or three consecutive digits of a phone
+ *     number, to match partial and misspelled words.</li>
+ * </ul>
+ * For instance the last name "Doe" gives {@code l=doe}, {@code l#D000}, {@code l~$do}, {@code l~doe} and
+ * {@code l~oe$}.
+ */
+public final class PatientSearchTokenizer {
+
+    /** Score of a whole word match, times the weight of the field. */
+    static final float WORD_SCORE = 4f;
+    /** Score of a phonetic match. */
+    static final float PHONETIC_SCORE = 2f;
+    /** Score of a match of every trigram of a query word, shared between its trigrams. */
+    static final float TRIGRAMS_SCORE = 2f;
+
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+    private static final Pattern NON_DIGIT = Pattern.compile("[^0-9]+");
+
+    /**
+     * The indexed fields, with the code prefixing their terms and the weight of their matches.
+     */
+    public enum Field {
+        LAST_NAME('l', 3f),
+        FIRST_NAME('f', 2f),
+        ADDRESS('a', 1f),
+        PHONE('p', 2f);
+
+        final char code;
+        final float weight;
+
+        Field(char code, float weight) {
+            this.code = code;
+            this.weight = weight;
+        }
+    }
+
+    private PatientSearchTokenizer() {
+    }
+
+
+    /**
+     Terms of the fields of one patient, each once.
+     @return the terms, empty when every field is null.
+     */
+    public static Set<String> indexTerms(String lastName, String firstName, String address, String phone) {
+        Set<String> terms = new LinkedHashSet<>();
+        addTextTerms(terms, Field.LAST_NAME, lastName, true);
+        addTextTerms(terms, Field.FIRST_NAME, firstName, true);
+        addTextTerms(terms, Field.ADDRESS, address, false);
+        String digits = digits(phone);
+        if (!digits.isEmpty()) {
+            terms.add(term(Field.PHONE, '=', digits));
+            for (int i = 0; i + 3 <= digits.length(); i++) {
+                terms.add(term(Field.PHONE, '~', digits.substring(i, i + 3)));
+            }
+        }
+        return terms;
+    }
+
+
+    /**
+     Terms of a free-text query, searched in every field, with the score of a match of each.
+     A word of digits only is searched as an address word and as a phone fragment; a query of digits only, such
+     as "555-0134", as one phone fragment.
+     @param query the query.
+     @return the score of each term, in query order, empty for a blank query.
+     */
+    public static Map<String, Float> queryTerms(String query) {
+        Map<String, Float> terms = new LinkedHashMap<>();
+        List<String> words = words(query);
+        boolean numeric = !words.isEmpty() && words.stream().allMatch(PatientSearchTokenizer::isDigits);
+        if (numeric) {
+            addPhoneQuery(terms, String.join("", words));
+        }
+        for (String word : words) {
+            if (isDigits(word)) {
+                addWordQuery(terms, Field.ADDRESS, word, false);
+                if (!numeric) {
+                    addPhoneQuery(terms, word);
+                }
+            } else {
+                addWordQuery(terms, Field.LAST_NAME, word, true);
+                addWordQuery(terms, Field.FIRST_NAME, word, true);
+                addWordQuery(terms, Field.ADDRESS, word, false);
+            }
+        }
+        return terms;
+    }
+
+
+    /**
+     @return whether the term is a trigram, the only kind of term common enough to be skipped in a query.
+     */
+    static boolean isTrigram(String term) {
+        return term.charAt(1) == '~';
+    }
+
+
+    private static void addTextTerms(Set<String> terms, Field field, String text, boolean phonetic) {
+        for (String word : words(text)) {
+            terms.add(term(field, '=', word));
+            if (phonetic) {
+                String soundex = PatientNames.soundex(word);
+                if (!soundex.isEmpty()) {
+                    terms.add(term(field, '#', soundex));
+                }
+            }
+            for (String gram : trigrams(word)) {
+                terms.add(term(field, '~', gram));
+            }
+        }
+    }
+
+
+    private static void addWordQuery(Map<String, Float> terms, Field field, String word, boolean phonetic) {
+        add(terms, term(field, '=', word), WORD_SCORE * field.weight);
+        if (phonetic) {
+            String soundex = PatientNames.soundex(word);
+            if (!soundex.isEmpty()) {
+                add(terms, term(field, '#', soundex), PHONETIC_SCORE * field.weight);
+            }
+        }
+        List<String> grams = trigrams(word);
+        for (String gram : grams) {
+            add(terms, term(field, '~', gram), TRIGRAMS_SCORE * field.weight / grams.size());
+        }
+    }
+
+
+    private static void addPhoneQuery(Map<String, Float> terms, String digits) {
+        if (digits.length() < 3) {
+            return;
+        }
+        add(terms, term(Field.PHONE, '=', digits), WORD_SCORE * Field.PHONE.weight);
+        int grams = digits.length() - 2;
+        for (int i = 0; i < grams; i++) {
+            add(terms, term(Field.PHONE, '~', digits.substring(i, i + 3)), TRIGRAMS_SCORE * Field.PHONE.weight / grams);
+        }
+    }
+
+
+    private static void add(Map<String, Float> terms, String term, float score) {
+        terms.merge(term, score, Float::sum);
+    }
+
+
+    static List<String> words(String text) {
+        String normalized = PatientNames.normalize(text);
+        List<String> words = new ArrayList<>();
+        if (normalized == null) {
+            return words;
+        }
+        for (String word : NON_ALPHANUMERIC.split(normalized)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+
+    static List<String> trigrams(String word) {
+        String padded = "$" + word + "$";
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+
+    private static boolean isDigits(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) < '0' || word.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static String digits(String phone) {
+        return phone == null ? "" : NON_DIGIT.matcher(phone).replaceAll("");
+    }
+
+
+    private static String term(Field field, char kind, String value) {
+        return field.code + String.valueOf(kind) + value;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientLookup;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.exception.InvalidBatchException;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.repository.PatientRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lookup of many patients by id in one call.
+ * <p>
+ * Cached patients are served from {@link PatientCache}; the others are read with one {@code IN} query per chunk
+ * of {@code patient.batch.chunk-size} ids. Patients read here are not added to the cache: unlike the per-key
+ * loads of {@link PatientService}, a bulk put could overwrite an invalidation issued during the read.
+ */
+@Service
+public class PatientBatchService {
+
+    private static final Logger log = LogManager.getLogger(PatientBatchService.class);
+
+    private final PatientRepository patientRepository;
+    private final PatientMapper patientMapper;
+    private final PatientCache patientCache;
+    private final int chunkSize;
+    private final int maxIds;
+
+    public PatientBatchService(PatientRepository patientRepository, PatientMapper patientMapper,
+                               PatientCache patientCache,
+                               @Value("${patient.batch.chunk-size:500}") int chunkSize,
+                               @Value("${patient.batch.max-ids:1000}") int maxIds) {
+        this.patientRepository = patientRepository;
+        this.patientMapper = patientMapper;
+        this.patientCache = patientCache;
+        this.chunkSize = chunkSize;
+        this.maxIds = maxIds;
+    }
+
+
+    /**
+     Find patients by id.
+     @param ids the ids, possibly repeated.
+     @return one {@link PatientLookup} per requested id, in the order of the request, missing patients included.
+     @throws InvalidBatchException if an id is null or there are more than {@code patient.batch.max-ids} ids.
+     */
+    @Transactional(readOnly = true)
+    public List<PatientLookup> findPatientsByIds(List<Integer> ids) {
+
+        if (ids.size() > maxIds) {
+            throw new InvalidBatchException("at most " + maxIds + " ids are accepted, got " + ids.size());
+        }
+        Set<Integer> distinctIds = new LinkedHashSet<>(ids);
+        if (distinctIds.contains(null)) {
+            throw new InvalidBatchException("null id");
+        }
+
+        Map<Integer, PatientDto> patients = new HashMap<>(patientCache.getAllPresentById(distinctIds));
+        distinctIds.removeAll(patients.keySet());
+        log.debug("Finding {} patients by id, {} cached", ids.size(), patients.size());
+
+        List<Integer> missing = new ArrayList<>(distinctIds);
+        for (int from = 0; from < missing.size(); from += chunkSize) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + chunkSize, missing.size()));
+            for (PatientView patient : patientRepository.findViewsByIds(chunk)) {
+                patients.put(patient.id(), patientMapper.toDto(patient));
+            }
+        }
+
+        List<PatientLookup> lookups = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            PatientDto patient = patients.get(id);
+            lookups.add(new PatientLookup(id, patient != null, patient));
+        }
+        return lookups;
+    }
+}
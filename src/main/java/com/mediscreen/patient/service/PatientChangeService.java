@@ -0,0 +1,336 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientChangeEntry;
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientChangeRepository;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.snapshot.PatientSnapshotStore;
+import com.mediscreen.patient.util.AfterCommit;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionTimedOutException;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of patient changes, read by downstream services to sync incrementally.
+ * <p>
+ * Changes are recorded in the transaction of the write, so the log never holds a change that was rolled back
+ * nor misses one that was committed. Sequences are allocated at insert time, so a transaction that commits late
+ * may expose a sequence lower than one already read. Readers therefore stop at the first gap in the sequences,
+ * which is either a transaction still running or one that rolled back, and only skip it once the change after it
+ * is older than {@code patient.changes.settle-time}. Changes with no gap before them are read right away.
+ * <p>
+ * A gap can only be skipped safely because a transaction recording a change commits within
+ * {@link #COMMIT_TIMEOUT_SECONDS} of the change, or is rolled back: the change is stamped when it is recorded,
+ * and that deadline is checked right before the commit, since the timeout of the write transactions is only
+ * checked when a statement runs. The settle time must exceed that deadline by the commit latency and the clock
+ * skew between instances; a shorter one is logged at startup as a warning.
+ */
+@Service
+public class PatientChangeService {
+
+    private static final Logger log = LogManager.getLogger(PatientChangeService.class);
+
+    /**
+     * Longest delay, in seconds, between the change recorded by a write and its commit. It is also the timeout of
+     * the write transactions.
+     */
+    public static final int COMMIT_TIMEOUT_SECONDS = 4;
+
+    private static final String INSERT_CHANGE =
+            "INSERT INTO patient_change (patient_id, change_type, changed_at) VALUES (?, ?, ?)";
+
+    private final PatientChangeRepository patientChangeRepository;
+    private final PatientRepository patientRepository;
+    private final PatientMapper patientMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final PatientSnapshotStore patientSnapshotStore;
+    private final Duration settleTime;
+
+    /** Long-poll readers waiting for a change, completed after the next commit. */
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    private final AtomicLong commits = new AtomicLong();
+    /** Whether a poll of the waiters is scheduled and has not started reading yet. */
+    private final AtomicBoolean pollScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "patient-change-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PatientChangeService(PatientChangeRepository patientChangeRepository, PatientRepository patientRepository,
+                                PatientMapper patientMapper, JdbcTemplate jdbcTemplate,
+                                PatientSnapshotStore patientSnapshotStore,
+                                @Value("${patient.changes.settle-time:5s}") Duration settleTime) {
+        this.patientChangeRepository = patientChangeRepository;
+        this.patientRepository = patientRepository;
+        this.patientMapper = patientMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.patientSnapshotStore = patientSnapshotStore;
+        this.settleTime = settleTime;
+        if (settleTime.compareTo(Duration.ofSeconds(COMMIT_TIMEOUT_SECONDS)) <= 0) {
+            log.warn("Change feed settle time {} is not longer than the commit timeout of {}s: a transaction " +
+                    "committing late may be skipped by readers", settleTime, COMMIT_TIMEOUT_SECONDS);
+        }
+    }
+
+
+    /**
+     Record the change of a patient in the current transaction.
+     @param patientId the id of the patient.
+     @param type the kind of change.
+     */
+    public void record(int patientId, PatientChangeType type) {
+        record(List.of(patientId), type);
+    }
+
+
+    /**
+     Record the same change of several patients in the current transaction, with one batched insert.
+     Their patients are no longer served from the snapshot, even if the transaction rolls back. The transaction is
+     rolled back if it reaches its commit more than {@link #COMMIT_TIMEOUT_SECONDS} after this call.
+     @param patientIds the ids of the patients.
+     @param type the kind of change.
+     */
+    public void record(Collection<Integer> patientIds, PatientChangeType type) {
+        if (patientIds.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        Timestamp changedAt = Timestamp.from(now);
+        jdbcTemplate.batchUpdate(INSERT_CHANGE, patientIds, patientIds.size(), (ps, patientId) -> {
+            ps.setInt(1, patientId);
+            ps.setString(2, type.name());
+            ps.setTimestamp(3, changedAt);
+        });
+        patientSnapshotStore.invalidate(patientIds);
+        Instant deadline = now.plusSeconds(COMMIT_TIMEOUT_SECONDS);
+        AfterCommit.beforeCommit(() -> {
+            if (Instant.now().isAfter(deadline)) {
+                throw new TransactionTimedOutException("Patient change not committed within "
+                        + COMMIT_TIMEOUT_SECONDS + "s, readers may have skipped its sequence");
+            }
+        });
+        AfterCommit.run(this::signal);
+    }
+
+
+    /**
+     @return the last sequence of the changes stamped a settle time ago, 0 if there is none: every lower sequence
+     has committed or never will, so a reader taking it before loading the patients, then reading the changes
+     after it, misses none.
+     */
+    public long getSettledSequence() {
+        return patientChangeRepository.findLastSequenceBefore(Instant.now().minus(settleTime)).orElse(0L);
+    }
+
+
+    /**
+     Get the changes recorded after a sequence, with the current state of the patients that still exist.
+     @param since the last sequence already read, 0 to read from the start.
+     @param limit the maximum number of changes, clamped between 1 and {@link PatientService#MAX_PAGE_SIZE}.
+     @return A {@link PatientChangeFeed}, with no change if none was recorded since.
+     */
+    public PatientChangeFeed getChangesSince(long since, int limit) {
+        return toFeed(since, readChangesSince(since, limit).changes());
+    }
+
+
+    /**
+     Read the changes after a sequence, up to the first gap that may still be filled by a running transaction.
+     */
+    private Read readChangesSince(long since, int limit) {
+
+        int size = Math.min(Math.max(limit, 1), PatientService.MAX_PAGE_SIZE);
+        List<PatientChange> changes = patientChangeRepository.findChangesSince(since, PageRequest.of(0, size));
+
+        // a missing sequence is skipped once the change after it has settled, later ones must wait for it
+        Instant settled = Instant.now().minus(settleTime);
+        long previous = since;
+        int end = 0;
+        while (end < changes.size()) {
+            PatientChange change = changes.get(end);
+            if (change.getSequence() != previous + 1 && change.getChangedAt().isAfter(settled)) {
+                break;
+            }
+            previous = change.getSequence();
+            end++;
+        }
+        return new Read(changes.subList(0, end), end < changes.size());
+    }
+
+
+    private PatientChangeFeed toFeed(long since, List<PatientChange> changes) {
+
+        Set<Integer> ids = new HashSet<>();
+        for (PatientChange change : changes) {
+            if (change.getType() != PatientChangeType.DELETED) {
+                ids.add(change.getPatientId());
+            }
+        }
+        Map<Integer, PatientDto> patients = new HashMap<>(ids.size() * 2);
+        if (!ids.isEmpty()) {
+            for (PatientView patient : patientRepository.findViewsByIds(ids)) {
+                patients.put(patient.id(), patientMapper.toDto(patient));
+            }
+        }
+
+        List<PatientChangeEntry> entries = new ArrayList<>(changes.size());
+        for (PatientChange change : changes) {
+            entries.add(new PatientChangeEntry(change.getSequence(), change.getPatientId(), change.getType(),
+                    change.getChangedAt(), patients.get(change.getPatientId())));
+        }
+        long lastSequence = changes.isEmpty() ? since : changes.get(changes.size() - 1).getSequence();
+        log.debug("Found {} patient changes since sequence {}", entries.size(), since);
+        return new PatientChangeFeed(entries, lastSequence);
+    }
+
+
+    /**
+     Get the changes recorded after a sequence, waiting for the next commit when there is none yet.
+     Commits made by other instances are not signaled: the caller should read again with
+     {@link #getChangesSince(long, int)} when it stops waiting, and cancel the returned future.
+     @param since the last sequence already read.
+     @param limit the maximum number of changes.
+     @return A future completed with changes, as soon as there are some.
+     */
+    public CompletableFuture<PatientChangeFeed> awaitChangesSince(long since, int limit) {
+
+        long seenCommits = commits.get();
+        PatientChangeFeed feed = getChangesSince(since, limit);
+        if (!feed.changes().isEmpty()) {
+            return CompletableFuture.completedFuture(feed);
+        }
+
+        Waiter waiter = new Waiter(since, limit, new CompletableFuture<>());
+        waiters.add(waiter);
+        waiter.future().whenComplete((result, ex) -> waiters.remove(waiter));
+        if (commits.get() != seenCommits) {
+            // committed between the read and the registration
+            schedulePoll(Duration.ZERO);
+        }
+        return waiter.future();
+    }
+
+
+    private void signal() {
+        commits.incrementAndGet();
+        if (!waiters.isEmpty()) {
+            schedulePoll(Duration.ZERO);
+        }
+    }
+
+
+    /**
+     Schedule one poll for every waiter, unless one is already scheduled: commits signaled while it waits are
+     read by it.
+     */
+    private void schedulePoll(Duration delay) {
+        if (pollScheduled.compareAndSet(false, true)) {
+            try {
+                poller.schedule(this::pollWaiters, delay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                pollScheduled.set(false);
+            }
+        }
+    }
+
+
+    /**
+     Read the changes once, from the lowest sequence waited on, and complete every waiter with those past its own.
+     A waiter left behind by a page too short for it is read on its own. When a gap holds changes back, the
+     waiters are polled again once it may be skipped.
+     */
+    private void pollWaiters() {
+        pollScheduled.set(false);
+        List<Waiter> pending = new ArrayList<>();
+        for (Waiter waiter : waiters) {
+            if (!waiter.future().isDone()) {
+                pending.add(waiter);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        long since = Long.MAX_VALUE;
+        int limit = 1;
+        for (Waiter waiter : pending) {
+            since = Math.min(since, waiter.since());
+            limit = Math.max(limit, waiter.limit());
+        }
+
+        try {
+            int pageSize = Math.min(limit, PatientService.MAX_PAGE_SIZE);
+            Read read = readChangesSince(since, limit);
+            PatientChangeFeed feed = toFeed(since, read.changes());
+            boolean heldBack = read.heldBack();
+            for (Waiter waiter : pending) {
+                List<PatientChangeEntry> entries = new ArrayList<>();
+                for (PatientChangeEntry entry : feed.changes()) {
+                    if (entry.sequence() > waiter.since() && entries.size() < waiter.limit()) {
+                        entries.add(entry);
+                    }
+                }
+                if (entries.isEmpty() && (read.heldBack() || read.changes().size() == pageSize)) {
+                    Read own = readChangesSince(waiter.since(), waiter.limit());
+                    heldBack |= own.heldBack();
+                    if (!own.changes().isEmpty()) {
+                        waiter.future().complete(toFeed(waiter.since(), own.changes()));
+                    }
+                } else if (!entries.isEmpty()) {
+                    waiter.future().complete(
+                            new PatientChangeFeed(entries, entries.get(entries.size() - 1).sequence()));
+                }
+            }
+            if (heldBack) {
+                schedulePoll(settleTime);
+            }
+        } catch (RuntimeException ex) {
+            for (Waiter waiter : pending) {
+                waiter.future().completeExceptionally(ex);
+            }
+        }
+    }
+
+
+    @PreDestroy
+    public void close() {
+        poller.shutdownNow();
+    }
+
+
+    private record Waiter(long since, int limit, CompletableFuture<PatientChangeFeed> future) {
+    }
+
+
+    private record Read(List<PatientChange> changes, boolean heldBack) {
+    }
+}
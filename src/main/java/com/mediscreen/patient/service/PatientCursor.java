@@ -0,0 +1,55 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque keyset cursors handed out by the paginated patient list.
+ * A cursor carries the id of the last patient of the previous page.
+ */
+public final class PatientCursor {
+
+    private static final String PREFIX = "id:";
+
+    private PatientCursor() {
+    }
+
+
+    /**
+     Encode a cursor pointing after the given id.
+     @param lastId the id of the last patient returned.
+     @return the opaque cursor token.
+     */
+    public static String encode(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+
+    /**
+     Decode a cursor token.
+     @param cursor the opaque cursor token, may be null or blank for the first page.
+     @return the id after which the next page starts, 0 for the first page.
+     @throws InvalidCursorException if the token was not produced by {@link #encode(int)}.
+     */
+    public static int decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (!decoded.startsWith(PREFIX)) {
+                throw new InvalidCursorException(cursor);
+            }
+            int lastId = Integer.parseInt(decoded.substring(PREFIX.length()));
+            if (lastId < 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            return lastId;
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientChangeEntry;
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.util.AfterCommit;
+import com.mediscreen.patient.util.PatientNames;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory blocking index of patients, to tell a possible duplicate on create without scanning the table.
+ * <p>
+ * Patients are grouped in blocks by the Soundex key of their last name and their birthdate; two patients of the
+ * same block are possible duplicates when their first names are equal once normalized, or sound alike. A lookup
+ * reads a single block, a handful of entries at most.
+ * <p>
+ * The index is loaded page by page at startup, then kept in sync by {@link PatientService} after each commit,
+ * and every {@code patient.duplicates.sync-interval} from the change log, which also holds the writes of the other
+ * instances. If the load fails, for instance when the database is not reachable yet, it is tried again every
+ * {@code patient.duplicates.load-retry-interval} until it succeeds. Meanwhile lookups fall back to a query of the
+ * patients born the same day, compared by the same Soundex keys as the index.
+ * <p>
+ * The possible duplicates found in the index are read again from the database before a creation is refused, so
+ * that an entry another instance changed since the last sync never refuses one. Every change of an entry is made
+ * under the lock of its id in {@code byId}, and of its block inside it, so a load never adds back a patient
+ * deleted meanwhile nor replaces a newer one.
+ */
+@Component
+public class PatientDuplicateIndex implements SmartInitializingSingleton {
+
+    private static final Logger log = LogManager.getLogger(PatientDuplicateIndex.class);
+
+    private record BlockKey(String lastNamePhonetic, LocalDate birthdate) {
+    }
+
+    private record Entry(int id, BlockKey block, String firstName, String firstNamePhonetic) {
+
+        boolean matches(Entry other) {
+            return id != other.id && (Objects.equals(firstName, other.firstName)
+                    || !firstNamePhonetic.isEmpty() && firstNamePhonetic.equals(other.firstNamePhonetic));
+        }
+    }
+
+    /** Attempts to add a patient whose possible duplicates all turned out stale. */
+    private static final int MAX_ADD_ATTEMPTS = 3;
+
+    private final PatientRepository patientRepository;
+    private final PatientChangeService patientChangeService;
+    private final int pageSize;
+    private final Duration retryInterval;
+    private final Duration syncInterval;
+
+    /** Entries of each block, replaced as a whole under the lock of the block's map entry, within that of the id. */
+    private final Map<BlockKey, List<Entry>> blocks = new ConcurrentHashMap<>();
+    private final Map<Integer, Entry> byId = new ConcurrentHashMap<>();
+    /** Patients deleted while a retried load runs, which must not be added back from the pages it read before. */
+    private final Set<Integer> removedWhileLoading = ConcurrentHashMap.newKeySet();
+    /** Patients added by a creation not committed yet: not in the database, but duplicates of later ones. */
+    private final Set<Integer> uncommitted = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+    /** Last change log sequence applied to the index. */
+    private volatile long syncedSequence;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> retry;
+
+    public PatientDuplicateIndex(PatientRepository patientRepository, PatientChangeService patientChangeService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${patient.duplicates.load-page-size:1000}") int pageSize,
+                                 @Value("${patient.duplicates.load-retry-interval:30s}") Duration retryInterval,
+                                 @Value("${patient.duplicates.sync-interval:5s}") Duration syncInterval) {
+        this.patientRepository = patientRepository;
+        this.patientChangeService = patientChangeService;
+        this.pageSize = pageSize;
+        this.retryInterval = retryInterval;
+        this.syncInterval = syncInterval;
+        Gauge.builder("patient.duplicates.index.size", byId, Map::size)
+                .description("Patients in the duplicate detection index")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     Load every patient, by pages of {@code patient.duplicates.load-page-size} ordered by id, before requests are served.
+     If the load fails, schedule it again every {@code patient.duplicates.load-retry-interval}. Then apply the change
+     log every {@code patient.duplicates.sync-interval}, unless it is zero.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        boolean loadedNow = load();
+        if (loadedNow && syncInterval.isZero()) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "patient-duplicate-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!loadedNow) {
+            long retryMillis = retryInterval.toMillis();
+            retry = executor.scheduleWithFixedDelay(this::retryLoad, retryMillis, retryMillis, TimeUnit.MILLISECONDS);
+        }
+        if (!syncInterval.isZero()) {
+            long syncMillis = syncInterval.toMillis();
+            executor.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     Load every patient. Requests may be served while a retried load runs: the patients they write after commit
+     are newer than the pages read, so they are kept over them, and the patients they delete are not added back.
+     The changes made during the load are applied by the next sync.
+     @return whether the load succeeded.
+     */
+    boolean load() {
+        long start = System.nanoTime();
+        try {
+            long sequence = patientChangeService.getSettledSequence();
+            int afterId = 0;
+            List<Patient> page;
+            do {
+                page = patientRepository.findPageAfter(afterId, PageRequest.of(0, pageSize));
+                for (Patient patient : page) {
+                    putIfAbsent(entry(patient.getId(), patient.getLastName(), patient.getFirstName(),
+                            patient.getBirthdate()));
+                    afterId = patient.getId();
+                }
+            } while (page.size() == pageSize);
+            syncedSequence = sequence;
+            loaded = true;
+            removedWhileLoading.clear();
+            log.info("Duplicate index loaded with {} patients in {} ms", byId.size(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (DataAccessException | TransactionException ex) {
+            log.warn("Duplicate index not loaded, duplicates are looked up in the database until a retry in {}: {}",
+                    retryInterval, ex.getMessage());
+            return false;
+        }
+    }
+
+
+    private void retryLoad() {
+        if (load()) {
+            retry.cancel(false);
+        }
+    }
+
+
+    /**
+     Apply the changes recorded since the last sync, those of the other instances included, with the current state
+     of their patients.
+     @throws DataAccessException if the change log cannot be read.
+     */
+    void sync() {
+        if (!loaded) {
+            return;
+        }
+        PatientChangeFeed feed;
+        do {
+            feed = patientChangeService.getChangesSince(syncedSequence, PatientService.MAX_PAGE_SIZE);
+            for (PatientChangeEntry change : feed.changes()) {
+                if (change.patient() == null) {
+                    remove(change.patientId());
+                } else {
+                    put(change.patientId(), change.patient());
+                }
+            }
+            syncedSequence = feed.lastSequence();
+        } while (feed.changes().size() == PatientService.MAX_PAGE_SIZE);
+    }
+
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (DataAccessException | TransactionException ex) {
+            log.warn("Duplicate index not synced with the change log: {}", ex.getMessage());
+        }
+    }
+
+
+    private static Entry entry(int id, String lastName, String firstName, LocalDate birthdate) {
+        return new Entry(id, new BlockKey(PatientNames.soundex(lastName), birthdate),
+                PatientNames.normalize(firstName), PatientNames.soundex(firstName));
+    }
+
+
+    /**
+     Find the patients that may be the same person as a new one.
+     @param patient the new patient.
+     @return the ids of the possible duplicates, empty if there is none.
+     */
+    public List<Integer> findPossibleDuplicates(PatientDto patient) {
+        Entry candidate = entry(0, patient.getLastName(), patient.getFirstName(), patient.getBirthdate());
+        if (!loaded) {
+            return findPossibleDuplicatesInDatabase(candidate);
+        }
+        return matches(blocks.getOrDefault(candidate.block(), List.of()), candidate);
+    }
+
+
+    /**
+     Add a new patient unless it may be a duplicate, atomically: of two concurrent creations of the same person,
+     only one is added. The possible duplicates are read again from the database first, and those changed since
+     they were indexed are refreshed and no longer count.
+     @param id the id of the new patient.
+     @param patient the new patient.
+     @return the ids of the possible duplicates, empty if the patient was added.
+     */
+    public List<Integer> addIfNoDuplicate(int id, PatientDto patient) {
+        Entry entry = entry(id, patient.getLastName(), patient.getFirstName(), patient.getBirthdate());
+        if (!loaded) {
+            List<Integer> duplicates = findPossibleDuplicatesInDatabase(entry);
+            if (duplicates.isEmpty()) {
+                put(entry);
+                addUncommitted(id);
+            }
+            return duplicates;
+        }
+        List<Integer> duplicates = List.of();
+        for (int attempt = 0; attempt < MAX_ADD_ATTEMPTS; attempt++) {
+            duplicates = tryAdd(entry);
+            if (duplicates.isEmpty()) {
+                addUncommitted(id);
+                return duplicates;
+            }
+            List<Integer> confirmed = confirm(duplicates, entry);
+            if (!confirmed.isEmpty()) {
+                return confirmed;
+            }
+        }
+        return duplicates;
+    }
+
+
+    private List<Integer> tryAdd(Entry entry) {
+        List<Integer> duplicates = new ArrayList<>();
+        byId.compute(entry.id(), (id, previous) -> {
+            blocks.compute(entry.block(), (block, entries) -> {
+                List<Integer> found = matches(entries == null ? List.of() : entries, entry);
+                if (!found.isEmpty()) {
+                    duplicates.addAll(found);
+                    return entries;
+                }
+                return with(without(entries, id), entry);
+            });
+            if (!duplicates.isEmpty()) {
+                return previous;
+            }
+            if (previous != null && !previous.block().equals(entry.block())) {
+                blocks.computeIfPresent(previous.block(), (block, entries) -> without(entries, id));
+            }
+            return entry;
+        });
+        return duplicates;
+    }
+
+
+    /** The creation is in the database once committed, or removed from the index by a rollback. */
+    private void addUncommitted(int id) {
+        uncommitted.add(id);
+        AfterCommit.run(() -> uncommitted.remove(id));
+    }
+
+
+    /**
+     Read possible duplicates found in the index from the database, and refresh their entries: another instance may
+     have updated or deleted them since the last sync. The creations of this instance not committed yet are kept.
+     @return the ids of the patients still possible duplicates of the candidate.
+     */
+    private List<Integer> confirm(List<Integer> ids, Entry candidate) {
+        List<Integer> committed = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            if (!uncommitted.contains(id)) {
+                committed.add(id);
+            }
+        }
+        Map<Integer, PatientView> current = new HashMap<>();
+        if (!committed.isEmpty()) {
+            for (PatientView view : patientRepository.findViewsByIds(committed)) {
+                current.put(view.id(), view);
+            }
+        }
+        List<Integer> confirmed = new ArrayList<>(1);
+        for (int id : ids) {
+            if (uncommitted.contains(id)) {
+                confirmed.add(id);
+                continue;
+            }
+            PatientView view = current.get(id);
+            if (view == null) {
+                remove(id);
+                continue;
+            }
+            Entry entry = entry(id, view.lastName(), view.firstName(), view.birthdate());
+            put(entry);
+            if (entry.block().equals(candidate.block()) && entry.matches(candidate)) {
+                confirmed.add(id);
+            }
+        }
+        return confirmed;
+    }
+
+
+    /**
+     Add or replace a patient, whether or not it is a duplicate: for updates and bulk imports.
+     @param id the id of the patient.
+     @param patient the patient as stored.
+     */
+    public void put(int id, PatientDto patient) {
+        put(id, patient.getLastName(), patient.getFirstName(), patient.getBirthdate());
+    }
+
+
+    /**
+     Add or replace a saved patient, whether or not it is a duplicate.
+     @param patient the patient as stored.
+     */
+    public void put(Patient patient) {
+        put(patient.getId(), patient.getLastName(), patient.getFirstName(), patient.getBirthdate());
+    }
+
+
+    private void put(int id, String lastName, String firstName, LocalDate birthdate) {
+        put(entry(id, lastName, firstName, birthdate));
+    }
+
+
+    private void put(Entry entry) {
+        byId.compute(entry.id(), (id, previous) -> {
+            if (previous != null) {
+                blocks.computeIfPresent(previous.block(), (block, entries) -> without(entries, id));
+            }
+            blocks.compute(entry.block(), (block, entries) -> with(without(entries, id), entry));
+            return entry;
+        });
+    }
+
+
+    /** Add a loaded patient, unless it was written or deleted since its page was read. */
+    private void putIfAbsent(Entry entry) {
+        byId.compute(entry.id(), (id, previous) -> {
+            if (previous != null || removedWhileLoading.contains(id)) {
+                return previous;
+            }
+            blocks.compute(entry.block(), (block, entries) -> with(entries, entry));
+            return entry;
+        });
+    }
+
+
+    /**
+     Remove a deleted patient, or a created one whose transaction rolled back.
+     @param id the id of the patient.
+     */
+    public void remove(int id) {
+        byId.compute(id, (key, previous) -> {
+            if (!loaded) {
+                removedWhileLoading.add(id);
+            }
+            if (previous != null) {
+                blocks.computeIfPresent(previous.block(), (block, entries) -> without(entries, id));
+            }
+            return null;
+        });
+        uncommitted.remove(id);
+    }
+
+
+    /**
+     @return the number of indexed patients.
+     */
+    public int size() {
+        return byId.size();
+    }
+
+
+    /**
+     @return whether the startup load succeeded, and lookups are served from memory.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+
+    private static List<Integer> matches(List<Entry> entries, Entry candidate) {
+        List<Integer> ids = new ArrayList<>(1);
+        for (Entry entry : entries) {
+            if (entry.matches(candidate)) {
+                ids.add(entry.id());
+            }
+        }
+        return ids;
+    }
+
+
+    private static List<Entry> with(List<Entry> entries, Entry entry) {
+        List<Entry> copy = new ArrayList<>(entries == null ? 1 : entries.size() + 1);
+        if (entries != null) {
+            copy.addAll(entries);
+        }
+        copy.add(entry);
+        return List.copyOf(copy);
+    }
+
+
+    /** @return the entries without the id, or null to remove an emptied block. */
+    private static List<Entry> without(List<Entry> entries, int id) {
+        if (entries == null) {
+            return null;
+        }
+        List<Entry> kept = entries.stream().filter(entry -> entry.id() != id).toList();
+        return kept.isEmpty() ? null : kept;
+    }
+
+
+    /**
+     Same lookup as the index, over the patients born the same day: a handful of rows on the birthdate index,
+     whose last names are compared by Soundex key like the blocks of the index.
+     */
+    private List<Integer> findPossibleDuplicatesInDatabase(Entry candidate) {
+        List<Integer> ids = new ArrayList<>(1);
+        if (candidate.block().birthdate() == null) {
+            return ids;
+        }
+        for (Patient existing : patientRepository.findByBirthdate(candidate.block().birthdate())) {
+            Entry entry = entry(existing.getId(), existing.getLastName(), existing.getFirstName(), existing.getBirthdate());
+            if (entry.block().equals(candidate.block()) && entry.matches(candidate)) {
+                ids.add(existing.getId());
+            }
+        }
+        return ids;
+    }
+
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.mediscreen.patient.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.audit.PatientAuditService;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientImportError;
+import com.mediscreen.patient.dto.PatientImportReport;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.search.PatientSearchIndex;
+import com.mediscreen.patient.util.CsvParser;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk creation of patients from a streamed JSON array or CSV body.
+ * <p>
+ * Rows are read one at a time, validated against the {@link Patient} constraints and saved in batches of
+ * {@code patient.import.batch-size} rows, one transaction per batch, so memory use does not depend on the
+ * size of the body. Invalid rows are reported and skipped; a batch the database refuses is reported row by row.
+ * Each committed batch is audited like single creations.
+ */
+@Service
+public class PatientImportService {
+
+    private static final Logger log = LogManager.getLogger(PatientImportService.class);
+
+    /** Accepted CSV header names, mapped to the index of the field in {@link #CSV_FIELDS}. */
+    private static final Map<String, Integer> CSV_HEADERS = Map.ofEntries(
+            Map.entry("lastname", 0), Map.entry("family", 0),
+            Map.entry("firstname", 1), Map.entry("given", 1),
+            Map.entry("birthdate", 2), Map.entry("dob", 2),
+            Map.entry("sex", 3),
+            Map.entry("address", 4),
+            Map.entry("phone", 5));
+    private static final String[] CSV_FIELDS = {"lastName", "firstName", "birthdate", "sex", "address", "phone"};
+
+    private final PatientRepository patientRepository;
+    private final PatientMapper patientMapper;
+    private final PatientCache patientCache;
+    private final PatientChangeService patientChangeService;
+    private final PatientDuplicateIndex patientDuplicateIndex;
+    private final PatientSearchIndex patientSearchIndex;
+    private final PatientAuditService patientAuditService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final TransactionOperations transactionOperations;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    public PatientImportService(PatientRepository patientRepository, PatientMapper patientMapper,
+                                PatientCache patientCache, PatientChangeService patientChangeService,
+                                PatientDuplicateIndex patientDuplicateIndex, PatientSearchIndex patientSearchIndex,
+                                PatientAuditService patientAuditService, Validator validator, ObjectMapper objectMapper,
+                                TransactionOperations transactionOperations,
+                                @Value("${patient.import.batch-size:500}") int batchSize,
+                                @Value("${patient.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.patientRepository = patientRepository;
+        this.patientMapper = patientMapper;
+        this.patientCache = patientCache;
+        this.patientChangeService = patientChangeService;
+        this.patientDuplicateIndex = patientDuplicateIndex;
+        this.patientSearchIndex = patientSearchIndex;
+        this.patientAuditService = patientAuditService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.transactionOperations = transactionOperations;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+
+    /**
+     Import patients from a JSON array of {@link PatientDto}.
+     Reading stops at the first syntax error; the rows before it are kept.
+     @param body the request body.
+     @return A {@link PatientImportReport} of the import.
+     @throws IOException if the body cannot be read.
+     */
+    public PatientImportReport importJson(InputStream body) throws IOException {
+
+        log.debug("Importing patients from JSON");
+        ImportRun run = new ImportRun();
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                run.fail(0, "Expected a JSON array of patients");
+                return run.finish();
+            }
+            int row = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    run.fail(row + 1, "Unexpected end of JSON array");
+                    break;
+                }
+                row++;
+                JsonNode node = parser.readValueAsTree();
+                try {
+                    PatientDto patientDto = objectMapper.treeToValue(node, PatientDto.class);
+                    if (patientDto == null) {
+                        run.reject(row, null, "Empty row");
+                    } else {
+                        run.accept(row, patientDto);
+                    }
+                } catch (JsonProcessingException ex) {
+                    run.reject(row, null, ex.getOriginalMessage());
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            run.fail(run.received + 1, ex.getOriginalMessage());
+        }
+        return run.finish();
+    }
+
+
+    /**
+     Import patients from CSV. The first line is a header naming the columns, in any order:
+     lastName (or family), firstName (or given), birthdate (or dob, ISO-8601), sex, address, phone.
+     @param body the request body, UTF-8 encoded.
+     @return A {@link PatientImportReport} of the import.
+     @throws IOException if the body cannot be read.
+     */
+    public PatientImportReport importCsv(InputStream body) throws IOException {
+
+        log.debug("Importing patients from CSV");
+        ImportRun run = new ImportRun();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            return run.finish();
+        }
+        int[] columns = csvColumns(CsvParser.parseLine(header.replace("\uFEFF", "")));
+        for (int field = 0; field < columns.length; field++) {
+            if (columns[field] < 0) {
+                run.fail(0, "Missing CSV column: " + CSV_FIELDS[field]);
+                return run.finish();
+            }
+        }
+
+        int row = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            row++;
+            List<String> values;
+            try {
+                values = CsvParser.parseLine(line);
+            } catch (IllegalArgumentException ex) {
+                run.reject(row, null, ex.getMessage());
+                continue;
+            }
+            String[] fields = new String[CSV_FIELDS.length];
+            for (int field = 0; field < fields.length; field++) {
+                int column = columns[field];
+                fields[field] = column < values.size() ? emptyToNull(values.get(column).trim()) : null;
+            }
+            LocalDate birthdate;
+            try {
+                birthdate = fields[2] == null ? null : LocalDate.parse(fields[2]);
+            } catch (DateTimeParseException ex) {
+                run.reject(row, "birthdate", "Expected an ISO-8601 date (yyyy-MM-dd)");
+                continue;
+            }
+            run.accept(row, new PatientDto(fields[0], fields[1], birthdate, fields[3], fields[4], fields[5]));
+        }
+        return run.finish();
+    }
+
+
+    private static int[] csvColumns(List<String> header) {
+        int[] columns = new int[CSV_FIELDS.length];
+        Arrays.fill(columns, -1);
+        for (int column = 0; column < header.size(); column++) {
+            Integer field = CSV_HEADERS.get(header.get(column).trim().replace("_", "").toLowerCase(Locale.ROOT));
+            if (field != null) {
+                columns[field] = column;
+            }
+        }
+        return columns;
+    }
+
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+
+    /**
+     * State of one import: the pending batch and the counters of the report.
+     */
+    private final class ImportRun {
+
+        private final List<Patient> pending = new ArrayList<>(batchSize);
+        private final List<Integer> pendingRows = new ArrayList<>(batchSize);
+        private final List<PatientImportError> errors = new ArrayList<>();
+        private int received;
+        private int imported;
+        private int rejected;
+
+
+        void accept(int row, PatientDto patientDto) {
+            received++;
+            Patient patient = patientMapper.toEntity(patientDto);
+            Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+            if (!violations.isEmpty()) {
+                rejected++;
+                for (ConstraintViolation<Patient> violation : violations) {
+                    report(row, violation.getPropertyPath().toString(), violation.getMessage());
+                }
+                return;
+            }
+            pending.add(patient);
+            pendingRows.add(row);
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+
+        void reject(int row, String field, String message) {
+            received++;
+            rejected++;
+            report(row, field, message);
+        }
+
+
+        /** Reports an error that stops the import without counting a row. */
+        void fail(int row, String message) {
+            report(row, null, message);
+        }
+
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            try {
+                transactionOperations.executeWithoutResult(status -> {
+                    List<Patient> saved = patientRepository.saveAll(pending);
+                    patientChangeService.record(saved.stream().map(Patient::getId).toList(), PatientChangeType.CREATED);
+                });
+                imported += pending.size();
+                // imported rows are not checked for duplicates, but later creations are checked against them
+                for (Patient patient : pending) {
+                    patientCache.evictFamilyName(patient.getLastName());
+                    patientDuplicateIndex.put(patient);
+                    patientSearchIndex.put(patient);
+                    patientAuditService.record(patient.getId(), PatientChangeType.CREATED, patientMapper.toDto(patient));
+                }
+                log.debug("Imported a batch of {} patients", pending.size());
+            } catch (DataAccessException ex) {
+                log.error("Patient import batch rejected", ex);
+                rejected += pending.size();
+                String message = "Not saved: " + NestedExceptionUtils.getMostSpecificCause(ex).getMessage();
+                for (int row : pendingRows) {
+                    report(row, null, message);
+                }
+            }
+            pending.clear();
+            pendingRows.clear();
+        }
+
+
+        PatientImportReport finish() {
+            flush();
+            log.debug("Patient import finished, received: {}, imported: {}, rejected: {}", received, imported, rejected);
+            return new PatientImportReport(received, imported, rejected, List.copyOf(errors));
+        }
+
+
+        private void report(int row, String field, String message) {
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new PatientImportError(row, field, message));
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.mediscreen.patient.service;
+
+/**
+ * How a family name is matched by the patient search.
+ */
+public enum PatientSearchMode {
+
+    /** The family name as stored, exactly. */
+    EXACT,
+
+    /** Family names starting with the given text, ignoring case and accents. */
+    PREFIX,
+
+    /** The whole family name, ignoring case and accents. */
+    INSENSITIVE
+}
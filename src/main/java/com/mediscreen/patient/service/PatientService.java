@@ -1,26 +1,76 @@
 package com.mediscreen.patient.service;
 
 import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.audit.PatientAuditService;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.datasource.ReplicaRoutingDataSource;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientPage;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.dto.VersionedPatientList;
+import com.mediscreen.patient.exception.DuplicatePatientException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import com.mediscreen.patient.mapper.PatientMapper;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientJdbcRepository;
 import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.search.PatientSearchIndex;
+import com.mediscreen.patient.snapshot.PatientSnapshotStore;
+import com.mediscreen.patient.util.AfterCommit;
+import com.mediscreen.patient.util.PatientNames;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class PatientService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final PatientRepository patientRepository;
-    private final ModelMapper modelMapper;
+    private final PatientJdbcRepository patientJdbcRepository;
+    private final PatientMapper patientMapper;
+    private final PatientCache patientCache;
+    private final PatientChangeService patientChangeService;
+    private final PatientAuditService patientAuditService;
+    private final PatientDuplicateIndex patientDuplicateIndex;
+    private final PatientSearchIndex patientSearchIndex;
+    private final PatientSnapshotStore patientSnapshotStore;
+    private final Validator validator;
 
-    public PatientService(PatientRepository patientRepository, ModelMapper modelMapper) {
+    public PatientService(PatientRepository patientRepository, PatientJdbcRepository patientJdbcRepository,
+                          PatientMapper patientMapper, PatientCache patientCache,
+                          PatientChangeService patientChangeService, PatientAuditService patientAuditService,
+                          PatientDuplicateIndex patientDuplicateIndex, PatientSearchIndex patientSearchIndex,
+                          PatientSnapshotStore patientSnapshotStore, Validator validator) {
         this.patientRepository = patientRepository;
-        this.modelMapper = modelMapper;
+        this.patientJdbcRepository = patientJdbcRepository;
+        this.patientMapper = patientMapper;
+        this.patientCache = patientCache;
+        this.patientChangeService = patientChangeService;
+        this.patientAuditService = patientAuditService;
+        this.patientDuplicateIndex = patientDuplicateIndex;
+        this.patientSearchIndex = patientSearchIndex;
+        this.patientSnapshotStore = patientSnapshotStore;
+        this.validator = validator;
     }
 
     private static final Logger log = LogManager.getLogger(PatientService.class);
@@ -34,27 +84,75 @@ public class PatientService {
      @throws PatientNotFoundException if the patient could not be found.
      */
     public PatientDto findPatientById(int id) throws PatientNotFoundException {
+        return findVersionedPatient(id).patient();
+    }
+
+
+    /**
+     Find a patient by id with its version, both from one read: from the cache, else from the snapshot while it is
+     valid for this patient, else from the primary database, since the patient read is cached for every client.
+     @param id The id of the patient to retrieve.
+     @return A {@link VersionedPatient} holding the patient and the version it was read at.
+     @throws PatientNotFoundException if the patient could not be found.
+     */
+    public VersionedPatient findVersionedPatient(int id) throws PatientNotFoundException {
 
         log.debug("Finding patient with id: {}", id);
-        Patient patient = patientRepository.findById(id).orElseThrow(() -> new PatientNotFoundException(id));
+        VersionedPatient patient = patientCache.getById(id, key -> {
+            PatientView snapshotted = patientSnapshotStore.find(key);
+            if (snapshotted != null) {
+                return patientMapper.toVersioned(snapshotted);
+            }
+            return ReplicaRoutingDataSource.readFromPrimary(() ->
+                    patientRepository.findViewById(key).map(patientMapper::toVersioned).orElse(null));
+        });
+        if (patient == null) {
+            throw new PatientNotFoundException(id);
+        }
 
         log.debug("Found patient: {}", patient);
-        return modelMapper.map(patient, PatientDto.class);
+        return patient;
+    }
+
+
+    /**
+     Find the version of a patient.
+     @param id The id of the patient.
+     @return A {@link PatientVersion} holding the entity tag and last modification time of the patient.
+     @throws PatientNotFoundException if the patient could not be found.
+     */
+    public PatientVersion findPatientVersion(int id) throws PatientNotFoundException {
+        return findVersionedPatient(id).version();
+    }
+
+
+    /**
+     Get the version of the patient list, computed by a single aggregate query.
+     @return A {@link PatientListVersion} holding the entity tag and last modification time of the list.
+     */
+    public PatientListVersion getPatientListVersion() {
+        return patientRepository.findListVersion();
     }
 
 
     /**
-     Find a patient by familyName.
+     Find a patient by familyName, matched case and accent insensitively like the cache key, so that a cached and
+     an uncached lookup give the same answer. Read from the primary database, like every cached read.
      @param familyName of the patient to retrieve.
      @return A {@link PatientDto} representing the patient with the given familyName, or an HTTP 404 (Not Found) response if the patient could not be found.
      @throws PatientNotFoundException if the patient could not be found.
      */
     public PatientDto findPatientByFamilyName(String familyName) throws PatientNotFoundException {
         log.debug("Finding patient with family name: {}", familyName);
-        Patient patient = patientRepository.findByFamilyName(familyName).orElseThrow(() -> new PatientNotFoundException(familyName));
+        PatientDto patient = patientCache.getByFamilyName(familyName,
+                key -> ReplicaRoutingDataSource.readFromPrimary(() ->
+                        patientRepository.findViewByLastNameKey(key).map(patientMapper::toDto).orElse(null)));
+        if (patient == null) {
+            throw new PatientNotFoundException(familyName);
+        }
 
         log.debug("Found patient: {}", patient);
-        return modelMapper.map(patient, PatientDto.class);
+        return patient;
     }
 
 
@@ -65,26 +163,183 @@ public class PatientService {
     public List<PatientDto> getAllPatients() {
 
         log.debug("Getting all patients");
-        List<Patient> patients = patientRepository.findAll();
+        List<PatientView> patients = patientRepository.findAllViews();
 
-        log.debug("Found patients: {}", patients);
-        return patients.stream()
-                .map(patient -> modelMapper.map(patient, PatientDto.class))
-                .collect(Collectors.toList());
+        log.debug("Found {} patients", patients.size());
+        return patientMapper.viewsToDtoList(patients);
     }
 
 
     /**
-     Create a new patient.
+     Get all patients with the version of the list, computed from the rows read rather than by another query.
+     @return A {@link VersionedPatientList} holding every patient and the version of the list.
+     */
+    public VersionedPatientList getVersionedPatientList() {
+
+        log.debug("Getting all patients with the list version");
+        List<PatientView> patients = patientRepository.findAllViews();
+
+        log.debug("Found {} patients", patients.size());
+        return new VersionedPatientList(patientMapper.viewsToDtoList(patients), PatientListVersion.of(patients));
+    }
+
+
+    /**
+     Get one page of patients ordered by id, using the id of the last patient of the previous page as keyset.
+     @param cursor the cursor returned with the previous page, or null for the first page.
+     @param size the requested page size, clamped between 1 and {@link #MAX_PAGE_SIZE}.
+     @return A {@link PatientPage} holding the patients and the cursor of the next page, if any.
+     @throws com.mediscreen.patient.exception.InvalidCursorException if the cursor is malformed.
+     */
+    public PatientPage getPatientPage(String cursor, int size) {
+
+        int afterId = PatientCursor.decode(cursor);
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        log.debug("Getting patients page after id: {}, size: {}", afterId, pageSize);
+
+        // one extra row tells whether a next page exists without a count query
+        List<PatientView> patients = patientRepository.findViewPageAfter(afterId, PageRequest.of(0, pageSize + 1));
+        boolean hasNext = patients.size() > pageSize;
+        List<PatientView> page = hasNext ? patients.subList(0, pageSize) : patients;
+
+        List<PatientDto> patientDtos = patientMapper.viewsToDtoList(page);
+        String nextCursor = hasNext ? PatientCursor.encode(page.get(pageSize - 1).id()) : null;
+        return new PatientPage(patientDtos, nextCursor);
+    }
+
+
+    /**
+     Search patients by family name, one page at a time.
+     Every mode is served by an index: the stored last name for {@link PatientSearchMode#EXACT},
+     the normalized last name for the case and accent insensitive modes.
+     @param familyName the family name, or its beginning for {@link PatientSearchMode#PREFIX}.
+     @param mode how the family name is matched.
+     @param page the zero-based page number.
+     @param size the page size, clamped between 1 and {@link #MAX_PAGE_SIZE}.
+     @return A list of {@link PatientDto}, empty when nothing matches.
+     */
+    public List<PatientDto> searchPatients(String familyName, PatientSearchMode mode, int page, int size) {
+
+        log.debug("Searching patients with family name: {}, mode: {}, page: {}, size: {}", familyName, mode, page, size);
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_PAGE_SIZE));
+        String key = PatientNames.normalize(familyName);
+        if (key == null || key.isEmpty()) {
+            return List.of();
+        }
+
+        List<PatientView> patients = switch (mode) {
+            case EXACT -> patientRepository.searchViewsByLastName(familyName, pageRequest);
+            case INSENSITIVE -> patientRepository.searchViewsByLastNameKey(key, pageRequest);
+            case PREFIX -> patientRepository.searchViewsByLastNameKeyLike(PatientNames.escapeLike(key) + "%", pageRequest);
+        };
+        log.debug("Found {} patients", patients.size());
+        return patientMapper.viewsToDtoList(patients);
+    }
+
+
+    /**
+     Search patients by free text over their names, address and phone number, tolerating misspellings and partial
+     words, with the {@link PatientSearchIndex}. Until the index is loaded, falls back to a family name prefix search.
+     @param query the words to look for, in any field.
+     @param limit the maximum number of results, clamped between 1 and {@link #MAX_PAGE_SIZE}.
+     @return A list of {@link PatientSearchHit}, best match first, empty when nothing matches.
+     */
+    public List<PatientSearchHit> fuzzySearchPatients(String query, int limit) {
+
+        log.debug("Fuzzy searching patients with query: {}, limit: {}", query, limit);
+        int maxResults = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        if (!patientSearchIndex.isLoaded()) {
+            String key = PatientNames.normalize(query);
+            if (key == null || key.isEmpty()) {
+                return List.of();
+            }
+            List<PatientView> patients = patientRepository.searchViewsByLastNameKeyLike(
+                    PatientNames.escapeLike(key) + "%", PageRequest.of(0, maxResults));
+            return patientMapper.viewsToDtoList(patients).stream()
+                    .map(patient -> new PatientSearchHit(patient, 0))
+                    .toList();
+        }
+
+        List<PatientSearchIndex.Match> matches = patientSearchIndex.search(query, maxResults);
+        List<Integer> ids = matches.stream().map(PatientSearchIndex.Match::id).toList();
+        Map<Integer, PatientDto> patients = new HashMap<>(patientCache.getAllPresentById(ids));
+        List<Integer> missing = ids.stream().filter(id -> !patients.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            for (PatientView view : patientRepository.findViewsByIds(missing)) {
+                patients.put(view.id(), patientMapper.toDto(view));
+            }
+        }
+
+        // a patient deleted by another instance is still indexed here, but no longer found
+        List<PatientSearchHit> hits = new ArrayList<>(matches.size());
+        for (PatientSearchIndex.Match match : matches) {
+            PatientDto patient = patients.get(match.id());
+            if (patient != null) {
+                hits.add(new PatientSearchHit(patient, match.score()));
+            }
+        }
+        log.debug("Found {} patients", hits.size());
+        return hits;
+    }
+
+
+    /**
+     Stream all patients ordered by id straight from a JDBC cursor, without loading them in memory.
+     @param consumer receives each patient as soon as it is read.
+     */
+    public void streamAllPatients(Consumer<PatientDto> consumer) {
+
+        log.debug("Streaming all patients");
+        patientJdbcRepository.streamAll(consumer);
+    }
+
+
+    /**
+     Create a new patient, unless it may be the duplicate of an existing one.
      @param patientDto A {@link PatientDto} representing the patient to create.
      @return A {@link PatientDto} representing the created patient.
+     @throws DuplicatePatientException if a patient with a similar name and the same birthdate exists.
      */
+    @Transactional(timeout = PatientChangeService.COMMIT_TIMEOUT_SECONDS)
     public PatientDto createPatient(PatientDto patientDto) {
-        log.debug("Creating patient: {}", patientDto);
-        Patient patient = modelMapper.map(patientDto, Patient.class);
+        return createPatient(patientDto, false);
+    }
+
+
+    /**
+     Create a new patient.
+     @param patientDto A {@link PatientDto} representing the patient to create.
+     @param allowDuplicate true to create the patient even if it may be the duplicate of an existing one.
+     @return A {@link PatientDto} representing the created patient.
+     @throws DuplicatePatientException if a duplicate is not allowed and a patient with a similar name and the
+     same birthdate exists.
+     */
+    @Transactional(timeout = PatientChangeService.COMMIT_TIMEOUT_SECONDS)
+    public PatientDto createPatient(PatientDto patientDto, boolean allowDuplicate) {
+        log.debug("Creating patient: {}, duplicate allowed: {}", patientDto, allowDuplicate);
+        Patient patient = patientMapper.toEntity(patientDto);
         patient = patientRepository.save(patient);
+        PatientDto created = patientMapper.toDto(patient);
+
+        // the id is assigned by now, the row is only inserted at commit
+        if (allowDuplicate) {
+            patientDuplicateIndex.put(created.getId(), created);
+        } else {
+            List<Integer> duplicates = patientDuplicateIndex.addIfNoDuplicate(created.getId(), created);
+            if (!duplicates.isEmpty()) {
+                throw new DuplicatePatientException(duplicates);
+            }
+        }
+        AfterCommit.onRollback(() -> patientDuplicateIndex.remove(created.getId()));
+
+        patientChangeService.record(patient.getId(), PatientChangeType.CREATED);
+        AfterCommit.run(() -> {
+            patientCache.evictFamilyName(created.getLastName());
+            patientSearchIndex.put(created.getId(), created);
+            patientAuditService.record(created.getId(), PatientChangeType.CREATED, created);
+        });
         log.debug("Created patient: {}", patient);
-        return modelMapper.map(patient, PatientDto.class);
+        return created;
     }
 
 
@@ -95,34 +350,83 @@ public class PatientService {
      @return A {@link PatientDto} representing the updated patient.
      @throws PatientNotFoundException if the patient could not be found.
      */
+    @Transactional(timeout = PatientChangeService.COMMIT_TIMEOUT_SECONDS)
     public PatientDto updatePatient(int id, PatientDto patientDto) throws PatientNotFoundException {
+        return updatePatient(id, patientDto, null);
+    }
 
-        log.debug("Updating patient with id: {} and data: {}", id, patientDto);
-        Patient patient = patientRepository.findById(id).orElseThrow(() -> new PatientNotFoundException(id));
-        patient.setLastName(patientDto.getLastName());
-        patient.setFirstName(patientDto.getFirstName());
-        patient.setAddress(patientDto.getAddress());
-        patient.setPhone(patientDto.getPhone());
-        patient.setBirthdate(patientDto.getBirthdate());
-        patient.setSex(patientDto.getSex());
-        patient = patientRepository.save(patient);
+
+    /**
+     Update an existing patient with a single UPDATE statement, without reading it first.
+     @param id The id of the patient to update.
+     @param patientDto A {@link PatientDto} representing the updated patient information.
+     @param expectedVersion the version the patient must still have, or null to update whatever its version.
+     @return A {@link PatientDto} representing the updated patient.
+     @throws PatientNotFoundException if the patient could not be found.
+     @throws PatientVersionConflictException if the patient exists with another version.
+     @throws ConstraintViolationException if the updated patient is invalid.
+     */
+    @Transactional(timeout = PatientChangeService.COMMIT_TIMEOUT_SECONDS)
+    public PatientDto updatePatient(int id, PatientDto patientDto, Long expectedVersion) throws PatientNotFoundException {
+
+        log.debug("Updating patient with id: {}, version: {} and data: {}", id, expectedVersion, patientDto);
+        Patient patient = new Patient();
+        patientMapper.updateEntity(patientDto, patient);
+        patient.setId(id);
+        // the bulk update bypasses the JPA lifecycle, hence bean validation and the entity callbacks
+        Set<ConstraintViolation<Patient>> violations = validator.validate(patient);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        patient.beforeWrite();
+
+        int updated = expectedVersion == null
+                ? patientRepository.updateFields(patient)
+                : patientRepository.updateFieldsIfVersion(patient, expectedVersion);
+        if (updated == 0) {
+            // only a failed conditional update needs to tell a missing patient from a stale version
+            if (expectedVersion != null && patientRepository.existsById(id)) {
+                throw new PatientVersionConflictException(id, expectedVersion);
+            }
+            throw new PatientNotFoundException(id);
+        }
+
+        patientChangeService.record(id, PatientChangeType.UPDATED);
+        PatientDto after = patientMapper.toDto(patient);
+        // name entries of the previous last name hold this id, evict(id) removes them
+        AfterCommit.run(() -> {
+            patientCache.evict(id);
+            patientCache.evictFamilyName(after.getLastName());
+            patientDuplicateIndex.put(id, after);
+            patientSearchIndex.put(id, after);
+            patientAuditService.record(id, PatientChangeType.UPDATED, after);
+        });
 
         log.debug("Updated patient: {}", patient);
-        return modelMapper.map(patient, PatientDto.class);
+        return after;
     }
 
 
     /**
-     Delete a patient by id.
+     Delete a patient by id, with a single DELETE statement.
      @param id the id of the patient to delete
      @throws PatientNotFoundException if the patient with the given id does not exist
      */
+    @Transactional(timeout = PatientChangeService.COMMIT_TIMEOUT_SECONDS)
     public void deletePatient(int id) throws PatientNotFoundException {
 
         log.debug("Processing delete patient request for id: {}", id);
-        Patient patient = patientRepository.findById(id).orElseThrow(() -> new PatientNotFoundException(id));
+        if (patientRepository.deleteReturningCount(id) == 0) {
+            throw new PatientNotFoundException(id);
+        }
 
-        patientRepository.delete(patient);
+        patientChangeService.record(id, PatientChangeType.DELETED);
+        AfterCommit.run(() -> {
+            patientCache.evict(id);
+            patientDuplicateIndex.remove(id);
+            patientSearchIndex.remove(id);
+            patientAuditService.record(id, PatientChangeType.DELETED, null);
+        });
         log.debug("Patient with id: {} deleted successfully", id);
     }
 }
@@ -0,0 +1,177 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientAge;
+import com.mediscreen.patient.dto.PatientBirthdate;
+import com.mediscreen.patient.dto.PatientBirthdateCount;
+import com.mediscreen.patient.dto.PatientCountRange;
+import com.mediscreen.patient.dto.PatientDemographics;
+import com.mediscreen.patient.exception.InvalidBatchException;
+import com.mediscreen.patient.exception.InvalidStatsException;
+import com.mediscreen.patient.repository.PatientRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Demographic statistics of the patients, computed without reading them one by one.
+ * <p>
+ * The database groups the patients by birthdate and sex, from the {@code idx_patient_birthdate_sex} index, and
+ * the groups are folded here into age buckets, sex counts and birth year ranges. Ages depend on the day they are
+ * computed, so they are not stored: counting per birthdate keeps the fold exact on any day, from at most one row
+ * per day of birth and sex.
+ */
+@Service
+public class PatientStatsService {
+
+    private static final Logger log = LogManager.getLogger(PatientStatsService.class);
+
+    /** Widest bucket, in years, of ages or birth years. */
+    static final int MAX_BUCKET_YEARS = 150;
+
+    private final PatientRepository patientRepository;
+    private final PatientCache patientCache;
+    private final int chunkSize;
+    private final int maxIds;
+    private final Clock clock;
+
+    @Autowired
+    public PatientStatsService(PatientRepository patientRepository, PatientCache patientCache,
+                               @Value("${patient.batch.chunk-size:500}") int chunkSize,
+                               @Value("${patient.batch.max-ids:1000}") int maxIds) {
+        this(patientRepository, patientCache, chunkSize, maxIds, Clock.systemDefaultZone());
+    }
+
+    PatientStatsService(PatientRepository patientRepository, PatientCache patientCache, int chunkSize, int maxIds,
+                        Clock clock) {
+        this.patientRepository = patientRepository;
+        this.patientCache = patientCache;
+        this.chunkSize = chunkSize;
+        this.maxIds = maxIds;
+        this.clock = clock;
+    }
+
+
+    /**
+     Count the patients by sex, age bucket and birth year range.
+     @param ageBucket the width of the age buckets, in years: 10 gives 0-9, 10-19...
+     @param yearBucket the width of the birth year ranges, in years, aligned on multiples of it: 10 gives 1950-1959,
+     1960-1969...
+     @return the statistics as of today. A patient born after today counts as aged 0.
+     @throws InvalidStatsException if a bucket width is not between 1 and {@value #MAX_BUCKET_YEARS}.
+     */
+    @Transactional(readOnly = true)
+    public PatientDemographics getDemographics(int ageBucket, int yearBucket) {
+
+        checkBucket("ageBucket", ageBucket);
+        checkBucket("yearBucket", yearBucket);
+        LocalDate today = LocalDate.now(clock);
+        List<PatientBirthdateCount> groups = patientRepository.countByBirthdateAndSex();
+        log.debug("Folding {} birthdate groups into demographics", groups.size());
+
+        long total = 0;
+        Map<String, Long> bySex = new TreeMap<>();
+        Map<Integer, Long> byAge = new HashMap<>();
+        Map<Integer, Long> byYear = new HashMap<>();
+        int oldest = 0;
+        int firstYear = Integer.MAX_VALUE;
+        int lastYear = Integer.MIN_VALUE;
+        for (PatientBirthdateCount group : groups) {
+            long count = group.count();
+            total += count;
+            bySex.merge(group.sex(), count, Long::sum);
+            int age = age(group.birthdate(), today);
+            byAge.merge(age / ageBucket, count, Long::sum);
+            oldest = Math.max(oldest, age);
+            int year = group.birthdate().getYear();
+            byYear.merge(Math.floorDiv(year, yearBucket), count, Long::sum);
+            firstYear = Math.min(firstYear, year);
+            lastYear = Math.max(lastYear, year);
+        }
+
+        if (groups.isEmpty()) {
+            return new PatientDemographics(today, 0, bySex, List.of(), List.of());
+        }
+        return new PatientDemographics(today, total, bySex,
+                ranges(byAge, 0, oldest / ageBucket, ageBucket),
+                ranges(byYear, Math.floorDiv(firstYear, yearBucket), Math.floorDiv(lastYear, yearBucket), yearBucket));
+    }
+
+
+    private static List<PatientCountRange> ranges(Map<Integer, Long> counts, int firstBucket, int lastBucket, int width) {
+        List<PatientCountRange> ranges = new ArrayList<>(lastBucket - firstBucket + 1);
+        for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            ranges.add(new PatientCountRange(bucket * width, (bucket + 1) * width - 1, counts.getOrDefault(bucket, 0L)));
+        }
+        return ranges;
+    }
+
+
+    private static void checkBucket(String name, int years) {
+        if (years < 1 || years > MAX_BUCKET_YEARS) {
+            throw new InvalidStatsException(name + " must be between 1 and " + MAX_BUCKET_YEARS + ", got " + years);
+        }
+    }
+
+
+    /**
+     Find the ages of patients by id.
+     @param ids the ids, possibly repeated.
+     @return one {@link PatientAge} per requested id, in the order of the request, missing patients included.
+     @throws InvalidBatchException if an id is null or there are more than {@code patient.batch.max-ids} ids.
+     */
+    @Transactional(readOnly = true)
+    public List<PatientAge> findAgesByIds(List<Integer> ids) {
+
+        if (ids.size() > maxIds) {
+            throw new InvalidBatchException("at most " + maxIds + " ids are accepted, got " + ids.size());
+        }
+        Set<Integer> distinctIds = new LinkedHashSet<>(ids);
+        if (distinctIds.contains(null)) {
+            throw new InvalidBatchException("null id");
+        }
+
+        Map<Integer, LocalDate> birthdates = new HashMap<>();
+        for (Map.Entry<Integer, PatientDto> cached : patientCache.getAllPresentById(distinctIds).entrySet()) {
+            birthdates.put(cached.getKey(), cached.getValue().getBirthdate());
+        }
+        distinctIds.removeAll(birthdates.keySet());
+
+        List<Integer> missing = new ArrayList<>(distinctIds);
+        for (int from = 0; from < missing.size(); from += chunkSize) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + chunkSize, missing.size()));
+            for (PatientBirthdate patient : patientRepository.findBirthdatesByIds(chunk)) {
+                birthdates.put(patient.id(), patient.birthdate());
+            }
+        }
+
+        LocalDate today = LocalDate.now(clock);
+        List<PatientAge> ages = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            boolean found = birthdates.containsKey(id);
+            LocalDate birthdate = birthdates.get(id);
+            ages.add(new PatientAge(id, found, birthdate == null ? null : age(birthdate, today)));
+        }
+        return ages;
+    }
+
+
+    private static int age(LocalDate birthdate, LocalDate today) {
+        return Math.max(0, Period.between(birthdate, today).getYears());
+    }
+}
@@ -0,0 +1,464 @@
+package com.mediscreen.patient.snapshot;
+
+import com.mediscreen.patient.dto.PatientView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only, memory-mapped snapshot of the patient table, written by {@link Writer}.
+ * <p>
+ * The file is big-endian:
+ * <ul>
+ *     <li>a header of {@value #HEADER_BYTES} bytes: magic, format version, change log high-water mark, write time
+ *     in epoch milliseconds, patient count, sex count, size of the string section and the CRC32 of the header and
+ *     the trailer;</li>
+ *     <li>one record of {@value #RECORD_BYTES} bytes per patient, sorted by id: id, then the string offsets of the
+ *     last name, first name, address and phone, the birthdate in epoch days, the sex code, then the version and
+ *     the last modification time in epoch milliseconds;</li>
+ *     <li>the string section: each string as its UTF-8 length then its bytes, stored inline for every record that
+ *     uses it, an offset of -1 being null;</li>
+ *     <li>the trailer: the sex dictionary, as string offsets, a sex code {@code n} being the n-th entry and 0 null,
+ *     then the CRC32 of each block of {@value #BLOCK_BYTES} bytes of records and strings.</li>
+ * </ul>
+ * Only the sex is dictionary-encoded: names, addresses and phones are mostly distinct, and sharing them would
+ * keep every distinct string on the heap of the writer.
+ * <p>
+ * Patients are found by binary search on the fixed-width records, straight from the mapped pages. Opening the
+ * file only checks the header and the trailer; a block is checked the first time a read touches it, so that a
+ * restart does not read the whole file before serving. The snapshot takes no heap besides the sex dictionary and
+ * a bit per block.
+ */
+public final class PatientSnapshot {
+
+    static final int MAGIC = 0x50534E50; // "PSNP"
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_BYTES = 40;
+    static final int RECORD_BYTES = 44;
+    static final int BLOCK_BYTES = 64 * 1024;
+
+    private static final int NULL_STRING = -1;
+    private static final int NULL_BIRTHDATE = Integer.MIN_VALUE;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+
+    private final ByteBuffer buffer;
+    private final long highWaterMark;
+    private final Instant writtenAt;
+    private final int count;
+    private final String[] sexes;
+    private final int stringsAt;
+    private final int bodyEnd;
+    private final int blockChecksumsAt;
+    /** One bit per block, set once its checksum matched. */
+    private final AtomicLongArray verified;
+
+    private PatientSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a patient snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported patient snapshot version " + buffer.getInt(4));
+        }
+        this.highWaterMark = buffer.getLong(8);
+        this.writtenAt = Instant.ofEpochMilli(buffer.getLong(16));
+        this.count = buffer.getInt(24);
+        int sexCount = buffer.getInt(28);
+        int stringBytes = buffer.getInt(32);
+        long stringsAt = HEADER_BYTES + (long) count * RECORD_BYTES;
+        long bodyEnd = stringsAt + stringBytes;
+        long blocks = (bodyEnd - HEADER_BYTES + BLOCK_BYTES - 1) / BLOCK_BYTES;
+        long blockChecksumsAt = bodyEnd + (long) sexCount * Integer.BYTES;
+        if (count < 0 || sexCount < 0 || stringBytes < 0
+                || blockChecksumsAt + blocks * Integer.BYTES != buffer.capacity()) {
+            throw new IOException("Truncated patient snapshot");
+        }
+        this.stringsAt = (int) stringsAt;
+        this.bodyEnd = (int) bodyEnd;
+        this.blockChecksumsAt = (int) blockChecksumsAt;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, HEADER_BYTES - Integer.BYTES));
+        crc.update(buffer.slice(this.bodyEnd, buffer.capacity() - this.bodyEnd));
+        if ((int) crc.getValue() != buffer.getInt(HEADER_BYTES - Integer.BYTES)) {
+            throw new IOException("Corrupted patient snapshot");
+        }
+        this.verified = new AtomicLongArray((int) ((blocks + 63) / 64));
+        this.sexes = new String[sexCount + 1];
+        try {
+            for (int code = 1; code <= sexCount; code++) {
+                sexes[code] = string(buffer.getInt(this.bodyEnd + (code - 1) * Integer.BYTES));
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+
+    /**
+     Map a snapshot file and check it is whole.
+     @param path the snapshot file.
+     @return the snapshot.
+     @throws IOException if the file cannot be read, or is not a complete snapshot of this format.
+     */
+    public static PatientSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Patient snapshot too large: " + channel.size() + " bytes");
+            }
+            // the mapping outlives the channel
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PatientSnapshot(mapped);
+        }
+    }
+
+
+    /**
+     Start writing a snapshot; patients must be added in increasing id order.
+     @param path the file to write, replaced if it exists.
+     @param highWaterMark the last change log sequence reflected by the patients to add.
+     @param writtenAt the time the patients are read.
+     @return the writer, to close once every patient is added.
+     @throws IOException if the file cannot be created.
+     */
+    public static Writer writer(Path path, long highWaterMark, Instant writtenAt) throws IOException {
+        return new Writer(path, highWaterMark, writtenAt);
+    }
+
+
+    /**
+     Find a patient by id.
+     @param id the patient id.
+     @return the patient and its version as of the snapshot, or null if it was not in the table.
+     @throws UncheckedIOException if a block read is corrupted.
+     */
+    public PatientView get(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int at = HEADER_BYTES + middle * RECORD_BYTES;
+            verify(at, RECORD_BYTES);
+            int middleId = buffer.getInt(at);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return read(at);
+            }
+        }
+        return null;
+    }
+
+
+    private PatientView read(int at) {
+        int birthdate = buffer.getInt(at + 20);
+        long lastModified = buffer.getLong(at + 36);
+        return new PatientView(
+                buffer.getInt(at),
+                string(buffer.getInt(at + 4)),
+                string(buffer.getInt(at + 8)),
+                birthdate == NULL_BIRTHDATE ? null : LocalDate.ofEpochDay(birthdate),
+                sexes[buffer.get(at + 24) & 0xFF],
+                string(buffer.getInt(at + 12)),
+                string(buffer.getInt(at + 16)),
+                buffer.getLong(at + 28),
+                lastModified == NULL_TIME ? null : Instant.ofEpochMilli(lastModified));
+    }
+
+
+    private String string(int offset) {
+        if (offset == NULL_STRING) {
+            return null;
+        }
+        int at = stringsAt + offset;
+        verify(at, Integer.BYTES);
+        byte[] bytes = new byte[buffer.getInt(at)];
+        verify(at + Integer.BYTES, bytes.length);
+        buffer.get(at + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     Check the blocks holding a range of records and strings, unless already checked.
+     @throws UncheckedIOException if one does not match its checksum.
+     */
+    private void verify(int at, int length) {
+        if (length == 0) {
+            return;
+        }
+        int last = (at + length - 1 - HEADER_BYTES) / BLOCK_BYTES;
+        for (int block = (at - HEADER_BYTES) / BLOCK_BYTES; block <= last; block++) {
+            long bit = 1L << block;
+            if ((verified.get(block >>> 6) & bit) != 0) {
+                continue;
+            }
+            int from = HEADER_BYTES + block * BLOCK_BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(from, Math.min(BLOCK_BYTES, bodyEnd - from)));
+            if ((int) crc.getValue() != buffer.getInt(blockChecksumsAt + block * Integer.BYTES)) {
+                throw new UncheckedIOException(new IOException("Corrupted patient snapshot block " + block));
+            }
+            verified.getAndAccumulate(block >>> 6, bit, (bits, added) -> bits | added);
+        }
+    }
+
+
+    /**
+     @return the last change log sequence the snapshot reflects.
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+
+    public Instant getWrittenAt() {
+        return writtenAt;
+    }
+
+
+    /**
+     @return the number of patients.
+     */
+    public int size() {
+        return count;
+    }
+
+
+    /**
+     @return the size of the file, in bytes.
+     */
+    public int sizeInBytes() {
+        return buffer.capacity();
+    }
+
+
+    /**
+     Streams patients into a snapshot file: records are written as they come, their strings go to a temporary file
+     copied after the records at the end, so that the writer keeps no string but the sex dictionary. The header is
+     written last, so a file left by a failed write is never mistaken for a snapshot.
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private static final int CHUNK_BYTES = 64 * 1024;
+
+        private final FileChannel channel;
+        private final FileChannel strings;
+        private final long highWaterMark;
+        private final Instant writtenAt;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+        private final ByteBuffer stringChunk = ByteBuffer.allocate(CHUNK_BYTES);
+        private final CRC32 blockCrc = new CRC32();
+        private final List<Integer> blockChecksums = new ArrayList<>();
+        private final Map<String, Integer> sexCodes = new HashMap<>();
+        private final List<Integer> sexStrings = new ArrayList<>();
+        private int blockFill;
+        private int count;
+        private int lastId = Integer.MIN_VALUE;
+        private long stringBytes;
+
+        private Writer(Path path, long highWaterMark, Instant writtenAt) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                this.strings = FileChannel.open(path.resolveSibling(path.getFileName() + ".strings"),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+            this.highWaterMark = highWaterMark;
+            this.writtenAt = writtenAt;
+            channel.position(HEADER_BYTES);
+        }
+
+
+        /**
+         Append a patient.
+         @param patient the patient and its version, with an id greater than the previous one.
+         @throws IllegalArgumentException if the patient has no id, or is out of order.
+         @throws UncheckedIOException if the file cannot be written.
+         */
+        public void add(PatientView patient) {
+            Integer id = patient.id();
+            if (id == null || (count > 0 && id <= lastId)) {
+                throw new IllegalArgumentException("Patients must be added by increasing id, got " + id + " after " + lastId);
+            }
+            LocalDate birthdate = patient.birthdate();
+            ensureRoom(RECORD_BYTES);
+            chunk.putInt(id)
+                    .putInt(append(patient.lastName()))
+                    .putInt(append(patient.firstName()))
+                    .putInt(append(patient.address()))
+                    .putInt(append(patient.phone()))
+                    .putInt(birthdate == null ? NULL_BIRTHDATE : Math.toIntExact(birthdate.toEpochDay()))
+                    .put(sexCode(patient.sex()))
+                    .put((byte) 0).put((byte) 0).put((byte) 0)
+                    .putLong(patient.version() == null ? 0 : patient.version())
+                    .putLong(patient.lastModified() == null ? NULL_TIME : patient.lastModified().toEpochMilli());
+            lastId = id;
+            count++;
+        }
+
+
+        private int append(String value) {
+            if (value == null) {
+                return NULL_STRING;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int offset = (int) stringBytes;
+            stringBytes += Integer.BYTES + bytes.length;
+            if (stringBytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many strings for a patient snapshot");
+            }
+            ensureStringRoom(Integer.BYTES);
+            stringChunk.putInt(bytes.length);
+            for (int written = 0; written < bytes.length; ) {
+                ensureStringRoom(1);
+                int length = Math.min(stringChunk.remaining(), bytes.length - written);
+                stringChunk.put(bytes, written, length);
+                written += length;
+            }
+            return offset;
+        }
+
+
+        private byte sexCode(String sex) {
+            if (sex == null) {
+                return 0;
+            }
+            Integer code = sexCodes.get(sex);
+            if (code == null) {
+                if (sexStrings.size() == 255) {
+                    throw new IllegalStateException("More than 255 distinct sex values");
+                }
+                sexStrings.add(append(sex));
+                code = sexStrings.size();
+                sexCodes.put(sex, code);
+            }
+            return (byte) (int) code;
+        }
+
+
+        /**
+         Copy the strings after the records, write the trailer and the header, and flush the file to disk.
+         @return the number of patients written.
+         @throws IOException if the file cannot be written.
+         */
+        public int finish() throws IOException {
+            stringChunk.flip();
+            write(stringChunk, strings);
+            strings.position(0);
+            // through the chunk, so that the strings are checksummed with the records
+            while (strings.read(chunk) >= 0) {
+                if (!chunk.hasRemaining()) {
+                    flush();
+                }
+            }
+            flush();
+            if (blockFill > 0) {
+                blockChecksums.add((int) blockCrc.getValue());
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate((sexStrings.size() + blockChecksums.size()) * Integer.BYTES);
+            sexStrings.forEach(trailer::putInt);
+            blockChecksums.forEach(trailer::putInt);
+            trailer.flip();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(highWaterMark)
+                    .putLong(writtenAt.toEpochMilli())
+                    .putInt(count)
+                    .putInt(sexStrings.size())
+                    .putInt((int) stringBytes);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, header.position());
+            crc.update(trailer.duplicate());
+            header.putInt((int) crc.getValue()).flip();
+            write(trailer, channel);
+            channel.write(header, 0);
+            channel.force(true);
+            return count;
+        }
+
+
+        private void ensureRoom(int bytes) {
+            if (chunk.remaining() < bytes) {
+                try {
+                    flush();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+
+
+        private void ensureStringRoom(int bytes) {
+            if (stringChunk.remaining() < bytes) {
+                stringChunk.flip();
+                try {
+                    write(stringChunk, strings);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+
+
+        private void flush() throws IOException {
+            chunk.flip();
+            checksum(chunk.duplicate());
+            write(chunk, channel);
+        }
+
+
+        private void checksum(ByteBuffer bytes) {
+            while (bytes.hasRemaining()) {
+                int length = Math.min(bytes.remaining(), BLOCK_BYTES - blockFill);
+                blockCrc.update(bytes.slice(bytes.position(), length));
+                bytes.position(bytes.position() + length);
+                blockFill += length;
+                if (blockFill == BLOCK_BYTES) {
+                    blockChecksums.add((int) blockCrc.getValue());
+                    blockCrc.reset();
+                    blockFill = 0;
+                }
+            }
+        }
+
+
+        private static void write(ByteBuffer bytes, FileChannel channel) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            try {
+                strings.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.mediscreen.patient.snapshot;
+
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.repository.PatientChangeRepository;
+import com.mediscreen.patient.repository.PatientJdbcRepository;
+import com.mediscreen.patient.service.PatientChangeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves patients by id from a {@link PatientSnapshot} file after a restart, so that the first reads do not all go
+ * to the database while the caches are cold. Enabled by setting {@code patient.snapshot.path}.
+ * <p>
+ * The snapshot records the last change log sequence it reflects. At startup, and then every
+ * {@code patient.snapshot.validate-interval}, the changes recorded since are read and their patients are never
+ * served from the snapshot again; the writes of this instance exclude their patients at once, through
+ * {@link #invalidate(Collection)}. Until the first validation succeeds, or when the last one is older than
+ * {@code patient.snapshot.max-validation-lag}, nothing is served from the snapshot.
+ * <p>
+ * A transaction still running while the snapshot was written is not in it, but may commit a sequence below its
+ * high-water mark. Such a transaction commits at most {@link PatientChangeService#COMMIT_TIMEOUT_SECONDS} after
+ * stamping its change, or is rolled back, so validations also invalidate every change stamped since the write
+ * time minus the settle time, until one runs after the write time plus the settle time.
+ * <p>
+ * A new snapshot is written every {@code patient.snapshot.write-interval} for the next start, the running instance
+ * keeps serving the one it started with.
+ */
+@Component
+public class PatientSnapshotStore implements SmartInitializingSingleton {
+
+    private static final Logger log = LogManager.getLogger(PatientSnapshotStore.class);
+
+    private static final int CHANGES_PAGE_SIZE = 1000;
+
+    private final PatientChangeRepository patientChangeRepository;
+    private final PatientJdbcRepository patientJdbcRepository;
+    private final TransactionTemplate readOnly;
+    private final Path path;
+    private final Duration writeInterval;
+    private final Duration validateInterval;
+    private final long maxValidationLagNanos;
+    private final Duration maxAge;
+    private final Duration settleTime;
+    /** How long before the snapshot was written a transaction it missed may have stamped its change. */
+    private final Duration lateCommitMargin;
+
+    /** Patients changed since the high-water mark of the snapshot, never served from it. */
+    private final Set<Integer> invalidated = ConcurrentHashMap.newKeySet();
+    private volatile PatientSnapshot snapshot;
+    /** Last settled change sequence whose patient is in {@link #invalidated}, only advanced by validations. */
+    private volatile long highWaterMark;
+    private volatile long validatedAtNanos;
+    /** Whether every transaction running while the snapshot was written had ended at a validation. */
+    private volatile boolean lateCommitsRead;
+    private ScheduledExecutorService executor;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer writes;
+
+    public PatientSnapshotStore(PatientChangeRepository patientChangeRepository,
+                                PatientJdbcRepository patientJdbcRepository,
+                                PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                @Value("${patient.snapshot.path:}") String path,
+                                @Value("${patient.snapshot.write-interval:10m}") Duration writeInterval,
+                                @Value("${patient.snapshot.validate-interval:1s}") Duration validateInterval,
+                                @Value("${patient.snapshot.max-validation-lag:10s}") Duration maxValidationLag,
+                                @Value("${patient.snapshot.max-age:1d}") Duration maxAge,
+                                @Value("${patient.changes.settle-time:5s}") Duration settleTime) {
+        this.patientChangeRepository = patientChangeRepository;
+        this.patientJdbcRepository = patientJdbcRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.writeInterval = writeInterval;
+        this.validateInterval = validateInterval;
+        this.maxValidationLagNanos = maxValidationLag.toNanos();
+        this.maxAge = maxAge;
+        this.settleTime = settleTime;
+        Duration commitTimeout = Duration.ofSeconds(PatientChangeService.COMMIT_TIMEOUT_SECONDS);
+        this.lateCommitMargin = commitTimeout.compareTo(settleTime) < 0 ? settleTime : commitTimeout;
+
+        this.hits = Counter.builder("patient.snapshot.reads").tag("outcome", "hit")
+                .description("Patients read by id from the snapshot").register(meterRegistry);
+        this.misses = Counter.builder("patient.snapshot.reads").tag("outcome", "miss")
+                .description("Patients read by id from the snapshot").register(meterRegistry);
+        this.writes = Timer.builder("patient.snapshot.write")
+                .description("Writes of the patient snapshot file").register(meterRegistry);
+        Gauge.builder("patient.snapshot.patients", this, store -> store.snapshot == null ? 0 : store.snapshot.size())
+                .description("Patients in the snapshot served")
+                .register(meterRegistry);
+        Gauge.builder("patient.snapshot.invalidated", invalidated, Set::size)
+                .description("Patients changed since the snapshot, no longer served from it")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     Map and validate the snapshot left by the previous run, then schedule validations and writes.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (path == null) {
+            return;
+        }
+        load();
+        // two threads, so that validations go on while a snapshot is written
+        executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "patient-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshot != null) {
+            long validateMillis = validateInterval.toMillis();
+            executor.scheduleWithFixedDelay(this::validateQuietly, validateMillis, validateMillis, TimeUnit.MILLISECONDS);
+        }
+        long writeMillis = writeInterval.toMillis();
+        executor.scheduleWithFixedDelay(this::writeQuietly, writeMillis, writeMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    private void load() {
+        if (!Files.exists(path)) {
+            log.info("No patient snapshot at {}", path);
+            return;
+        }
+        PatientSnapshot loaded;
+        try {
+            loaded = PatientSnapshot.open(path);
+        } catch (IOException ex) {
+            log.warn("Patient snapshot at {} ignored: {}", path, ex.getMessage());
+            return;
+        }
+        if (loaded.getWrittenAt().isBefore(Instant.now().minus(maxAge))) {
+            log.info("Patient snapshot at {} ignored, written at {}", path, loaded.getWrittenAt());
+            return;
+        }
+        highWaterMark = loaded.getHighWaterMark();
+        snapshot = loaded;
+        validateQuietly();
+        log.info("Patient snapshot of {} patients mapped, {} changed since, {}", loaded.size(), invalidated.size(),
+                isValidated() ? "validated" : "not validated yet");
+    }
+
+
+    /**
+     Find a patient in the snapshot.
+     @param id the patient id.
+     @return the patient and its version, or null when there is no validated snapshot, the patient changed since it
+     was written, or it is not in it. A snapshot found corrupted is dropped, and null returned.
+     */
+    public PatientView find(int id) {
+        PatientSnapshot current = snapshot;
+        if (current == null || !isValidated() || invalidated.contains(id)) {
+            return null;
+        }
+        PatientView patient;
+        try {
+            patient = current.get(id);
+        } catch (UncheckedIOException ex) {
+            log.warn("Patient snapshot at {} dropped: {}", path, ex.getCause().getMessage());
+            snapshot = null;
+            return null;
+        }
+        (patient == null ? misses : hits).increment();
+        return patient;
+    }
+
+
+    /**
+     Stop serving patients from the snapshot, called with every write before it commits.
+     @param patientIds the ids of the patients written.
+     */
+    public void invalidate(Collection<Integer> patientIds) {
+        if (snapshot != null) {
+            invalidated.addAll(patientIds);
+        }
+    }
+
+
+    /**
+     @return whether the snapshot is served: validated against the change log recently enough.
+     */
+    public boolean isValidated() {
+        long validatedAt = validatedAtNanos;
+        return validatedAt != 0 && System.nanoTime() - validatedAt <= maxValidationLagNanos;
+    }
+
+
+    /**
+     Read the change log past the high-water mark and invalidate the patients changed. Every change read is
+     invalidated, but the mark stops at the first gap in the sequences until the change after it has settled, so
+     that a transaction committing late with a lower sequence is read by the next validation. Until the transactions running while the snapshot was written
+     have all ended, the changes they may have stamped are invalidated too, whatever their sequence.
+     @throws DataAccessException if the change log cannot be read.
+     */
+    void validate() {
+        Instant now = Instant.now();
+        PatientSnapshot current = snapshot;
+        if (!lateCommitsRead && current != null) {
+            invalidated.addAll(patientChangeRepository.findPatientIdsChangedSince(
+                    current.getWrittenAt().minus(lateCommitMargin)));
+            lateCommitsRead = now.isAfter(current.getWrittenAt().plus(lateCommitMargin));
+        }
+        Instant settled = now.minus(settleTime);
+        long mark = highWaterMark;
+        long since = mark;
+        boolean settling = true;
+        List<PatientChange> changes;
+        do {
+            changes = patientChangeRepository.findChangesSince(since, PageRequest.of(0, CHANGES_PAGE_SIZE));
+            for (PatientChange change : changes) {
+                invalidated.add(change.getPatientId());
+                settling = settling
+                        && (change.getSequence() == since + 1 || !change.getChangedAt().isAfter(settled));
+                if (settling) {
+                    mark = change.getSequence();
+                }
+                since = change.getSequence();
+            }
+        } while (changes.size() == CHANGES_PAGE_SIZE);
+        highWaterMark = mark;
+        validatedAtNanos = System.nanoTime();
+    }
+
+
+    private void validateQuietly() {
+        try {
+            validate();
+        } catch (DataAccessException | TransactionException ex) {
+            log.warn("Patient snapshot not validated: {}", ex.getMessage());
+        }
+    }
+
+
+    /**
+     Write a new snapshot of every patient for the next start, through a temporary file moved into place. The
+     high-water mark and the patients are read in one read-only transaction, so from the same database.
+     @return the number of patients written.
+     @throws IOException if the file cannot be written.
+     */
+    int write() throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long start = System.nanoTime();
+        Integer written = readOnly.execute(status -> {
+            Instant now = Instant.now();
+            long mark = patientChangeRepository.findLastSequenceBefore(now.minus(settleTime)).orElse(0L);
+            try (PatientSnapshot.Writer writer = PatientSnapshot.writer(temporary, mark, now)) {
+                patientJdbcRepository.streamAllViews(writer::add);
+                return writer.finish();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("Patient snapshot of {} patients written to {} in {} ms", written, path,
+                (System.nanoTime() - start) / 1_000_000);
+        return written == null ? 0 : written;
+    }
+
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Patient snapshot not written to {}", path, ex);
+        }
+    }
+
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Patient snapshot writer did not stop within 10s");
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mediscreen.patient.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers side effects, such as cache invalidations, until the current transaction commits, or undoes in-memory
+ * ones when it rolls back. Checks can also be run right before the commit, to roll it back.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+
+    /**
+     Run an action once the current transaction has committed, or right away when there is no transaction.
+     The action is dropped if the transaction rolls back.
+     @param action the action to run.
+     */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+
+    /**
+     Run a check right before the current transaction commits: an exception it throws rolls the transaction back
+     instead. Nothing is run when there is no transaction.
+     @param check the check to run.
+     */
+    public static void beforeCommit(Runnable check) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    check.run();
+                }
+            });
+        }
+    }
+
+
+    /**
+     Run an action if the current transaction rolls back, to undo an in-memory change made along with it.
+     Nothing is run when there is no transaction.
+     @param action the action to run.
+     */
+    public static void onRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mediscreen.patient.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 parser for one CSV line: comma separated, fields optionally enclosed in double quotes,
+ * doubled quotes inside a quoted field. Quoted line breaks are not supported.
+ */
+public final class CsvParser {
+
+    private CsvParser() {
+    }
+
+
+    /**
+     Split a CSV line into its fields.
+     @param line the line, without its line terminator.
+     @return the unquoted fields.
+     @throws IllegalArgumentException if a quoted field is not closed.
+     */
+    public static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mediscreen.patient.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization of patient names for case and accent insensitive matching, and their phonetic keys.
+ */
+public final class PatientNames {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+    /** Soundex digit of each letter from a to z, 0 for vowels and for h, w and y. */
+    private static final String SOUNDEX_CODES = "01230120022455012623010202";
+
+    private PatientNames() {
+    }
+
+
+    /**
+     Normalize a name: accents stripped, lower-cased, trimmed and inner whitespaces collapsed.
+     @param name the name to normalize, may be null.
+     @return the normalized name, or null if the name is null.
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return WHITESPACES.matcher(stripped.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     Escape the wildcards of a LIKE pattern, using '!' as escape character.
+     @param value the literal value.
+     @return the value, matched literally by LIKE ... ESCAPE '!'.
+     */
+    public static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+
+    /**
+     American Soundex key of a name, after {@link #normalize(String)}: its first letter and up to three digits
+     for the consonant sounds that follow, so that names spelled differently but pronounced alike share a key.
+     Characters other than a to z are ignored.
+     @param name the name, may be null.
+     @return the key, such as "R163" for Robert and Rupert, or an empty string if the name has no letter.
+     */
+    public static String soundex(String name) {
+        String normalized = normalize(name);
+        if (normalized == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(4);
+        char last = '0';
+        for (int i = 0; i < normalized.length() && key.length() < 4; i++) {
+            char letter = normalized.charAt(i);
+            if (letter < 'a' || letter > 'z') {
+                continue;
+            }
+            char code = SOUNDEX_CODES.charAt(letter - 'a');
+            if (key.isEmpty()) {
+                key.append(Character.toUpperCase(letter));
+            } else if (code != '0' && code != last) {
+                key.append(code);
+            }
+            // h and w do not separate two consonants of the same code, vowels do
+            if (letter != 'h' && letter != 'w') {
+                last = code;
+            }
+        }
+        if (key.isEmpty()) {
+            return "";
+        }
+        while (key.length() < 4) {
+            key.append('0');
+        }
+        return key.toString();
+    }
+}
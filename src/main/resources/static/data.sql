@@ -1,12 +1,14 @@
-INSERT INTO patient (last_name, first_name, birthdate, sex, address, phone)
+INSERT INTO patient (id, last_name, last_name_key, first_name, birthdate, sex, address, phone)
 VALUES
-    ('Ferguson', 'Lucas', '1968-06-22', 'M', '2 Warren Street', '387-866-1399'),
-    ('Rees', 'Pippa', '1952-09-27', 'F', '745 West Valley Farms Drive', '628-423-0993'),
-    ('Arnold', 'Edward', '1952-11-11', 'M', '599 East Garden Ave', '123-727-2779'),
-    ('Sharp', 'Anthony', '1946-11-26', 'M', '894 Hall Street', '451-761-8383'),
-    ('Ince', 'Wendy', '1958-06-29', 'F', '4 Southampton Road', '802-911-9975'),
-    ('Ross', 'Tracey', '1949-12-07', 'F', '40 Sulphur Springs Dr', '131-396-5049'),
-    ('Wilson', 'Claire', '1966-12-31', 'F', '12 Cobblestone St', '300-452-1091'),
-    ('Buckland', 'Max', '1945-06-24', 'M', '193 Vale St', '833-534-0864'),
-    ('Clark', 'Natalie', '1964-06-18', 'F', '12 Beechwood Road', '241-467-9197'),
-    ('Bailey', 'Piers', '1959-06-28', 'M', '1202 Bumble Dr', '747-815-0557');
+    (1, 'Ferguson', 'ferguson', 'Lucas', '1968-06-22', 'M', '2 Warren Street', '387-866-1399'),
+    (2, 'Rees', 'rees', 'Pippa', '1952-09-27', 'F', '745 West Valley Farms Drive', '628-423-0993'),
+    (3, 'Arnold', 'arnold', 'Edward', '1952-11-11', 'M', '599 East Garden Ave', '123-727-2779'),
+    (4, 'Sharp', 'sharp', 'Anthony', '1946-11-26', 'M', '894 Hall Street', '451-761-8383'),
+    (5, 'Ince', 'ince', 'Wendy', '1958-06-29', 'F', '4 Southampton Road', '802-911-9975'),
+    (6, 'Ross', 'ross', 'Tracey', '1949-12-07', 'F', '40 Sulphur Springs Dr', '131-396-5049'),
+    (7, 'Wilson', 'wilson', 'Claire', '1966-12-31', 'F', '12 Cobblestone St', '300-452-1091'),
+    (8, 'Buckland', 'buckland', 'Max', '1945-06-24', 'M', '193 Vale St', '833-534-0864'),
+    (9, 'Clark', 'clark', 'Natalie', '1964-06-18', 'F', '12 Beechwood Road', '241-467-9197'),
+    (10, 'Bailey', 'bailey', 'Piers', '1959-06-28', 'M', '1202 Bumble Dr', '747-815-0557');
+
+INSERT INTO patient_seq (next_val) VALUES (11);
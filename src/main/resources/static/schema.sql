@@ -7,9 +7,42 @@ USE mediscreen;
 CREATE TABLE patient (
     id INT PRIMARY KEY AUTO_INCREMENT,
     last_name VARCHAR(100) NOT NULL,
+    last_name_key VARCHAR(100) NOT NULL,
     first_name VARCHAR(100) NOT NULL,
     birthdate DATE NOT NULL,
     sex ENUM('M','F') NOT NULL,
     address VARCHAR(100) NOT NULL,
-    phone VARCHAR(100) NOT NULL
-);
\ No newline at end of file
+    phone VARCHAR(100) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+    last_modified DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+    INDEX idx_patient_name_birthdate (last_name, first_name, birthdate),
+    INDEX idx_patient_name_key (last_name_key, first_name, birthdate),
+    INDEX idx_patient_birthdate_sex (birthdate, sex)
+);
+
+-- id blocks allocated by Hibernate (pooled-lo, 50 ids per block), see Patient.id
+CREATE TABLE patient_seq (
+    next_val BIGINT NOT NULL
+);
+
+-- append-only change feed, written in the transaction of each patient write
+CREATE TABLE patient_change (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    patient_id INT NOT NULL,
+    change_type VARCHAR(10) NOT NULL,
+    changed_at DATETIME(6) NOT NULL,
+    INDEX idx_patient_change_changed_at (changed_at)
+);
+
+-- audit log of the fields changed on patients, written behind the patient writes
+CREATE TABLE patient_audit (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    patient_id INT NOT NULL,
+    action VARCHAR(10) NOT NULL,
+    field VARCHAR(20) NOT NULL,
+    old_value VARCHAR(100),
+    new_value VARCHAR(100),
+    actor VARCHAR(100) NOT NULL,
+    changed_at DATETIME(6) NOT NULL,
+    INDEX idx_patient_audit_patient (patient_id, changed_at)
+);
@@ -0,0 +1,89 @@
+package com.mediscreen.patient.audit;
+
+import com.mediscreen.patient.model.PatientChangeType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientAuditQueueTest {
+
+
+    private static PatientAuditEvent event(int patientId) {
+        return new PatientAuditEvent(patientId, PatientChangeType.UPDATED, "phone", "1", "2", "system", Instant.now());
+    }
+
+
+    @Test
+    @DisplayName("Should refuse events beyond the capacity and drain them in order")
+    void offerAndDrainTest() {
+
+        // Arrange
+        PatientAuditQueue<PatientAuditEvent> queue = new PatientAuditQueue<>(2);
+
+        // Act
+        boolean first = queue.offer(event(1));
+        boolean second = queue.offer(event(2));
+        boolean third = queue.offer(event(3));
+        List<PatientAuditEvent> batch = new ArrayList<>();
+        int drained = queue.drainTo(batch, 10);
+
+        // Assert
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertEquals(2, drained);
+        assertEquals(List.of(1, 2), batch.stream().map(PatientAuditEvent::patientId).toList());
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+
+
+    @Test
+    @DisplayName("Should never hold more events than the capacity under concurrent producers")
+    void concurrentOfferTest() throws InterruptedException {
+
+        // Arrange
+        int capacity = 1000;
+        PatientAuditQueue<PatientAuditEvent> queue = new PatientAuditQueue<>(capacity);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (queue.offer(event(i))) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // Assert
+        assertEquals(capacity, accepted.get());
+        assertEquals(capacity, queue.size());
+        assertEquals(capacity, queue.drainTo(new ArrayList<>(), Integer.MAX_VALUE));
+    }
+
+
+    @Test
+    @DisplayName("Should reject a capacity lower than one")
+    void capacityTest() {
+
+        assertThrows(IllegalArgumentException.class, () -> new PatientAuditQueue<>(0));
+    }
+}
@@ -0,0 +1,244 @@
+package com.mediscreen.patient.audit;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.model.PatientChangeType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientAuditServiceTest {
+
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PatientAuditService patientAuditService;
+
+
+    private PatientAuditService service(int capacity, AuditOverflowPolicy policy) {
+        // no scheduled flush during a test: flushQueued is called explicitly
+        patientAuditService = new PatientAuditService(jdbcTemplate, meterRegistry, capacity, 100,
+                Duration.ofHours(1), policy, Duration.ofMillis(5));
+        return patientAuditService;
+    }
+
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        RequestContextHolder.resetRequestAttributes();
+        if (patientAuditService != null) {
+            patientAuditService.close();
+        }
+    }
+
+
+    private static PatientDto patient(String lastName, String address, String phone) {
+        PatientDto patient = new PatientDto(lastName, "John", LocalDate.of(2000, 1, 1), "M", address, phone);
+        patient.setId(1);
+        return patient;
+    }
+
+
+    private List<PatientAuditEvent> captureWritten() {
+        List<PatientAuditEvent> written = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any())).thenAnswer(invocation -> {
+            Collection<PatientAuditEvent> batch = invocation.getArgument(1);
+            written.addAll(batch);
+            return new int[0][];
+        });
+        return written;
+    }
+
+
+    private double events(String outcome) {
+        return meterRegistry.get("patient.audit.events").tag("outcome", outcome).counter().count();
+    }
+
+
+    @Test
+    @DisplayName("Should write only the fields changed since the last audited state, in batch, with the actor of the request")
+    void recordUpdateTest() {
+
+        // Arrange
+        PatientAuditService service = service(100, AuditOverflowPolicy.DROP_OLDEST);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(PatientAuditService.ACTOR_HEADER, "dr.house");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        List<PatientAuditEvent> written = captureWritten();
+
+        // Act
+        service.record(1, PatientChangeType.CREATED, patient("Doe", "a", "p"));
+        service.record(1, PatientChangeType.UPDATED, patient("Smith", "a", "q"));
+        int queued = service.queueDepth();
+        service.flushQueued();
+
+        // Assert
+        assertEquals(2, queued);
+        assertEquals(0, service.queueDepth());
+        assertEquals(8, written.size());
+        PatientAuditEvent lastName = written.get(6);
+        assertEquals(PatientChangeType.UPDATED, lastName.action());
+        assertEquals("lastName", lastName.field());
+        assertEquals("Doe", lastName.oldValue());
+        assertEquals("Smith", lastName.newValue());
+        assertEquals("dr.house", lastName.actor());
+        assertEquals("phone", written.get(7).field());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyCollection(), eq(8), any());
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        assertEquals(8, events("written"));
+        assertEquals(1, meterRegistry.get("patient.audit.flush").timer().count());
+    }
+
+
+    @Test
+    @DisplayName("Should rebuild the last audited state of a patient from its audit rows, once per batch")
+    void recordUpdateFromAuditRowsTest() {
+
+        // Arrange
+        PatientAuditService service = service(100, AuditOverflowPolicy.DROP_OLDEST);
+        List<PatientAuditEvent> written = captureWritten();
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            ResultSet row = mock(ResultSet.class);
+            when(row.getInt(1)).thenReturn(1);
+            when(row.getString(2)).thenReturn("lastName", "phone");
+            when(row.getString(3)).thenReturn("Doe", "p");
+            handler.processRow(row);
+            handler.processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        // Act
+        service.record(1, PatientChangeType.UPDATED, patient("Smith", null, "p"));
+        service.record(1, PatientChangeType.DELETED, null);
+        service.flushQueued();
+
+        // Assert
+        assertEquals(List.of("lastName:Doe>Smith", "firstName:null>John", "birthdate:null>2000-01-01", "sex:null>M",
+                        "lastName:Smith>null", "firstName:John>null", "birthdate:2000-01-01>null", "sex:M>null",
+                        "phone:p>null"),
+                written.stream().map(event -> event.field() + ":" + event.oldValue() + ">" + event.newValue()).toList());
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+
+    @Test
+    @DisplayName("Should audit every field of a created or deleted patient, by the system outside a request")
+    void recordCreateAndDeleteTest() {
+
+        // Arrange
+        PatientAuditService service = service(100, AuditOverflowPolicy.DROP_OLDEST);
+        PatientDto patient = patient("Doe", "a", "p");
+
+        // Act
+        service.record(1, PatientChangeType.CREATED, patient);
+        service.record(1, PatientChangeType.DELETED, null);
+
+        // Assert
+        assertEquals(2, service.queueDepth());
+        assertEquals("system", PatientAuditService.currentActor());
+        assertEquals(2.0, meterRegistry.get("patient.audit.queue.depth").gauge().value());
+    }
+
+
+    @Test
+    @DisplayName("Should drop the new changes when the queue is full")
+    void dropNewestTest() {
+
+        // Arrange
+        PatientAuditService service = service(2, AuditOverflowPolicy.DROP_NEWEST);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            service.record(1, PatientChangeType.UPDATED, patient("Doe" + i, "a", "p"));
+        }
+
+        // Assert
+        assertEquals(2, service.queueDepth());
+        assertEquals(1, events("dropped"));
+    }
+
+
+    @Test
+    @DisplayName("Should drop the oldest changes when the queue is full, and audit their fields with the next change")
+    void dropOldestTest() {
+
+        // Arrange
+        PatientAuditService service = service(2, AuditOverflowPolicy.DROP_OLDEST);
+        List<PatientAuditEvent> written = captureWritten();
+        service.record(1, PatientChangeType.CREATED, patient("Doe", "a", "p"));
+        service.flushQueued();
+        written.clear();
+
+        // Act
+        service.record(1, PatientChangeType.UPDATED, patient("Smith", "a", "p"));
+        service.record(1, PatientChangeType.UPDATED, patient("Smith", "b", "p"));
+        service.record(1, PatientChangeType.UPDATED, patient("Smith", "b", "q"));
+        service.flushQueued();
+
+        // Assert
+        assertEquals(List.of("lastName:Doe>Smith", "address:a>b", "phone:p>q"),
+                written.stream().map(event -> event.field() + ":" + event.oldValue() + ">" + event.newValue()).toList());
+        assertEquals(1, events("dropped"));
+    }
+
+
+    @Test
+    @DisplayName("Should wait for room then drop the new change when blocking")
+    void blockTest() {
+
+        // Arrange
+        PatientAuditService service = service(2, AuditOverflowPolicy.BLOCK);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            service.record(1, PatientChangeType.UPDATED, patient("Doe" + i, "a", "p"));
+        }
+
+        // Assert
+        assertEquals(2, service.queueDepth());
+        assertEquals(1, events("dropped"));
+    }
+
+
+    @Test
+    @DisplayName("Should count the events of a failed batch and keep flushing")
+    void flushFailureTest() {
+
+        // Arrange
+        PatientAuditService service = service(100, AuditOverflowPolicy.DROP_OLDEST);
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenThrow(new IllegalStateException("database down"));
+
+        // Act
+        service.record(1, PatientChangeType.CREATED, patient("Doe", "a", "p"));
+        service.flushQueued();
+
+        // Assert
+        assertEquals(0, service.queueDepth());
+        assertEquals(6, events("failed"));
+        assertEquals(0, events("written"));
+    }
+}
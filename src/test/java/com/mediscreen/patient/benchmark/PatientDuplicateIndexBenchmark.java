@@ -0,0 +1,81 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.service.PatientChangeService;
+import com.mediscreen.patient.service.PatientDuplicateIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+
+/**
+ * Duplicate lookup of a new patient in the {@link PatientDuplicateIndex}, which must stay far below a millisecond
+ * whatever the number of patients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientDuplicateIndexBenchmark {
+
+
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis"};
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda"};
+    private static final LocalDate EPOCH = LocalDate.of(1930, 1, 1);
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private PatientDuplicateIndex index;
+    private PatientDto duplicate;
+    private PatientDto unique;
+
+
+    @Setup
+    public void setUp() {
+        PatientRepository patientRepository = Mockito.mock(PatientRepository.class);
+        Mockito.when(patientRepository.findPageAfter(anyInt(), any(Pageable.class))).thenAnswer(invocation -> {
+            int afterId = invocation.getArgument(0);
+            int pageSize = invocation.<Pageable>getArgument(1).getPageSize();
+            List<Patient> page = new ArrayList<>(pageSize);
+            for (int id = afterId + 1; id <= Math.min(afterId + pageSize, size); id++) {
+                Patient patient = new Patient(LAST_NAMES[id % LAST_NAMES.length] + (id % 100),
+                        FIRST_NAMES[(id / LAST_NAMES.length) % FIRST_NAMES.length], EPOCH.plusDays(id % 30000), "M", "a", "p");
+                patient.setId(id);
+                page.add(patient);
+            }
+            return page;
+        });
+        index = new PatientDuplicateIndex(patientRepository, Mockito.mock(PatientChangeService.class),
+                new SimpleMeterRegistry(), 10000, Duration.ofSeconds(30), Duration.ZERO);
+        index.afterSingletonsInstantiated();
+
+        duplicate = new PatientDto("Smyth", "Jon", EPOCH.plusDays(16), "M", "a", "p");
+        unique = new PatientDto("Zuckerman", "Zoe", EPOCH.plusDays(16), "F", "a", "p");
+    }
+
+
+    @Benchmark
+    public List<Integer> findDuplicate() {
+        return index.findPossibleDuplicates(duplicate);
+    }
+
+
+    @Benchmark
+    public List<Integer> findUnique() {
+        return index.findPossibleDuplicates(unique);
+    }
+}
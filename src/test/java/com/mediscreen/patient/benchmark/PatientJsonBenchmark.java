@@ -0,0 +1,60 @@
+package com.mediscreen.patient.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mediscreen.library.dto.PatientDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of {@link PatientDto} lists, with an {@link ObjectMapper} configured the way
+ * Spring MVC configures its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientJsonBenchmark {
+
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private ObjectWriter listWriter;
+    private List<PatientDto> patients;
+
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, PatientDto.class));
+        patients = patients(size);
+    }
+
+
+    static List<PatientDto> patients(int size) {
+        List<PatientDto> patients = new ArrayList<>(size);
+        LocalDate epoch = LocalDate.of(1930, 1, 1);
+        for (int i = 1; i <= size; i++) {
+            PatientDto patient = new PatientDto("Last" + i, "First" + i, epoch.plusDays(i % 30000),
+                    i % 2 == 0 ? "M" : "F", i + " Main Street", "555-" + i);
+            patient.setId(i);
+            patients.add(patient);
+        }
+        return patients;
+    }
+
+
+    @Benchmark
+    public byte[] serializeList() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(patients);
+    }
+}
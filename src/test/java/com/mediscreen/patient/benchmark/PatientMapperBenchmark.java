@@ -0,0 +1,90 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.model.Patient;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hand-written {@link PatientMapper} with the reflective {@link ModelMapper} it replaced,
+ * for a single patient and for a list response.
+ * Run with {@code mvn -Pbenchmark verify}; add {@code -Dbenchmark.args="-prof gc"} for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientMapperBenchmark {
+
+
+    private final PatientMapper patientMapper = new PatientMapper();
+    private final ModelMapper modelMapper = new ModelMapper();
+
+    private Patient patient;
+    private PatientDto patientDto;
+    private List<Patient> patients;
+
+
+    @Setup
+    public void setUp() {
+        patient = new Patient("Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", "2 Warren Street", "387-866-1399");
+        patient.setId(1);
+        patientDto = new PatientDto("Rees", "Pippa", LocalDate.of(1952, 9, 27), "F", "745 West Valley Farms Drive", "628-423-0993");
+        patients = new ArrayList<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            Patient p = new Patient("Last" + i, "First" + i, LocalDate.of(1950, 1, 1).plusDays(i), i % 2 == 0 ? "M" : "F", i + " Main St", "555-" + i);
+            p.setId(i + 1);
+            patients.add(p);
+        }
+    }
+
+
+    @Benchmark
+    public PatientDto toDtoHandWritten() {
+        return patientMapper.toDto(patient);
+    }
+
+
+    @Benchmark
+    public PatientDto toDtoModelMapper() {
+        return modelMapper.map(patient, PatientDto.class);
+    }
+
+
+    @Benchmark
+    public Patient toEntityHandWritten() {
+        return patientMapper.toEntity(patientDto);
+    }
+
+
+    @Benchmark
+    public Patient toEntityModelMapper() {
+        return modelMapper.map(patientDto, Patient.class);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<PatientDto> listHandWritten() {
+        return patientMapper.toDtoList(patients);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<PatientDto> listModelMapper() {
+        List<PatientDto> patientDtos = new ArrayList<>(patients.size());
+        for (Patient p : patients) {
+            patientDtos.add(modelMapper.map(p, PatientDto.class));
+        }
+        return patientDtos;
+    }
+}
@@ -0,0 +1,91 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.PatientApplication;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.repository.PatientRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads into {@link PatientDto}s by loading managed entities, as the read endpoints used to, against reads of
+ * {@code PatientView} projections, in the read-only transaction of the repository. Run with
+ * {@code -Dbenchmark.args="-prof gc"} to compare the bytes allocated per read as well as the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientProjectionBenchmark {
+
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private PatientRepository patientRepository;
+    private PatientMapper patientMapper;
+    private TransactionTemplate readOnly;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(PatientApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties("spring.datasource.url=jdbc:h2:mem:projection-benchmark-" + rows,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn")
+                .run();
+        patientRepository = context.getBean(PatientRepository.class);
+        patientMapper = context.getBean(PatientMapper.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        PatientServiceBenchmark.insertPatients(context.getBean(JdbcTemplate.class), rows);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+
+    @Benchmark
+    public PatientDto findByIdEntity() {
+        int id = ThreadLocalRandom.current().nextInt(1, rows + 1);
+        return readOnly.execute(status -> patientRepository.findById(id).map(patientMapper::toDto).orElse(null));
+    }
+
+
+    @Benchmark
+    public PatientDto findByIdProjection() {
+        int id = ThreadLocalRandom.current().nextInt(1, rows + 1);
+        return readOnly.execute(status -> patientRepository.findViewById(id).map(patientMapper::toDto).orElse(null));
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PatientDto> findAllEntities() {
+        return readOnly.execute(status -> patientMapper.toDtoList(patientRepository.findAll()));
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PatientDto> findAllProjections() {
+        return readOnly.execute(status -> patientMapper.viewsToDtoList(patientRepository.findAllViews()));
+    }
+}
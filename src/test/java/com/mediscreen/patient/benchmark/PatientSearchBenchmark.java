@@ -0,0 +1,160 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.patient.util.PatientNames;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Family-name lookups over synthetic patients in an embedded H2 database, before and after the
+ * {@code idx_patient_name_birthdate} and {@code idx_patient_name_key} indexes.
+ * Both tables hold the same rows, only {@code patient_indexed} carries the indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientSearchBenchmark {
+
+
+    private static final String[] LAST_NAMES = {"Ferguson", "Rees", "Arnold", "Sharp", "Ince", "Ross",
+            "Wilson", "Buckland", "Clark", "Bailey", "Lefèvre", "Müller", "Da Silva", "O'Brien"};
+
+    @Param({"1000000"})
+    public int rows;
+
+    private Connection connection;
+    private String[] names;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:search-benchmark;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"patient_plain", "patient_indexed"}) {
+                statement.execute("CREATE TABLE " + table + " (id INT PRIMARY KEY, last_name VARCHAR(100), "
+                        + "last_name_key VARCHAR(100), first_name VARCHAR(100), birthdate DATE)");
+            }
+            statement.execute("CREATE INDEX idx_patient_name_birthdate ON patient_indexed (last_name, first_name, birthdate)");
+            statement.execute("CREATE INDEX idx_patient_name_key ON patient_indexed (last_name_key, first_name, birthdate)");
+        }
+        insert("patient_plain");
+        insert("patient_indexed");
+
+        Random random = new Random(7);
+        names = new String[1024];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = syntheticLastName(random.nextInt(rows));
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+
+    private static String syntheticLastName(int i) {
+        // ~70k distinct family names, about 14 patients each at one million rows
+        return LAST_NAMES[i % LAST_NAMES.length] + (i / LAST_NAMES.length % 5000);
+    }
+
+
+    private void insert(String table) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + table + " VALUES (?, ?, ?, ?, ?)")) {
+            LocalDate epoch = LocalDate.of(1930, 1, 1);
+            for (int i = 0; i < rows; i++) {
+                String lastName = syntheticLastName(i);
+                statement.setInt(1, i + 1);
+                statement.setString(2, lastName);
+                statement.setString(3, PatientNames.normalize(lastName));
+                statement.setString(4, "First" + (i % 997));
+                statement.setObject(5, epoch.plusDays(i % 30000));
+                statement.addBatch();
+                if (i % 10_000 == 9_999) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+
+    private void query(String sql, String parameter, Blackhole blackhole) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, parameter);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    blackhole.consume(rs.getInt(1));
+                }
+            }
+        }
+    }
+
+
+    private String nextName() {
+        return names[next++ & (names.length - 1)];
+    }
+
+
+    @Benchmark
+    public void exactWithoutIndex(Blackhole blackhole) throws SQLException {
+        query("SELECT id FROM patient_plain WHERE last_name = ? ORDER BY first_name, birthdate, id LIMIT 50",
+                nextName(), blackhole);
+    }
+
+
+    @Benchmark
+    public void exactWithIndex(Blackhole blackhole) throws SQLException {
+        query("SELECT id FROM patient_indexed WHERE last_name = ? ORDER BY first_name, birthdate, id LIMIT 50",
+                nextName(), blackhole);
+    }
+
+
+    @Benchmark
+    public void insensitiveWithoutIndex(Blackhole blackhole) throws SQLException {
+        query("SELECT id FROM patient_plain WHERE LOWER(last_name) = ? ORDER BY first_name, birthdate, id LIMIT 50",
+                PatientNames.normalize(nextName()), blackhole);
+    }
+
+
+    @Benchmark
+    public void insensitiveWithIndex(Blackhole blackhole) throws SQLException {
+        query("SELECT id FROM patient_indexed WHERE last_name_key = ? ORDER BY first_name, birthdate, id LIMIT 50",
+                PatientNames.normalize(nextName()), blackhole);
+    }
+
+
+    @Benchmark
+    public void prefixWithoutIndex(Blackhole blackhole) throws SQLException {
+        query("SELECT id FROM patient_plain WHERE LOWER(last_name) LIKE ? ORDER BY last_name_key, first_name, birthdate, id LIMIT 50",
+                PatientNames.normalize(nextName()).substring(0, 4) + "%", blackhole);
+    }
+
+
+    @Benchmark
+    public void prefixWithIndex(Blackhole blackhole) throws SQLException {
+        query("SELECT id FROM patient_indexed WHERE last_name_key LIKE ? ORDER BY last_name_key, first_name, birthdate, id LIMIT 50",
+                PatientNames.normalize(nextName()).substring(0, 4) + "%", blackhole);
+    }
+}
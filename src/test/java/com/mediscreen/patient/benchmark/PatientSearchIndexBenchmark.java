@@ -0,0 +1,111 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.search.PatientSearchIndex;
+import com.mediscreen.patient.service.PatientChangeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+
+/**
+ * Fuzzy search in the {@link PatientSearchIndex}, which must answer in a few milliseconds with a million patients.
+ * Names are made of syllables, so that the vocabulary grows with the number of patients as real names do; the
+ * estimated size of the index is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientSearchIndexBenchmark {
+
+    private static final Logger log = LogManager.getLogger(PatientSearchIndexBenchmark.class);
+
+    private static final String[] SYLLABLES = {"ma", "ri", "lo", "ben", "sa", "tor", "vi", "del", "ka", "mon",
+            "ro", "sel", "di", "ga", "nel", "pe", "lu", "ton", "fer", "qui"};
+    private static final String[] STREETS = {"Elm", "Oak", "Pine", "Maple", "Cedar", "Birch", "Walnut", "Willow"};
+    private static final String[] STREET_TYPES = {"St", "Ave", "Rd", "Blvd"};
+    private static final LocalDate EPOCH = LocalDate.of(1930, 1, 1);
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private PatientSearchIndex index;
+
+
+    static String name(int seed, int syllables) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            name.append(SYLLABLES[seed % SYLLABLES.length]);
+            seed /= SYLLABLES.length;
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+
+    @Setup
+    public void setUp() {
+        PatientRepository patientRepository = Mockito.mock(PatientRepository.class);
+        Mockito.when(patientRepository.findViewPageAfter(anyInt(), any(Pageable.class))).thenAnswer(invocation -> {
+            int afterId = invocation.getArgument(0);
+            int pageSize = invocation.<Pageable>getArgument(1).getPageSize();
+            List<PatientView> page = new ArrayList<>(pageSize);
+            for (int id = afterId + 1; id <= Math.min(afterId + pageSize, size); id++) {
+                int mixed = id * 7919;
+                page.add(new PatientView(id, name(mixed % 160_000, 3 + id % 2), name(id % 400, 2),
+                        EPOCH.plusDays(id % 30000), "M",
+                        (id % 999 + 1) + " " + STREETS[id % STREETS.length] + " " + STREET_TYPES[id % STREET_TYPES.length],
+                        String.format("%03d-%03d-%04d", id % 1000, (id / 1000) % 1000, id % 10000), 0L, null));
+            }
+            return page;
+        });
+        index = new PatientSearchIndex(patientRepository, Mockito.mock(PatientChangeService.class),
+                new SimpleMeterRegistry(), 10000, Duration.ofSeconds(30), Duration.ZERO);
+        index.afterSingletonsInstantiated();
+        log.info("{} patients, about {} MB", index.size(), index.estimatedMemoryBytes() / (1024 * 1024));
+    }
+
+
+    @Benchmark
+    public List<PatientSearchIndex.Match> searchName() {
+        return index.search("Maritorben", 20);
+    }
+
+
+    @Benchmark
+    public List<PatientSearchIndex.Match> searchMisspelledName() {
+        return index.search("Marytorbenn", 20);
+    }
+
+
+    @Benchmark
+    public List<PatientSearchIndex.Match> searchNameAndFirstName() {
+        return index.search("Sadel Maritor", 20);
+    }
+
+
+    @Benchmark
+    public List<PatientSearchIndex.Match> searchAddress() {
+        return index.search("12 Maple Ave", 20);
+    }
+
+
+    @Benchmark
+    public List<PatientSearchIndex.Match> searchPhoneFragment() {
+        return index.search("045-1234", 20);
+    }
+}
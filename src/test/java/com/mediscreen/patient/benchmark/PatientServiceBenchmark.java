@@ -0,0 +1,90 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.PatientApplication;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.service.PatientService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PatientService} read paths against an embedded H2 database (the "test" profile) at several table sizes.
+ * The patient cache is disabled so that every call reaches the repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientServiceBenchmark {
+
+
+    @Param({"100", "10000", "100000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private PatientService patientService;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(PatientApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties("spring.datasource.url=jdbc:h2:mem:service-benchmark-" + rows,
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=warn",
+                        "patient.cache.maximum-size=0")
+                .run();
+        patientService = context.getBean(PatientService.class);
+        insertPatients(context.getBean(JdbcTemplate.class), rows);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+
+    static void insertPatients(JdbcTemplate jdbcTemplate, int rows) {
+        List<Object[]> batch = new ArrayList<>(1000);
+        LocalDate epoch = LocalDate.of(1930, 1, 1);
+        Timestamp lastModified = Timestamp.from(Instant.now());
+        for (int i = 1; i <= rows; i++) {
+            batch.add(new Object[]{i, "Last" + i, "last" + i, "First" + i, Date.valueOf(epoch.plusDays(i % 30000)),
+                    i % 2 == 0 ? "M" : "F", i + " Main Street", "555-" + i, 0L, lastModified});
+            if (batch.size() == 1000 || i == rows) {
+                jdbcTemplate.batchUpdate("INSERT INTO patient (id, last_name, last_name_key, first_name, birthdate, sex, address, phone, "
+                        + "version, last_modified) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+
+    @Benchmark
+    public PatientDto findPatientById() throws PatientNotFoundException {
+        return patientService.findPatientById(ThreadLocalRandom.current().nextInt(1, rows + 1));
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PatientDto> getAllPatients() {
+        return patientService.getAllPatients();
+    }
+}
@@ -0,0 +1,57 @@
+package com.mediscreen.patient.benchmark;
+
+import com.mediscreen.patient.model.Patient;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean validation of a {@link Patient}, for a valid patient and for one breaking every constraint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatientValidationBenchmark {
+
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private Patient validPatient;
+    private Patient invalidPatient;
+
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        validPatient = new Patient("Ferguson", "Lucas", LocalDate.of(1968, 6, 22), "M", "2 Warren Street", "387-866-1399");
+        invalidPatient = new Patient(" ", "", null, "X", null, null);
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+
+    @Benchmark
+    public Set<ConstraintViolation<Patient>> validPatient() {
+        return validator.validate(validPatient);
+    }
+
+
+    @Benchmark
+    public Set<ConstraintViolation<Patient>> invalidPatient() {
+        return validator.validate(invalidPatient);
+    }
+}
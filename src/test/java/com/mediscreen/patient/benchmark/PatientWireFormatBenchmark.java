@@ -0,0 +1,72 @@
+package com.mediscreen.patient.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mediscreen.library.dto.PatientDto;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of writing a {@link PatientDto} list in each negotiated format, with and without gzip as Tomcat applies it.
+ * The bytes on the wire of each combination are logged once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientWireFormatBenchmark {
+
+    private static final Logger log = LogManager.getLogger(PatientWireFormatBenchmark.class);
+
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private ObjectWriter listWriter;
+    private List<PatientDto> patients;
+
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = switch (format) {
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, PatientDto.class));
+        patients = PatientJsonBenchmark.patients(size);
+    }
+
+
+    @TearDown
+    public void logSize() throws IOException {
+        log.info("{}, gzip={}, {} patients: {} bytes", format, gzip, size, write().length);
+    }
+
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 64);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes, 8192) : bytes) {
+            listWriter.writeValue(out, patients);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package com.mediscreen.patient.cache;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientCacheTest {
+
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PatientCache patientCache = new PatientCache(100, Duration.ofMinutes(1), meterRegistry);
+
+
+    private static PatientDto patient(int id, String lastName) {
+        PatientDto patient = new PatientDto(lastName, "John");
+        patient.setId(id);
+        return patient;
+    }
+
+
+    private static VersionedPatient versioned(int id, String lastName) {
+        return new VersionedPatient(patient(id, lastName), new PatientVersion(id, 0L, null));
+    }
+
+
+    @Test
+    @DisplayName("Should load once and count hits and misses")
+    void getByIdTest() {
+
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        patientCache.getById(1, id -> {
+            loads.incrementAndGet();
+            return versioned(id, "Doe");
+        });
+        VersionedPatient result = patientCache.getById(1, id -> {
+            loads.incrementAndGet();
+            return versioned(id, "Doe");
+        });
+
+        // Assert
+        assertEquals("Doe", result.patient().getLastName());
+        assertEquals(1, loads.get());
+        assertEquals(1, patientCache.byIdStats().hitCount());
+        assertEquals(1, patientCache.byIdStats().missCount());
+        assertNotNull(meterRegistry.find("cache.gets").tag("cache", "patient.by-id").tag("result", "hit").functionCounter());
+    }
+
+
+    @Test
+    @DisplayName("Should not cache missing patients")
+    void getByIdMissingTest() {
+
+        // Act
+        VersionedPatient first = patientCache.getById(1, id -> null);
+        VersionedPatient second = patientCache.getById(1, id -> versioned(id, "Doe"));
+
+        // Assert
+        assertNull(first);
+        assertEquals("Doe", second.patient().getLastName());
+    }
+
+
+    @Test
+    @DisplayName("Should share entries between spellings of a family name")
+    void getByFamilyNameTest() {
+
+        // Act
+        patientCache.getByFamilyName("Doe", name -> patient(1, "Doe"));
+        PatientDto result = patientCache.getByFamilyName("  dOE ", name -> fail("should be cached"));
+
+        // Assert
+        assertEquals(1, result.getId());
+    }
+
+
+    @Test
+    @DisplayName("Should evict id and family name entries of a patient")
+    void evictTest() {
+
+        // Arrange
+        patientCache.getById(1, id -> versioned(id, "Doe"));
+        patientCache.getByFamilyName("Doe", name -> patient(1, "Doe"));
+        patientCache.getByFamilyName("Smith", name -> patient(2, "Smith"));
+
+        // Act
+        patientCache.evict(1);
+
+        // Assert
+        assertEquals("Reloaded", patientCache.getById(1, id -> versioned(id, "Reloaded")).patient().getLastName());
+        assertEquals("Reloaded", patientCache.getByFamilyName("Doe", name -> patient(1, "Reloaded")).getLastName());
+        assertEquals("Smith", patientCache.getByFamilyName("Smith", name -> fail("should be cached")).getLastName());
+    }
+
+
+    @Test
+    @DisplayName("Should evict a family name entry")
+    void evictFamilyNameTest() {
+
+        // Arrange
+        patientCache.getByFamilyName("Doe", name -> patient(1, "Doe"));
+
+        // Act
+        patientCache.evictFamilyName("DOE");
+        patientCache.evictFamilyName(null);
+
+        // Assert
+        assertEquals(3, patientCache.getByFamilyName("Doe", name -> patient(3, "Doe")).getId());
+    }
+
+
+    @Test
+    @DisplayName("Should not evict the patient now cached under the family name of an evicted one")
+    void evictAfterFamilyNameTest() {
+
+        // Arrange
+        patientCache.getByFamilyName("Doe", name -> patient(1, "Doe"));
+        patientCache.evictFamilyName("Doe");
+        patientCache.getByFamilyName("Doe", name -> patient(3, "Doe"));
+
+        // Act
+        patientCache.evict(1);
+
+        // Assert
+        assertEquals(3, patientCache.getByFamilyName("Doe", name -> fail("should be cached")).getId());
+    }
+}
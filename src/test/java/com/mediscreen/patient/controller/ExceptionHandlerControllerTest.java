@@ -2,14 +2,30 @@ package com.mediscreen.patient.controller;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.mediscreen.patient.exception.DuplicatePatientException;
+import com.mediscreen.patient.exception.ExportJobNotFoundException;
+import com.mediscreen.patient.exception.IdempotencyKeyReusedException;
+import com.mediscreen.patient.exception.InvalidBatchException;
+import com.mediscreen.patient.exception.InvalidCursorException;
+import com.mediscreen.patient.exception.InvalidExportException;
+import com.mediscreen.patient.exception.InvalidIdempotencyKeyException;
+import com.mediscreen.patient.exception.InvalidStatsException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import com.mediscreen.patient.exception.RateLimitExceededException;
+import com.mediscreen.patient.exception.ServiceOverloadedException;
+import jakarta.validation.ConstraintViolationException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
+import java.util.Set;
+
 @ExtendWith(MockitoExtension.class)
 public class ExceptionHandlerControllerTest {
 
@@ -27,5 +43,138 @@ public class ExceptionHandlerControllerTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertEquals(" Patient does not exist with name : John", response.getBody());
     }
-}
 
+
+    @Test
+    public void handleInvalidCursorExceptionTest() {
+
+        InvalidCursorException ex = new InvalidCursorException("abc");
+        ResponseEntity<String> response = exceptionHandlerController.handleInvalidCursorException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(" Invalid page cursor : abc", response.getBody());
+    }
+
+
+    @Test
+    public void handleInvalidBatchExceptionTest() {
+
+        InvalidBatchException ex = new InvalidBatchException("null id");
+        ResponseEntity<String> response = exceptionHandlerController.handleInvalidBatchException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(" Invalid patient batch : null id", response.getBody());
+    }
+
+
+    @Test
+    public void handleInvalidStatsExceptionTest() {
+
+        InvalidStatsException ex = new InvalidStatsException("ageBucket must be between 1 and 150, got 0");
+        ResponseEntity<String> response = exceptionHandlerController.handleInvalidStatsException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(" Invalid patient statistics request : ageBucket must be between 1 and 150, got 0", response.getBody());
+    }
+
+
+    @Test
+    public void handleInvalidExportExceptionTest() {
+
+        InvalidExportException ex = new InvalidExportException("unknown format xml, expected csv or ndjson");
+        ResponseEntity<String> response = exceptionHandlerController.handleInvalidExportException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(" Invalid patient export : unknown format xml, expected csv or ndjson", response.getBody());
+    }
+
+
+    @Test
+    public void handleExportJobNotFoundExceptionTest() {
+
+        ExportJobNotFoundException ex = new ExportJobNotFoundException("abc");
+        ResponseEntity<String> response = exceptionHandlerController.handleExportJobNotFoundException(ex);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(" Export job does not exist with id : abc", response.getBody());
+    }
+
+
+    @Test
+    public void handlePatientVersionConflictExceptionTest() {
+
+        PatientVersionConflictException ex = new PatientVersionConflictException(1, 3L);
+        ResponseEntity<String> response = exceptionHandlerController.handlePatientVersionConflictException(ex);
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+        assertEquals(" Patient with id : 1 is no longer at version : 3", response.getBody());
+    }
+
+
+    @Test
+    public void handleDuplicatePatientExceptionTest() {
+
+        DuplicatePatientException ex = new DuplicatePatientException(List.of(1, 4));
+        ResponseEntity<String> response = exceptionHandlerController.handleDuplicatePatientException(ex);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(" Possible duplicate of the patients with ids : [1, 4]", response.getBody());
+    }
+
+
+    @Test
+    public void handleConstraintViolationExceptionTest() {
+
+        ConstraintViolationException ex = new ConstraintViolationException("Last Name is mandatory", Set.of());
+        ResponseEntity<String> response = exceptionHandlerController.handleConstraintViolationException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Last Name is mandatory", response.getBody());
+    }
+
+
+    @Test
+    public void handleRateLimitExceededExceptionTest() {
+
+        RateLimitExceededException ex = new RateLimitExceededException("GET /api/patient/list", 3);
+        ResponseEntity<String> response = exceptionHandlerController.handleRateLimitExceededException(ex);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("3", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(" Too many requests to : GET /api/patient/list, retry in : 3 s", response.getBody());
+    }
+
+
+    @Test
+    public void handleServiceOverloadedExceptionTest() {
+
+        ServiceOverloadedException ex = new ServiceOverloadedException(20);
+        ResponseEntity<String> response = exceptionHandlerController.handleServiceOverloadedException(ex);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(" Patient service is overloaded, 20 operations already in progress", response.getBody());
+    }
+
+
+    @Test
+    public void handleInvalidIdempotencyKeyExceptionTest() {
+
+        InvalidIdempotencyKeyException ex = new InvalidIdempotencyKeyException("expected 1 to 255 characters");
+        ResponseEntity<String> response = exceptionHandlerController.handleInvalidIdempotencyKeyException(ex);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(" Invalid idempotency key : expected 1 to 255 characters", response.getBody());
+    }
+
+
+    @Test
+    public void handleIdempotencyKeyReusedExceptionTest() {
+
+        IdempotencyKeyReusedException ex = new IdempotencyKeyReusedException("key-1");
+        ResponseEntity<String> response = exceptionHandlerController.handleIdempotencyKeyReusedException(ex);
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        assertEquals(" Idempotency key already used for a different request : key-1", response.getBody());
+    }
+}
@@ -0,0 +1,65 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientLookup;
+import com.mediscreen.patient.service.PatientBatchService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientBatchControllerTest {
+
+
+    @Mock
+    private PatientBatchService patientBatchService;
+    @InjectMocks
+    private PatientBatchController patientBatchController;
+
+
+    @Test
+    @DisplayName("Should return the lookups of the posted ids")
+    void findPatientsByIdsTest() {
+
+        // Arrange
+        List<Integer> ids = List.of(2, 1);
+        List<PatientLookup> lookups = List.of(new PatientLookup(2, false, null),
+                new PatientLookup(1, true, new PatientDto("Doe", "John")));
+        when(patientBatchService.findPatientsByIds(ids)).thenReturn(lookups);
+
+        // Act
+        ResponseEntity<List<PatientLookup>> response = patientBatchController.findPatientsByIds(ids);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(lookups, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the lookups of the ids given as parameter")
+    void getPatientsByIdsTest() {
+
+        // Arrange
+        List<Integer> ids = List.of(1);
+        when(patientBatchService.findPatientsByIds(ids)).thenReturn(List.of(new PatientLookup(1, false, null)));
+
+        // Act
+        ResponseEntity<List<PatientLookup>> response = patientBatchController.getPatientsByIds(ids);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().size());
+        verify(patientBatchService).findPatientsByIds(ids);
+    }
+}
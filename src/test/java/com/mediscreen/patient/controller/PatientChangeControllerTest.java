@@ -0,0 +1,83 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.service.PatientChangeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientChangeControllerTest {
+
+
+    @Mock
+    private PatientChangeService patientChangeService;
+
+    private PatientChangeController patientChangeController;
+
+
+    @BeforeEach
+    void setUp() {
+        patientChangeController = new PatientChangeController(patientChangeService, Duration.ofSeconds(30));
+    }
+
+
+    @Test
+    @DisplayName("Should answer right away when not asked to wait")
+    void getChangesTest() {
+
+        // Arrange
+        PatientChangeFeed feed = new PatientChangeFeed(List.of(), 3);
+        when(patientChangeService.getChangesSince(3, 50)).thenReturn(feed);
+
+        // Act
+        DeferredResult<PatientChangeFeed> result = patientChangeController.getChanges(3, 50, 0);
+
+        // Assert
+        assertEquals(feed, result.getResult());
+        verify(patientChangeService, never()).awaitChangesSince(anyLong(), anyInt());
+    }
+
+
+    @Test
+    @DisplayName("Should answer with the changes the service waited for")
+    void getChangesWaitTest() {
+
+        // Arrange
+        PatientChangeFeed feed = new PatientChangeFeed(List.of(), 4);
+        when(patientChangeService.awaitChangesSince(3, 50)).thenReturn(CompletableFuture.completedFuture(feed));
+
+        // Act
+        DeferredResult<PatientChangeFeed> result = patientChangeController.getChanges(3, 50, 120);
+
+        // Assert
+        assertEquals(feed, result.getResult());
+    }
+
+
+    @Test
+    @DisplayName("Should keep waiting while the service has no change")
+    void getChangesPendingTest() {
+
+        // Arrange
+        when(patientChangeService.awaitChangesSince(3, 50)).thenReturn(new CompletableFuture<>());
+
+        // Act
+        DeferredResult<PatientChangeFeed> result = patientChangeController.getChanges(3, 50, 10);
+
+        // Assert
+        assertFalse(result.hasResult());
+        assertEquals(10_000L, result.getTimeoutValue());
+    }
+}
@@ -1,19 +1,41 @@
 package com.mediscreen.patient.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientPage;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.dto.VersionedPatientList;
 import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
+import com.mediscreen.patient.service.PatientSearchMode;
 import com.mediscreen.patient.service.PatientService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,9 +46,19 @@ public class PatientControllerTest {
 
     @Mock
     private PatientService patientService;
+    @Mock
+    private IdempotencyStore idempotencyStore;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     @InjectMocks
     private PatientController patientController;
 
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/patient");
+    private final ServletWebRequest webRequest = new ServletWebRequest(request, new MockHttpServletResponse());
+
+    private static final Instant LAST_MODIFIED = Instant.parse("2023-02-01T10:15:30Z");
+
 
     @Test
     @DisplayName("Should found equality")
@@ -35,15 +67,73 @@ public class PatientControllerTest {
         // Arrange
         int id = 1;
         PatientDto patient = new PatientDto();
-        when(patientService.findPatientById(id)).thenReturn(patient);
+        when(patientService.findVersionedPatient(id)).thenReturn(new VersionedPatient(patient, new PatientVersion(id, 3L, LAST_MODIFIED)));
 
         // Act
-        ResponseEntity<PatientDto> response = patientController.findPatientById(id);
+        ResponseEntity<PatientDto> response = patientController.findPatientById(id, webRequest);
 
         // Assert
         assertEquals(patient, response.getBody());
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(patientService).findPatientById(id);
+        assertEquals("\"1-3\"", response.getHeaders().getETag());
+        assertEquals(LAST_MODIFIED.toEpochMilli(), response.getHeaders().getLastModified());
+        verify(patientService).findVersionedPatient(id);
+    }
+
+
+    @Test
+    @DisplayName("Should answer not modified without a body when the ETag matches")
+    void findPatientByIdNotModifiedTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"1-3\"");
+        when(patientService.findVersionedPatient(id)).thenReturn(new VersionedPatient(new PatientDto(), new PatientVersion(id, 3L, LAST_MODIFIED)));
+
+        // Act
+        ResponseEntity<PatientDto> response = patientController.findPatientById(id, webRequest);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals("\"1-3\"", response.getHeaders().getETag());
+    }
+
+
+    @Test
+    @DisplayName("Should return the patient when the ETag is stale")
+    void findPatientByIdModifiedTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        PatientDto patient = new PatientDto();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"1-2\"");
+        when(patientService.findVersionedPatient(id)).thenReturn(new VersionedPatient(patient, new PatientVersion(id, 3L, LAST_MODIFIED)));
+
+        // Act
+        ResponseEntity<PatientDto> response = patientController.findPatientById(id, webRequest);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(patient, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should answer not modified when the patient was not written since the given date")
+    void findPatientByIdNotModifiedSinceTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED.toEpochMilli());
+        when(patientService.findVersionedPatient(id)).thenReturn(new VersionedPatient(new PatientDto(), new PatientVersion(id, 3L, LAST_MODIFIED)));
+
+        // Act
+        ResponseEntity<PatientDto> response = patientController.findPatientById(id, webRequest);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
     }
 
 
@@ -52,10 +142,10 @@ public class PatientControllerTest {
 
         // Arrange
         int id = 123;
-        when(patientService.findPatientById(id)).thenThrow(PatientNotFoundException.class);
+        when(patientService.findVersionedPatient(id)).thenThrow(PatientNotFoundException.class);
 
         // Act
-        ResponseEntity<PatientDto> response = patientController.findPatientById(id);
+        ResponseEntity<PatientDto> response = patientController.findPatientById(id, webRequest);
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
@@ -103,14 +193,116 @@ public class PatientControllerTest {
 
         // Arrange
         List<PatientDto> patients = Collections.singletonList(new PatientDto());
-        when(patientService.getAllPatients()).thenReturn(patients);
+        when(patientService.getPatientListVersion()).thenReturn(new PatientListVersion(1L, 0L, LAST_MODIFIED));
+        when(patientService.getVersionedPatientList()).thenReturn(new VersionedPatientList(patients, new PatientListVersion(1L, 1L, LAST_MODIFIED)));
 
         // Act
-        ResponseEntity<List<PatientDto>> response = patientController.getAllPatients();
+        ResponseEntity<List<PatientDto>> response = patientController.getAllPatients(webRequest);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(patients, response.getBody());
+        assertEquals(new PatientListVersion(1L, 1L, LAST_MODIFIED).eTag(), response.getHeaders().getETag());
+    }
+
+
+    @Test
+    @DisplayName("Should answer not modified without reading the patients when the list ETag matches")
+    void getAllPatientsNotModifiedTest() {
+
+        // Arrange
+        PatientListVersion version = new PatientListVersion(2L, 5L, LAST_MODIFIED);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, version.eTag());
+        when(patientService.getPatientListVersion()).thenReturn(version);
+
+        // Act
+        ResponseEntity<List<PatientDto>> response = patientController.getAllPatients(webRequest);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        verify(patientService, never()).getVersionedPatientList();
+    }
+
+
+    @Test
+    @DisplayName("Should return every matching patient")
+    void searchPatientsTest() {
+
+        // Arrange
+        List<PatientDto> patients = List.of(new PatientDto("Doe", "Jane"), new PatientDto("Doe", "John"));
+        when(patientService.searchPatients("do", PatientSearchMode.PREFIX, 0, 50)).thenReturn(patients);
+
+        // Act
+        ResponseEntity<List<PatientDto>> response = patientController.searchPatients("do", PatientSearchMode.PREFIX, 0, 50);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(patients, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the ranked matches of the fuzzy search")
+    void fuzzySearchPatientsTest() {
+
+        // Arrange
+        List<PatientSearchHit> hits = List.of(new PatientSearchHit(new PatientDto("Smith", "John"), 12.0));
+        when(patientService.fuzzySearchPatients("smyth", 20)).thenReturn(hits);
+
+        // Act
+        ResponseEntity<List<PatientSearchHit>> response = patientController.fuzzySearchPatients("smyth", 20);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(hits, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the page from the service")
+    void getPatientPageTest() {
+
+        // Arrange
+        PatientPage page = new PatientPage(List.of(new PatientDto()), "next");
+        when(patientService.getPatientPage("cursor", 20)).thenReturn(page);
+
+        // Act
+        ResponseEntity<PatientPage> response = patientController.getPatientPage("cursor", 20);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should write one json document per line")
+    void streamAllPatientsTest() throws Exception {
+
+        // Arrange
+        PatientDto patient1 = new PatientDto("Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+        patient1.setId(1);
+        PatientDto patient2 = new PatientDto("Smith", "Jane", LocalDate.of(2001, 2, 3), "F", "b", "q");
+        patient2.setId(2);
+        doAnswer(invocation -> {
+            Consumer<PatientDto> consumer = invocation.getArgument(0);
+            consumer.accept(patient1);
+            consumer.accept(patient2);
+            return null;
+        }).when(patientService).streamAllPatients(any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = patientController.streamAllPatients();
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(1, objectMapper.readTree(lines[0]).get("id").asInt());
+        assertEquals("Smith", objectMapper.readTree(lines[1]).get("lastName").asText());
+        assertEquals("2001-02-03", objectMapper.readTree(lines[1]).get("birthdate").asText());
     }
 
 
@@ -123,12 +315,37 @@ public class PatientControllerTest {
         PatientDto patient = new PatientDto();
 
         // Act
-        when(patientService.createPatient(patientDto)).thenReturn(patient);
-        ResponseEntity<PatientDto> response = patientController.validatePatient(patientDto);
+        when(patientService.createPatient(patientDto, false)).thenReturn(patient);
+        ResponseEntity<PatientDto> response = patientController.validatePatient(patientDto, false, null,
+                new MockHttpServletRequest());
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(patient, response.getBody());
+        verifyNoInteractions(idempotencyStore);
+    }
+
+
+    @Test
+    @DisplayName("Should create the patient through the idempotency store when a key is sent")
+    void validatePatientIdempotencyKeyTest() {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Doe", "John", LocalDate.of(1990, 1, 1), "M", "a", "p");
+        PatientDto patient = new PatientDto();
+        String fingerprint = IdempotencyStore.fingerprint("Doe", "John", LocalDate.of(1990, 1, 1), "M", "a", "p", true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-User", "alice");
+        when(idempotencyStore.execute(eq("POST /api/patient/validate"), eq("alice"), eq("key-1"), eq(fingerprint), any()))
+                .thenReturn(patient);
+
+        // Act
+        ResponseEntity<PatientDto> response = patientController.validatePatient(patientDto, true, "key-1", request);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(patient, response.getBody());
+        verifyNoInteractions(patientService);
     }
 
 
@@ -137,15 +354,15 @@ public class PatientControllerTest {
     void getAllPatientsNegativeTest() {
 
         // Arrange
-        when(patientService.getAllPatients()).thenReturn(Collections.emptyList());
+        when(patientService.getPatientListVersion()).thenReturn(new PatientListVersion(0L, 0L, null));
 
         // Act
-        ResponseEntity<List<PatientDto>> response = patientController.getAllPatients();
+        ResponseEntity<List<PatientDto>> response = patientController.getAllPatients(webRequest);
 
         // Assert
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertNull(response.getBody());
-        verify(patientService).getAllPatients();
+        verify(patientService, never()).getVersionedPatientList();
     }
 
 
@@ -159,13 +376,35 @@ public class PatientControllerTest {
         PatientDto patient = new PatientDto();
 
         // Act
-        when(patientService.updatePatient(id, patientDto)).thenReturn(patient);
-        ResponseEntity<PatientDto> response = patientController.updatePatient(id, patientDto);
+        when(patientService.updatePatient(id, patientDto, null)).thenReturn(patient);
+        ResponseEntity<PatientDto> response = patientController.updatePatient(id, patientDto, null);
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(patient, response.getBody());
-        verify(patientService, times(1)).updatePatient(id, patientDto);
+        verify(patientService, times(1)).updatePatient(id, patientDto, null);
+    }
+
+
+    @Test
+    @DisplayName("Should update only the version of a strong If-Match ETag")
+    void updatePatientIfMatchTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        PatientDto patientDto = new PatientDto();
+        when(patientService.updatePatient(eq(id), eq(patientDto), any())).thenReturn(patientDto);
+
+        // Act
+        patientController.updatePatient(id, patientDto, "\"1-4\"");
+        patientController.updatePatient(id, patientDto, "W/\"1-5\"");
+        patientController.updatePatient(id, patientDto, "*");
+        patientController.updatePatient(id, patientDto, "\"2-4\"");
+
+        // Assert
+        verify(patientService).updatePatient(id, patientDto, 4L);
+        verify(patientService).updatePatient(id, patientDto, null);
+        verify(patientService, times(2)).updatePatient(id, patientDto, -1L);
     }
 
 
@@ -176,12 +415,12 @@ public class PatientControllerTest {
         // Arrange
         int id = 1;
         PatientDto patientDto = new PatientDto();
-        when(patientService.updatePatient(id, patientDto)).thenThrow(new PatientNotFoundException("Patient not found"));
+        when(patientService.updatePatient(id, patientDto, null)).thenThrow(new PatientNotFoundException("Patient not found"));
 
         // Act
         // Assert
-        assertThrows(PatientNotFoundException.class, () -> patientController.updatePatient(id, patientDto));
-        verify(patientService, times(1)).updatePatient(id, patientDto);
+        assertThrows(PatientNotFoundException.class, () -> patientController.updatePatient(id, patientDto, null));
+        verify(patientService, times(1)).updatePatient(id, patientDto, null);
     }
 
 
@@ -1,6 +1,7 @@
 package com.mediscreen.patient.controller;
 
 import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
 import com.mediscreen.patient.service.PatientService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,6 +11,7 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 import java.time.LocalDate;
 
@@ -22,6 +24,8 @@ public class PatientCurlControllerTest {
     private PatientCurlController patientCurlController;
     @Mock
     private PatientService patientService;
+    @Mock
+    private IdempotencyStore idempotencyStore;
 
 
     @Test
@@ -36,11 +40,34 @@ public class PatientCurlControllerTest {
         String phone = "p";
 
         // Act
-        ResponseEntity<String> response = patientCurlController.addPatient(family, given, dob, sex, address, phone);
+        ResponseEntity<String> response = patientCurlController.addPatient(family, given, dob, sex, address, phone, null,
+                new MockHttpServletRequest());
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals("Patient added", response.getBody());
         Mockito.verify(patientService, Mockito.times(1)).createPatient(Mockito.any(PatientDto.class));
+        Mockito.verifyNoInteractions(idempotencyStore);
+    }
+
+
+    @Test
+    void testAddPatientWithIdempotencyKey() {
+
+        // Arrange
+        LocalDate dob = LocalDate.of(1990, 1, 1);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.7");
+
+        // Act
+        ResponseEntity<String> response = patientCurlController.addPatient("Doe", "John", dob, "M", "a", "p", "key-1",
+                request);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Mockito.verify(idempotencyStore).execute(Mockito.eq("POST /patient/add"), Mockito.eq("10.0.0.7"), Mockito.eq("key-1"),
+                Mockito.eq(IdempotencyStore.fingerprint("Doe", "John", dob, "M", "a", "p")), Mockito.any());
+        Mockito.verifyNoInteractions(patientService);
     }
 }
@@ -0,0 +1,154 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientExportJob;
+import com.mediscreen.patient.exception.InvalidExportException;
+import com.mediscreen.patient.export.PatientExportFormat;
+import com.mediscreen.patient.export.PatientExportService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientExportControllerTest {
+
+
+    @Mock
+    private PatientExportService patientExportService;
+    @InjectMocks
+    private PatientExportController patientExportController;
+
+
+    private static PatientExportJob job(PatientExportJob.State state) {
+        return new PatientExportJob("42", PatientExportFormat.CSV, true, state, 0, Instant.now(), null, null);
+    }
+
+
+    @Test
+    @DisplayName("Should stream the export in the requested format")
+    void exportPatientsTest() throws Exception {
+
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = patientExportController.exportPatients("NdJson", false);
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals("patients.ndjson", response.getHeaders().getContentDisposition().getFilename());
+        verify(patientExportService).export(PatientExportFormat.NDJSON, false, out);
+    }
+
+
+    @Test
+    @DisplayName("Should serve a gzipped export as a .gz file")
+    void exportPatientsGzipTest() {
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = patientExportController.exportPatients("csv", true);
+
+        // Assert
+        assertEquals(MediaType.parseMediaType("application/gzip"), response.getHeaders().getContentType());
+        assertEquals("patients.csv.gz", response.getHeaders().getContentDisposition().getFilename());
+    }
+
+
+    @Test
+    @DisplayName("Should reject an unknown format")
+    void exportPatientsUnknownFormatTest() {
+
+        assertThrows(InvalidExportException.class, () -> patientExportController.exportPatients("xml", false));
+        verifyNoInteractions(patientExportService);
+    }
+
+
+    @Test
+    @DisplayName("Should accept a job with the location of its status")
+    void submitExportJobTest() {
+
+        // Arrange
+        PatientExportJob job = job(PatientExportJob.State.QUEUED);
+        when(patientExportService.submit(PatientExportFormat.CSV, true)).thenReturn(job);
+
+        // Act
+        ResponseEntity<PatientExportJob> response = patientExportController.submitExportJob("csv", true);
+
+        // Assert
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("/api/patient/export/jobs/42", response.getHeaders().getFirst(HttpHeaders.LOCATION));
+        assertEquals(job, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the status of a job")
+    void getExportJobTest() {
+
+        // Arrange
+        PatientExportJob job = job(PatientExportJob.State.RUNNING);
+        when(patientExportService.getJob("42")).thenReturn(job);
+
+        // Act
+        ResponseEntity<PatientExportJob> response = patientExportController.getExportJob("42");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(job, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should serve the file of a finished job")
+    void getExportJobFileTest(@TempDir Path directory) throws Exception {
+
+        // Arrange
+        Path file = Files.write(directory.resolve("patients-42.csv.gz"), new byte[]{1, 2, 3});
+        when(patientExportService.getJob("42")).thenReturn(job(PatientExportJob.State.DONE));
+        when(patientExportService.getJobFile("42")).thenReturn(file);
+
+        // Act
+        ResponseEntity<Resource> response = patientExportController.getExportJobFile("42");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("patients-42.csv.gz", response.getHeaders().getContentDisposition().getFilename());
+        assertEquals(3, response.getBody().contentLength());
+    }
+
+
+    @Test
+    @DisplayName("Should answer conflict while the job is not done")
+    void getExportJobFileNotDoneTest() {
+
+        // Arrange
+        when(patientExportService.getJob("42")).thenReturn(job(PatientExportJob.State.RUNNING));
+        when(patientExportService.getJobFile("42")).thenReturn(null);
+
+        // Act
+        ResponseEntity<Resource> response = patientExportController.getExportJobFile("42");
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+}
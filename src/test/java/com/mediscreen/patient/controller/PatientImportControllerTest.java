@@ -0,0 +1,65 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientImportReport;
+import com.mediscreen.patient.service.PatientImportService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientImportControllerTest {
+
+
+    @Mock
+    private PatientImportService patientImportService;
+    @InjectMocks
+    private PatientImportController patientImportController;
+
+
+    @Test
+    @DisplayName("Should return the JSON import report")
+    void importJsonTest() throws Exception {
+
+        // Arrange
+        InputStream body = new ByteArrayInputStream("[]".getBytes());
+        PatientImportReport report = new PatientImportReport(0, 0, 0, List.of());
+        when(patientImportService.importJson(body)).thenReturn(report);
+
+        // Act
+        ResponseEntity<PatientImportReport> response = patientImportController.importJson(body);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(report, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the CSV import report")
+    void importCsvTest() throws Exception {
+
+        // Arrange
+        InputStream body = new ByteArrayInputStream("lastName".getBytes());
+        PatientImportReport report = new PatientImportReport(2, 1, 1, List.of());
+        when(patientImportService.importCsv(body)).thenReturn(report);
+
+        // Act
+        ResponseEntity<PatientImportReport> response = patientImportController.importCsv(body);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(report, response.getBody());
+    }
+}
@@ -0,0 +1,85 @@
+package com.mediscreen.patient.controller;
+
+import com.mediscreen.patient.dto.PatientAge;
+import com.mediscreen.patient.dto.PatientCountRange;
+import com.mediscreen.patient.dto.PatientDemographics;
+import com.mediscreen.patient.service.PatientStatsService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientStatsControllerTest {
+
+
+    @Mock
+    private PatientStatsService patientStatsService;
+    @InjectMocks
+    private PatientStatsController patientStatsController;
+
+
+    @Test
+    @DisplayName("Should return the demographics for the requested bucket widths")
+    void getDemographicsTest() {
+
+        // Arrange
+        PatientDemographics demographics = new PatientDemographics(LocalDate.of(2024, 6, 15), 1, Map.of("F", 1L),
+                List.of(new PatientCountRange(0, 4, 1)), List.of(new PatientCountRange(2020, 2020, 1)));
+        when(patientStatsService.getDemographics(5, 1)).thenReturn(demographics);
+
+        // Act
+        ResponseEntity<PatientDemographics> response = patientStatsController.getDemographics(5, 1);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(demographics, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the ages of the posted ids")
+    void findAgesByIdsTest() {
+
+        // Arrange
+        List<Integer> ids = List.of(2, 1);
+        List<PatientAge> ages = List.of(new PatientAge(2, false, null), new PatientAge(1, true, 42));
+        when(patientStatsService.findAgesByIds(ids)).thenReturn(ages);
+
+        // Act
+        ResponseEntity<List<PatientAge>> response = patientStatsController.findAgesByIds(ids);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(ages, response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should return the ages of the ids given as parameter")
+    void getAgesByIdsTest() {
+
+        // Arrange
+        List<Integer> ids = List.of(1);
+        when(patientStatsService.findAgesByIds(ids)).thenReturn(List.of(new PatientAge(1, true, 42)));
+
+        // Act
+        ResponseEntity<List<PatientAge>> response = patientStatsController.getAgesByIds(ids);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().size());
+        verify(patientStatsService).findAgesByIds(ids);
+    }
+}
@@ -0,0 +1,176 @@
+package com.mediscreen.patient.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReplicaRoutingDataSourceTest {
+
+
+    @Mock
+    private DataSource primary;
+    @Mock
+    private HikariDataSource replica0;
+    @Mock
+    private HikariDataSource replica1;
+    @Mock
+    private Connection connection;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+
+    @BeforeEach
+    void setUp() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.clearClient();
+    }
+
+
+    private ReplicaRoutingDataSource dataSource(ReplicaSelection selection) {
+        return new ReplicaRoutingDataSource(primary, List.of(replica0, replica1), selection,
+                Duration.ofSeconds(5), Duration.ofSeconds(30), clock::get, meterRegistry);
+    }
+
+
+    @Test
+    @DisplayName("Should send read-only transactions to the replicas in turn and the others to the primary")
+    void roundRobinTest() {
+
+        // Arrange
+        ReplicaRoutingDataSource dataSource = dataSource(ReplicaSelection.ROUND_ROBIN);
+
+        // Act
+        Object write = dataSource.determineCurrentLookupKey();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        Object first = dataSource.determineCurrentLookupKey();
+        Object second = dataSource.determineCurrentLookupKey();
+        Object third = dataSource.determineCurrentLookupKey();
+
+        // Assert
+        assertEquals("primary", write);
+        assertEquals("replica-0", first);
+        assertEquals("replica-1", second);
+        assertEquals("replica-0", third);
+    }
+
+
+    @Test
+    @DisplayName("Should send read-only transactions to the replica with the fewest active connections")
+    void leastLoadedTest() {
+
+        // Arrange
+        HikariPoolMXBean busy = mock(HikariPoolMXBean.class);
+        HikariPoolMXBean idle = mock(HikariPoolMXBean.class);
+        when(busy.getActiveConnections()).thenReturn(7);
+        when(idle.getActiveConnections()).thenReturn(2);
+        when(replica0.getHikariPoolMXBean()).thenReturn(busy);
+        when(replica1.getHikariPoolMXBean()).thenReturn(idle);
+        ReplicaRoutingDataSource dataSource = dataSource(ReplicaSelection.LEAST_LOADED);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // Act
+        Object key = dataSource.determineCurrentLookupKey();
+
+        // Assert
+        assertEquals("replica-1", key);
+    }
+
+
+    @Test
+    @DisplayName("Should keep the reads of a client on the primary for a while after it writes")
+    void readYourWritesTest() {
+
+        // Arrange
+        ReplicaRoutingDataSource dataSource = dataSource(ReplicaSelection.ROUND_ROBIN);
+        ReplicaRoutingDataSource.setClient("writer");
+        dataSource.determineCurrentLookupKey();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // Act
+        Object writerRead = dataSource.determineCurrentLookupKey();
+        ReplicaRoutingDataSource.setClient("reader");
+        Object readerRead = dataSource.determineCurrentLookupKey();
+        ReplicaRoutingDataSource.setClient("writer");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        Object laterWriterRead = dataSource.determineCurrentLookupKey();
+
+        // Assert
+        assertEquals("primary", writerRead);
+        assertEquals("replica-0", readerRead);
+        assertEquals("replica-1", laterWriterRead);
+    }
+
+
+    @Test
+    @DisplayName("Should send the reads kept beyond the request to the primary, whatever the client")
+    void readFromPrimaryTest() {
+
+        // Arrange
+        ReplicaRoutingDataSource dataSource = dataSource(ReplicaSelection.ROUND_ROBIN);
+        ReplicaRoutingDataSource.setClient("reader");
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // Act
+        Object cacheLoad = ReplicaRoutingDataSource.readFromPrimary(() ->
+                ReplicaRoutingDataSource.readFromPrimary(dataSource::determineCurrentLookupKey));
+        Object read = dataSource.determineCurrentLookupKey();
+
+        // Assert
+        assertEquals("primary", cacheLoad);
+        assertEquals("replica-0", read);
+    }
+
+
+    @Test
+    @DisplayName("Should fall back to the primary and skip a replica that fails to connect")
+    void fallbackTest() throws SQLException {
+
+        // Arrange
+        when(replica0.getConnection()).thenThrow(new SQLException("Connection refused"));
+        when(replica1.getConnection()).thenReturn(connection);
+        when(primary.getConnection()).thenReturn(connection);
+        ReplicaRoutingDataSource dataSource = dataSource(ReplicaSelection.ROUND_ROBIN);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // Act
+        Connection fallback = dataSource.getConnection();
+        dataSource.getConnection();
+        dataSource.getConnection();
+
+        // Assert
+        assertSame(connection, fallback);
+        verify(replica0, times(1)).getConnection();
+        verify(replica1, times(2)).getConnection();
+        verify(primary, times(1)).getConnection();
+        assertEquals(1, meterRegistry.get("patient.datasource.fallbacks").counter().count());
+        assertEquals(2, meterRegistry.get("patient.datasource.connections").tag("target", "replica-1").counter().count());
+    }
+}
@@ -0,0 +1,205 @@
+package com.mediscreen.patient.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientExportJob;
+import com.mediscreen.patient.exception.ExportJobNotFoundException;
+import com.mediscreen.patient.exception.ServiceOverloadedException;
+import com.mediscreen.patient.repository.PatientJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientExportServiceTest {
+
+
+    @Mock
+    private PatientJdbcRepository patientJdbcRepository;
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private PatientExportService patientExportService;
+
+
+    @BeforeEach
+    void setUp() {
+        patientExportService = new PatientExportService(patientJdbcRepository, objectMapper, new SimpleMeterRegistry(),
+                directory.toString(), 1, Duration.ofHours(1));
+    }
+
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        patientExportService.close();
+    }
+
+
+    private void streamPatients(int count) {
+        doAnswer(invocation -> {
+            Consumer<PatientDto> consumer = invocation.getArgument(0);
+            for (int id = 1; id <= count; id++) {
+                PatientDto patient = new PatientDto("Doe" + id, "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+                patient.setId(id);
+                consumer.accept(patient);
+            }
+            return null;
+        }).when(patientJdbcRepository).streamAll(any());
+    }
+
+
+    private PatientExportJob awaitJob(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        PatientExportJob job = patientExportService.getJob(id);
+        while (job.finishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            job = patientExportService.getJob(id);
+        }
+        return job;
+    }
+
+
+    @Test
+    @DisplayName("Should stream every patient to the output stream")
+    void exportTest() throws IOException {
+
+        // Arrange
+        streamPatients(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        long rows = patientExportService.export(PatientExportFormat.NDJSON, false, out);
+
+        // Assert
+        assertEquals(3, rows);
+        assertEquals(3, out.toString(StandardCharsets.UTF_8).split("\n").length);
+    }
+
+
+    @Test
+    @DisplayName("Should rethrow the failure to write the output stream")
+    void exportWriteFailureTest() {
+
+        // Arrange
+        streamPatients(100_000);
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        // Act & Assert
+        IOException ex = assertThrows(IOException.class,
+                () -> patientExportService.export(PatientExportFormat.CSV, false, broken));
+        assertEquals("Broken pipe", ex.getMessage());
+    }
+
+
+    @Test
+    @DisplayName("Should write the file of a job and report it done")
+    void submitTest() throws Exception {
+
+        // Arrange
+        streamPatients(2);
+
+        // Act
+        PatientExportJob submitted = patientExportService.submit(PatientExportFormat.CSV, true);
+        PatientExportJob job = awaitJob(submitted.id());
+
+        // Assert
+        assertEquals(PatientExportJob.State.DONE, job.state());
+        assertEquals(2, job.rows());
+        Path file = patientExportService.getJobFile(job.id());
+        assertEquals(directory.resolve("patients-" + job.id() + ".csv.gz"), file);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            assertEquals(3, new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n").length);
+        }
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+    }
+
+
+    @Test
+    @DisplayName("Should report a failed job without a file")
+    void submitFailureTest() throws Exception {
+
+        // Arrange
+        doThrow(new IllegalStateException("database down")).when(patientJdbcRepository).streamAll(any());
+
+        // Act
+        PatientExportJob job = awaitJob(patientExportService.submit(PatientExportFormat.NDJSON, false).id());
+
+        // Assert
+        assertEquals(PatientExportJob.State.FAILED, job.state());
+        assertEquals("database down", job.error());
+        assertNull(patientExportService.getJobFile(job.id()));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+
+    @Test
+    @DisplayName("Should reject a job when the queue is full")
+    void submitQueueFullTest() throws Exception {
+
+        // Arrange
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            running.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(patientJdbcRepository).streamAll(any());
+        PatientExportJob first = patientExportService.submit(PatientExportFormat.CSV, false);
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        PatientExportJob second = patientExportService.submit(PatientExportFormat.CSV, false);
+
+        // Act & Assert
+        assertThrows(ServiceOverloadedException.class, () -> patientExportService.submit(PatientExportFormat.CSV, false));
+        assertEquals(PatientExportJob.State.RUNNING, patientExportService.getJob(first.id()).state());
+        assertEquals(PatientExportJob.State.QUEUED, patientExportService.getJob(second.id()).state());
+        assertNull(patientExportService.getJobFile(first.id()));
+        release.countDown();
+    }
+
+
+    @Test
+    @DisplayName("Should throw for an unknown job")
+    void getJobNotFoundTest() {
+
+        assertThrows(ExportJobNotFoundException.class, () -> patientExportService.getJob("unknown"));
+        assertThrows(ExportJobNotFoundException.class, () -> patientExportService.getJobFile("unknown"));
+    }
+}
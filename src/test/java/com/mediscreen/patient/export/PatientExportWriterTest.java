@@ -0,0 +1,151 @@
+package com.mediscreen.patient.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.util.CsvParser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientExportWriterTest {
+
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+
+    private static PatientDto patient(int id, String lastName, String address) {
+        PatientDto patient = new PatientDto(lastName, "John", LocalDate.of(2000, 1, 2), "M", address, "555-0100");
+        patient.setId(id);
+        return patient;
+    }
+
+
+    private String export(PatientExportFormat format, boolean gzip, PatientDto... patients) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PatientExportWriter writer = new PatientExportWriter(out, format, gzip, objectMapper)) {
+            for (PatientDto patient : patients) {
+                writer.write(patient);
+            }
+            assertEquals(patients.length, writer.getRows());
+        }
+        byte[] bytes = out.toByteArray();
+        if (gzip) {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                bytes = in.readAllBytes();
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    @Test
+    @DisplayName("Should write a CSV header then one line per patient, quoting fields when needed")
+    void csvTest() throws IOException {
+
+        // Act
+        String csv = export(PatientExportFormat.CSV, false,
+                patient(1, "Doe", "1 Main St"), patient(2, "O\"Neil", "2 Elm St, Springfield"));
+
+        // Assert
+        String[] lines = csv.split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(PatientExportWriter.CSV_HEADER, lines[0]);
+        assertEquals("1,Doe,John,2000-01-02,M,1 Main St,555-0100", lines[1]);
+        assertEquals(List.of("2", "O\"Neil", "John", "2000-01-02", "M", "2 Elm St, Springfield", "555-0100"),
+                CsvParser.parseLine(lines[2]));
+    }
+
+
+    @Test
+    @DisplayName("Should leave null fields empty")
+    void csvNullTest() throws IOException {
+
+        // Arrange
+        PatientDto patient = new PatientDto("Doe", "John");
+        patient.setId(1);
+
+        // Act
+        String csv = export(PatientExportFormat.CSV, false, patient);
+
+        // Assert
+        assertEquals("1,Doe,John,,,,", csv.split("\n")[1]);
+    }
+
+
+    @Test
+    @DisplayName("Should quote fields with separators, quotes, line breaks or surrounding spaces")
+    void needsQuotesTest() {
+
+        assertFalse(PatientExportWriter.needsQuotes("Doe"));
+        assertFalse(PatientExportWriter.needsQuotes(""));
+        assertTrue(PatientExportWriter.needsQuotes("a,b"));
+        assertTrue(PatientExportWriter.needsQuotes("a\"b"));
+        assertTrue(PatientExportWriter.needsQuotes("a\nb"));
+        assertTrue(PatientExportWriter.needsQuotes(" a"));
+    }
+
+
+    @Test
+    @DisplayName("Should write one JSON document per line")
+    void ndjsonTest() throws IOException {
+
+        // Act
+        String ndjson = export(PatientExportFormat.NDJSON, false, patient(1, "Doe", "a"), patient(2, "Smith", "b"));
+
+        // Assert
+        assertTrue(ndjson.endsWith("\n"));
+        String[] lines = ndjson.split("\n");
+        assertEquals(2, lines.length);
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertEquals(2, second.get("id").asInt());
+        assertEquals("Smith", second.get("lastName").asText());
+        assertEquals("2000-01-02", second.get("birthdate").asText());
+        assertFalse(lines[1].startsWith(" "));
+    }
+
+
+    @Test
+    @DisplayName("Should gzip the output")
+    void gzipTest() throws IOException {
+
+        // Act
+        String csv = export(PatientExportFormat.CSV, true, patient(1, "Doe", "a"));
+
+        // Assert
+        assertEquals(PatientExportWriter.CSV_HEADER + "\n1,Doe,John,2000-01-02,M,a,555-0100\n", csv);
+    }
+
+
+    @Test
+    @DisplayName("Should leave the output stream open")
+    void closeTest() throws IOException {
+
+        // Arrange
+        boolean[] closed = {false};
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        // Act
+        new PatientExportWriter(out, PatientExportFormat.CSV, true, objectMapper).close();
+
+        // Assert
+        assertFalse(closed[0]);
+        assertTrue(out.size() > 0);
+    }
+}
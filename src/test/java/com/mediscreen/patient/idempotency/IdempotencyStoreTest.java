@@ -0,0 +1,208 @@
+package com.mediscreen.patient.idempotency;
+
+import com.mediscreen.patient.exception.IdempotencyKeyInProgressException;
+import com.mediscreen.patient.exception.IdempotencyKeyReusedException;
+import com.mediscreen.patient.exception.InvalidIdempotencyKeyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreTest {
+
+
+    private static final String SCOPE = "POST /api/patient/validate";
+    private static final String CLIENT = "alice";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IdempotencyStore idempotencyStore = new IdempotencyStore(100, Duration.ofMinutes(1),
+            Duration.ofSeconds(10), meterRegistry);
+
+
+    @Test
+    @DisplayName("Should replay the result of a key without running the request again")
+    void executeReplayTest() {
+
+        // Arrange
+        AtomicInteger runs = new AtomicInteger();
+        String fingerprint = IdempotencyStore.fingerprint("Doe", "John");
+
+        // Act
+        String first = idempotencyStore.execute(SCOPE, CLIENT, "key-1", fingerprint,
+                () -> "created-" + runs.incrementAndGet());
+        String second = idempotencyStore.execute(SCOPE, CLIENT, "key-1", fingerprint,
+                () -> "created-" + runs.incrementAndGet());
+
+        // Assert
+        assertEquals("created-1", first);
+        assertEquals("created-1", second);
+        assertEquals(1, runs.get());
+        assertEquals(1, meterRegistry.get("patient.idempotency.requests").tag("outcome", "executed").counter().count());
+        assertEquals(1, meterRegistry.get("patient.idempotency.requests").tag("outcome", "replayed").counter().count());
+    }
+
+
+    @Test
+    @DisplayName("Should reject a key sent with a different request")
+    void executeReusedKeyTest() {
+
+        // Arrange
+        idempotencyStore.execute(SCOPE, CLIENT, "key-1", IdempotencyStore.fingerprint("Doe", "John"), () -> "created");
+
+        // Act & Assert
+        assertThrows(IdempotencyKeyReusedException.class, () -> idempotencyStore.execute(SCOPE, CLIENT, "key-1",
+                IdempotencyStore.fingerprint("Smith", "John"), () -> fail("should not run")));
+    }
+
+
+    @Test
+    @DisplayName("Should keep the keys of different endpoints apart")
+    void executeScopeTest() {
+
+        // Act
+        String first = idempotencyStore.execute(SCOPE, CLIENT, "key-1", "a", () -> "validate");
+        String second = idempotencyStore.execute("POST /patient/add", CLIENT, "key-1", "b", () -> "add");
+
+        // Assert
+        assertEquals("validate", first);
+        assertEquals("add", second);
+    }
+
+
+    @Test
+    @DisplayName("Should keep the keys of different clients apart")
+    void executeClientTest() {
+
+        // Act
+        String first = idempotencyStore.execute(SCOPE, CLIENT, "key-1", "a", () -> "alice");
+        String second = idempotencyStore.execute(SCOPE, "bob", "key-1", "a", () -> "bob");
+
+        // Assert
+        assertEquals("alice", first);
+        assertEquals("bob", second);
+    }
+
+
+    @Test
+    @DisplayName("Should run concurrent duplicates once and give them the same result")
+    void executeConcurrentTest() throws Exception {
+
+        // Arrange
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // Act
+            Future<String> first = executor.submit(() -> idempotencyStore.execute(SCOPE, CLIENT, "key-1", "a", () -> {
+                running.countDown();
+                awaitQuietly(release);
+                return "created-" + runs.incrementAndGet();
+            }));
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> idempotencyStore.execute(SCOPE, CLIENT, "key-1", "a",
+                    () -> "created-" + runs.incrementAndGet()));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (meterRegistry.get("patient.idempotency.requests").tag("outcome", "replayed").counter().count() == 0
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            // Assert
+            assertEquals("created-1", first.get(10, TimeUnit.SECONDS));
+            assertEquals("created-1", second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    @DisplayName("Should stop waiting for a duplicate still running after the longest wait")
+    void executeMaxWaitTest() throws Exception {
+
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(100, Duration.ofMinutes(1), Duration.ofMillis(50), meterRegistry);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> first = executor.submit(() -> store.execute(SCOPE, CLIENT, "key-1", "a", () -> {
+                running.countDown();
+                awaitQuietly(release);
+                return "created";
+            }));
+            assertTrue(running.await(10, TimeUnit.SECONDS));
+
+            // Act & Assert
+            assertThrows(IdempotencyKeyInProgressException.class,
+                    () -> store.execute(SCOPE, CLIENT, "key-1", "a", () -> fail("should not run")));
+            release.countDown();
+            assertEquals("created", first.get(10, TimeUnit.SECONDS));
+            assertEquals("created", store.execute(SCOPE, CLIENT, "key-1", "a", () -> fail("should not run")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    @DisplayName("Should forget a failed request so that a retry runs again")
+    void executeFailureTest() {
+
+        // Act
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () ->
+                idempotencyStore.execute(SCOPE, CLIENT, "key-1", "a", () -> {
+                    throw new IllegalStateException("database down");
+                }));
+        String result = idempotencyStore.execute(SCOPE, CLIENT, "key-1", "a", () -> "created");
+
+        // Assert
+        assertEquals("database down", ex.getMessage());
+        assertEquals("created", result);
+    }
+
+
+    @Test
+    @DisplayName("Should reject a blank or too long key")
+    void executeInvalidKeyTest() {
+
+        assertThrows(InvalidIdempotencyKeyException.class,
+                () -> idempotencyStore.execute(SCOPE, CLIENT, " ", "a", () -> "created"));
+        assertThrows(InvalidIdempotencyKeyException.class,
+                () -> idempotencyStore.execute(SCOPE, CLIENT, "k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1), "a",
+                        () -> "created"));
+    }
+
+
+    @Test
+    @DisplayName("Should fingerprint the parts of a request apart")
+    void fingerprintTest() {
+
+        assertEquals(IdempotencyStore.fingerprint("Doe", "John"), IdempotencyStore.fingerprint("Doe", "John"));
+        assertNotEquals(IdempotencyStore.fingerprint("Doe", "John"), IdempotencyStore.fingerprint("DoeJ", "ohn"));
+        assertNotEquals(IdempotencyStore.fingerprint("Doe", null), IdempotencyStore.fingerprint("Doe"));
+    }
+
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
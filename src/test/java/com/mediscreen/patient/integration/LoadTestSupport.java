@@ -0,0 +1,90 @@
+package com.mediscreen.patient.integration;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closed-loop HTTP load generator shared by the load tests: a fixed number of clients send GET requests
+ * back to back and every latency is recorded.
+ */
+final class LoadTestSupport {
+
+    private LoadTestSupport() {
+    }
+
+
+    record LoadResult(String name, int requests, int errors, double throughputPerSecond, double p50Millis, double p99Millis) {
+
+        @Override
+        public String toString() {
+            return String.format("%-16s requests=%d errors=%d throughput=%.0f req/s p50=%.2f ms p99=%.2f ms",
+                    name, requests, errors, throughputPerSecond, p50Millis, p99Millis);
+        }
+    }
+
+
+    /**
+     Send {@code requestsPerClient} requests from each of {@code clients} concurrent clients.
+     @param name the label of the run.
+     @param uri the URI requested.
+     @param clients the number of concurrent clients.
+     @param requestsPerClient the number of requests each client sends.
+     @return the throughput and latency percentiles of the run.
+     */
+    static LoadResult run(String name, URI uri, int clients, int requestsPerClient) throws InterruptedException {
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger slot = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(clients);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+
+        long start = System.nanoTime();
+        for (int client = 0; client < clients; client++) {
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception ex) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[slot.getAndIncrement()] = System.nanoTime() - sent;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Arrays.sort(latencies);
+        return new LoadResult(name, latencies.length, errors.get(),
+                latencies.length / (elapsed / 1e9),
+                percentile(latencies, 0.50) / 1e6,
+                percentile(latencies, 0.99) / 1e6);
+    }
+
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,136 @@
+package com.mediscreen.patient.integration;
+
+import com.mediscreen.patient.export.PatientExportFormat;
+import com.mediscreen.patient.export.PatientExportService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Exports a large H2 table and checks that the heap retained during the export does not grow with the rows
+ * written: the heap is measured after a full collection early in the export and again near its end.
+ */
+@SpringBootTest(properties = {
+        // own database, the other integration tests expect a small table
+        "spring.datasource.url=jdbc:h2:mem:export",
+        "patient.rate-limit.enabled=false"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PatientExportIT {
+
+
+    private static final Logger log = LogManager.getLogger(PatientExportIT.class);
+
+    private static final int PATIENTS = 200_000;
+    private static final long MAX_GROWTH_BYTES = 16L * 1024 * 1024;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PatientExportService patientExportService;
+
+
+    @BeforeAll
+    void insertPatients() {
+        List<Object[]> batch = new ArrayList<>(1000);
+        LocalDate epoch = LocalDate.of(1930, 1, 1);
+        Timestamp lastModified = Timestamp.from(Instant.now());
+        for (int i = 1; i <= PATIENTS; i++) {
+            batch.add(new Object[]{i, "Last" + i, "last" + i, "First" + i, Date.valueOf(epoch.plusDays(i % 30000)),
+                    i % 2 == 0 ? "M" : "F", i + " Main Street", "555-" + i, 0L, lastModified});
+            if (batch.size() == 1000 || i == PATIENTS) {
+                jdbcTemplate.batchUpdate("INSERT INTO patient (id, last_name, last_name_key, first_name, birthdate, sex, address, phone, "
+                        + "version, last_modified) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Discards the export, counting its lines and measuring the heap when given line counts are reached.
+     */
+    private static final class HeapSamplingSink extends OutputStream {
+
+        private final long[] sampleAt;
+        private final long[] heapUsed;
+        private int samples;
+        private long lines;
+
+        HeapSamplingSink(long... sampleAt) {
+            this.sampleAt = sampleAt;
+            this.heapUsed = new long[sampleAt.length];
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    lines++;
+                }
+            }
+            if (samples < sampleAt.length && lines >= sampleAt[samples]) {
+                heapUsed[samples++] = retainedHeap();
+            }
+        }
+
+        private static long retainedHeap() {
+            System.gc();
+            System.gc();
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+    }
+
+
+    private void assertFlatHeap(PatientExportFormat format, boolean gzip) throws Exception {
+        HeapSamplingSink sink = new HeapSamplingSink(PATIENTS / 10, PATIENTS * 9L / 10);
+
+        long rows = patientExportService.export(format, gzip, sink);
+
+        assertEquals(PATIENTS, rows);
+        long growth = sink.heapUsed[1] - sink.heapUsed[0];
+        String heap = String.format("%s export of %d patients: heap %d MB after 10%%, %d MB after 90%%", format, rows,
+                sink.heapUsed[0] / (1024 * 1024), sink.heapUsed[1] / (1024 * 1024));
+        log.info(heap);
+        assertTrue(growth < MAX_GROWTH_BYTES, "heap grew by " + growth + " bytes during the export, " + heap);
+    }
+
+
+    @Test
+    @DisplayName("Should export a large table as CSV with a flat heap")
+    void exportCsvTest() throws Exception {
+        assertFlatHeap(PatientExportFormat.CSV, false);
+    }
+
+
+    @Test
+    @DisplayName("Should export a large table as NDJSON with a flat heap")
+    void exportNdjsonTest() throws Exception {
+        assertFlatHeap(PatientExportFormat.NDJSON, false);
+    }
+}
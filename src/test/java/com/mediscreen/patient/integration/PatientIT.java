@@ -6,12 +6,14 @@ import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDate;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -46,6 +48,27 @@ class PatientIT {
     }
 
 
+    @Test
+    @Order(3)
+    @DisplayName("Should return not modified when the ETag of the patient or of the list matches")
+    void conditionalGetTest() throws Exception {
+
+        String eTag = mockMvc.perform(get("/api/patient/find/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/patient/find/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        String listETag = mockMvc.perform(get("/api/patient/list"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/patient/list").header(HttpHeaders.IF_NONE_MATCH, listETag))
+                .andExpect(status().isNotModified());
+    }
+
+
     @Test
     @Order(4)
     @DisplayName("Should return patient when name exist")
@@ -80,6 +103,72 @@ class PatientIT {
     }
 
 
+    @Test
+    @Order(5)
+    @DisplayName("Should search patients by family name prefix")
+    void searchPatientsTest() throws Exception {
+
+        mockMvc.perform(get("/api/patient/search").param("name", "SMI").param("mode", "PREFIX"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].lastName").value("Smith"));
+
+        mockMvc.perform(get("/api/patient/search").param("name", "smith"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+
+    @Test
+    @Order(5)
+    @DisplayName("Should page through patients with a cursor")
+    void getPatientPageTest() throws Exception {
+
+        mockMvc.perform(get("/api/patient/page").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.patients.length()").value(1))
+                .andExpect(jsonPath("$.patients[0].id").value(1))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+
+        mockMvc.perform(get("/api/patient/page").param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    @Test
+    @Order(5)
+    @DisplayName("Should return patients by ids in request order with missing ids inline")
+    void findPatientsByIdsTest() throws Exception {
+
+        mockMvc.perform(post("/api/patient/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[2, 999, 1]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].patient.id").value(2))
+                .andExpect(jsonPath("$[1].id").value(999))
+                .andExpect(jsonPath("$[1].found").value(false))
+                .andExpect(jsonPath("$[2].patient.lastName").value("Doe"));
+
+        mockMvc.perform(get("/api/patient/batch").param("ids", "1,2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].found").value(true));
+    }
+
+
+    @Test
+    @Order(5)
+    @DisplayName("Should stream patients as ndjson")
+    void streamAllPatientsTest() throws Exception {
+
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/patient/stream"))
+                        .andExpect(request().asyncStarted())
+                        .andReturn()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+    }
+
+
     @Test
     @Order(2)
     @DisplayName("Should return patient when valid data")
@@ -95,6 +184,12 @@ class PatientIT {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.firstName").value("John"))
                 .andExpect(jsonPath("$.lastName").value("Smith"));
+
+        PatientDto duplicate = new PatientDto("Smyth", "Jon", birthdate, "M", "a", "p");
+        mockMvc.perform(post("/api/patient/validate")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(duplicate)))
+                .andExpect(status().isConflict());
     }
 
 
@@ -114,6 +209,53 @@ class PatientIT {
                 .andExpect(jsonPath("$.id").value(1))
                 .andExpect(jsonPath("$.firstName").value("John"))
                 .andExpect(jsonPath("$.lastName").value("Smith"));
+
+        // the update moved the patient past version 0
+        mockMvc.perform(post("/api/patient/update/{id}", 1)
+                        .header(HttpHeaders.IF_MATCH, "\"1-0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(patientDto)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+
+    @Test
+    @Order(8)
+    @DisplayName("Should import patients from csv and report rejected rows")
+    public void importCsvTest() throws Exception {
+
+        String csv = "lastName,firstName,birthdate,sex,address,phone\n"
+                + "Brown,Bob,1990-05-06,M,c,r\n"
+                + "Green,,1990-05-06,M,c,r\n";
+
+        mockMvc.perform(post("/api/patient/import")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(2))
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.errors[0].row").value(2))
+                .andExpect(jsonPath("$.errors[0].field").value("firstName"));
+    }
+
+
+    @Test
+    @Order(9)
+    @DisplayName("Should list every write in the change feed, in order")
+    public void getChangesTest() throws Exception {
+
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/patient/changes").param("since", "0"))
+                        .andExpect(request().asyncStarted())
+                        .andReturn()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes.length()").value(5))
+                .andExpect(jsonPath("$.changes[0].type").value("CREATED"))
+                .andExpect(jsonPath("$.changes[0].patient.id").value(1))
+                .andExpect(jsonPath("$.changes[2].type").value("UPDATED"))
+                .andExpect(jsonPath("$.changes[3].type").value("DELETED"))
+                .andExpect(jsonPath("$.changes[3].patientId").value(2))
+                .andExpect(jsonPath("$.changes[3].patient").doesNotExist())
+                .andExpect(jsonPath("$.lastSequence").value(5));
     }
 
 
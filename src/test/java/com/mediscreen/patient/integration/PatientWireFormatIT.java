@@ -0,0 +1,109 @@
+package com.mediscreen.patient.integration;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.service.PatientService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Negotiates the binary formats and gzip with a real Tomcat, since MockMvc does not compress.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:mem:wire-format")
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PatientWireFormatIT {
+
+
+    private static final int PATIENTS = 200;
+    private static final TypeReference<List<PatientDto>> PATIENT_LIST = new TypeReference<>() {};
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private PatientService patientService;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+
+    @BeforeAll
+    void setUp() {
+        List<PatientDto> patients = new ArrayList<>(PATIENTS);
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(new PatientDto("Last" + i, "First" + i, LocalDate.of(2000, 1, 1), "M", i + " Main Street", "555-" + i));
+        }
+        patients.forEach(patient -> patientService.createPatient(patient, true));
+    }
+
+
+    private HttpResponse<byte[]> getList(String accept, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/patient/list"))
+                .header(HttpHeaders.ACCEPT, accept);
+        if (acceptEncoding != null) {
+            request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+
+    @Test
+    @DisplayName("Should serve the list as CBOR and Smile, smaller than JSON")
+    void binaryFormatsTest() throws Exception {
+
+        byte[] json = getList(MediaType.APPLICATION_JSON_VALUE, null).body();
+        HttpResponse<byte[]> cbor = getList(MediaType.APPLICATION_CBOR_VALUE, null);
+        HttpResponse<byte[]> smile = getList("application/x-jackson-smile", null);
+
+        assertEquals(MediaType.APPLICATION_CBOR_VALUE, cbor.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElseThrow());
+        List<PatientDto> fromCbor = Jackson2ObjectMapperBuilder.cbor().build().readValue(cbor.body(), PATIENT_LIST);
+        List<PatientDto> fromSmile = new ObjectMapper(new SmileFactory()).findAndRegisterModules().readValue(smile.body(), PATIENT_LIST);
+        List<PatientDto> fromJson = new ObjectMapper().findAndRegisterModules().readValue(json, PATIENT_LIST);
+        assertEquals(PATIENTS, fromCbor.size());
+        assertEquals(fromJson.get(0).getBirthdate(), fromCbor.get(0).getBirthdate());
+        assertEquals(fromJson.get(PATIENTS - 1).getLastName(), fromSmile.get(PATIENTS - 1).getLastName());
+        assertTrue(cbor.body().length < json.length);
+        assertTrue(smile.body().length < json.length);
+    }
+
+
+    @Test
+    @DisplayName("Should gzip the list when the client accepts it")
+    void gzipTest() throws Exception {
+
+        HttpResponse<byte[]> plain = getList(MediaType.APPLICATION_JSON_VALUE, null);
+        HttpResponse<byte[]> gzipped = getList(MediaType.APPLICATION_JSON_VALUE, "gzip");
+
+        assertTrue(plain.headers().firstValue(HttpHeaders.CONTENT_ENCODING).isEmpty());
+        assertEquals("gzip", gzipped.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElseThrow());
+        assertTrue(gzipped.body().length < plain.body().length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))) {
+            assertArrayEquals(plain.body(), in.readAllBytes());
+        }
+    }
+}
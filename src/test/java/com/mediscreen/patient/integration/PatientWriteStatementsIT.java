@@ -0,0 +1,125 @@
+package com.mediscreen.patient.integration;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import com.mediscreen.patient.service.PatientService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Counts the statements Hibernate prepares for each write, on its own H2 database, with a cold cache: a write
+ * never reads the patient first, not even for the audit, whose writer diffs the new state in the background.
+ * The change log and the audit log are written with JDBC and are not part of these counts.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statements",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+@ActiveProfiles("test")
+class PatientWriteStatementsIT {
+
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private static final AtomicInteger PATIENTS = new AtomicInteger();
+
+    private Statistics statistics;
+    private int id;
+
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        // a new birthdate per test, so that the created patients are not duplicates of each other
+        PatientDto patient = patient("Doe");
+        patient.setBirthdate(patient.getBirthdate().plusDays(PATIENTS.incrementAndGet()));
+        id = patientService.createPatient(patient).getId();
+        statistics.clear();
+    }
+
+
+    private static PatientDto patient(String lastName) {
+        return new PatientDto(lastName, "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+    }
+
+
+    @Test
+    @DisplayName("Should update a patient with a single statement and no load")
+    void updatePatientTest() throws PatientNotFoundException {
+
+        patientService.updatePatient(id, patient("Smith"));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+
+    @Test
+    @DisplayName("Should update a patient at the expected version with a single statement")
+    void updatePatientIfVersionTest() throws PatientNotFoundException {
+
+        patientService.updatePatient(id, patient("Smith"), 0L);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1L, patientService.findPatientVersion(id).version());
+    }
+
+
+    @Test
+    @DisplayName("Should check the existence of the patient only when the version does not match")
+    void updatePatientVersionConflictTest() {
+
+        assertThrows(PatientVersionConflictException.class,
+                () -> patientService.updatePatient(id, patient("Smith"), 5L));
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0L, patientService.findPatientVersion(id).version());
+    }
+
+
+    @Test
+    @DisplayName("Should tell a missing patient from the count of updated rows")
+    void updateMissingPatientTest() {
+
+        assertThrows(PatientNotFoundException.class, () -> patientService.updatePatient(id + 1000, patient("Smith")));
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        assertThrows(PatientNotFoundException.class,
+                () -> patientService.updatePatient(id + 1000, patient("Smith"), 0L));
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+
+    @Test
+    @DisplayName("Should delete a patient with a single statement and no load")
+    void deletePatientTest() throws PatientNotFoundException {
+
+        patientService.deletePatient(id);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        statistics.clear();
+        assertThrows(PatientNotFoundException.class, () -> patientService.deletePatient(id));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,84 @@
+package com.mediscreen.patient.integration;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.PatientApplication;
+import com.mediscreen.patient.integration.LoadTestSupport.LoadResult;
+import com.mediscreen.patient.service.PatientService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Compares throughput and p99 latency of the servlet (Spring MVC + JPA) and reactive (WebFlux + R2DBC) stacks on
+ * /api/patient/find/{id} and /api/patient/list. Each stack gets its own application and H2 database; the results
+ * are logged for comparison.
+ */
+class ReactiveLoadIT {
+
+
+    private static final Logger log = LogManager.getLogger(ReactiveLoadIT.class);
+
+    private static final int CLIENTS = 400;
+    private static final int REQUESTS_PER_CLIENT = 50;
+    private static final int PATIENTS = 100;
+
+
+    @Test
+    @DisplayName("Should serve the same load with the servlet and the reactive stacks")
+    void compareStacksTest() throws Exception {
+
+        List<LoadResult> servlet = runStack(false);
+        List<LoadResult> reactive = runStack(true);
+
+        servlet.forEach(result -> log.info("{}", result));
+        reactive.forEach(result -> log.info("{}", result));
+        for (LoadResult result : servlet) {
+            assertEquals(0, result.errors(), result.toString());
+        }
+        for (LoadResult result : reactive) {
+            assertEquals(0, result.errors(), result.toString());
+        }
+    }
+
+
+    private static List<LoadResult> runStack(boolean reactive) throws InterruptedException {
+        String name = reactive ? "webflux" : "servlet";
+        String database = "load-" + name;
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(PatientApplication.class)
+                .profiles(reactive ? new String[]{"test", "reactive"} : new String[]{"test"})
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:" + database,
+                        // same in-memory database, kept open by the JPA connection pool
+                        "spring.r2dbc.url=r2dbc:h2:mem:///" + database,
+                        // no cache: every request goes down to the database
+                        "patient.cache.maximum-size=0",
+                        // measure the stacks, not the limits in front of them
+                        "patient.rate-limit.enabled=false",
+                        "patient.concurrency.enabled=false");
+        try (ConfigurableApplicationContext context = builder.run()) {
+            PatientService patientService = context.getBean(PatientService.class);
+            int id = 0;
+            for (int i = 0; i < PATIENTS; i++) {
+                id = patientService.createPatient(new PatientDto("Doe" + i, "John", LocalDate.of(2000, 1, 1), "M", "a", "p"), true).getId();
+            }
+            String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/api/patient";
+            URI find = URI.create(base + "/find/" + id);
+            URI list = URI.create(base + "/list");
+
+            LoadTestSupport.run(name + " warmup", find, CLIENTS, 5);
+            return List.of(LoadTestSupport.run(name + " find", find, CLIENTS, REQUESTS_PER_CLIENT),
+                    LoadTestSupport.run(name + " list", list, CLIENTS, REQUESTS_PER_CLIENT / 5));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.mediscreen.patient.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.datasource.ReplicaRoutingDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Two H2 databases stand for the primary and its replica. They are not replicated: a patient inserted in the
+ * replica only shows which one served a read, or stands for a replica lagging behind a write.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary",
+        "patient.datasource.replicas=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ReplicaRoutingIT {
+
+
+    private static final int REPLICA_ONLY_ID = 900_001;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate replica = new JdbcTemplate(replicaRoutingDataSource.getReplicas().get(0));
+        replica.execute("CREATE TABLE IF NOT EXISTS patient (id INT PRIMARY KEY, last_name VARCHAR(255), "
+                + "last_name_key VARCHAR(255), first_name VARCHAR(255), birthdate DATE, sex VARCHAR(255), "
+                + "address VARCHAR(255), phone VARCHAR(255), version BIGINT NOT NULL, last_modified TIMESTAMP)");
+        replica.update("MERGE INTO patient KEY (id) VALUES (?, 'Replica', 'replica', 'Only', DATE '1990-01-01', "
+                + "'F', 'a', 'p', 0, CURRENT_TIMESTAMP)", REPLICA_ONLY_ID);
+    }
+
+
+    @Test
+    @DisplayName("Should read from the replica, and from the primary right after a write of the same client")
+    void readYourWritesTest() throws Exception {
+
+        PatientDto patientDto = new PatientDto("Routed", "Writer", LocalDate.of(1985, 6, 15), "M", "a", "p");
+        mockMvc.perform(post("/api/patient/validate")
+                        .header("X-User", "writer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(patientDto)))
+                .andExpect(status().isOk());
+
+        // the writer reads from the primary, which does not have this patient
+        mockMvc.perform(get("/api/patient/search").param("name", "Replica").header("X-User", "writer"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/api/patient/search").param("name", "Replica").header("X-User", "reader"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].lastName").value("Replica"));
+    }
+
+
+    @Test
+    @DisplayName("Should never cache the state of a lagging replica, neither for another client nor for the writer")
+    void cachedReadAfterWriteTest() throws Exception {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Stale", "Cached", LocalDate.of(1986, 7, 16), "F", "a", "p");
+        MvcResult created = mockMvc.perform(post("/api/patient/validate")
+                        .header("X-User", "writer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(patientDto)))
+                .andExpect(status().isOk())
+                .andReturn();
+        int id = objectMapper.readValue(created.getResponse().getContentAsString(), PatientDto.class).getId();
+        // the replica has not caught up with the update below yet
+        new JdbcTemplate(replicaRoutingDataSource.getReplicas().get(0)).update("MERGE INTO patient KEY (id) VALUES "
+                + "(?, 'Stale', 'stale', 'Cached', DATE '1986-07-16', 'F', 'a', 'p', 0, CURRENT_TIMESTAMP)", id);
+        PatientDto updated = new PatientDto("Fresh", "Cached", LocalDate.of(1986, 7, 16), "F", "a", "p");
+        mockMvc.perform(post("/api/patient/update/{id}", id)
+                        .header("X-User", "writer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updated)))
+                .andExpect(status().isOk());
+
+        // Act & Assert
+        // the first read after the update loads the cache, whoever sends it
+        mockMvc.perform(get("/api/patient/find/{id}", id).header("X-User", "reader"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lastName").value("Fresh"));
+        mockMvc.perform(get("/api/patient/find/{id}", id).header("X-User", "writer"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lastName").value("Fresh"));
+    }
+}
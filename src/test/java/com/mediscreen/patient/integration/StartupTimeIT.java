@@ -0,0 +1,65 @@
+package com.mediscreen.patient.integration;
+
+import com.mediscreen.patient.PatientApplication;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Cold start of the aot profile in a fresh JVM, on H2, from launch until the application is ready and exits.
+ * Fails when it takes longer than {@code -Dstartup.max-seconds} (20 by default).
+ * With {@code mvn -Paot verify -Dspring.aot.enabled=true} the AOT-processed context is measured.
+ */
+class StartupTimeIT {
+
+
+    private static final Logger log = LogManager.getLogger(StartupTimeIT.class);
+
+    private static final Duration MAX_STARTUP = Duration.ofSeconds(Long.getLong("startup.max-seconds", 20));
+
+
+    @Test
+    @DisplayName("Should start within the startup time budget")
+    void startupTimeTest() throws Exception {
+
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+            command.add("--enable-preview");
+        }
+        command.add("-Dspring.aot.enabled=" + Boolean.getBoolean("spring.aot.enabled"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PatientApplication.class.getName());
+        command.add("--spring.profiles.active=test,aot");
+        command.add("--server.port=0");
+        command.add("--patient.startup.exit-on-ready=true");
+
+        File output = File.createTempFile("startup", ".log");
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output).start();
+        boolean exited = process.waitFor(MAX_STARTUP.toSeconds() * 3, TimeUnit.SECONDS);
+        Duration startup = Duration.ofNanos(System.nanoTime() - start);
+        if (!exited) {
+            process.destroyForcibly();
+        }
+
+        log.info("Startup took {} ms, see {}", startup.toMillis(), output);
+        assertTrue(exited, "the application did not exit, see " + output);
+        assertEquals(0, process.exitValue(), "the application failed to start, see " + output);
+        assertTrue(startup.compareTo(MAX_STARTUP) <= 0,
+                "startup took " + startup.toMillis() + " ms, over the budget of " + MAX_STARTUP.toMillis() + " ms, see " + output);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mediscreen.patient.integration;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.PatientApplication;
+import com.mediscreen.patient.integration.LoadTestSupport.LoadResult;
+import com.mediscreen.patient.service.PatientService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+/**
+ * Compares throughput and p99 latency of /api/patient/find/{id} with Tomcat platform threads and with virtual
+ * threads. Each mode gets its own application and H2 database; the results are logged for comparison.
+ */
+class VirtualThreadLoadIT {
+
+
+    private static final Logger log = LogManager.getLogger(VirtualThreadLoadIT.class);
+
+    private static final int CLIENTS = 400;
+    private static final int REQUESTS_PER_CLIENT = 50;
+
+
+    @Test
+    @DisplayName("Should serve the same load with platform and virtual threads")
+    void compareThreadModesTest() throws Exception {
+
+        assumeTrue(virtualThreadsAvailable(), "virtual threads need Java 19+ with --enable-preview");
+
+        LoadResult platform = runMode(false);
+        LoadResult virtual = runMode(true);
+
+        log.info("{}", platform);
+        log.info("{}", virtual);
+        assertEquals(0, platform.errors(), platform.toString());
+        assertEquals(0, virtual.errors(), virtual.toString());
+    }
+
+
+    private static LoadResult runMode(boolean virtualThreads) throws InterruptedException {
+        String name = virtualThreads ? "virtual threads" : "platform threads";
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+                new SpringApplicationBuilder(PatientApplication.class)
+                        .profiles("test")
+                        .properties("server.port=0",
+                                "spring.datasource.url=jdbc:h2:mem:load-" + virtualThreads,
+                                // no cache: every request goes down to the database
+                                "patient.cache.maximum-size=0",
+                                "patient.virtual-threads.enabled=" + virtualThreads,
+                                // measure the threads, not the limits in front of them
+                                "patient.rate-limit.enabled=false",
+                                "patient.concurrency.enabled=false")
+                        .run()) {
+            PatientDto patient = context.getBean(PatientService.class)
+                    .createPatient(new PatientDto("Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p"));
+            URI uri = URI.create("http://localhost:" + context.getWebServer().getPort() + "/api/patient/find/" + patient.getId());
+
+            LoadTestSupport.run(name + " warmup", uri, CLIENTS, 5);
+            return LoadTestSupport.run(name, uri, CLIENTS, REQUESTS_PER_CLIENT);
+        }
+    }
+
+
+    private static boolean virtualThreadsAvailable() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            executor.shutdown();
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return false;
+        }
+    }
+}
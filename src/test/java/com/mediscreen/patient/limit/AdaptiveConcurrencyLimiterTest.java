@@ -0,0 +1,177 @@
+package com.mediscreen.patient.limit;
+
+import com.mediscreen.patient.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AdaptiveConcurrencyLimiterTest {
+
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+    @Mock
+    private Signature signature;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+
+    // no smoothing: each sample moves the limit all the way to its target
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, 4, 200, 2.0, 1000, 1.0, clock::get, meterRegistry);
+    }
+
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+
+    @Test
+    @DisplayName("Should reject at once the calls over the limit")
+    void rejectTest() throws Throwable {
+
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter(4);
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+        }
+
+        // Act
+        assertThrows(ServiceOverloadedException.class, () -> limiter.limit(joinPoint));
+
+        // Assert
+        verify(joinPoint, never()).proceed();
+        assertEquals(4, limiter.getInFlight());
+        assertEquals(1, meterRegistry.get("patient.concurrency.rejected").counter().count());
+    }
+
+
+    @Test
+    @DisplayName("Should release the slot of a call once it returns")
+    void releaseTest() throws Throwable {
+
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter(4);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(signature.getName()).thenReturn("findPatientById");
+        when(joinPoint.proceed()).thenAnswer(invocation -> {
+            clock.addAndGet(millis(10));
+            return "done";
+        });
+
+        // Act
+        Object result = limiter.limit(joinPoint);
+
+        // Assert
+        assertEquals("done", result);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(4, meterRegistry.get("patient.concurrency.limit").gauge().value());
+    }
+
+
+    @Test
+    @DisplayName("Should shrink the limit, by half at most, when latency exceeds the tolerance")
+    void shrinkTest() {
+
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter(100);
+        limiter.onSample("findPatientById", millis(10), 0);
+
+        // Act
+        limiter.onSample("findPatientById", millis(30), 0);
+        int slightlySlow = limiter.getLimit();
+        limiter.onSample("findPatientById", millis(1000), 0);
+
+        // Assert
+        assertEquals(66, slightlySlow);
+        assertEquals(33, limiter.getLimit());
+    }
+
+
+    @Test
+    @DisplayName("Should grow the limit only while it is used")
+    void growTest() {
+
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter(16);
+        limiter.onSample("findPatientById", millis(10), 0);
+
+        // Act
+        limiter.onSample("findPatientById", millis(10), 8);
+        int used = limiter.getLimit();
+        limiter.onSample("findPatientById", millis(10), 1);
+
+        // Assert
+        assertEquals(20, used);
+        assertEquals(20, limiter.getLimit());
+    }
+
+
+    @Test
+    @DisplayName("Should compare each call with the baseline of its own operation")
+    void mixedOperationsTest() {
+
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter(16);
+
+        // Act
+        // cache hits by id and list reads 100 times slower, interleaved, with the limit in use
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample("findPatientById", millis(1), 8);
+            limiter.onSample("getPatientList", millis(100), 8);
+        }
+        int mixed = limiter.getLimit();
+        limiter.onSample("getPatientList", millis(1000), 0);
+
+        // Assert
+        assertTrue(mixed > 16, "limit " + mixed);
+        assertEquals(mixed / 2, limiter.getLimit());
+    }
+
+
+    @Test
+    @DisplayName("Should keep the limit within its bounds under concurrent samples")
+    void concurrentSamplesTest() throws Exception {
+
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter(16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            long latency = millis(thread % 2 == 0 ? 1 : 50);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    limiter.onSample("findPatientById", latency, 200);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertTrue(limiter.getLimit() >= 4 && limiter.getLimit() <= 200, "limit " + limiter.getLimit());
+    }
+}
@@ -0,0 +1,103 @@
+package com.mediscreen.patient.limit;
+
+import com.mediscreen.patient.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitInterceptorTest {
+
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimitInterceptor interceptor = new RateLimitInterceptor(
+            new RateLimitInterceptor.Limit(2, 1),
+            new RateLimitInterceptor.Limit(1, 1),
+            Set.of("GET /api/patient/list"),
+            100, Duration.ofMinutes(10), clock::get, meterRegistry);
+
+
+    private static MockHttpServletRequest request(String client, String method, String uri, String pattern) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setRemoteAddr(client);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+        return request;
+    }
+
+
+    private boolean preHandle(MockHttpServletRequest request) {
+        return interceptor.preHandle(request, new MockHttpServletResponse(), new Object());
+    }
+
+
+    @Test
+    @DisplayName("Should reject requests over the limit of an expensive endpoint with a retry delay")
+    void expensiveEndpointTest() {
+
+        // Arrange
+        MockHttpServletRequest list = request("10.0.0.1", "GET", "/api/patient/list", "/api/patient/list");
+
+        // Act
+        boolean first = preHandle(list);
+        RateLimitExceededException ex = assertThrows(RateLimitExceededException.class, () -> preHandle(list));
+
+        // Assert
+        assertTrue(first);
+        assertEquals(1, ex.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("patient.rate-limit.rejected")
+                .tag("endpoint", "GET /api/patient/list").counter().count());
+    }
+
+
+    @Test
+    @DisplayName("Should limit each client and each endpoint on its own")
+    void perClientAndEndpointTest() {
+
+        // Arrange
+        for (int i = 0; i < 2; i++) {
+            preHandle(request("10.0.0.1", "GET", "/api/patient/find/" + i, "/api/patient/find/{id}"));
+        }
+
+        // Act
+        RateLimitExceededException ex = assertThrows(RateLimitExceededException.class,
+                () -> preHandle(request("10.0.0.1", "GET", "/api/patient/find/3", "/api/patient/find/{id}")));
+        boolean otherClient = preHandle(request("10.0.0.2", "GET", "/api/patient/find/3", "/api/patient/find/{id}"));
+        boolean otherEndpoint = preHandle(request("10.0.0.1", "GET", "/api/patient/finder/Doe", "/api/patient/finder/{familyName}"));
+
+        // Assert
+        assertTrue(ex.getMessage().contains("GET /api/patient/find/{id}"));
+        assertTrue(otherClient);
+        assertTrue(otherEndpoint);
+        assertEquals(3, meterRegistry.get("patient.rate-limit.buckets").gauge().value());
+    }
+
+
+    @Test
+    @DisplayName("Should limit the users behind one address on their own")
+    void perUserTest() {
+
+        // Arrange
+        MockHttpServletRequest alice = request("10.0.0.1", "GET", "/api/patient/list", "/api/patient/list");
+        alice.addHeader("X-User", "alice");
+        MockHttpServletRequest bob = request("10.0.0.1", "GET", "/api/patient/list", "/api/patient/list");
+        bob.setRemoteUser("bob");
+
+        // Act
+        boolean first = preHandle(alice);
+        boolean otherUser = preHandle(bob);
+
+        // Assert
+        assertTrue(first);
+        assertTrue(otherUser);
+        assertThrows(RateLimitExceededException.class, () -> preHandle(alice));
+    }
+}
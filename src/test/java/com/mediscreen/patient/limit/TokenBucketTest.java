@@ -0,0 +1,92 @@
+package com.mediscreen.patient.limit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+
+
+    private final AtomicLong clock = new AtomicLong();
+
+
+    @Test
+    @DisplayName("Should allow a burst of the capacity, then one token per refill interval")
+    void burstThenRefillTest() {
+
+        // Arrange
+        TokenBucket bucket = new TokenBucket(3, 1, clock::get);
+
+        // Act
+        boolean first = bucket.tryAcquire();
+        boolean second = bucket.tryAcquire();
+        boolean third = bucket.tryAcquire();
+        boolean fourth = bucket.tryAcquire();
+        long wait = bucket.nanosUntilAvailable();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        boolean refilled = bucket.tryAcquire();
+        boolean emptyAgain = bucket.tryAcquire();
+
+        // Assert
+        assertTrue(first && second && third);
+        assertFalse(fourth);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), wait);
+        assertTrue(refilled);
+        assertFalse(emptyAgain);
+    }
+
+
+    @Test
+    @DisplayName("Should not fill beyond the capacity while idle")
+    void idleTest() {
+
+        // Arrange
+        TokenBucket bucket = new TokenBucket(3, 1, clock::get);
+        bucket.tryAcquire();
+
+        // Act
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        // Assert
+        assertEquals(3, bucket.availableTokens());
+        assertEquals(0, bucket.nanosUntilAvailable());
+    }
+
+
+    @Test
+    @DisplayName("Should hand out exactly the capacity to concurrent callers")
+    void concurrentAcquireTest() throws InterruptedException {
+
+        // Arrange
+        TokenBucket bucket = new TokenBucket(1000, 0.001, clock::get);
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (bucket.tryAcquire()) {
+                        acquired.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1000, acquired.get());
+        assertEquals(0, bucket.availableTokens());
+    }
+}
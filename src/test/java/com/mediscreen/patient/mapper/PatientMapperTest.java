@@ -0,0 +1,158 @@
+package com.mediscreen.patient.mapper;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.model.Patient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientMapperTest {
+
+
+    private final PatientMapper patientMapper = new PatientMapper();
+
+
+    @Test
+    @DisplayName("Should copy every field to the dto")
+    void toDtoTest() {
+
+        // Arrange
+        Patient patient = new Patient("Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+        patient.setId(3);
+
+        // Act
+        PatientDto patientDto = patientMapper.toDto(patient);
+
+        // Assert
+        assertEquals(3, patientDto.getId());
+        assertEquals("Doe", patientDto.getLastName());
+        assertEquals("John", patientDto.getFirstName());
+        assertEquals(LocalDate.of(2000, 1, 1), patientDto.getBirthdate());
+        assertEquals("M", patientDto.getSex());
+        assertEquals("a", patientDto.getAddress());
+        assertEquals("p", patientDto.getPhone());
+    }
+
+
+    @Test
+    @DisplayName("Should map null to null")
+    void nullTest() {
+
+        assertNull(patientMapper.toDto((Patient) null));
+        assertNull(patientMapper.toDto((PatientView) null));
+        assertNull(patientMapper.toEntity(null));
+    }
+
+
+    @Test
+    @DisplayName("Should keep order when mapping a list")
+    void toDtoListTest() {
+
+        // Arrange
+        Patient patient1 = new Patient("Doe", "John");
+        Patient patient2 = new Patient("Smith", "Jane");
+
+        // Act
+        List<PatientDto> patientDtos = patientMapper.toDtoList(List.of(patient1, patient2));
+
+        // Assert
+        assertEquals(2, patientDtos.size());
+        assertEquals("Doe", patientDtos.get(0).getLastName());
+        assertEquals("Smith", patientDtos.get(1).getLastName());
+    }
+
+
+    @Test
+    @DisplayName("Should keep the version of a projection with its patient")
+    void toVersionedTest() {
+
+        // Arrange
+        Instant lastModified = Instant.now();
+        PatientView view = new PatientView(3, "Doe", "John", null, null, null, null, 2L, lastModified);
+
+        // Act
+        VersionedPatient versioned = patientMapper.toVersioned(view);
+
+        // Assert
+        assertEquals(3, versioned.patient().getId());
+        assertEquals("Doe", versioned.patient().getLastName());
+        assertEquals(new PatientVersion(3, 2L, lastModified), versioned.version());
+    }
+
+
+    @Test
+    @DisplayName("Should copy every field of the projections, keeping order")
+    void viewsToDtoListTest() {
+
+        // Arrange
+        PatientView view1 = new PatientView(3, "Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p", 0L, null);
+        PatientView view2 = new PatientView(4, "Smith", "Jane", null, null, null, null, 0L, null);
+
+        // Act
+        List<PatientDto> patientDtos = patientMapper.viewsToDtoList(List.of(view1, view2));
+
+        // Assert
+        assertEquals(2, patientDtos.size());
+        assertEquals(3, patientDtos.get(0).getId());
+        assertEquals("Doe", patientDtos.get(0).getLastName());
+        assertEquals("John", patientDtos.get(0).getFirstName());
+        assertEquals(LocalDate.of(2000, 1, 1), patientDtos.get(0).getBirthdate());
+        assertEquals("M", patientDtos.get(0).getSex());
+        assertEquals("a", patientDtos.get(0).getAddress());
+        assertEquals("p", patientDtos.get(0).getPhone());
+        assertEquals("Smith", patientDtos.get(1).getLastName());
+    }
+
+
+    @Test
+    @DisplayName("Should ignore the dto id when creating an entity")
+    void toEntityTest() {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Doe", "John", LocalDate.of(2000, 1, 1), "F", "a", "p");
+        patientDto.setId(42);
+
+        // Act
+        Patient patient = patientMapper.toEntity(patientDto);
+
+        // Assert
+        assertEquals(0, patient.getId());
+        assertEquals("Doe", patient.getLastName());
+        assertEquals("John", patient.getFirstName());
+        assertEquals(LocalDate.of(2000, 1, 1), patient.getBirthdate());
+        assertEquals("F", patient.getSex());
+        assertEquals("a", patient.getAddress());
+        assertEquals("p", patient.getPhone());
+    }
+
+
+    @Test
+    @DisplayName("Should overwrite the editable fields of the entity")
+    void updateEntityTest() {
+
+        // Arrange
+        Patient patient = new Patient("Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+        patient.setId(5);
+        PatientDto patientDto = new PatientDto("Smith", "Jane", LocalDate.of(1990, 5, 6), "F", "b", "q");
+
+        // Act
+        patientMapper.updateEntity(patientDto, patient);
+
+        // Assert
+        assertEquals(5, patient.getId());
+        assertEquals("Smith", patient.getLastName());
+        assertEquals("Jane", patient.getFirstName());
+        assertEquals(LocalDate.of(1990, 5, 6), patient.getBirthdate());
+        assertEquals("F", patient.getSex());
+        assertEquals("b", patient.getAddress());
+        assertEquals("q", patient.getPhone());
+    }
+}
@@ -0,0 +1,146 @@
+package com.mediscreen.patient.metrics;
+
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.ConstraintViolationException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientServiceMetricsTest {
+
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+    @Mock
+    private Signature signature;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PatientServiceMetrics patientServiceMetrics = new PatientServiceMetrics(meterRegistry);
+
+
+    @BeforeEach
+    void setUp() {
+        when(joinPoint.getSignature()).thenReturn(signature);
+    }
+
+
+    private Timer timer(String operation, String outcome) {
+        return meterRegistry.find(PatientServiceMetrics.METRIC_NAME)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .timer();
+    }
+
+
+    @Test
+    @DisplayName("Should time a successful call")
+    void successTest() throws Throwable {
+
+        // Arrange
+        when(signature.getName()).thenReturn("findPatientById");
+        when(joinPoint.proceed()).thenReturn("patient");
+
+        // Act
+        Object result = patientServiceMetrics.time(joinPoint);
+
+        // Assert
+        assertEquals("patient", result);
+        assertEquals(1, timer("find-by-id", "success").count());
+    }
+
+
+    @Test
+    @DisplayName("Should time the versioned reads under the operation they answer")
+    void versionedReadsTest() throws Throwable {
+
+        // Arrange
+        when(signature.getName()).thenReturn("findVersionedPatient", "getPatientListVersion", "getVersionedPatientList");
+        when(joinPoint.proceed()).thenReturn(null);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            patientServiceMetrics.time(joinPoint);
+        }
+
+        // Assert
+        assertEquals(1, timer("find-by-id", "success").count());
+        assertEquals(2, timer("list", "success").count());
+    }
+
+
+    @Test
+    @DisplayName("Should tag a missing patient as not found")
+    void notFoundTest() throws Throwable {
+
+        // Arrange
+        when(signature.getName()).thenReturn("deletePatient");
+        when(joinPoint.proceed()).thenThrow(new PatientNotFoundException(1));
+
+        // Act
+        // Assert
+        assertThrows(PatientNotFoundException.class, () -> patientServiceMetrics.time(joinPoint));
+        assertEquals(1, timer("delete", "not_found").count());
+    }
+
+
+    @Test
+    @DisplayName("Should tag a stale If-Match version as conflict")
+    void conflictTest() throws Throwable {
+
+        // Arrange
+        when(signature.getName()).thenReturn("updatePatient");
+        when(joinPoint.proceed()).thenThrow(new PatientVersionConflictException(1, 3L));
+
+        // Act
+        // Assert
+        assertThrows(PatientVersionConflictException.class, () -> patientServiceMetrics.time(joinPoint));
+        assertEquals(1, timer("update", "conflict").count());
+    }
+
+
+    @Test
+    @DisplayName("Should tag a wrapped constraint violation as invalid")
+    void invalidTest() throws Throwable {
+
+        // Arrange
+        when(signature.getName()).thenReturn("createPatient");
+        TransactionSystemException ex = new TransactionSystemException("commit failed");
+        ex.initCause(new ConstraintViolationException(Set.of()));
+        when(joinPoint.proceed()).thenThrow(ex);
+
+        // Act
+        // Assert
+        assertThrows(TransactionSystemException.class, () -> patientServiceMetrics.time(joinPoint));
+        assertEquals(1, timer("create", "invalid").count());
+    }
+
+
+    @Test
+    @DisplayName("Should tag other failures as error and keep unknown method names")
+    void errorTest() throws Throwable {
+
+        // Arrange
+        when(signature.getName()).thenReturn("searchPatients");
+        when(joinPoint.proceed()).thenThrow(new IllegalStateException());
+
+        // Act
+        // Assert
+        assertThrows(IllegalStateException.class, () -> patientServiceMetrics.time(joinPoint));
+        assertNotNull(timer("searchPatients", "error"));
+    }
+}
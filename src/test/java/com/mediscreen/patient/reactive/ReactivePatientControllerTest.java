@@ -0,0 +1,161 @@
+package com.mediscreen.patient.reactive;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactivePatientControllerTest {
+
+
+    @Mock
+    private ReactivePatientService reactivePatientService;
+    @InjectMocks
+    private ReactivePatientController reactivePatientController;
+
+    private static final Instant LAST_MODIFIED = Instant.parse("2023-02-01T10:15:30Z");
+
+
+    @Test
+    @DisplayName("Should return the patient with its ETag")
+    void findPatientByIdTest() {
+
+        // Arrange
+        PatientDto patient = new PatientDto("Doe", "John");
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/patient/find/1"));
+        when(reactivePatientService.findVersionedPatient(1))
+                .thenReturn(Mono.just(new VersionedPatient(patient, new PatientVersion(1, 2L, LAST_MODIFIED))));
+
+        // Act
+        ResponseEntity<PatientDto> response = reactivePatientController.findPatientById(1, exchange).block();
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(patient, response.getBody());
+        assertEquals("\"1-2\"", response.getHeaders().getETag());
+    }
+
+
+    @Test
+    @DisplayName("Should answer not modified without a body when the ETag matches")
+    void findPatientByIdNotModifiedTest() {
+
+        // Arrange
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/patient/find/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1-2\""));
+        when(reactivePatientService.findVersionedPatient(1))
+                .thenReturn(Mono.just(new VersionedPatient(new PatientDto("Doe", "John"), new PatientVersion(1, 2L, LAST_MODIFIED))));
+
+        // Act
+        ResponseEntity<PatientDto> response = reactivePatientController.findPatientById(1, exchange).block();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+
+    @Test
+    @DisplayName("Should answer not found for a missing patient")
+    void findPatientByIdNotFoundTest() {
+
+        // Arrange
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/patient/find/1"));
+        when(reactivePatientService.findVersionedPatient(1)).thenReturn(Mono.error(new PatientNotFoundException(1)));
+
+        // Act
+        ResponseEntity<PatientDto> response = reactivePatientController.findPatientById(1, exchange).block();
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+
+    @Test
+    @DisplayName("Should return the patients as a stream")
+    void getAllPatientsTest() {
+
+        // Arrange
+        Flux<PatientDto> patients = Flux.just(new PatientDto("Doe", "John"));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/patient/list"));
+        when(reactivePatientService.getPatientListVersion()).thenReturn(Mono.just(new PatientListVersion(1L, 0L, LAST_MODIFIED)));
+        when(reactivePatientService.getAllPatients()).thenReturn(patients);
+
+        // Act
+        ResponseEntity<Flux<PatientDto>> response = reactivePatientController.getAllPatients(exchange).block();
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1L, response.getBody().count().block());
+    }
+
+
+    @Test
+    @DisplayName("Should return no content when no patients exist")
+    void getAllPatientsNegativeTest() {
+
+        // Arrange
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/patient/list"));
+        when(reactivePatientService.getPatientListVersion()).thenReturn(Mono.just(new PatientListVersion(0L, 0L, null)));
+
+        // Act
+        ResponseEntity<Flux<PatientDto>> response = reactivePatientController.getAllPatients(exchange).block();
+
+        // Assert
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+        verify(reactivePatientService, never()).getAllPatients();
+    }
+
+
+    @Test
+    @DisplayName("Should answer no content once the patient is deleted")
+    void deletePatientTest() {
+
+        // Arrange
+        when(reactivePatientService.deletePatient(1)).thenReturn(Mono.empty());
+
+        // Act
+        ResponseEntity<Void> response = reactivePatientController.deletePatient(1).block();
+
+        // Assert
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    }
+
+
+    @Test
+    @DisplayName("Should scope the idempotency key by the X-User client")
+    void validatePatientIdempotencyKeyTest() {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Doe", "John");
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/api/patient/validate")
+                .header("X-User", " alice "));
+        when(reactivePatientService.createPatient(patientDto, "alice", "key-1")).thenReturn(Mono.just(patientDto));
+
+        // Act
+        PatientDto response = reactivePatientController.validatePatient(patientDto, "key-1", exchange).block();
+
+        // Assert
+        assertEquals(patientDto, response);
+    }
+}
@@ -0,0 +1,214 @@
+package com.mediscreen.patient.reactive;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.exception.InvalidCursorException;
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.idempotency.IdempotencyStore;
+import com.mediscreen.patient.service.PatientCursor;
+import com.mediscreen.patient.service.PatientSearchMode;
+import com.mediscreen.patient.service.PatientService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactivePatientServiceTest {
+
+
+    @Mock
+    private ReactivePatientRepository reactivePatientRepository;
+    @Mock
+    private PatientService patientService;
+
+    private final PatientCache patientCache = new PatientCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    private ReactivePatientService reactivePatientService;
+
+
+    @BeforeEach
+    void setUp() {
+        reactivePatientService = new ReactivePatientService(reactivePatientRepository, patientService, patientCache,
+                new IdempotencyStore(100, Duration.ofMinutes(1), Duration.ofSeconds(10), new SimpleMeterRegistry()));
+    }
+
+
+    private static PatientDto patient(int id, String lastName) {
+        PatientDto patient = new PatientDto(lastName, "John");
+        patient.setId(id);
+        return patient;
+    }
+
+
+    @Test
+    @DisplayName("Should find a patient by id")
+    void findPatientByIdTest() {
+
+        when(reactivePatientRepository.findById(1)).thenReturn(Mono.just(patient(1, "Doe")));
+
+        StepVerifier.create(reactivePatientService.findPatientById(1))
+                .assertNext(patient -> assertEquals("Doe", patient.getLastName()))
+                .verifyComplete();
+    }
+
+
+    @Test
+    @DisplayName("Should serve a cached patient without reading it")
+    void findPatientByIdCachedTest() {
+
+        PatientDto cached = patient(1, "Doe");
+        patientCache.getById(1, id -> new VersionedPatient(cached, new PatientVersion(1, 0L, null)));
+
+        StepVerifier.create(reactivePatientService.findPatientById(1))
+                .expectNext(cached)
+                .verifyComplete();
+        verifyNoInteractions(reactivePatientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should read a patient and its version together")
+    void findVersionedPatientTest() {
+
+        VersionedPatient versioned = new VersionedPatient(patient(1, "Doe"), new PatientVersion(1, 2L, null));
+        when(reactivePatientRepository.findVersionedById(1)).thenReturn(Mono.just(versioned));
+
+        StepVerifier.create(reactivePatientService.findVersionedPatient(1))
+                .expectNext(versioned)
+                .verifyComplete();
+    }
+
+
+    @Test
+    @DisplayName("Should signal PatientNotFoundException for a missing patient")
+    void findPatientByIdNegativeTest() {
+
+        when(reactivePatientRepository.findById(1)).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactivePatientService.findPatientById(1))
+                .expectError(PatientNotFoundException.class)
+                .verify();
+    }
+
+
+    @Test
+    @DisplayName("Should signal PatientNotFoundException for a missing family name")
+    void findPatientByFamilyNameNegativeTest() {
+
+        when(reactivePatientRepository.findByFamilyName("Doe")).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactivePatientService.findPatientByFamilyName("Doe"))
+                .expectError(PatientNotFoundException.class)
+                .verify();
+    }
+
+
+    @Test
+    @DisplayName("Should return a page and the cursor of the next one")
+    void getPatientPageTest() {
+
+        when(reactivePatientRepository.findPageAfter(0, 3))
+                .thenReturn(Flux.just(patient(1, "Doe"), patient(2, "Smith"), patient(3, "Brown")));
+
+        StepVerifier.create(reactivePatientService.getPatientPage(null, 2))
+                .assertNext(page -> {
+                    assertEquals(2, page.patients().size());
+                    assertEquals(PatientCursor.encode(2), page.nextCursor());
+                })
+                .verifyComplete();
+    }
+
+
+    @Test
+    @DisplayName("Should signal InvalidCursorException for a malformed cursor")
+    void getPatientPageInvalidCursorTest() {
+
+        StepVerifier.create(reactivePatientService.getPatientPage("bad", 2))
+                .expectError(InvalidCursorException.class)
+                .verify();
+        verifyNoInteractions(reactivePatientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should search by escaped prefix of the normalized name")
+    void searchPatientsPrefixTest() {
+
+        when(reactivePatientRepository.searchByLastNameKeyLike("o!_b%", 50, 50)).thenReturn(Flux.just(patient(1, "O_Brien")));
+
+        StepVerifier.create(reactivePatientService.searchPatients("O_B", PatientSearchMode.PREFIX, 1, 50))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+
+    @Test
+    @DisplayName("Should delegate fuzzy search to the blocking service")
+    void fuzzySearchPatientsTest() {
+
+        PatientSearchHit hit = new PatientSearchHit(patient(1, "Smith"), 12.0);
+        when(patientService.fuzzySearchPatients("smyth", 10)).thenReturn(List.of(hit));
+
+        StepVerifier.create(reactivePatientService.fuzzySearchPatients("smyth", 10))
+                .expectNext(hit)
+                .verifyComplete();
+    }
+
+
+    @Test
+    @DisplayName("Should delegate writes to the blocking service")
+    void updatePatientTest() throws PatientNotFoundException {
+
+        PatientDto patientDto = patient(1, "Doe");
+        when(patientService.updatePatient(1, patientDto, 2L)).thenReturn(patientDto);
+
+        StepVerifier.create(reactivePatientService.updatePatient(1, patientDto, 2L))
+                .expectNext(patientDto)
+                .verifyComplete();
+    }
+
+
+    @Test
+    @DisplayName("Should create a patient once per idempotency key")
+    void createPatientIdempotencyKeyTest() {
+
+        PatientDto patientDto = new PatientDto("Doe", "John");
+        PatientDto created = patient(1, "Doe");
+        when(patientService.createPatient(patientDto)).thenReturn(created);
+
+        StepVerifier.create(reactivePatientService.createPatient(patientDto, "alice", "key-1"))
+                .expectNext(created)
+                .verifyComplete();
+        StepVerifier.create(reactivePatientService.createPatient(patientDto, "alice", "key-1"))
+                .expectNext(created)
+                .verifyComplete();
+        verify(patientService, times(1)).createPatient(patientDto);
+    }
+
+
+    @Test
+    @DisplayName("Should signal PatientNotFoundException when deleting a missing patient")
+    void deletePatientNegativeTest() throws PatientNotFoundException {
+
+        doThrow(new PatientNotFoundException(1)).when(patientService).deletePatient(1);
+
+        StepVerifier.create(reactivePatientService.deletePatient(1))
+                .expectError(PatientNotFoundException.class)
+                .verify();
+    }
+}
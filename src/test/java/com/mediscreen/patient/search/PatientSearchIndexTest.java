@@ -0,0 +1,337 @@
+package com.mediscreen.patient.search;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientChangeEntry;
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.service.PatientChangeService;
+import com.mediscreen.patient.service.PatientService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientSearchIndexTest {
+
+
+    private static final LocalDate BIRTHDATE = LocalDate.of(2000, 1, 1);
+
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private PatientChangeService patientChangeService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PatientSearchIndex patientSearchIndex;
+
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        patientSearchIndex = new PatientSearchIndex(patientRepository, patientChangeService, meterRegistry, 2,
+                Duration.ofMillis(10), Duration.ZERO);
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        patientSearchIndex.close();
+    }
+
+
+    private static PatientView view(int id, String lastName, String firstName, String address, String phone) {
+        return new PatientView(id, lastName, firstName, BIRTHDATE, "M", address, phone, 0L, null);
+    }
+
+
+    private static PatientDto dto(String lastName, String firstName, String address, String phone) {
+        return new PatientDto(lastName, firstName, BIRTHDATE, "F", address, phone);
+    }
+
+
+    private List<Integer> ids(String query) {
+        return patientSearchIndex.search(query, 10).stream().map(PatientSearchIndex.Match::id).toList();
+    }
+
+
+    @Test
+    @DisplayName("Should load every page of patients at startup")
+    void loadTest() {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(0, PageRequest.of(0, 2)))
+                .thenReturn(List.of(view(1, "Doe", "John", "1 Elm St", "555-0101"),
+                        view(2, "Smith", "Jane", "2 Oak Ave", "555-0102")));
+        when(patientRepository.findViewPageAfter(2, PageRequest.of(0, 2)))
+                .thenReturn(List.of(view(5, "Brown", "Bob", "5 Pine Rd", "555-0105")));
+
+        // Act
+        patientSearchIndex.afterSingletonsInstantiated();
+
+        // Assert
+        assertTrue(patientSearchIndex.isLoaded());
+        assertEquals(3, patientSearchIndex.size());
+        assertEquals(List.of(5), ids("brown"));
+        assertEquals(3, meterRegistry.get("patient.search.index.size").gauge().value());
+        assertTrue(meterRegistry.get("patient.search.index.memory").gauge().value() > 0);
+        verify(patientRepository, never()).findViewPageAfter(5, PageRequest.of(0, 2));
+    }
+
+
+    @Test
+    @DisplayName("Should stay unloaded when the repository fails")
+    void loadFailureTest() {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(anyInt(), any()))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+
+        // Act
+        patientSearchIndex.afterSingletonsInstantiated();
+
+        // Assert
+        assertFalse(patientSearchIndex.isLoaded());
+        assertEquals(0, patientSearchIndex.size());
+    }
+
+
+    @Test
+    @DisplayName("Should load the index again after a failed startup load")
+    void retryLoadTest() throws InterruptedException {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(0, PageRequest.of(0, 2)))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(List.of(view(1, "Doe", "John", "1 Elm St", "555-0101")));
+
+        // Act
+        patientSearchIndex.afterSingletonsInstantiated();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!patientSearchIndex.isLoaded() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        assertTrue(patientSearchIndex.isLoaded());
+        assertEquals(List.of(1), ids("doe"));
+    }
+
+
+    @Test
+    @DisplayName("Should keep the patients written or deleted while the index was not loaded over the pages read")
+    void retryLoadAfterWritesTest() {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(0, PageRequest.of(0, 2)))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(List.of(view(1, "Doe", "John", "1 Elm St", "555-0101"),
+                        view(2, "Smith", "Jane", "2 Oak Ave", "555-0102")));
+        patientSearchIndex.load();
+        patientSearchIndex.put(1, dto("Brown", "John", "1 Elm St", "555-0101"));
+        patientSearchIndex.remove(2);
+
+        // Act
+        boolean loaded = patientSearchIndex.load();
+
+        // Assert
+        assertTrue(loaded);
+        assertEquals(1, patientSearchIndex.size());
+        assertEquals(List.of(1), ids("brown"));
+        assertEquals(List.of(), ids("doe"));
+        assertEquals(List.of(), ids("smith"));
+    }
+
+
+    @Test
+    @DisplayName("Should apply the changes of every instance from the change log")
+    void syncTest() {
+
+        // Arrange
+        when(patientChangeService.getSettledSequence()).thenReturn(10L);
+        when(patientRepository.findViewPageAfter(0, PageRequest.of(0, 2)))
+                .thenReturn(List.of(view(1, "Doe", "John", "1 Elm St", "555-0101")));
+        patientSearchIndex.afterSingletonsInstantiated();
+        Instant now = Instant.now();
+        when(patientChangeService.getChangesSince(10, PatientService.MAX_PAGE_SIZE)).thenReturn(new PatientChangeFeed(List.of(
+                new PatientChangeEntry(11, 1, PatientChangeType.DELETED, now, null),
+                new PatientChangeEntry(12, 2, PatientChangeType.CREATED, now, dto("Brown", "Bob", "5 Pine Rd", null))), 12));
+
+        // Act
+        patientSearchIndex.sync();
+
+        // Assert
+        assertEquals(1, patientSearchIndex.size());
+        assertEquals(List.of(2), ids("brown"));
+        assertEquals(List.of(), ids("doe"));
+    }
+
+
+    @Test
+    @DisplayName("Should find misspelled and partial names, best match first")
+    void searchFuzzyNameTest() {
+
+        // Arrange
+        patientSearchIndex.put(1, dto("Smith", "John", "1 Elm St", "555-0101"));
+        patientSearchIndex.put(2, dto("Smythe", "Jane", "2 Oak Ave", "555-0102"));
+        patientSearchIndex.put(3, dto("Brown", "Bob", "3 Pine Rd", "555-0103"));
+
+        // Act
+        List<PatientSearchIndex.Match> exact = patientSearchIndex.search("Smith", 10);
+        List<Integer> misspelled = ids("smyth");
+        List<Integer> partial = ids("bro");
+
+        // Assert
+        assertEquals(List.of(1, 2), exact.stream().map(PatientSearchIndex.Match::id).toList());
+        assertTrue(exact.get(0).score() > exact.get(1).score());
+        assertEquals(2, misspelled.get(0));
+        assertTrue(misspelled.contains(1));
+        assertEquals(List.of(3), partial);
+    }
+
+
+    @Test
+    @DisplayName("Should rank patients matching several words of the query first")
+    void searchSeveralWordsTest() {
+
+        // Arrange
+        patientSearchIndex.put(1, dto("Doe", "John", "1 Elm St", null));
+        patientSearchIndex.put(2, dto("Doe", "Jane", "2 Oak Ave", null));
+        patientSearchIndex.put(3, dto("Brown", "Jane", "3 Pine Rd", null));
+
+        // Act & Assert
+        assertEquals(List.of(2, 1, 3), ids("jane doe"));
+        assertEquals(List.of(2), ids("oak avenue"));
+    }
+
+
+    @Test
+    @DisplayName("Should find patients by a fragment of their phone number")
+    void searchPhoneTest() {
+
+        // Arrange
+        patientSearchIndex.put(1, dto("Doe", "John", null, "555-0101"));
+        patientSearchIndex.put(2, dto("Smith", "Jane", null, "444-0199"));
+
+        // Act & Assert
+        assertEquals(List.of(1), ids("555 0101"));
+        assertEquals(List.of(2), ids("0199"));
+    }
+
+
+    @Test
+    @DisplayName("Should keep only the limit best matches, ties by id")
+    void searchLimitTest() {
+
+        // Arrange
+        for (int id = 10; id > 0; id--) {
+            patientSearchIndex.put(id, dto("Doe", "John", null, null));
+        }
+
+        // Act & Assert
+        assertEquals(List.of(1, 2, 3), patientSearchIndex.search("doe", 3).stream()
+                .map(PatientSearchIndex.Match::id).toList());
+        assertEquals(List.of(), patientSearchIndex.search("doe", 0));
+        assertEquals(List.of(), patientSearchIndex.search(" ", 3));
+    }
+
+
+    @Test
+    @DisplayName("Should follow updates and deletes")
+    void putAndRemoveTest() {
+
+        // Arrange
+        patientSearchIndex.put(1, dto("Doe", "John", null, null));
+
+        // Act
+        patientSearchIndex.put(1, dto("Brown", "John", null, null));
+        List<Integer> afterUpdateOld = ids("doe");
+        List<Integer> afterUpdateNew = ids("brown");
+        patientSearchIndex.remove(1);
+        List<Integer> afterDelete = ids("brown");
+
+        // Assert
+        assertEquals(List.of(), afterUpdateOld);
+        assertEquals(List.of(1), afterUpdateNew);
+        assertEquals(List.of(), afterDelete);
+        assertEquals(0, patientSearchIndex.size());
+    }
+
+
+    @Test
+    @DisplayName("Should purge deleted patients and keep finding the others")
+    void purgeTest() {
+
+        // Arrange
+        for (int id = 1; id <= 3000; id++) {
+            patientSearchIndex.put(id, dto(id % 2 == 0 ? "Doe" : "Brown", "John", null, null));
+        }
+        long memoryBefore = patientSearchIndex.estimatedMemoryBytes();
+
+        // Act
+        for (int id = 1; id <= 3000; id += 2) {
+            patientSearchIndex.remove(id);
+        }
+        patientSearchIndex.put(2, dto("Doe", "Jane", null, null));
+
+        // Assert
+        assertEquals(1500, patientSearchIndex.size());
+        assertEquals(List.of(), ids("brown"));
+        assertEquals(List.of(2, 4, 6), patientSearchIndex.search("doe", 3).stream()
+                .map(PatientSearchIndex.Match::id).toList());
+        assertEquals(2, ids("jane doe").get(0));
+        assertTrue(patientSearchIndex.estimatedMemoryBytes() < memoryBefore);
+    }
+
+
+    @Test
+    @DisplayName("Should purge the documents replaced by updates, so that the index does not grow with them")
+    void purgeAfterUpdatesTest() {
+
+        // Arrange
+        patientSearchIndex.put(1, dto("Smith", "John", "1 Main St", "555-0100"));
+        for (int id = 2; id <= 10; id++) {
+            patientSearchIndex.put(id, dto("Doe" + (char) ('a' + id), "Jane", null, null));
+        }
+        int termsBefore = patientSearchIndex.termCount();
+        long memoryBefore = patientSearchIndex.estimatedMemoryBytes();
+
+        // Act
+        // every 1024 updates purges the documents they replaced, so the index is measured right after a purge
+        long memoryAfterTwoPurges = 0;
+        for (int update = 1; update <= 8 * 1024; update++) {
+            patientSearchIndex.put(1, update % 2 == 0
+                    ? dto("Smith", "John", "1 Main St", "555-0100")
+                    : dto("Smythe", "Johnny", "2 High St", "555-0199"));
+            if (update == 2 * 1024) {
+                memoryAfterTwoPurges = patientSearchIndex.estimatedMemoryBytes();
+            }
+        }
+
+        // Assert
+        assertEquals(10, patientSearchIndex.size());
+        assertEquals(termsBefore, patientSearchIndex.termCount());
+        assertEquals(memoryAfterTwoPurges, patientSearchIndex.estimatedMemoryBytes());
+        assertTrue(patientSearchIndex.estimatedMemoryBytes() < memoryBefore * 2);
+        assertEquals(List.of(1), ids("smith"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.mediscreen.patient.search;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientSearchTokenizerTest {
+
+
+    @Test
+    @DisplayName("Should index whole words, phonetic keys and trigrams of the names")
+    void indexTermsNameTest() {
+
+        // Act
+        Set<String> terms = PatientSearchTokenizer.indexTerms(" DOE", "Zoé", null, null);
+
+        // Assert
+        assertEquals(Set.of("l=doe", "l#D000", "l~$do", "l~doe", "l~oe$",
+                "f=zoe", "f#Z000", "f~$zo", "f~zoe", "f~oe$"), terms);
+    }
+
+
+    @Test
+    @DisplayName("Should index address words without phonetic keys, and phone digits")
+    void indexTermsAddressAndPhoneTest() {
+
+        // Act
+        Set<String> terms = PatientSearchTokenizer.indexTerms(null, null, "1 Elm", "555-0134");
+
+        // Assert
+        assertTrue(terms.containsAll(List.of("a=1", "a~$1$", "a=elm", "a~$el", "a~elm", "a~lm$")));
+        assertTrue(terms.stream().noneMatch(term -> term.startsWith("a#")));
+        assertTrue(terms.containsAll(List.of("p=5550134", "p~555", "p~550", "p~134")));
+        assertEquals(5, terms.stream().filter(term -> term.startsWith("p~")).count());
+    }
+
+
+    @Test
+    @DisplayName("Should score query words in every text field by field weight")
+    void queryTermsWordTest() {
+
+        // Act
+        Map<String, Float> terms = PatientSearchTokenizer.queryTerms("Doe");
+
+        // Assert
+        assertEquals(12f, terms.get("l=doe"));
+        assertEquals(6f, terms.get("l#D000"));
+        assertEquals(2f, terms.get("l~$do"));
+        assertEquals(8f, terms.get("f=doe"));
+        assertEquals(4f, terms.get("a=doe"));
+        assertNull(terms.get("a#D000"));
+        assertTrue(terms.keySet().stream().noneMatch(term -> term.startsWith("p")));
+    }
+
+
+    @Test
+    @DisplayName("Should search a query of digits only as one phone number fragment")
+    void queryTermsPhoneTest() {
+
+        // Act
+        Map<String, Float> terms = PatientSearchTokenizer.queryTerms("555-0134");
+
+        // Assert
+        assertTrue(terms.containsKey("p=5550134"));
+        assertTrue(terms.containsKey("p~501"));
+        assertFalse(terms.containsKey("p=555"));
+        assertTrue(terms.containsKey("a=555"));
+    }
+
+
+    @Test
+    @DisplayName("Should return no term for a blank query")
+    void queryTermsBlankTest() {
+
+        // Act & Assert
+        assertTrue(PatientSearchTokenizer.queryTerms("  - ").isEmpty());
+        assertTrue(PatientSearchTokenizer.queryTerms(null).isEmpty());
+    }
+
+
+    @Test
+    @DisplayName("Should tell trigrams from other terms")
+    void isTrigramTest() {
+
+        // Act & Assert
+        assertTrue(PatientSearchTokenizer.isTrigram("l~$do"));
+        assertFalse(PatientSearchTokenizer.isTrigram("l=doe"));
+        assertFalse(PatientSearchTokenizer.isTrigram("l#D000"));
+    }
+}
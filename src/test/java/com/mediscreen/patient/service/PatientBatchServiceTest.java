@@ -0,0 +1,108 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientLookup;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.exception.InvalidBatchException;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.repository.PatientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientBatchServiceTest {
+
+
+    @Mock
+    private PatientRepository patientRepository;
+
+    private final PatientCache patientCache = new PatientCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    private PatientBatchService patientBatchService;
+
+
+    @BeforeEach
+    void setUp() {
+        patientBatchService = new PatientBatchService(patientRepository, new PatientMapper(), patientCache, 2, 5);
+    }
+
+
+    private static PatientView patient(int id, String lastName) {
+        return new PatientView(id, lastName, "John", null, null, null, null, 0L, null);
+    }
+
+
+    @Test
+    @DisplayName("Should keep the request order, report missing ids and query in chunks")
+    void findPatientsByIdsTest() {
+
+        // Arrange
+        when(patientRepository.findViewsByIds(List.of(3, 1))).thenReturn(List.of(patient(1, "Doe"), patient(3, "Smith")));
+        when(patientRepository.findViewsByIds(List.of(4))).thenReturn(List.of());
+
+        // Act
+        List<PatientLookup> lookups = patientBatchService.findPatientsByIds(List.of(3, 1, 4, 3));
+
+        // Assert
+        assertEquals(4, lookups.size());
+        assertEquals("Smith", lookups.get(0).patient().getLastName());
+        assertEquals("Doe", lookups.get(1).patient().getLastName());
+        assertEquals(new PatientLookup(4, false, null), lookups.get(2));
+        assertTrue(lookups.get(3).found());
+        assertEquals(3, lookups.get(3).id());
+    }
+
+
+    @Test
+    @DisplayName("Should serve cached patients without querying them")
+    void findPatientsByIdsCachedTest() {
+
+        // Arrange
+        PatientDto cached = new PatientDto("Doe", "John");
+        cached.setId(1);
+        patientCache.getById(1, id -> new VersionedPatient(cached, new PatientVersion(1, 0L, null)));
+        when(patientRepository.findViewsByIds(List.of(2))).thenReturn(List.of(patient(2, "Smith")));
+
+        // Act
+        List<PatientLookup> lookups = patientBatchService.findPatientsByIds(List.of(1, 2));
+
+        // Assert
+        assertSame(cached, lookups.get(0).patient());
+        assertEquals("Smith", lookups.get(1).patient().getLastName());
+        verify(patientRepository, times(1)).findViewsByIds(anyCollection());
+    }
+
+
+    @Test
+    @DisplayName("Should reject too many ids")
+    void findPatientsByIdsTooManyTest() {
+
+        assertThrows(InvalidBatchException.class,
+                () -> patientBatchService.findPatientsByIds(List.of(1, 2, 3, 4, 5, 6)));
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should reject a null id")
+    void findPatientsByIdsNullTest() {
+
+        assertThrows(InvalidBatchException.class,
+                () -> patientBatchService.findPatientsByIds(Arrays.asList(1, null)));
+        verifyNoInteractions(patientRepository);
+    }
+}
@@ -0,0 +1,253 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientChangeRepository;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.snapshot.PatientSnapshotStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientChangeServiceTest {
+
+
+    @Mock
+    private PatientChangeRepository patientChangeRepository;
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PatientSnapshotStore patientSnapshotStore;
+
+
+    private final List<PatientChangeService> services = new ArrayList<>();
+
+
+    @AfterEach
+    void tearDown() {
+        for (PatientChangeService service : services) {
+            service.close();
+        }
+    }
+
+
+    private PatientChangeService service(Duration settleTime) {
+        PatientChangeService service = new PatientChangeService(patientChangeRepository, patientRepository,
+                new PatientMapper(), jdbcTemplate, patientSnapshotStore, settleTime);
+        services.add(service);
+        return service;
+    }
+
+
+    private static PatientChange change(long sequence, int patientId, PatientChangeType type, Instant changedAt) {
+        PatientChange change = new PatientChange(patientId, type, changedAt);
+        ReflectionTestUtils.setField(change, "sequence", sequence);
+        return change;
+    }
+
+
+    @Test
+    @DisplayName("Should return changes with the current state of the patients that still exist")
+    void getChangesSinceTest() {
+
+        // Arrange
+        Instant changedAt = Instant.now().minusSeconds(5);
+        PatientView patient = new PatientView(1, "Doe", "John", null, null, null, null, 0L, null);
+        when(patientChangeRepository.findChangesSince(eq(10L), any(Pageable.class))).thenReturn(List.of(
+                change(11, 1, PatientChangeType.UPDATED, changedAt),
+                change(12, 2, PatientChangeType.DELETED, changedAt)));
+        when(patientRepository.findViewsByIds(Set.of(1))).thenReturn(List.of(patient));
+
+        // Act
+        PatientChangeFeed feed = service(Duration.ZERO).getChangesSince(10, 50);
+
+        // Assert
+        assertEquals(2, feed.changes().size());
+        assertEquals(12, feed.lastSequence());
+        assertEquals("Doe", feed.changes().get(0).patient().getLastName());
+        assertEquals(PatientChangeType.DELETED, feed.changes().get(1).type());
+        assertNull(feed.changes().get(1).patient());
+    }
+
+
+    @Test
+    @DisplayName("Should hold back an unsettled change after a gap, and every later one")
+    void getChangesSinceSettleTest() {
+
+        // Arrange
+        Instant now = Instant.now();
+        when(patientChangeRepository.findChangesSince(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                change(1, 1, PatientChangeType.CREATED, now.minusSeconds(10)),
+                change(3, 2, PatientChangeType.CREATED, now),
+                change(4, 3, PatientChangeType.CREATED, now.minusSeconds(10))));
+        when(patientRepository.findViewsByIds(Set.of(1))).thenReturn(List.of());
+
+        // Act
+        PatientChangeFeed feed = service(Duration.ofSeconds(5)).getChangesSince(0, 50);
+
+        // Assert
+        assertEquals(1, feed.changes().size());
+        assertEquals(1, feed.lastSequence());
+    }
+
+
+    @Test
+    @DisplayName("Should return recent changes right away when no sequence is missing before them")
+    void getChangesSinceNoGapTest() {
+
+        // Arrange
+        Instant now = Instant.now();
+        when(patientChangeRepository.findChangesSince(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                change(1, 1, PatientChangeType.CREATED, now),
+                change(2, 2, PatientChangeType.CREATED, now)));
+        when(patientRepository.findViewsByIds(Set.of(1, 2))).thenReturn(List.of());
+
+        // Act
+        PatientChangeFeed feed = service(Duration.ofSeconds(5)).getChangesSince(0, 50);
+
+        // Assert
+        assertEquals(2, feed.changes().size());
+        assertEquals(2, feed.lastSequence());
+    }
+
+
+    @Test
+    @DisplayName("Should skip a missing sequence once the change after it has settled")
+    void getChangesSinceSettledGapTest() {
+
+        // Arrange
+        Instant now = Instant.now();
+        when(patientChangeRepository.findChangesSince(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                change(1, 1, PatientChangeType.DELETED, now.minusSeconds(10)),
+                change(3, 2, PatientChangeType.DELETED, now.minusSeconds(10)),
+                change(4, 3, PatientChangeType.DELETED, now)));
+
+        // Act
+        PatientChangeFeed feed = service(Duration.ofSeconds(5)).getChangesSince(0, 50);
+
+        // Assert
+        assertEquals(3, feed.changes().size());
+        assertEquals(4, feed.lastSequence());
+    }
+
+
+    @Test
+    @DisplayName("Should keep the sequence when there is no change")
+    void getChangesSinceEmptyTest() {
+
+        // Arrange
+        when(patientChangeRepository.findChangesSince(eq(7L), any(Pageable.class))).thenReturn(List.of());
+
+        // Act
+        PatientChangeFeed feed = service(Duration.ZERO).getChangesSince(7, 50);
+
+        // Assert
+        assertTrue(feed.changes().isEmpty());
+        assertEquals(7, feed.lastSequence());
+    }
+
+
+    @Test
+    @DisplayName("Should insert every change with one batch and invalidate the snapshot of the patients")
+    void recordTest() {
+
+        // Act
+        service(Duration.ZERO).record(List.of(1, 2, 3), PatientChangeType.CREATED);
+
+        // Assert
+        verify(jdbcTemplate).batchUpdate(anyString(), eq(List.of(1, 2, 3)), eq(3), any(ParameterizedPreparedStatementSetter.class));
+        verify(patientSnapshotStore).invalidate(List.of(1, 2, 3));
+    }
+
+
+    @Test
+    @DisplayName("Should complete a waiting reader once a change is recorded")
+    void awaitChangesSinceTest() throws Exception {
+
+        // Arrange
+        PatientChangeService service = service(Duration.ZERO);
+        when(patientChangeRepository.findChangesSince(eq(4L), any(Pageable.class)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(change(5, 1, PatientChangeType.CREATED, Instant.now().minusSeconds(1))));
+        when(patientRepository.findViewsByIds(anyCollection())).thenReturn(List.of());
+
+        // Act
+        CompletableFuture<PatientChangeFeed> future = service.awaitChangesSince(4, 50);
+        assertFalse(future.isDone());
+        service.record(1, PatientChangeType.CREATED);
+
+        // Assert
+        PatientChangeFeed feed = future.get(5, TimeUnit.SECONDS);
+        assertEquals(5, feed.lastSequence());
+    }
+
+
+    @Test
+    @DisplayName("Should read the changes once for every waiting reader and give each the ones past its sequence")
+    void awaitChangesSinceSharedReadTest() throws Exception {
+
+        // Arrange
+        PatientChangeService service = service(Duration.ZERO);
+        Instant changedAt = Instant.now().minusSeconds(1);
+        when(patientChangeRepository.findChangesSince(eq(4L), any(Pageable.class)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(change(5, 1, PatientChangeType.DELETED, changedAt),
+                        change(6, 2, PatientChangeType.DELETED, changedAt)));
+        when(patientChangeRepository.findChangesSince(eq(5L), any(Pageable.class))).thenReturn(List.of());
+
+        // Act
+        CompletableFuture<PatientChangeFeed> first = service.awaitChangesSince(4, 50);
+        CompletableFuture<PatientChangeFeed> second = service.awaitChangesSince(5, 50);
+        service.record(1, PatientChangeType.DELETED);
+
+        // Assert
+        assertEquals(2, first.get(5, TimeUnit.SECONDS).changes().size());
+        PatientChangeFeed feed = second.get(5, TimeUnit.SECONDS);
+        assertEquals(1, feed.changes().size());
+        assertEquals(6, feed.lastSequence());
+        verify(patientChangeRepository, times(2)).findChangesSince(eq(4L), any(Pageable.class));
+        verify(patientChangeRepository, times(1)).findChangesSince(eq(5L), any(Pageable.class));
+    }
+
+
+    @Test
+    @DisplayName("Should answer right away when changes are already there")
+    void awaitChangesSinceAvailableTest() {
+
+        // Arrange
+        when(patientChangeRepository.findChangesSince(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(change(1, 1, PatientChangeType.DELETED, Instant.now().minusSeconds(1))));
+
+        // Act
+        CompletableFuture<PatientChangeFeed> future = service(Duration.ZERO).awaitChangesSince(0, 50);
+
+        // Assert
+        assertTrue(future.isDone());
+        assertEquals(1, future.join().changes().size());
+        verify(patientRepository, never()).findViewsByIds(anyCollection());
+    }
+}
@@ -0,0 +1,50 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.exception.InvalidCursorException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientCursorTest {
+
+
+    @Test
+    @DisplayName("Should decode what was encoded")
+    void encodeDecodeTest() {
+
+        // Arrange
+        int lastId = 123_456;
+
+        // Act
+        String cursor = PatientCursor.encode(lastId);
+
+        // Assert
+        assertEquals(lastId, PatientCursor.decode(cursor));
+    }
+
+
+    @Test
+    @DisplayName("Should start from the beginning without cursor")
+    void decodeEmptyTest() {
+
+        assertEquals(0, PatientCursor.decode(null));
+        assertEquals(0, PatientCursor.decode(" "));
+    }
+
+
+    @Test
+    @DisplayName("Should reject malformed cursors")
+    void decodeInvalidTest() {
+
+        String foreign = Base64.getUrlEncoder().encodeToString("name:Doe".getBytes(StandardCharsets.US_ASCII));
+        String negative = Base64.getUrlEncoder().encodeToString("id:-4".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(InvalidCursorException.class, () -> PatientCursor.decode("%%%"));
+        assertThrows(InvalidCursorException.class, () -> PatientCursor.decode(foreign));
+        assertThrows(InvalidCursorException.class, () -> PatientCursor.decode(negative));
+    }
+}
@@ -0,0 +1,316 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.dto.PatientChangeEntry;
+import com.mediscreen.patient.dto.PatientChangeFeed;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientDuplicateIndexTest {
+
+
+    private static final LocalDate BIRTHDATE = LocalDate.of(2000, 1, 1);
+
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private PatientChangeService patientChangeService;
+
+    private PatientDuplicateIndex patientDuplicateIndex;
+
+
+    @BeforeEach
+    void setUp() {
+        patientDuplicateIndex = new PatientDuplicateIndex(patientRepository, patientChangeService,
+                new SimpleMeterRegistry(), 2, Duration.ofMillis(10), Duration.ZERO);
+    }
+
+
+    @AfterEach
+    void tearDown() {
+        patientDuplicateIndex.close();
+    }
+
+
+    private static Patient patient(int id, String lastName, String firstName, LocalDate birthdate) {
+        Patient patient = new Patient(lastName, firstName);
+        patient.setId(id);
+        patient.setBirthdate(birthdate);
+        return patient;
+    }
+
+
+    private static PatientDto dto(String lastName, String firstName, LocalDate birthdate) {
+        return new PatientDto(lastName, firstName, birthdate, "M", "a", "p");
+    }
+
+
+    private static PatientView view(int id, String lastName, String firstName, LocalDate birthdate) {
+        return new PatientView(id, lastName, firstName, birthdate, "M", "a", "p", 0L, null);
+    }
+
+
+    private void load(Patient... patients) {
+        when(patientRepository.findPageAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(patients));
+        patientDuplicateIndex.afterSingletonsInstantiated();
+    }
+
+
+    @Test
+    @DisplayName("Should load every page of patients at startup")
+    void loadTest() {
+
+        // Arrange
+        when(patientRepository.findPageAfter(0, PageRequest.of(0, 2)))
+                .thenReturn(List.of(patient(1, "Doe", "John", BIRTHDATE), patient(2, "Smith", "Jane", BIRTHDATE)));
+        when(patientRepository.findPageAfter(2, PageRequest.of(0, 2)))
+                .thenReturn(List.of(patient(5, "Brown", "Bob", BIRTHDATE)));
+
+        // Act
+        patientDuplicateIndex.afterSingletonsInstantiated();
+
+        // Assert
+        assertTrue(patientDuplicateIndex.isLoaded());
+        assertEquals(3, patientDuplicateIndex.size());
+        verify(patientRepository, never()).findPageAfter(5, PageRequest.of(0, 2));
+    }
+
+
+    @Test
+    @DisplayName("Should match names spelled differently but pronounced alike, with the same birthdate")
+    void findPossibleDuplicatesTest() {
+
+        // Arrange
+        load(patient(1, "Smith", "John", BIRTHDATE));
+
+        // Act
+        // Assert
+        assertEquals(List.of(1), patientDuplicateIndex.findPossibleDuplicates(dto("Smyth", "Jon", BIRTHDATE)));
+        assertEquals(List.of(1), patientDuplicateIndex.findPossibleDuplicates(dto(" SMITH ", "john", BIRTHDATE)));
+        assertEquals(List.of(), patientDuplicateIndex.findPossibleDuplicates(dto("Smith", "Mary", BIRTHDATE)));
+        assertEquals(List.of(), patientDuplicateIndex.findPossibleDuplicates(dto("Smith", "John", BIRTHDATE.plusDays(1))));
+        assertEquals(List.of(), patientDuplicateIndex.findPossibleDuplicates(dto("Brown", "John", BIRTHDATE)));
+        verifyNoMoreInteractions(patientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should add only the first of two similar patients")
+    void addIfNoDuplicateTest() {
+
+        // Arrange
+        load();
+
+        when(patientRepository.findViewsByIds(List.of(1))).thenReturn(List.of(view(1, "Doe", "John", BIRTHDATE)));
+
+        // Act
+        List<Integer> first = patientDuplicateIndex.addIfNoDuplicate(1, dto("Doe", "John", BIRTHDATE));
+        List<Integer> second = patientDuplicateIndex.addIfNoDuplicate(2, dto("Doe", "John", BIRTHDATE));
+
+        // Assert
+        assertEquals(List.of(), first);
+        assertEquals(List.of(1), second);
+        assertEquals(1, patientDuplicateIndex.size());
+    }
+
+
+    @Test
+    @DisplayName("Should not refuse a creation because of a patient another instance changed since")
+    void addIfNoDuplicateStaleTest() {
+
+        // Arrange
+        load(patient(1, "Doe", "John", BIRTHDATE), patient(2, "Doe", "Jon", BIRTHDATE));
+        // patient 1 was deleted and patient 2 renamed by another instance
+        when(patientRepository.findViewsByIds(List.of(1, 2))).thenReturn(List.of(view(2, "Brown", "Jon", BIRTHDATE)));
+
+        // Act
+        List<Integer> duplicates = patientDuplicateIndex.addIfNoDuplicate(3, dto("Doe", "John", BIRTHDATE));
+
+        // Assert
+        assertEquals(List.of(), duplicates);
+        assertEquals(2, patientDuplicateIndex.size());
+        assertEquals(List.of(2), patientDuplicateIndex.findPossibleDuplicates(dto("Brown", "John", BIRTHDATE)));
+    }
+
+
+    @Test
+    @DisplayName("Should refuse the duplicate of a creation not committed yet without reading it")
+    void addIfNoDuplicateUncommittedTest() {
+
+        // Arrange
+        load();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            patientDuplicateIndex.addIfNoDuplicate(1, dto("Doe", "John", BIRTHDATE));
+
+            // Act
+            List<Integer> duplicates = patientDuplicateIndex.addIfNoDuplicate(2, dto("Doe", "John", BIRTHDATE));
+
+            // Assert
+            assertEquals(List.of(1), duplicates);
+            verify(patientRepository, never()).findViewsByIds(anyCollection());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+
+    @Test
+    @DisplayName("Should apply the changes of every instance from the change log")
+    void syncTest() {
+
+        // Arrange
+        when(patientChangeService.getSettledSequence()).thenReturn(10L);
+        load(patient(1, "Doe", "John", BIRTHDATE), patient(2, "Smith", "Jane", BIRTHDATE));
+        Instant now = Instant.now();
+        when(patientChangeService.getChangesSince(10, PatientService.MAX_PAGE_SIZE)).thenReturn(new PatientChangeFeed(List.of(
+                new PatientChangeEntry(11, 1, PatientChangeType.DELETED, now, null),
+                new PatientChangeEntry(12, 2, PatientChangeType.UPDATED, now, dto("Brown", "Jane", BIRTHDATE)),
+                new PatientChangeEntry(13, 3, PatientChangeType.CREATED, now, dto("Doe", "Jon", BIRTHDATE))), 13));
+        when(patientChangeService.getChangesSince(13, PatientService.MAX_PAGE_SIZE))
+                .thenReturn(new PatientChangeFeed(List.of(), 13));
+
+        // Act
+        patientDuplicateIndex.sync();
+        patientDuplicateIndex.sync();
+
+        // Assert
+        assertEquals(2, patientDuplicateIndex.size());
+        assertEquals(List.of(3), patientDuplicateIndex.findPossibleDuplicates(dto("Doe", "John", BIRTHDATE)));
+        assertEquals(List.of(2), patientDuplicateIndex.findPossibleDuplicates(dto("Brown", "Jane", BIRTHDATE)));
+        assertEquals(List.of(), patientDuplicateIndex.findPossibleDuplicates(dto("Smith", "Jane", BIRTHDATE)));
+    }
+
+
+    @Test
+    @DisplayName("Should follow updates and deletes")
+    void putAndRemoveTest() {
+
+        // Arrange
+        load(patient(1, "Doe", "John", BIRTHDATE));
+
+        // Act
+        patientDuplicateIndex.put(1, dto("Brown", "John", BIRTHDATE));
+        List<Integer> afterUpdateOld = patientDuplicateIndex.findPossibleDuplicates(dto("Doe", "John", BIRTHDATE));
+        List<Integer> afterUpdateNew = patientDuplicateIndex.findPossibleDuplicates(dto("Brown", "John", BIRTHDATE));
+        patientDuplicateIndex.remove(1);
+        List<Integer> afterDelete = patientDuplicateIndex.findPossibleDuplicates(dto("Brown", "John", BIRTHDATE));
+
+        // Assert
+        assertEquals(List.of(), afterUpdateOld);
+        assertEquals(List.of(1), afterUpdateNew);
+        assertEquals(List.of(), afterDelete);
+        assertEquals(0, patientDuplicateIndex.size());
+    }
+
+
+    @Test
+    @DisplayName("Should look duplicates up in the database when the startup load failed")
+    void notLoadedTest() {
+
+        // Arrange
+        when(patientRepository.findPageAfter(0, PageRequest.of(0, 2)))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+        when(patientRepository.findByBirthdate(BIRTHDATE))
+                .thenReturn(List.of(patient(4, "Smith", "John", BIRTHDATE), patient(5, "Brown", "John", BIRTHDATE)));
+        patientDuplicateIndex.load();
+
+        // Act
+        List<Integer> duplicates = patientDuplicateIndex.addIfNoDuplicate(7, dto("Smyth", "Jon", BIRTHDATE));
+
+        // Assert
+        assertFalse(patientDuplicateIndex.isLoaded());
+        assertEquals(List.of(4), duplicates);
+        assertEquals(0, patientDuplicateIndex.size());
+        verify(patientRepository).findByBirthdate(any());
+    }
+
+
+    @Test
+    @DisplayName("Should load the index again after a failed startup load")
+    void retryLoadTest() throws InterruptedException {
+
+        // Arrange
+        when(patientRepository.findPageAfter(0, PageRequest.of(0, 2)))
+                .thenThrow(new DataAccessResourceFailureException("database down"))
+                .thenReturn(List.of(patient(1, "Doe", "John", BIRTHDATE), patient(2, "Smith", "Jane", BIRTHDATE)));
+        when(patientRepository.findPageAfter(2, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        // Act
+        patientDuplicateIndex.afterSingletonsInstantiated();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!patientDuplicateIndex.isLoaded() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        assertTrue(patientDuplicateIndex.isLoaded());
+        assertEquals(2, patientDuplicateIndex.size());
+        assertEquals(List.of(1), patientDuplicateIndex.findPossibleDuplicates(dto("Doe", "John", BIRTHDATE)));
+    }
+
+
+    @Test
+    @DisplayName("Should not add back a patient deleted while the index was not loaded")
+    void retryLoadAfterDeleteTest() {
+
+        // Arrange
+        when(patientRepository.findPageAfter(0, PageRequest.of(0, 2)))
+                .thenThrow(new DataAccessResourceFailureException("database down"))
+                .thenReturn(List.of(patient(1, "Doe", "John", BIRTHDATE)));
+        patientDuplicateIndex.load();
+        patientDuplicateIndex.remove(1);
+
+        // Act
+        boolean loaded = patientDuplicateIndex.load();
+
+        // Assert
+        assertTrue(loaded);
+        assertEquals(0, patientDuplicateIndex.size());
+    }
+
+
+    @Test
+    @DisplayName("Should keep a patient written while the index was not loaded over the page read")
+    void retryLoadAfterUpdateTest() {
+
+        // Arrange
+        when(patientRepository.findPageAfter(0, PageRequest.of(0, 2)))
+                .thenThrow(new DataAccessResourceFailureException("database down"))
+                .thenReturn(List.of(patient(1, "Doe", "John", BIRTHDATE)));
+        patientDuplicateIndex.load();
+        patientDuplicateIndex.put(1, dto("Brown", "John", BIRTHDATE));
+
+        // Act
+        boolean loaded = patientDuplicateIndex.load();
+
+        // Assert
+        assertTrue(loaded);
+        assertEquals(1, patientDuplicateIndex.size());
+        assertEquals(List.of(), patientDuplicateIndex.findPossibleDuplicates(dto("Doe", "John", BIRTHDATE)));
+    }
+}
@@ -0,0 +1,234 @@
+package com.mediscreen.patient.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.audit.PatientAuditService;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientImportError;
+import com.mediscreen.patient.dto.PatientImportReport;
+import com.mediscreen.patient.mapper.PatientMapper;
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.search.PatientSearchIndex;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientImportServiceTest {
+
+
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private PatientCache patientCache;
+    @Mock
+    private PatientChangeService patientChangeService;
+    @Mock
+    private PatientDuplicateIndex patientDuplicateIndex;
+    @Mock
+    private PatientSearchIndex patientSearchIndex;
+    @Mock
+    private PatientAuditService patientAuditService;
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<List<Patient>> batches = new ArrayList<>();
+    private PatientImportService patientImportService;
+
+
+    @BeforeEach
+    void setUp() {
+        patientImportService = new PatientImportService(patientRepository, new PatientMapper(), patientCache,
+                patientChangeService, patientDuplicateIndex, patientSearchIndex, patientAuditService, validator, objectMapper,
+                TransactionOperations.withoutTransaction(), 2, 10);
+    }
+
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private void recordBatches() {
+        when(patientRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Patient> batch = new ArrayList<>(invocation.getArgument(0));
+            batches.add(batch);
+            return batch;
+        });
+    }
+
+
+    @Test
+    @DisplayName("Should save valid JSON rows in batches")
+    void importJsonTest() throws Exception {
+
+        // Arrange
+        recordBatches();
+        String json = """
+                [
+                  {"lastName": "Doe", "firstName": "John", "birthdate": "2000-01-01", "sex": "M", "address": "a", "phone": "p"},
+                  {"lastName": "Smith", "firstName": "Jane", "birthdate": "2001-02-03", "sex": "F", "address": "b", "phone": "q"},
+                  {"lastName": "Brown", "firstName": "Bob", "birthdate": "1990-05-06", "sex": "M", "address": "c", "phone": "r"}
+                ]""";
+
+        // Act
+        PatientImportReport report = patientImportService.importJson(body(json));
+
+        // Assert
+        assertEquals(3, report.received());
+        assertEquals(3, report.imported());
+        assertEquals(0, report.rejected());
+        assertTrue(report.errors().isEmpty());
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals("Brown", batches.get(1).get(0).getLastName());
+        verify(patientCache).evictFamilyName("Smith");
+        verify(patientDuplicateIndex, times(3)).put(any(Patient.class));
+        verify(patientSearchIndex, times(3)).put(any(Patient.class));
+        verify(patientChangeService, times(2)).record(anyList(), eq(PatientChangeType.CREATED));
+        verify(patientAuditService).record(anyInt(), eq(PatientChangeType.CREATED),
+                argThat((PatientDto dto) -> "Brown".equals(dto.getLastName())));
+        verify(patientAuditService, times(3)).record(anyInt(), eq(PatientChangeType.CREATED), any(PatientDto.class));
+    }
+
+
+    @Test
+    @DisplayName("Should report invalid JSON rows and keep the valid ones")
+    void importJsonInvalidRowsTest() throws Exception {
+
+        // Arrange
+        recordBatches();
+        String json = """
+                [
+                  {"lastName": "", "firstName": "John", "birthdate": "2000-01-01", "sex": "M"},
+                  {"lastName": "Smith", "firstName": "Jane", "birthdate": "not a date", "sex": "F"},
+                  null,
+                  {"lastName": "Brown", "firstName": "Bob", "birthdate": "1990-05-06", "sex": "X"},
+                  {"lastName": "Ok", "firstName": "Fine", "birthdate": "1990-05-06", "sex": "F"}
+                ]""";
+
+        // Act
+        PatientImportReport report = patientImportService.importJson(body(json));
+
+        // Assert
+        assertEquals(5, report.received());
+        assertEquals(1, report.imported());
+        assertEquals(4, report.rejected());
+        assertEquals(List.of(1, 2, 3, 4), report.errors().stream().map(PatientImportError::row).toList());
+        assertEquals("lastName", report.errors().get(0).field());
+        assertEquals("sex", report.errors().get(3).field());
+    }
+
+
+    @Test
+    @DisplayName("Should stop at a JSON syntax error")
+    void importJsonMalformedTest() throws Exception {
+
+        // Arrange
+        recordBatches();
+        String json = "[{\"lastName\": \"Doe\", \"firstName\": \"John\", \"birthdate\": \"2000-01-01\"}, {\"lastName\": ";
+
+        // Act
+        PatientImportReport report = patientImportService.importJson(body(json));
+
+        // Assert
+        assertEquals(1, report.imported());
+        assertEquals(1, report.errors().size());
+        assertEquals(2, report.errors().get(0).row());
+    }
+
+
+    @Test
+    @DisplayName("Should reject a body that is not an array")
+    void importJsonNotArrayTest() throws Exception {
+
+        // Act
+        PatientImportReport report = patientImportService.importJson(body("{\"lastName\": \"Doe\"}"));
+
+        // Assert
+        assertEquals(0, report.received());
+        assertEquals(0, report.errors().get(0).row());
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should map CSV columns by header name")
+    void importCsvTest() throws Exception {
+
+        // Arrange
+        recordBatches();
+        String csv = """
+                family,given,dob,sex,address,phone
+                Doe,John,2000-01-01,M,"12, Main St",555-1234
+
+                Smith,Jane,2001-13-01,F,b,q
+                Brown,,1990-05-06,M,c,r
+                """;
+
+        // Act
+        PatientImportReport report = patientImportService.importCsv(body(csv));
+
+        // Assert
+        assertEquals(3, report.received());
+        assertEquals(1, report.imported());
+        assertEquals(2, report.rejected());
+        assertEquals("12, Main St", batches.get(0).get(0).getAddress());
+        assertEquals(new PatientImportError(2, "birthdate", "Expected an ISO-8601 date (yyyy-MM-dd)"), report.errors().get(0));
+        assertEquals(3, report.errors().get(1).row());
+        assertEquals("firstName", report.errors().get(1).field());
+    }
+
+
+    @Test
+    @DisplayName("Should reject a CSV without the required columns")
+    void importCsvMissingColumnTest() throws Exception {
+
+        // Act
+        PatientImportReport report = patientImportService.importCsv(body("lastName,firstName\nDoe,John\n"));
+
+        // Assert
+        assertEquals(0, report.received());
+        assertEquals("Missing CSV column: birthdate", report.errors().get(0).message());
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should report every row of a batch refused by the database")
+    void importBatchFailureTest() throws Exception {
+
+        // Arrange
+        when(patientRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("duplicate"));
+        String csv = "lastName,firstName,birthdate,sex,address,phone\nDoe,John,2000-01-01,M,a,p\nSmith,Jane,2001-02-03,F,b,q\n";
+
+        // Act
+        PatientImportReport report = patientImportService.importCsv(body(csv));
+
+        // Assert
+        assertEquals(0, report.imported());
+        assertEquals(2, report.rejected());
+        assertEquals(List.of(1, 2), report.errors().stream().map(PatientImportError::row).toList());
+        verify(patientCache, never()).evictFamilyName(anyString());
+        verifyNoInteractions(patientDuplicateIndex, patientSearchIndex, patientAuditService);
+    }
+}
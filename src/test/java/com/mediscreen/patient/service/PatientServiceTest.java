@@ -1,20 +1,47 @@
 package com.mediscreen.patient.service;
 
 import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.audit.PatientAuditService;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientListVersion;
+import com.mediscreen.patient.dto.PatientPage;
+import com.mediscreen.patient.dto.PatientSearchHit;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.dto.VersionedPatientList;
+import com.mediscreen.patient.exception.DuplicatePatientException;
+import com.mediscreen.patient.exception.InvalidCursorException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.exception.PatientVersionConflictException;
+import com.mediscreen.patient.mapper.PatientMapper;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientJdbcRepository;
 import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.search.PatientSearchIndex;
+import com.mediscreen.patient.snapshot.PatientSnapshotStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.PageRequest;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -26,23 +53,39 @@ public class PatientServiceTest {
     @Mock
     private PatientRepository patientRepository;
     @Mock
-    private ModelMapper modelMapper;
+    private PatientJdbcRepository patientJdbcRepository;
+    @Mock
+    private PatientChangeService patientChangeService;
+    @Mock
+    private PatientAuditService patientAuditService;
+    @Mock
+    private PatientDuplicateIndex patientDuplicateIndex;
+    @Mock
+    private PatientSearchIndex patientSearchIndex;
+    @Mock
+    private PatientSnapshotStore patientSnapshotStore;
+    @Spy
+    private PatientMapper patientMapper = new PatientMapper();
+    @Spy
+    private PatientCache patientCache = new PatientCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
     @InjectMocks
     private PatientService patientService;
 
 
+    private static PatientView view(int id, String lastName, String firstName) {
+        return new PatientView(id, lastName, firstName, null, null, null, null, 0L, null);
+    }
+
+
     @Test
     @DisplayName("Should Return PatientDto")
     public void findPatientByIdTest() throws PatientNotFoundException {
 
         // Arrange
         int id = 1;
-        Patient patient = new Patient("Doe", "John");
-        patient.setId(id);
-        PatientDto patientDto = new PatientDto("Doe", "John");
-        patientDto.setId(id);
-        when(patientRepository.findById(id)).thenReturn(Optional.of(patient));
-        when(modelMapper.map(patient, PatientDto.class)).thenReturn(patientDto);
+        when(patientRepository.findViewById(id)).thenReturn(Optional.of(view(id, "Doe", "John")));
 
         // Act
         PatientDto result = patientService.findPatientById(id);
@@ -55,13 +98,76 @@ public class PatientServiceTest {
     }
 
 
+    @Test
+    @DisplayName("Should serve a cache miss from the snapshot when it holds the patient")
+    public void findPatientByIdSnapshotTest() throws PatientNotFoundException {
+
+        // Arrange
+        when(patientSnapshotStore.find(1)).thenReturn(view(1, "Doe", "John"));
+
+        // Act
+        PatientDto result = patientService.findPatientById(1);
+
+        // Assert
+        assertEquals(1, result.getId());
+        assertEquals("Doe", result.getLastName());
+        assertEquals("John", result.getFirstName());
+        verify(patientRepository, never()).findViewById(anyInt());
+    }
+
+
+    @Test
+    @DisplayName("Should serve repeated reads from the cache")
+    public void findPatientByIdCachedTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        when(patientRepository.findViewById(id)).thenReturn(Optional.of(view(id, "Doe", "John")));
+
+        // Act
+        patientService.findPatientById(id);
+        PatientDto result = patientService.findPatientById(id);
+
+        // Assert
+        assertEquals("Doe", result.getLastName());
+        verify(patientRepository, times(1)).findViewById(id);
+        assertEquals(1, patientCache.byIdStats().hitCount());
+    }
+
+
+    @Test
+    @DisplayName("Should reload a patient after it was updated")
+    public void findPatientByIdAfterUpdateTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        when(patientRepository.findViewById(id)).thenReturn(Optional.of(view(id, "Doe", "John")), Optional.of(view(id, "Smith", "John")));
+        when(patientRepository.findViewByLastNameKey("doe")).thenReturn(Optional.of(view(id, "Doe", "John")));
+        when(patientRepository.updateFields(any(Patient.class))).thenReturn(1);
+        patientService.findPatientById(id);
+        patientService.findPatientByFamilyName("Doe");
+
+        // Act
+        patientService.updatePatient(id, new PatientDto("Smith", "John", LocalDate.of(2000, 1, 1), "M", null, null));
+        PatientDto result = patientService.findPatientById(id);
+        patientService.findPatientByFamilyName("Doe");
+
+        // Assert
+        assertEquals("Smith", result.getLastName());
+        verify(patientCache).evict(id);
+        verify(patientCache).evictFamilyName("Smith");
+        verify(patientRepository, times(2)).findViewByLastNameKey("doe");
+        verify(patientRepository, never()).findById(anyInt());
+    }
+
+
     @Test
     @DisplayName("Should Throw Patient Not Found Exception")
     public void findPatientByIdNegativeTest() {
 
         // Arrange
         int id = 1;
-        when(patientRepository.findById(id)).thenReturn(Optional.empty());
+        when(patientRepository.findViewById(id)).thenReturn(Optional.empty());
 
         // Act
         // Assert
@@ -71,25 +177,99 @@ public class PatientServiceTest {
     }
 
 
+    @Test
+    @DisplayName("Should cache the version of a patient with its body until it is updated")
+    public void findPatientVersionTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        Instant lastModified = Instant.now();
+        PatientView view = new PatientView(id, "Doe", "John", null, null, null, null, 0L, lastModified);
+        when(patientRepository.findViewById(id)).thenReturn(Optional.of(view));
+        when(patientRepository.updateFields(any(Patient.class))).thenReturn(1);
+
+        // Act
+        VersionedPatient result = patientService.findVersionedPatient(id);
+        patientService.findPatientVersion(id);
+        patientService.updatePatient(id, new PatientDto("Doe", "Jane", LocalDate.of(2000, 1, 1), "F", null, null));
+        patientService.findPatientVersion(id);
+
+        // Assert
+        assertEquals(new PatientVersion(id, 0L, lastModified), result.version());
+        assertEquals("\"1-0\"", result.version().eTag());
+        assertEquals("Doe", result.patient().getLastName());
+        verify(patientRepository, times(2)).findViewById(id);
+    }
+
+
+    @Test
+    @DisplayName("Should Throw Patient Not Found Exception for the version of a missing patient")
+    public void findPatientVersionNegativeTest() {
+
+        // Arrange
+        int id = 1;
+        when(patientRepository.findViewById(id)).thenReturn(Optional.empty());
+
+        // Act
+        // Assert
+        assertThrows(PatientNotFoundException.class, () -> patientService.findPatientVersion(id));
+    }
+
+
+    @Test
+    @DisplayName("Should change the list ETag on every kind of write")
+    public void getPatientListVersionTest() {
+
+        // Arrange
+        Instant now = Instant.now();
+        PatientListVersion initial = new PatientListVersion(2L, 3L, now);
+        when(patientRepository.findListVersion()).thenReturn(initial);
+
+        // Act
+        PatientListVersion result = patientService.getPatientListVersion();
+
+        // Assert
+        assertEquals(initial, result);
+        assertNotEquals(initial.eTag(), new PatientListVersion(2L, 4L, now).eTag());
+        assertNotEquals(initial.eTag(), new PatientListVersion(1L, 3L, now).eTag());
+        assertNotEquals(initial.eTag(), new PatientListVersion(3L, 3L, now.plusMillis(1)).eTag());
+    }
+
+
     @Test
     @DisplayName("Should found same name")
     public void findPatientByFamilyName() throws PatientNotFoundException {
 
         // Arrange
-        Patient patient = new Patient("Doe", "John");
-        String name = patient.getLastName();
-        PatientDto patientDto = new PatientDto("Doe", "John");
-        when(patientRepository.findByFamilyName(name)).thenReturn(Optional.of(patient));
-        when(modelMapper.map(patient, PatientDto.class)).thenReturn(patientDto);
+        String name = "Doe";
+        when(patientRepository.findViewByLastNameKey("doe")).thenReturn(Optional.of(view(1, name, "John")));
 
         // Act
-        patientDto = patientService.findPatientByFamilyName(name);
+        PatientDto patientDto = patientService.findPatientByFamilyName(name);
 
         // Assert
         assertEquals(name, patientDto.getLastName());
     }
 
 
+    @Test
+    @DisplayName("Should give every spelling of a family name the patient of its normalized key, cached or not")
+    public void findPatientByFamilyNameSpellingTest() throws PatientNotFoundException {
+
+        // Arrange
+        when(patientRepository.findViewByLastNameKey("doe")).thenReturn(Optional.of(view(1, "Doe", "John")));
+
+        // Act
+        PatientDto uncached = patientService.findPatientByFamilyName(" DOE");
+        PatientDto cached = patientService.findPatientByFamilyName("Doe");
+
+        // Assert
+        assertEquals(1, uncached.getId());
+        assertEquals(1, cached.getId());
+        verify(patientRepository, times(1)).findViewByLastNameKey("doe");
+    }
+
+
     @Test
     @DisplayName("Should Throw PatientNotFoundException")
     public void findPatientByFamilyNameNegativeTest() {
@@ -109,14 +289,7 @@ public class PatientServiceTest {
     void getAllPatientsTest() {
 
         // Arrange
-        Patient patient1 = new Patient("Doe", "John");
-        Patient patient2 = new Patient("Smith", "Jane");
-        PatientDto patientDto1 = new PatientDto("Doe", "John");
-        PatientDto patientDto2 = new PatientDto("Smith", "Jane");
-
-        when(patientRepository.findAll()).thenReturn(Arrays.asList(patient1, patient2));
-        when(modelMapper.map(patient1, PatientDto.class)).thenReturn(patientDto1);
-        when(modelMapper.map(patient2, PatientDto.class)).thenReturn(patientDto2);
+        when(patientRepository.findAllViews()).thenReturn(Arrays.asList(view(1, "Doe", "John"), view(2, "Smith", "Jane")));
 
         // Act
         List<PatientDto> result = patientService.getAllPatients();
@@ -127,8 +300,213 @@ public class PatientServiceTest {
         assertEquals("John", result.get(0).getFirstName());
         assertEquals("Smith", result.get(1).getLastName());
         assertEquals("Jane", result.get(1).getFirstName());
-        verify(patientRepository, times(1)).findAll();
-        verify(modelMapper, times(2)).map(any(Patient.class), eq(PatientDto.class));
+        verify(patientRepository, times(1)).findAllViews();
+        verify(patientRepository, never()).findAll();
+    }
+
+
+    @Test
+    @DisplayName("should compute the list version from the patients it returns")
+    void getVersionedPatientListTest() {
+
+        // Arrange
+        Instant now = Instant.now();
+        when(patientRepository.findAllViews()).thenReturn(Arrays.asList(
+                new PatientView(1, "Doe", "John", null, null, null, null, 2L, now.minusSeconds(60)),
+                new PatientView(2, "Smith", "Jane", null, null, null, null, 1L, now)));
+
+        // Act
+        VersionedPatientList result = patientService.getVersionedPatientList();
+
+        // Assert
+        assertEquals(2, result.patients().size());
+        assertEquals(new PatientListVersion(2L, 3L, now), result.version());
+        verify(patientRepository, never()).findListVersion();
+    }
+
+
+    @Test
+    @DisplayName("should return first page with next cursor")
+    void getPatientPageTest() {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(0, PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(view(1, "Doe", "John"), view(2, "Smith", "Jane"), view(3, "Brown", "Bob")));
+
+        // Act
+        PatientPage page = patientService.getPatientPage(null, 2);
+
+        // Assert
+        assertEquals(2, page.patients().size());
+        assertEquals(2, page.patients().get(1).getId());
+        assertEquals(PatientCursor.encode(2), page.nextCursor());
+    }
+
+
+    @Test
+    @DisplayName("should return last page without next cursor")
+    void getPatientPageLastPageTest() {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(2, PageRequest.of(0, 3))).thenReturn(List.of(view(3, "Brown", "Bob")));
+
+        // Act
+        PatientPage page = patientService.getPatientPage(PatientCursor.encode(2), 2);
+
+        // Assert
+        assertEquals(1, page.patients().size());
+        assertNull(page.nextCursor());
+    }
+
+
+    @Test
+    @DisplayName("should clamp page size to the maximum")
+    void getPatientPageMaxSizeTest() {
+
+        // Arrange
+        when(patientRepository.findViewPageAfter(0, PageRequest.of(0, PatientService.MAX_PAGE_SIZE + 1)))
+                .thenReturn(List.of());
+
+        // Act
+        PatientPage page = patientService.getPatientPage("", 100_000);
+
+        // Assert
+        assertTrue(page.patients().isEmpty());
+        assertNull(page.nextCursor());
+    }
+
+
+    @Test
+    @DisplayName("should throw InvalidCursorException")
+    void getPatientPageInvalidCursorTest() {
+
+        // Act
+        // Assert
+        assertThrows(InvalidCursorException.class, () -> patientService.getPatientPage("not a cursor", 10));
+        verify(patientRepository, never()).findViewPageAfter(anyInt(), any());
+    }
+
+
+    @Test
+    @DisplayName("should search the stored last name in exact mode")
+    void searchPatientsExactTest() {
+
+        // Arrange
+        when(patientRepository.searchViewsByLastName("Doe", PageRequest.of(1, 20))).thenReturn(List.of(view(1, "Doe", "Jane"), view(2, "Doe", "John")));
+
+        // Act
+        List<PatientDto> result = patientService.searchPatients("Doe", PatientSearchMode.EXACT, 1, 20);
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals("Jane", result.get(0).getFirstName());
+    }
+
+
+    @Test
+    @DisplayName("should search the normalized last name in insensitive mode")
+    void searchPatientsInsensitiveTest() {
+
+        // Arrange
+        when(patientRepository.searchViewsByLastNameKey("lefevre", PageRequest.of(0, 10))).thenReturn(List.of(view(1, "Lefèvre", "Anne")));
+
+        // Act
+        List<PatientDto> result = patientService.searchPatients(" LEFÈVRE", PatientSearchMode.INSENSITIVE, 0, 10);
+
+        // Assert
+        assertEquals(1, result.size());
+    }
+
+
+    @Test
+    @DisplayName("should escape like wildcards in prefix mode")
+    void searchPatientsPrefixTest() {
+
+        // Arrange
+        when(patientRepository.searchViewsByLastNameKeyLike("o!_b%", PageRequest.of(0, PatientService.MAX_PAGE_SIZE))).thenReturn(List.of());
+
+        // Act
+        List<PatientDto> result = patientService.searchPatients("O_B", PatientSearchMode.PREFIX, -1, 10_000);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verify(patientRepository, times(1)).searchViewsByLastNameKeyLike("o!_b%", PageRequest.of(0, PatientService.MAX_PAGE_SIZE));
+    }
+
+
+    @Test
+    @DisplayName("should not query for a blank name")
+    void searchPatientsBlankTest() {
+
+        // Act
+        List<PatientDto> result = patientService.searchPatients("  ", PatientSearchMode.PREFIX, 0, 10);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    @DisplayName("should return the ranked matches of the search index, cached or read by id")
+    void fuzzySearchPatientsTest() throws PatientNotFoundException {
+
+        // Arrange
+        when(patientRepository.findViewById(2)).thenReturn(Optional.of(view(2, "Smythe", "Jane")));
+        patientService.findPatientById(2);
+        when(patientSearchIndex.isLoaded()).thenReturn(true);
+        when(patientSearchIndex.search("smyth", 10)).thenReturn(List.of(new PatientSearchIndex.Match(2, 10f),
+                new PatientSearchIndex.Match(1, 8f), new PatientSearchIndex.Match(3, 4f)));
+        when(patientRepository.findViewsByIds(List.of(1, 3))).thenReturn(List.of(view(1, "Smith", "John")));
+
+        // Act
+        List<PatientSearchHit> result = patientService.fuzzySearchPatients("smyth", 10);
+
+        // Assert
+        assertEquals(List.of(2, 1), result.stream().map(hit -> hit.patient().getId()).toList());
+        assertEquals(List.of(10.0, 8.0), result.stream().map(PatientSearchHit::score).toList());
+        verify(patientRepository, times(1)).findViewsByIds(List.of(1, 3));
+    }
+
+
+    @Test
+    @DisplayName("should fall back to a family name prefix search until the search index is loaded")
+    void fuzzySearchPatientsNotLoadedTest() {
+
+        // Arrange
+        when(patientSearchIndex.isLoaded()).thenReturn(false);
+        when(patientRepository.searchViewsByLastNameKeyLike("smi%", PageRequest.of(0, PatientService.MAX_PAGE_SIZE)))
+                .thenReturn(List.of(view(1, "Smith", "John")));
+
+        // Act
+        List<PatientSearchHit> result = patientService.fuzzySearchPatients(" SMI", 10_000);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals("Smith", result.get(0).patient().getLastName());
+        verify(patientSearchIndex, never()).search(anyString(), anyInt());
+    }
+
+
+    @Test
+    @DisplayName("should delegate streaming to the jdbc repository")
+    void streamAllPatientsTest() {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Doe", "John");
+        doAnswer(invocation -> {
+            Consumer<PatientDto> consumer = invocation.getArgument(0);
+            consumer.accept(patientDto);
+            return null;
+        }).when(patientJdbcRepository).streamAll(any());
+        List<PatientDto> received = new ArrayList<>();
+
+        // Act
+        patientService.streamAllPatients(received::add);
+
+        // Assert
+        assertEquals(List.of(patientDto), received);
+        verify(patientRepository, never()).findAll();
     }
 
 
@@ -138,19 +516,70 @@ public class PatientServiceTest {
 
         // Arrange
         PatientDto patientDto = new PatientDto("John", "Doe");
-        Patient patient = new Patient("John", "Doe");
-        when(patientRepository.save(patient)).thenReturn(patient);
-        when(modelMapper.map(patientDto, Patient.class)).thenReturn(patient);
-        when(modelMapper.map(patient, PatientDto.class)).thenReturn(patientDto);
+        when(patientRepository.save(any(Patient.class))).thenAnswer(invocation -> {
+            Patient saved = invocation.getArgument(0);
+            saved.setId(7);
+            return saved;
+        });
 
         // Act
         PatientDto result = patientService.createPatient(patientDto);
 
         // Assert
-        assertEquals(patientDto, result);
-        verify(patientRepository, times(1)).save(patient);
-        verify(modelMapper, times(1)).map(patientDto, Patient.class);
-        verify(modelMapper, times(1)).map(patient, PatientDto.class);
+        assertEquals(7, result.getId());
+        assertEquals("John", result.getLastName());
+        assertEquals("Doe", result.getFirstName());
+        verify(patientRepository, times(1)).save(any(Patient.class));
+        verify(patientMapper, times(1)).toEntity(patientDto);
+        verify(patientChangeService).record(7, PatientChangeType.CREATED);
+        verify(patientAuditService).record(7, PatientChangeType.CREATED, result);
+        verify(patientDuplicateIndex).addIfNoDuplicate(7, result);
+        verify(patientSearchIndex).put(7, result);
+    }
+
+
+    @Test
+    @DisplayName("should refuse a possible duplicate")
+    void createPatientDuplicateTest() {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+        when(patientRepository.save(any(Patient.class))).thenAnswer(invocation -> {
+            Patient saved = invocation.getArgument(0);
+            saved.setId(8);
+            return saved;
+        });
+        when(patientDuplicateIndex.addIfNoDuplicate(eq(8), any(PatientDto.class))).thenReturn(List.of(3));
+
+        // Act
+        DuplicatePatientException ex = assertThrows(DuplicatePatientException.class,
+                () -> patientService.createPatient(patientDto));
+
+        // Assert
+        assertEquals(List.of(3), ex.getDuplicateIds());
+        verifyNoInteractions(patientChangeService, patientAuditService);
+    }
+
+
+    @Test
+    @DisplayName("should create a possible duplicate when allowed")
+    void createPatientAllowDuplicateTest() {
+
+        // Arrange
+        PatientDto patientDto = new PatientDto("Doe", "John", LocalDate.of(2000, 1, 1), "M", "a", "p");
+        when(patientRepository.save(any(Patient.class))).thenAnswer(invocation -> {
+            Patient saved = invocation.getArgument(0);
+            saved.setId(9);
+            return saved;
+        });
+
+        // Act
+        PatientDto result = patientService.createPatient(patientDto, true);
+
+        // Assert
+        verify(patientDuplicateIndex).put(9, result);
+        verify(patientDuplicateIndex, never()).addIfNoDuplicate(anyInt(), any());
+        verify(patientChangeService).record(9, PatientChangeType.CREATED);
     }
 
 
@@ -160,20 +589,24 @@ public class PatientServiceTest {
 
         // Arrange
         int id = 1;
-        PatientDto patientDto = new PatientDto("John", "Doe");
-        Patient patient = new Patient("John", "Doe");
-        when(patientRepository.findById(id)).thenReturn(Optional.of(patient));
-        when(patientRepository.save(patient)).thenReturn(patient);
-        when(modelMapper.map(patient, PatientDto.class)).thenReturn(patientDto);
+        PatientDto patientDto = new PatientDto("John", "Doe", LocalDate.of(2000, 1, 1), "M", "1 Main St", "100-222-3333");
+        when(patientRepository.updateFields(any(Patient.class))).thenReturn(1);
 
         // Act
         PatientDto result = patientService.updatePatient(id, patientDto);
 
         // Assert
-        assertEquals(patientDto, result);
-        verify(patientRepository, times(1)).findById(id);
-        verify(patientRepository, times(1)).save(patient);
-        verify(modelMapper, times(1)).map(patient, PatientDto.class);
+        assertEquals(id, result.getId());
+        assertEquals("John", result.getLastName());
+        assertEquals("Doe", result.getFirstName());
+        verify(patientRepository, never()).save(any());
+        verify(patientRepository, never()).findById(anyInt());
+        // the previous state is diffed by the audit writer, never read on the write path
+        verify(patientAuditService).record(id, PatientChangeType.UPDATED, result);
+        verify(patientRepository, times(1)).updateFields(argThat(patient ->
+                patient.getId() == id && "john".equals(patient.getLastNameKey()) && patient.getLastModified() != null));
+        verify(patientMapper, times(1)).updateEntity(eq(patientDto), any(Patient.class));
+        verify(patientChangeService).record(id, PatientChangeType.UPDATED);
     }
 
 
@@ -183,14 +616,85 @@ public class PatientServiceTest {
 
         // Arrange
         int id = 1;
-        PatientDto patientDto = new PatientDto("John", "Doe");
+        PatientDto patientDto = new PatientDto("John", "Doe", LocalDate.of(2000, 1, 1), "M", null, null);
+        when(patientRepository.updateFields(any(Patient.class))).thenReturn(0);
 
         // Act
         // Assert
         assertThrows(PatientNotFoundException.class, () -> patientService.updatePatient(id, patientDto));
-        verify(patientRepository, times(1)).findById(id);
-        verify(patientRepository, times(0)).save(any());
-        verify(modelMapper, times(0)).map(any(), any());
+        verify(patientRepository, never()).existsById(anyInt());
+        verify(patientMapper, never()).toDto(any(Patient.class));
+        verifyNoInteractions(patientChangeService);
+    }
+
+
+    @Test
+    @DisplayName("should update the patient only if it still has the expected version")
+    void updatePatientIfVersionTest() throws PatientNotFoundException {
+
+        // Arrange
+        int id = 1;
+        PatientDto patientDto = new PatientDto("John", "Doe", LocalDate.of(2000, 1, 1), "M", null, null);
+        when(patientRepository.updateFieldsIfVersion(any(Patient.class), eq(3L))).thenReturn(1);
+
+        // Act
+        PatientDto result = patientService.updatePatient(id, patientDto, 3L);
+
+        // Assert
+        assertEquals("John", result.getLastName());
+        verify(patientRepository, never()).updateFields(any());
+        verify(patientRepository, never()).existsById(anyInt());
+        verify(patientChangeService).record(id, PatientChangeType.UPDATED);
+    }
+
+
+    @Test
+    @DisplayName("should throw PatientVersionConflictException when the patient has another version")
+    void updatePatientVersionConflictTest() {
+
+        // Arrange
+        int id = 1;
+        PatientDto patientDto = new PatientDto("John", "Doe", LocalDate.of(2000, 1, 1), "M", null, null);
+        when(patientRepository.updateFieldsIfVersion(any(Patient.class), eq(3L))).thenReturn(0);
+        when(patientRepository.existsById(id)).thenReturn(true);
+
+        // Act
+        // Assert
+        assertThrows(PatientVersionConflictException.class, () -> patientService.updatePatient(id, patientDto, 3L));
+        verifyNoInteractions(patientChangeService);
+        verify(patientCache, never()).evict(anyInt());
+    }
+
+
+    @Test
+    @DisplayName("should throw PatientNotFoundException when a conditional update finds no patient")
+    void updatePatientIfVersionNegativeTest() {
+
+        // Arrange
+        int id = 1;
+        PatientDto patientDto = new PatientDto("John", "Doe", LocalDate.of(2000, 1, 1), "M", null, null);
+        when(patientRepository.updateFieldsIfVersion(any(Patient.class), eq(3L))).thenReturn(0);
+        when(patientRepository.existsById(id)).thenReturn(false);
+
+        // Act
+        // Assert
+        assertThrows(PatientNotFoundException.class, () -> patientService.updatePatient(id, patientDto, 3L));
+    }
+
+
+    @Test
+    @DisplayName("should validate the patient before the bulk update")
+    void updatePatientInvalidTest() {
+
+        // Arrange
+        int id = 1;
+        PatientDto patientDto = new PatientDto("John", "Doe");
+
+        // Act
+        // Assert
+        assertThrows(ConstraintViolationException.class, () -> patientService.updatePatient(id, patientDto));
+        verify(patientRepository, never()).updateFields(any());
+        verifyNoInteractions(patientChangeService);
     }
 
 
@@ -200,16 +704,19 @@ public class PatientServiceTest {
 
         // Arrange
         int patientId = 1;
-        Patient patient = new Patient();
-        patient.setId(patientId);
-        when(patientRepository.findById(patientId)).thenReturn(Optional.of(patient));
+        when(patientRepository.deleteReturningCount(patientId)).thenReturn(1);
 
         // Act
         patientService.deletePatient(patientId);
 
         // Assert
-        verify(patientRepository, times(1)).findById(patientId);
-        verify(patientRepository, times(1)).delete(patient);
+        verify(patientRepository, never()).findById(anyInt());
+        verify(patientRepository, times(1)).deleteReturningCount(patientId);
+        verify(patientAuditService).record(patientId, PatientChangeType.DELETED, null);
+        verify(patientDuplicateIndex).remove(patientId);
+        verify(patientSearchIndex).remove(patientId);
+        verify(patientCache, times(1)).evict(patientId);
+        verify(patientChangeService).record(patientId, PatientChangeType.DELETED);
     }
 
 
@@ -219,12 +726,12 @@ public class PatientServiceTest {
 
         // Arrange
         int patientId = 1;
-        when(patientRepository.findById(patientId)).thenReturn(Optional.empty());
+        when(patientRepository.deleteReturningCount(patientId)).thenReturn(0);
 
         // Act
         // Assert
         assertThrows(PatientNotFoundException.class, () -> patientService.deletePatient(patientId));
-        verify(patientRepository, times(1)).findById(patientId);
-        verify(patientRepository, never()).delete(any(Patient.class));
+        verify(patientRepository, times(1)).deleteReturningCount(patientId);
+        verifyNoInteractions(patientChangeService);
     }
 }
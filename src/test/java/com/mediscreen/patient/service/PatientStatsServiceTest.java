@@ -0,0 +1,184 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.library.dto.PatientDto;
+import com.mediscreen.patient.cache.PatientCache;
+import com.mediscreen.patient.dto.PatientAge;
+import com.mediscreen.patient.dto.PatientBirthdate;
+import com.mediscreen.patient.dto.PatientBirthdateCount;
+import com.mediscreen.patient.dto.PatientCountRange;
+import com.mediscreen.patient.dto.PatientDemographics;
+import com.mediscreen.patient.dto.PatientVersion;
+import com.mediscreen.patient.dto.VersionedPatient;
+import com.mediscreen.patient.exception.InvalidBatchException;
+import com.mediscreen.patient.exception.InvalidStatsException;
+import com.mediscreen.patient.repository.PatientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientStatsServiceTest {
+
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 15);
+
+    @Mock
+    private PatientRepository patientRepository;
+
+    private final PatientCache patientCache = new PatientCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    private PatientStatsService patientStatsService;
+
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+        patientStatsService = new PatientStatsService(patientRepository, patientCache, 2, 5, clock);
+    }
+
+
+    @Test
+    @DisplayName("Should fold the birthdate groups into sex counts, age buckets and birth year ranges")
+    void getDemographicsTest() {
+
+        // Arrange
+        when(patientRepository.countByBirthdateAndSex()).thenReturn(List.of(
+                new PatientBirthdateCount(LocalDate.of(1990, 6, 15), "M", 2L),
+                new PatientBirthdateCount(LocalDate.of(1990, 6, 16), "F", 1L),
+                new PatientBirthdateCount(LocalDate.of(2020, 1, 1), "F", 3L),
+                new PatientBirthdateCount(LocalDate.of(2025, 1, 1), "M", 1L)));
+
+        // Act
+        PatientDemographics demographics = patientStatsService.getDemographics(10, 10);
+
+        // Assert
+        assertEquals(TODAY, demographics.asOf());
+        assertEquals(7, demographics.total());
+        assertEquals(Map.of("F", 4L, "M", 3L), demographics.bySex());
+        assertEquals(List.of(
+                new PatientCountRange(0, 9, 4),
+                new PatientCountRange(10, 19, 0),
+                new PatientCountRange(20, 29, 0),
+                new PatientCountRange(30, 39, 3)), demographics.byAge());
+        assertEquals(List.of(
+                new PatientCountRange(1990, 1999, 3),
+                new PatientCountRange(2000, 2009, 0),
+                new PatientCountRange(2010, 2019, 0),
+                new PatientCountRange(2020, 2029, 4)), demographics.byBirthYear());
+    }
+
+
+    @Test
+    @DisplayName("Should count a birthday today in the new age")
+    void getDemographicsBirthdayTest() {
+
+        // Arrange
+        when(patientRepository.countByBirthdateAndSex()).thenReturn(List.of(
+                new PatientBirthdateCount(LocalDate.of(1994, 6, 15), "F", 1L),
+                new PatientBirthdateCount(LocalDate.of(1994, 6, 16), "F", 1L)));
+
+        // Act
+        PatientDemographics demographics = patientStatsService.getDemographics(1, 1);
+
+        // Assert
+        assertEquals(new PatientCountRange(29, 29, 1), demographics.byAge().get(29));
+        assertEquals(new PatientCountRange(30, 30, 1), demographics.byAge().get(30));
+        assertEquals(List.of(new PatientCountRange(1994, 1994, 2)), demographics.byBirthYear());
+    }
+
+
+    @Test
+    @DisplayName("Should return empty statistics when there is no patient")
+    void getDemographicsEmptyTest() {
+
+        // Arrange
+        when(patientRepository.countByBirthdateAndSex()).thenReturn(List.of());
+
+        // Act
+        PatientDemographics demographics = patientStatsService.getDemographics(10, 10);
+
+        // Assert
+        assertEquals(0, demographics.total());
+        assertTrue(demographics.bySex().isEmpty());
+        assertTrue(demographics.byAge().isEmpty());
+        assertTrue(demographics.byBirthYear().isEmpty());
+    }
+
+
+    @Test
+    @DisplayName("Should reject a bucket width out of range")
+    void getDemographicsInvalidBucketTest() {
+
+        assertThrows(InvalidStatsException.class, () -> patientStatsService.getDemographics(0, 10));
+        assertThrows(InvalidStatsException.class, () -> patientStatsService.getDemographics(10, 151));
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should keep the request order, report missing ids and query in chunks")
+    void findAgesByIdsTest() {
+
+        // Arrange
+        when(patientRepository.findBirthdatesByIds(List.of(3, 1))).thenReturn(List.of(
+                new PatientBirthdate(1, LocalDate.of(1990, 6, 16)),
+                new PatientBirthdate(3, LocalDate.of(2000, 1, 1))));
+        when(patientRepository.findBirthdatesByIds(List.of(4))).thenReturn(List.of());
+
+        // Act
+        List<PatientAge> ages = patientStatsService.findAgesByIds(List.of(3, 1, 4, 3));
+
+        // Assert
+        assertEquals(List.of(
+                new PatientAge(3, true, 24),
+                new PatientAge(1, true, 33),
+                new PatientAge(4, false, null),
+                new PatientAge(3, true, 24)), ages);
+    }
+
+
+    @Test
+    @DisplayName("Should take the birthdates of cached patients without querying them")
+    void findAgesByIdsCachedTest() {
+
+        // Arrange
+        PatientDto cached = new PatientDto("Doe", "John", LocalDate.of(1980, 1, 1), "M", "1 Main St", "555-0100");
+        cached.setId(1);
+        patientCache.getById(1, id -> new VersionedPatient(cached, new PatientVersion(1, 0L, null)));
+        when(patientRepository.findBirthdatesByIds(List.of(2))).thenReturn(List.of());
+
+        // Act
+        List<PatientAge> ages = patientStatsService.findAgesByIds(List.of(1, 2));
+
+        // Assert
+        assertEquals(new PatientAge(1, true, 44), ages.get(0));
+        assertFalse(ages.get(1).found());
+        verify(patientRepository, times(1)).findBirthdatesByIds(anyCollection());
+    }
+
+
+    @Test
+    @DisplayName("Should reject too many ids or a null id")
+    void findAgesByIdsInvalidTest() {
+
+        assertThrows(InvalidBatchException.class,
+                () -> patientStatsService.findAgesByIds(List.of(1, 2, 3, 4, 5, 6)));
+        assertThrows(InvalidBatchException.class,
+                () -> patientStatsService.findAgesByIds(Arrays.asList(1, null)));
+        verifyNoInteractions(patientRepository);
+    }
+}
@@ -0,0 +1,312 @@
+package com.mediscreen.patient.snapshot;
+
+import com.mediscreen.patient.dto.PatientView;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientChangeType;
+import com.mediscreen.patient.repository.PatientChangeRepository;
+import com.mediscreen.patient.repository.PatientJdbcRepository;
+import com.mediscreen.patient.service.PatientChangeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PatientSnapshotStoreTest {
+
+
+    private static final PageRequest CHANGES_PAGE = PageRequest.of(0, 1000);
+
+    @Mock
+    private PatientChangeRepository patientChangeRepository;
+    @Mock
+    private PatientJdbcRepository patientJdbcRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path directory;
+
+    private static final Duration COMMIT_TIMEOUT = Duration.ofSeconds(PatientChangeService.COMMIT_TIMEOUT_SECONDS);
+
+    private final List<PatientSnapshotStore> stores = new ArrayList<>();
+
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (PatientSnapshotStore store : stores) {
+            store.close();
+        }
+    }
+
+
+    private PatientSnapshotStore store(String path, Duration maxAge) {
+        PatientSnapshotStore store = new PatientSnapshotStore(patientChangeRepository, patientJdbcRepository,
+                transactionManager, new SimpleMeterRegistry(), path, Duration.ofHours(1), Duration.ofHours(1),
+                Duration.ofHours(1), maxAge, Duration.ofSeconds(1));
+        stores.add(store);
+        return store;
+    }
+
+
+    private static PatientView patient(int id, String lastName) {
+        return new PatientView(id, lastName, "John", null, null, null, null, 0L, null);
+    }
+
+
+    private static PatientChange change(long sequence, int patientId, Instant changedAt) {
+        PatientChange change = new PatientChange(patientId, PatientChangeType.UPDATED, changedAt);
+        ReflectionTestUtils.setField(change, "sequence", sequence);
+        return change;
+    }
+
+
+    /** Write a snapshot of patients 1 and 2 at high-water mark 5 with a first store. */
+    private Path writeSnapshot() throws IOException {
+        Path path = directory.resolve("patients.snapshot");
+        when(patientChangeRepository.findLastSequenceBefore(any())).thenReturn(Optional.of(5L));
+        doAnswer(invocation -> {
+            Consumer<PatientView> consumer = invocation.getArgument(0);
+            consumer.accept(patient(1, "Doe"));
+            consumer.accept(patient(2, "Smith"));
+            return null;
+        }).when(patientJdbcRepository).streamAllViews(any());
+        assertEquals(2, store(path.toString(), Duration.ofDays(1)).write());
+        return path;
+    }
+
+
+    @Test
+    @DisplayName("Should serve nothing when no path is set")
+    void disabledTest() {
+
+        // Arrange
+        PatientSnapshotStore store = store("", Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+        store.invalidate(List.of(1));
+
+        // Assert
+        assertNull(store.find(1));
+        assertFalse(store.isValidated());
+        verifyNoInteractions(patientChangeRepository, patientJdbcRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should serve the snapshot of the previous run except the patients changed since")
+    void loadTest() throws IOException {
+
+        // Arrange
+        Path path = writeSnapshot();
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE))
+                .thenReturn(List.of(change(6, 2, Instant.now().minusSeconds(60))));
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+
+        // Assert
+        assertTrue(store.isValidated());
+        assertEquals("Doe", store.find(1).lastName());
+        assertNull(store.find(2));
+        assertNull(store.find(3));
+        assertFalse(Files.exists(directory.resolve("patients.snapshot.tmp")));
+    }
+
+
+    @Test
+    @DisplayName("Should drop the snapshot when a block read is corrupted")
+    void corruptedTest() throws IOException {
+
+        // Arrange
+        Path path = writeSnapshot();
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[PatientSnapshot.HEADER_BYTES + 1] ^= 1;
+        Files.write(path, bytes);
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE)).thenReturn(List.of());
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+        store.afterSingletonsInstantiated();
+
+        // Act
+        PatientView patient = store.find(1);
+
+        // Assert
+        assertNull(patient);
+        assertNull(store.find(2));
+    }
+
+
+    @Test
+    @DisplayName("Should serve nothing until the snapshot is validated against the change log")
+    void notValidatedTest() throws IOException {
+
+        // Arrange
+        Path path = writeSnapshot();
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(List.of());
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+        PatientView beforeValidation = store.find(1);
+        store.validate();
+
+        // Assert
+        assertNull(beforeValidation);
+        assertEquals("Doe", store.find(1).lastName());
+    }
+
+
+    @Test
+    @DisplayName("Should stop serving patients written by this instance")
+    void invalidateTest() throws IOException {
+
+        // Arrange
+        Path path = writeSnapshot();
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE)).thenReturn(List.of());
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+        store.afterSingletonsInstantiated();
+
+        // Act
+        store.invalidate(List.of(1));
+
+        // Assert
+        assertNull(store.find(1));
+        assertEquals("Smith", store.find(2).lastName());
+    }
+
+
+    @Test
+    @DisplayName("Should invalidate unsettled changes after a gap but read them again at the next validation")
+    void unsettledChangesTest() throws IOException {
+
+        // Arrange
+        Path path = writeSnapshot();
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE)).thenReturn(List.of(
+                change(6, 1, Instant.now().minusSeconds(60)),
+                change(8, 2, Instant.now().plusSeconds(60))));
+        when(patientChangeRepository.findChangesSince(6, CHANGES_PAGE)).thenReturn(List.of());
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+        store.afterSingletonsInstantiated();
+
+        // Act
+        store.validate();
+
+        // Assert
+        assertNull(store.find(1));
+        assertNull(store.find(2));
+        verify(patientChangeRepository).findChangesSince(6, CHANGES_PAGE);
+    }
+
+
+    @Test
+    @DisplayName("Should invalidate the changes of transactions running while the snapshot was written")
+    void lateCommitTest() throws IOException {
+
+        // Arrange
+        Path path = writeSnapshot();
+        Instant writtenAt = PatientSnapshot.open(path).getWrittenAt();
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE)).thenReturn(List.of());
+        when(patientChangeRepository.findPatientIdsChangedSince(writtenAt.minus(COMMIT_TIMEOUT)))
+                .thenReturn(List.of(1));
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+
+        // Assert
+        assertTrue(store.isValidated());
+        assertNull(store.find(1));
+        assertEquals("Smith", store.find(2).lastName());
+    }
+
+
+    @Test
+    @DisplayName("Should stop looking for late commits once every transaction running at the write has ended")
+    void lateCommitEndedTest() throws IOException {
+
+        // Arrange
+        Path path = directory.resolve("patients.snapshot");
+        Instant writtenAt = Instant.now().minus(Duration.ofHours(1)).truncatedTo(ChronoUnit.MILLIS);
+        try (PatientSnapshot.Writer writer = PatientSnapshot.writer(path, 5, writtenAt)) {
+            writer.add(patient(1, "Doe"));
+            writer.finish();
+        }
+        when(patientChangeRepository.findChangesSince(5, CHANGES_PAGE)).thenReturn(List.of());
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+        store.validate();
+
+        // Assert
+        assertEquals("Doe", store.find(1).lastName());
+        verify(patientChangeRepository, times(1)).findPatientIdsChangedSince(writtenAt.minus(COMMIT_TIMEOUT));
+        verify(patientChangeRepository, times(2)).findChangesSince(5, CHANGES_PAGE);
+    }
+
+
+    @Test
+    @DisplayName("Should ignore a snapshot older than the maximum age")
+    void tooOldTest() throws IOException {
+
+        // Arrange
+        Path path = directory.resolve("patients.snapshot");
+        try (PatientSnapshot.Writer writer = PatientSnapshot.writer(path, 5, Instant.now().minus(Duration.ofDays(2)))) {
+            writer.add(patient(1, "Doe"));
+            writer.finish();
+        }
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+
+        // Assert
+        assertNull(store.find(1));
+        verifyNoInteractions(patientChangeRepository);
+    }
+
+
+    @Test
+    @DisplayName("Should ignore a file that is not a whole snapshot")
+    void invalidFileTest() throws IOException {
+
+        // Arrange
+        Path path = directory.resolve("patients.snapshot");
+        Files.writeString(path, "not a snapshot");
+        PatientSnapshotStore store = store(path.toString(), Duration.ofDays(1));
+
+        // Act
+        store.afterSingletonsInstantiated();
+
+        // Assert
+        assertNull(store.find(1));
+        verifyNoInteractions(patientChangeRepository);
+    }
+}
@@ -0,0 +1,170 @@
+package com.mediscreen.patient.snapshot;
+
+import com.mediscreen.patient.dto.PatientView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatientSnapshotTest {
+
+
+    private static final Instant WRITTEN_AT = Instant.parse("2024-01-01T00:00:00Z");
+
+    @TempDir
+    private Path directory;
+
+
+    private static PatientView patient(int id, String lastName, String firstName, LocalDate birthdate, String sex,
+                                       String address, String phone) {
+        return new PatientView(id, lastName, firstName, birthdate, sex, address, phone, (long) id, WRITTEN_AT.plusSeconds(id));
+    }
+
+
+    private Path write(long highWaterMark, PatientView... patients) throws IOException {
+        Path path = directory.resolve("patients.snapshot");
+        try (PatientSnapshot.Writer writer = PatientSnapshot.writer(path, highWaterMark, WRITTEN_AT)) {
+            for (PatientView patient : patients) {
+                writer.add(patient);
+            }
+            writer.finish();
+        }
+        return path;
+    }
+
+
+    @Test
+    @DisplayName("Should read back every field of the patients written")
+    void roundTripTest() throws IOException {
+
+        // Arrange
+        PatientView doe = patient(3, "Doe", "John", LocalDate.of(1980, 2, 29), "M", "1 Elm St", "555-0101");
+        PatientView lefevre = patient(7, "Lefèvre", "Zoé", LocalDate.of(1899, 12, 31), "F", null, null);
+        PatientView unknown = new PatientView(12, "Doe", null, null, null, "1 Elm St", "", 0L, null);
+        Path path = write(42, doe, lefevre, unknown);
+
+        // Act
+        PatientSnapshot snapshot = PatientSnapshot.open(path);
+
+        // Assert
+        assertEquals(42, snapshot.getHighWaterMark());
+        assertEquals(WRITTEN_AT, snapshot.getWrittenAt());
+        assertEquals(3, snapshot.size());
+        for (PatientView expected : new PatientView[]{doe, lefevre, unknown}) {
+            assertEquals(expected, snapshot.get(expected.id()));
+        }
+        assertNull(snapshot.get(1));
+        assertNull(snapshot.get(5));
+        assertNull(snapshot.get(13));
+    }
+
+
+    @Test
+    @DisplayName("Should store the strings inline and each sex once")
+    void inlineStringsTest() throws IOException {
+
+        // Arrange
+        PatientView[] patients = new PatientView[1000];
+        for (int i = 0; i < patients.length; i++) {
+            patients[i] = patient(i + 1, "Doe", "John", LocalDate.of(2000, 1, 1), i % 2 == 0 ? "M" : "F",
+                    "1 Elm St", "555-0101");
+        }
+        long body = 1000L * (PatientSnapshot.RECORD_BYTES + 4 * Integer.BYTES + "DoeJohn1 Elm St555-0101".length())
+                + 2 * (Integer.BYTES + 1);
+        long blocks = (body + PatientSnapshot.BLOCK_BYTES - 1) / PatientSnapshot.BLOCK_BYTES;
+
+        // Act
+        PatientSnapshot snapshot = PatientSnapshot.open(write(1, patients));
+
+        // Assert
+        assertEquals(PatientSnapshot.HEADER_BYTES + body + 2 * Integer.BYTES + blocks * Integer.BYTES,
+                snapshot.sizeInBytes());
+        assertEquals("F", snapshot.get(1000).sex());
+        assertEquals(patients[499], snapshot.get(500));
+        assertFalse(Files.exists(directory.resolve("patients.snapshot.strings")));
+    }
+
+
+    @Test
+    @DisplayName("Should read an empty snapshot")
+    void emptyTest() throws IOException {
+
+        // Act
+        PatientSnapshot snapshot = PatientSnapshot.open(write(0));
+
+        // Assert
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.get(1));
+    }
+
+
+    @Test
+    @DisplayName("Should refuse patients out of id order")
+    void outOfOrderTest() throws IOException {
+
+        // Arrange
+        Path path = directory.resolve("patients.snapshot");
+        try (PatientSnapshot.Writer writer = PatientSnapshot.writer(path, 0, WRITTEN_AT)) {
+            writer.add(patient(2, "Doe", "John", null, null, null, null));
+
+            // Act & Assert
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.add(patient(2, "Doe", "Jane", null, null, null, null)));
+        }
+    }
+
+
+    @Test
+    @DisplayName("Should refuse a corrupted header, truncated or unfinished file")
+    void invalidFileTest() throws IOException {
+
+        // Arrange
+        Path path = write(1, patient(1, "Doe", "John", null, "M", null, null));
+        byte[] bytes = Files.readAllBytes(path);
+        Path corrupted = directory.resolve("corrupted");
+        byte[] flipped = bytes.clone();
+        flipped[8] ^= 1;
+        Files.write(corrupted, flipped);
+        Path truncated = directory.resolve("truncated");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        Path unfinished = directory.resolve("unfinished");
+        PatientSnapshot.writer(unfinished, 1, WRITTEN_AT).close();
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> PatientSnapshot.open(corrupted));
+        assertThrows(IOException.class, () -> PatientSnapshot.open(truncated));
+        assertThrows(IOException.class, () -> PatientSnapshot.open(unfinished));
+    }
+
+
+    @Test
+    @DisplayName("Should check each block when first read, not when opened")
+    void corruptedBlockTest() throws IOException {
+
+        // Arrange
+        PatientView[] patients = new PatientView[3000];
+        for (int i = 0; i < patients.length; i++) {
+            patients[i] = patient(i + 1, "Doe", "John", null, "M", null, null);
+        }
+        Path path = write(1, patients);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[PatientSnapshot.HEADER_BYTES + 1] ^= 1;
+        Files.write(path, bytes);
+
+        // Act
+        PatientSnapshot snapshot = PatientSnapshot.open(path);
+
+        // Assert
+        assertEquals(patients[2999], snapshot.get(3000));
+        assertThrows(UncheckedIOException.class, () -> snapshot.get(1));
+    }
+}
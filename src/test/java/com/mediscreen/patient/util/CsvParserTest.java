@@ -0,0 +1,37 @@
+package com.mediscreen.patient.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CsvParserTest {
+
+
+    @Test
+    @DisplayName("Should split plain fields")
+    void parsePlainLineTest() {
+
+        assertEquals(List.of("Doe", "John", "", "M"), CsvParser.parseLine("Doe,John,,M"));
+    }
+
+
+    @Test
+    @DisplayName("Should unquote fields holding commas and quotes")
+    void parseQuotedLineTest() {
+
+        assertEquals(List.of("Doe", "12, Main \"Street\"", "p"),
+                CsvParser.parseLine("Doe,\"12, Main \"\"Street\"\"\",p"));
+    }
+
+
+    @Test
+    @DisplayName("Should reject an unterminated quote")
+    void parseUnterminatedLineTest() {
+
+        assertThrows(IllegalArgumentException.class, () -> CsvParser.parseLine("Doe,\"12, Main"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.mediscreen.patient.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PatientNamesTest {
+
+
+    @Test
+    @DisplayName("Should ignore case, accents and extra spaces")
+    void normalizeTest() {
+
+        assertEquals("lefevre", PatientNames.normalize("Lefèvre"));
+        assertEquals("lefevre", PatientNames.normalize("  LEFEVRE "));
+        assertEquals("de la cruz", PatientNames.normalize("De   la  Crúz"));
+        assertEquals("muller", PatientNames.normalize("Müller"));
+    }
+
+
+    @Test
+    @DisplayName("Should keep null")
+    void normalizeNullTest() {
+
+        assertNull(PatientNames.normalize(null));
+    }
+
+
+    @Test
+    @DisplayName("Should escape LIKE wildcards and the escape character")
+    void escapeLikeTest() {
+
+        assertEquals("o!_brien!%!!", PatientNames.escapeLike("o_brien%!"));
+        assertEquals("doe", PatientNames.escapeLike("doe"));
+    }
+
+
+    @Test
+    @DisplayName("Should give names pronounced alike the same Soundex key")
+    void soundexTest() {
+
+        assertEquals("R163", PatientNames.soundex("Robert"));
+        assertEquals("R163", PatientNames.soundex("Rupert"));
+        assertEquals("S530", PatientNames.soundex("Smith"));
+        assertEquals("S530", PatientNames.soundex(" smyth"));
+        assertEquals("A261", PatientNames.soundex("Ashcraft"));
+        assertEquals("P236", PatientNames.soundex("Pfister"));
+        assertEquals("L116", PatientNames.soundex("Lefèvre"));
+        assertEquals("D000", PatientNames.soundex("Doe"));
+    }
+
+
+    @Test
+    @DisplayName("Should give an empty Soundex key to a name without letters")
+    void soundexEmptyTest() {
+
+        assertEquals("", PatientNames.soundex(null));
+        assertEquals("", PatientNames.soundex(" 42 "));
+    }
+}